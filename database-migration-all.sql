@@ -292,6 +292,249 @@ DEALLOCATE PREPARE stmt;
 
 SELECT '✓ 文件存储优化已完成/验证' AS status;
 
+-- ====================================================================
+-- 9. 添加 quota_per_minute 字段到 application 表
+-- 用途: 按应用（X-API-Key）限制开放接口的请求频率
+-- ====================================================================
+
+SET @quota_exists = 0;
+SELECT COUNT(*) INTO @quota_exists
+FROM information_schema.COLUMNS
+WHERE TABLE_SCHEMA = 'verfiy'
+  AND TABLE_NAME = 'application'
+  AND COLUMN_NAME = 'quota_per_minute';
+
+SET @sql = IF(@quota_exists = 0,
+    'ALTER TABLE application ADD COLUMN `quota_per_minute` INT NOT NULL DEFAULT 0 COMMENT ''开放接口每分钟请求配额（0 表示不限制）'' AFTER `app_type`',
+    'SELECT ''字段 quota_per_minute 已存在，跳过添加'' AS info');
+
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SELECT '✓ application.quota_per_minute 字段已添加/验证' AS status;
+
+-- ====================================================================
+-- 10. 创建 shared_counter 表
+-- 用途: 多节点部署时共享限流、编译配额和登录失败计数（counter-store.type=database）
+-- ====================================================================
+
+CREATE TABLE IF NOT EXISTS `shared_counter` (
+  `counter_key` varchar(191) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '计数器标识（如 rate:0:1.2.3.4、compile:1、login:fail:admin）',
+  `used_count` bigint NOT NULL DEFAULT '0' COMMENT '当前窗口已使用次数（含各节点预占的租约）',
+  `expire_at` bigint NOT NULL COMMENT '窗口结束时间（毫秒时间戳）',
+  PRIMARY KEY (`counter_key`),
+  KEY `idx_expire_at` (`expire_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='共享计数器表（多节点限流/配额）';
+
+SELECT '✓ shared_counter 表已创建/验证' AS status;
+
+-- ====================================================================
+-- 11. 虚拟卡密批次：card_batch、card_batch_revoked 表和 card.batch_id/batch_index 字段
+-- 用途: 批次只保存生成规则，卡密首次激活时才写入 card 表
+-- ====================================================================
+
+SET @batch_id_exists = 0;
+SELECT COUNT(*) INTO @batch_id_exists
+FROM information_schema.COLUMNS
+WHERE TABLE_SCHEMA = 'verfiy'
+  AND TABLE_NAME = 'card'
+  AND COLUMN_NAME = 'batch_id';
+
+SET @sql = IF(@batch_id_exists = 0,
+    'ALTER TABLE card ADD COLUMN `batch_id` bigint DEFAULT NULL COMMENT ''所属虚拟批次ID（首次激活时写入）'' AFTER `return_extra`, ADD COLUMN `batch_index` bigint DEFAULT NULL COMMENT ''在虚拟批次中的序号'' AFTER `batch_id`, ADD KEY `idx_card_batch` (`batch_id`)',
+    'SELECT ''字段 batch_id 已存在，跳过添加'' AS info');
+
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+CREATE TABLE IF NOT EXISTS `card_batch` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `app_id` bigint NOT NULL COMMENT '所属应用ID',
+  `prefix` varchar(64) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '前缀',
+  `suffix` varchar(64) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '后缀',
+  `format_pattern` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '格式（x 为随机位）',
+  `card_count` int NOT NULL COMMENT '卡密数量',
+  `seed` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '置换密钥（Base64）',
+  `metadata` varchar(2048) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '拥有时长（JSON，同 card.metadata）',
+  `max_machines` int DEFAULT NULL COMMENT '最大机器数（NULL表示不限）',
+  `disabled` tinyint(1) NOT NULL DEFAULT '0' COMMENT '是否禁用',
+  `created_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  KEY `idx_card_batch_app` (`app_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='虚拟卡密批次表';
+
+CREATE TABLE IF NOT EXISTS `card_batch_revoked` (
+  `batch_id` bigint NOT NULL COMMENT '批次ID',
+  `code_index` bigint NOT NULL COMMENT '卡密序号',
+  `created_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '删除时间',
+  PRIMARY KEY (`batch_id`, `code_index`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='虚拟批次中激活后又被删除的卡密';
+
+SELECT '✓ 虚拟卡密批次表和字段已创建/验证' AS status;
+
+-- ====================================================================
+-- 12. card 表添加 (app_id, status) 索引
+-- 用途: 卡密列表按状态分组计数、按状态筛选时沿 id 游标翻页
+-- ====================================================================
+
+SET @app_status_index_exists = 0;
+SELECT COUNT(*) INTO @app_status_index_exists
+FROM information_schema.STATISTICS
+WHERE TABLE_SCHEMA = 'verfiy'
+  AND TABLE_NAME = 'card'
+  AND INDEX_NAME = 'idx_card_app_status';
+
+SET @sql = IF(@app_status_index_exists = 0,
+    'ALTER TABLE card ADD KEY `idx_card_app_status` (`app_id`, `status`)',
+    'SELECT ''索引 idx_card_app_status 已存在，跳过添加'' AS info');
+
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SELECT '✓ card 表 idx_card_app_status 索引已创建/验证' AS status;
+
+-- ====================================================================
+-- 13. card 表添加 expire_at 索引
+-- 用途: 后台按到期时间分批把已到期的卡密标记为 EXPIRED
+-- ====================================================================
+
+SET @expire_at_index_exists = 0;
+SELECT COUNT(*) INTO @expire_at_index_exists
+FROM information_schema.STATISTICS
+WHERE TABLE_SCHEMA = 'verfiy'
+  AND TABLE_NAME = 'card'
+  AND INDEX_NAME = 'idx_card_expire_at';
+
+SET @sql = IF(@expire_at_index_exists = 0,
+    'ALTER TABLE card ADD KEY `idx_card_expire_at` (`expire_at`)',
+    'SELECT ''索引 idx_card_expire_at 已存在，跳过添加'' AS info');
+
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SELECT '✓ card 表 idx_card_expire_at 索引已创建/验证' AS status;
+
+-- ====================================================================
+-- 14. card_use_log 按月分区
+-- 用途: 过期的使用日志归档后按分区整体删除；使用记录按 (card_id, id) 翻页
+-- 注意: 分区表不能有外键；首次分区会重建整张表，日志较多时请在低峰期执行
+-- ====================================================================
+
+SET @log_fk_exists = 0;
+SELECT COUNT(*) INTO @log_fk_exists
+FROM information_schema.TABLE_CONSTRAINTS
+WHERE TABLE_SCHEMA = 'verfiy'
+  AND TABLE_NAME = 'card_use_log'
+  AND CONSTRAINT_NAME = 'fk_card_id'
+  AND CONSTRAINT_TYPE = 'FOREIGN KEY';
+
+SET @sql = IF(@log_fk_exists > 0,
+    'ALTER TABLE card_use_log DROP FOREIGN KEY `fk_card_id`',
+    'SELECT ''外键 fk_card_id 不存在，跳过删除'' AS info');
+
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @log_card_index_exists = 0;
+SELECT COUNT(*) INTO @log_card_index_exists
+FROM information_schema.STATISTICS
+WHERE TABLE_SCHEMA = 'verfiy'
+  AND TABLE_NAME = 'card_use_log'
+  AND INDEX_NAME = 'idx_card_log_card';
+
+SET @sql = IF(@log_card_index_exists = 0,
+    'ALTER TABLE card_use_log ADD KEY `idx_card_log_card` (`card_id`, `id`)',
+    'SELECT ''索引 idx_card_log_card 已存在，跳过添加'' AS info');
+
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @log_old_index_exists = 0;
+SELECT COUNT(*) INTO @log_old_index_exists
+FROM information_schema.STATISTICS
+WHERE TABLE_SCHEMA = 'verfiy'
+  AND TABLE_NAME = 'card_use_log'
+  AND INDEX_NAME = 'fk_card_id';
+
+SET @sql = IF(@log_old_index_exists > 0,
+    'ALTER TABLE card_use_log DROP KEY `fk_card_id`',
+    'SELECT ''索引 fk_card_id 不存在，跳过删除'' AS info');
+
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SET @log_partitioned = 0;
+SELECT COUNT(*) INTO @log_partitioned
+FROM information_schema.PARTITIONS
+WHERE TABLE_SCHEMA = 'verfiy'
+  AND TABLE_NAME = 'card_use_log'
+  AND PARTITION_NAME IS NOT NULL;
+
+UPDATE card_use_log SET created_at = CURRENT_TIMESTAMP WHERE created_at IS NULL AND @log_partitioned = 0;
+
+-- 分区键必须包含在主键中
+SET @sql = IF(@log_partitioned = 0,
+    'ALTER TABLE card_use_log MODIFY `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT ''创建时间'', DROP PRIMARY KEY, ADD PRIMARY KEY (`id`, `created_at`)',
+    'SELECT ''card_use_log 已分区，跳过修改主键'' AS info');
+
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 先只建 pmax，月份分区由服务启动后从 pmax 中拆出
+SET @sql = IF(@log_partitioned = 0,
+    'ALTER TABLE card_use_log PARTITION BY RANGE (UNIX_TIMESTAMP(`created_at`)) (PARTITION `pmax` VALUES LESS THAN MAXVALUE)',
+    'SELECT ''card_use_log 已分区，跳过'' AS info');
+
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+SELECT '✓ card_use_log 分区已创建/验证' AS status;
+
+-- ====================================================================
+-- 15. 已归档卡密表
+-- 用途: 过期或已使用较久的卡密及其机器码移出 card / card_machine，热表只保留活跃卡密
+-- ====================================================================
+
+CREATE TABLE IF NOT EXISTS `card_archive` (
+  `id` bigint NOT NULL COMMENT '原卡密ID',
+  `card_code` varchar(128) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '卡密码',
+  `status` varchar(16) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '归档时的状态',
+  `expire_at` timestamp NULL DEFAULT NULL COMMENT '过期时间',
+  `activated_at` timestamp NULL DEFAULT NULL COMMENT '激活时间',
+  `disabled` tinyint(1) DEFAULT '0' COMMENT '是否禁用',
+  `metadata` varchar(2048) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '元数据（JSON）',
+  `created_at` timestamp NULL DEFAULT NULL COMMENT '创建时间',
+  `updated_at` timestamp NULL DEFAULT NULL COMMENT '更新时间',
+  `app_id` bigint DEFAULT NULL COMMENT '所属应用ID',
+  `max_machines` int DEFAULT NULL COMMENT '最大机器数（NULL表示不限）',
+  `extra` text COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '附加信息（JSON格式）',
+  `return_extra` tinyint(1) DEFAULT '0' COMMENT '验证成功时是否返回附加信息',
+  `batch_id` bigint DEFAULT NULL COMMENT '所属虚拟批次ID',
+  `batch_index` bigint DEFAULT NULL COMMENT '在虚拟批次中的序号',
+  `archived_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '归档时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_card_archive_code` (`card_code`),
+  KEY `idx_card_archive_app` (`app_id`, `id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='已归档卡密表（过期或已使用较久的卡密）';
+
+CREATE TABLE IF NOT EXISTS `card_machine_archive` (
+  `card_id` bigint NOT NULL COMMENT '原卡密ID',
+  `machine` varchar(128) NOT NULL COMMENT '机器码',
+  `created_at` timestamp NULL DEFAULT NULL COMMENT '绑定时间',
+  PRIMARY KEY (`card_id`, `machine`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='已归档卡密的机器码绑定表';
+
+SELECT '✓ card_archive、card_machine_archive 表已创建/验证' AS status;
+
 -- ====================================================================
 -- 完成验证和状态报告
 -- ====================================================================
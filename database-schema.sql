@@ -48,6 +48,7 @@ CREATE TABLE `application` (
   `secret_key` varchar(128) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '签名密钥',
   `redeem_extra_mode` varchar(32) COLLATE utf8mb4_unicode_ci DEFAULT 'SUCCESS_ONLY' COMMENT '返回参数模式（ALWAYS/SUCCESS_ONLY/FAILURE_ONLY）',
   `app_type` varchar(32) COLLATE utf8mb4_unicode_ci DEFAULT 'NORMAL' COMMENT '应用类型（NORMAL/XPOSED）',
+  `quota_per_minute` int NOT NULL DEFAULT '0' COMMENT '开放接口每分钟请求配额（0 表示不限制）',
   PRIMARY KEY (`id`),
   UNIQUE KEY `uk_api_key` (`api_key`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='应用表';
@@ -97,10 +98,15 @@ CREATE TABLE `card` (
   `max_machines` int DEFAULT NULL COMMENT '最大机器数（NULL表示不限）',
   `extra` text COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '附加信息（JSON格式）',
   `return_extra` tinyint(1) DEFAULT '0' COMMENT '验证成功时是否返回附加信息',
+  `batch_id` bigint DEFAULT NULL COMMENT '所属虚拟批次ID（首次激活时写入）',
+  `batch_index` bigint DEFAULT NULL COMMENT '在虚拟批次中的序号',
   PRIMARY KEY (`id`),
   UNIQUE KEY `card_code` (`card_code`),
   KEY `idx_card_status` (`status`),
-  KEY `idx_app_id` (`app_id`)
+  KEY `idx_app_id` (`app_id`),
+  KEY `idx_card_batch` (`batch_id`),
+  KEY `idx_card_app_status` (`app_id`, `status`),
+  KEY `idx_card_expire_at` (`expire_at`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='卡密表';
 
 -- ----------------------------
@@ -117,6 +123,43 @@ CREATE TABLE `card_machine` (
   CONSTRAINT `fk_cm_card` FOREIGN KEY (`card_id`) REFERENCES `card` (`id`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='卡密机器码绑定表';
 
+-- ----------------------------
+-- 表结构: card_archive (已归档卡密表)
+-- ----------------------------
+DROP TABLE IF EXISTS `card_archive`;
+CREATE TABLE `card_archive` (
+  `id` bigint NOT NULL COMMENT '原卡密ID',
+  `card_code` varchar(128) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '卡密码',
+  `status` varchar(16) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '归档时的状态',
+  `expire_at` timestamp NULL DEFAULT NULL COMMENT '过期时间',
+  `activated_at` timestamp NULL DEFAULT NULL COMMENT '激活时间',
+  `disabled` tinyint(1) DEFAULT '0' COMMENT '是否禁用',
+  `metadata` varchar(2048) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '元数据（JSON）',
+  `created_at` timestamp NULL DEFAULT NULL COMMENT '创建时间',
+  `updated_at` timestamp NULL DEFAULT NULL COMMENT '更新时间',
+  `app_id` bigint DEFAULT NULL COMMENT '所属应用ID',
+  `max_machines` int DEFAULT NULL COMMENT '最大机器数（NULL表示不限）',
+  `extra` text COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '附加信息（JSON格式）',
+  `return_extra` tinyint(1) DEFAULT '0' COMMENT '验证成功时是否返回附加信息',
+  `batch_id` bigint DEFAULT NULL COMMENT '所属虚拟批次ID',
+  `batch_index` bigint DEFAULT NULL COMMENT '在虚拟批次中的序号',
+  `archived_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '归档时间',
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `uk_card_archive_code` (`card_code`),
+  KEY `idx_card_archive_app` (`app_id`, `id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='已归档卡密表（过期或已使用较久的卡密）';
+
+-- ----------------------------
+-- 表结构: card_machine_archive (已归档卡密的机器码表)
+-- ----------------------------
+DROP TABLE IF EXISTS `card_machine_archive`;
+CREATE TABLE `card_machine_archive` (
+  `card_id` bigint NOT NULL COMMENT '原卡密ID',
+  `machine` varchar(128) NOT NULL COMMENT '机器码',
+  `created_at` timestamp NULL DEFAULT NULL COMMENT '绑定时间',
+  PRIMARY KEY (`card_id`, `machine`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='已归档卡密的机器码绑定表';
+
 -- ----------------------------
 -- 表结构: card_use_log (卡密使用日志表)
 -- ----------------------------
@@ -129,12 +172,14 @@ CREATE TABLE `card_use_log` (
   `request_ip` varchar(64) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '请求IP',
   `request_user` varchar(64) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '请求用户',
   `remark` varchar(255) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '备注',
-  `created_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
-  PRIMARY KEY (`id`),
-  KEY `fk_card_id` (`card_id`),
-  KEY `idx_created_at` (`created_at`),
-  CONSTRAINT `fk_card_id` FOREIGN KEY (`card_id`) REFERENCES `card` (`id`)
-) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='卡密使用日志表';
+  `created_at` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`, `created_at`),
+  KEY `idx_card_log_card` (`card_id`, `id`),
+  KEY `idx_created_at` (`created_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='卡密使用日志表（按月分区，月份分区由服务自动添加，过期分区归档后删除）'
+PARTITION BY RANGE (UNIX_TIMESTAMP(`created_at`)) (
+  PARTITION `pmax` VALUES LESS THAN MAXVALUE
+);
 
 -- ----------------------------
 -- 表结构: notice (公告表)
@@ -193,6 +238,49 @@ CREATE TABLE `dex_compile_task` (
   KEY `idx_create_time` (`create_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='Dex 编译任务表';
 
+-- ----------------------------
+-- 表结构: shared_counter (共享计数器表，counter-store.type=database 时使用)
+-- ----------------------------
+DROP TABLE IF EXISTS `shared_counter`;
+CREATE TABLE `shared_counter` (
+  `counter_key` varchar(191) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '计数器标识（如 rate:0:1.2.3.4、compile:1、login:fail:admin）',
+  `used_count` bigint NOT NULL DEFAULT '0' COMMENT '当前窗口已使用次数（含各节点预占的租约）',
+  `expire_at` bigint NOT NULL COMMENT '窗口结束时间（毫秒时间戳）',
+  PRIMARY KEY (`counter_key`),
+  KEY `idx_expire_at` (`expire_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='共享计数器表（多节点限流/配额）';
+
+-- ----------------------------
+-- 表结构: card_batch (虚拟卡密批次表)
+-- ----------------------------
+DROP TABLE IF EXISTS `card_batch`;
+CREATE TABLE `card_batch` (
+  `id` bigint NOT NULL AUTO_INCREMENT,
+  `app_id` bigint NOT NULL COMMENT '所属应用ID',
+  `prefix` varchar(64) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '前缀',
+  `suffix` varchar(64) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '后缀',
+  `format_pattern` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '格式（x 为随机位）',
+  `card_count` int NOT NULL COMMENT '卡密数量',
+  `seed` varchar(64) COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '置换密钥（Base64）',
+  `metadata` varchar(2048) COLLATE utf8mb4_unicode_ci DEFAULT NULL COMMENT '拥有时长（JSON，同 card.metadata）',
+  `max_machines` int DEFAULT NULL COMMENT '最大机器数（NULL表示不限）',
+  `disabled` tinyint(1) NOT NULL DEFAULT '0' COMMENT '是否禁用',
+  `created_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  KEY `idx_card_batch_app` (`app_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='虚拟卡密批次表';
+
+-- ----------------------------
+-- 表结构: card_batch_revoked (虚拟批次中已删除的卡密)
+-- ----------------------------
+DROP TABLE IF EXISTS `card_batch_revoked`;
+CREATE TABLE `card_batch_revoked` (
+  `batch_id` bigint NOT NULL COMMENT '批次ID',
+  `code_index` bigint NOT NULL COMMENT '卡密序号',
+  `created_at` timestamp NULL DEFAULT CURRENT_TIMESTAMP COMMENT '删除时间',
+  PRIMARY KEY (`batch_id`, `code_index`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='虚拟批次中激活后又被删除的卡密';
+
 -- ----------------------------
 -- 创建默认管理员账户
 -- 用户名: admin
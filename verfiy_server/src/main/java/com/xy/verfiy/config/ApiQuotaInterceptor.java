@@ -0,0 +1,42 @@
+package com.xy.verfiy.config;
+
+import com.xy.verfiy.service.ApiQuotaService;
+import com.xy.verfiy.service.RateLimitService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * 开放接口应用配额拦截器（按 X-API-Key，在签名校验之前执行）
+ */
+@Component
+public class ApiQuotaInterceptor implements HandlerInterceptor {
+    
+    private final ApiQuotaService apiQuotaService;
+    
+    public ApiQuotaInterceptor(ApiQuotaService apiQuotaService) {
+        this.apiQuotaService = apiQuotaService;
+    }
+    
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        RateLimitService.Decision decision = apiQuotaService.tryAcquire(request.getHeader("X-API-Key"));
+        if (decision == null) {
+            return true;
+        }
+        
+        response.setHeader("X-Quota-Limit", String.valueOf(decision.limit()));
+        response.setHeader("X-Quota-Remaining", String.valueOf(decision.remaining()));
+        
+        if (!decision.allowed()) {
+            response.setStatus(429);
+            response.setHeader("Retry-After", String.valueOf(decision.retryAfterSeconds()));
+            response.setContentType("application/json;charset=UTF-8");
+            response.getWriter().write("{\"success\":false,\"message\":\"应用请求配额已用尽，请稍后再试\"}");
+            return false;
+        }
+        
+        return true;
+    }
+}
@@ -13,15 +13,17 @@ import org.springframework.web.servlet.HandlerInterceptor;
 public class RateLimitInterceptor implements HandlerInterceptor {
     
     private final RateLimitService rateLimitService;
+    private final TrustedProxies trustedProxies;
     
-    public RateLimitInterceptor(RateLimitService rateLimitService) {
+    public RateLimitInterceptor(RateLimitService rateLimitService, TrustedProxies trustedProxies) {
         this.rateLimitService = rateLimitService;
+        this.trustedProxies = trustedProxies;
     }
     
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
         // 获取客户端IP
-        String clientIp = getClientIP(request);
+        String clientIp = trustedProxies.clientIp(request);
         
         // 跳过登录和注册接口的限流（这些接口有自己的保护机制）
         String uri = request.getRequestURI();
@@ -29,42 +31,28 @@ public class RateLimitInterceptor implements HandlerInterceptor {
             return true;
         }
         
-        // 检查是否被限流
-        if (rateLimitService.isRateLimited(clientIp)) {
+        // 按路由规则检查并消耗令牌（一次原子操作）
+        String contextPath = request.getContextPath();
+        String path = uri.startsWith(contextPath) ? uri.substring(contextPath.length()) : uri;
+        RateLimitService.Decision decision = rateLimitService.tryAcquire(path, clientIp);
+        if (decision == null) {
+            return true;
+        }
+        
+        // 添加限流信息到响应头
+        response.setHeader("X-RateLimit-Limit", String.valueOf(decision.limit()));
+        response.setHeader("X-RateLimit-Remaining", String.valueOf(decision.remaining()));
+        
+        if (!decision.allowed()) {
             response.setStatus(429);
+            response.setHeader("Retry-After", String.valueOf(decision.retryAfterSeconds()));
             response.setContentType("application/json;charset=UTF-8");
             response.getWriter().write("{\"success\":false,\"message\":\"请求过于频繁，请稍后再试\"}");
             return false;
         }
         
-        // 记录请求
-        rateLimitService.recordRequest(clientIp);
-        
-        // 添加限流信息到响应头
-        int remaining = rateLimitService.getRemainingRequests(clientIp);
-        response.setHeader("X-RateLimit-Limit", "60");
-        response.setHeader("X-RateLimit-Remaining", String.valueOf(remaining));
-        
         return true;
     }
-    
-    /**
-     * 获取客户端真实IP
-     */
-    private String getClientIP(HttpServletRequest request) {
-        String ip = request.getHeader("X-Forwarded-For");
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("X-Real-IP");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getRemoteAddr();
-        }
-        // 如果是多个IP，取第一个
-        if (ip != null && ip.contains(",")) {
-            ip = ip.split(",")[0].trim();
-        }
-        return ip;
-    }
 }
 
 
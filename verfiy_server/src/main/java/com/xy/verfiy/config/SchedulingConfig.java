@@ -0,0 +1,43 @@
+package com.xy.verfiy.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * 定时任务线程池
+ *
+ * Spring 默认只有一个调度线程，所有 @Scheduled 方法排队执行，整点的全表任务会让每秒一次的时间轮停摆。分为三组：
+ * - tickScheduler：每秒推进的时间轮（到期卡密、登录失败记录），单独一个线程；
+ * - maintenanceScheduler：全量重建、归档、分区维护等耗时较长的任务；
+ * - taskScheduler：其余短任务（默认）。
+ */
+@Configuration
+public class SchedulingConfig {
+
+    @Bean
+    @Primary
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${scheduling.pool-size:4}") int poolSize) {
+        return scheduler("scheduling-", poolSize);
+    }
+
+    @Bean
+    public ThreadPoolTaskScheduler maintenanceScheduler(@Value("${scheduling.maintenance-pool-size:2}") int poolSize) {
+        return scheduler("maintenance-", poolSize);
+    }
+
+    @Bean
+    public ThreadPoolTaskScheduler tickScheduler() {
+        return scheduler("tick-", 1);
+    }
+
+    private static ThreadPoolTaskScheduler scheduler(String prefix, int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(Math.max(1, poolSize));
+        scheduler.setThreadNamePrefix(prefix);
+        scheduler.setWaitForTasksToCompleteOnShutdown(false);
+        return scheduler;
+    }
+}
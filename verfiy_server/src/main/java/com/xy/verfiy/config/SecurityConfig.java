@@ -63,6 +63,9 @@ public class SecurityConfig {
                 .requestMatchers("/admin/invites/**").authenticated()  // 邀请码管理需要登录
                 .requestMatchers("/admin/**").authenticated()  // 其他管理接口需要登录
                 .requestMatchers("/api/**").authenticated()
+                // 监控端点：健康检查公开，指标仅管理员可见
+                .requestMatchers("/actuator/health").permitAll()
+                .requestMatchers("/actuator/**").hasRole("ADMIN")
                 .anyRequest().permitAll()
             )
             .sessionManagement(session -> session
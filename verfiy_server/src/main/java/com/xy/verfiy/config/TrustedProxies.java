@@ -0,0 +1,96 @@
+package com.xy.verfiy.config;
+
+import com.xy.verfiy.util.RequestUtils;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * 受信任的反向代理（trusted-proxies，逗号分隔的 IP 或 CIDR）
+ *
+ * 只有直接连接的一方在列表中时才读取 X-Forwarded-For / X-Real-IP，否则客户端可以伪造来源 IP
+ * 绕过按 IP 的限流和登录锁定，或者冒充他人的 IP 把对方锁定。
+ */
+@Component
+public class TrustedProxies implements Predicate<String> {
+
+    // 只接受 IP 字面量，避免 InetAddress 解析主机名
+    private static final Pattern IP_LITERAL = Pattern.compile("[0-9A-Fa-f:.]+");
+
+    private record Range(byte[] address, int prefix) {
+    }
+
+    private final List<Range> ranges = new ArrayList<>();
+
+    public TrustedProxies(@Value("${trusted-proxies:127.0.0.1,::1}") String config) {
+        for (String item : config.split(",")) {
+            String entry = item.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int slash = entry.indexOf('/');
+            byte[] address = parse(slash >= 0 ? entry.substring(0, slash) : entry);
+            if (address == null) {
+                throw new IllegalArgumentException("trusted-proxies 中的地址无效: " + entry);
+            }
+            int prefix = slash >= 0 ? Integer.parseInt(entry.substring(slash + 1)) : address.length * 8;
+            if (prefix < 0 || prefix > address.length * 8) {
+                throw new IllegalArgumentException("trusted-proxies 中的前缀长度无效: " + entry);
+            }
+            ranges.add(new Range(address, prefix));
+        }
+    }
+
+    /**
+     * 客户端 IP（按受信任的代理解析转发头）
+     */
+    public String clientIp(HttpServletRequest request) {
+        return RequestUtils.getClientIp(request, this);
+    }
+
+    @Override
+    public boolean test(String ip) {
+        byte[] address = parse(ip);
+        if (address == null) {
+            return false;
+        }
+        for (Range range : ranges) {
+            if (matches(range, address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(Range range, byte[] address) {
+        if (range.address().length != address.length) {
+            return false;
+        }
+        int bits = range.prefix();
+        for (int i = 0; bits > 0; i++, bits -= 8) {
+            int mask = bits >= 8 ? 0xFF : (0xFF << (8 - bits)) & 0xFF;
+            if ((range.address()[i] & mask) != (address[i] & mask)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] parse(String ip) {
+        if (ip == null || ip.isEmpty() || !IP_LITERAL.matcher(ip).matches()) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+}
@@ -11,16 +11,21 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 public class WebMvcConfig implements WebMvcConfigurer {
     
     private final RateLimitInterceptor rateLimitInterceptor;
+    private final ApiQuotaInterceptor apiQuotaInterceptor;
     
-    public WebMvcConfig(RateLimitInterceptor rateLimitInterceptor) {
+    public WebMvcConfig(RateLimitInterceptor rateLimitInterceptor, ApiQuotaInterceptor apiQuotaInterceptor) {
         this.rateLimitInterceptor = rateLimitInterceptor;
+        this.apiQuotaInterceptor = apiQuotaInterceptor;
     }
     
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         registry.addInterceptor(rateLimitInterceptor)
                 .addPathPatterns("/api/**", "/admin/**")  // 对所有API和管理接口限流
-                .excludePathPatterns("/api/auth/**");     // 排除认证接口（有单独的保护）
+                .excludePathPatterns("/api/auth/**",      // 排除认证接口（有单独的保护）
+                        "/admin/dex-compile/symbols/**");  // 编辑器补全查询（需登录、纯内存查询，输入时调用频繁）
+        registry.addInterceptor(apiQuotaInterceptor)
+                .addPathPatterns("/api/redeem/**", "/api/hook/**", "/api/notice/**");  // 使用 X-API-Key 的开放接口
     }
 }
 
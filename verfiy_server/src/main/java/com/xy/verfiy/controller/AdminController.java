@@ -1,27 +1,44 @@
 package com.xy.verfiy.controller;
 
 import com.xy.verfiy.domain.Card;
+import com.xy.verfiy.domain.CardBatch;
+import com.xy.verfiy.domain.CardBulkJob;
+import com.xy.verfiy.domain.CardBulkRequest;
+import com.xy.verfiy.domain.CardGenerateJob;
+import com.xy.verfiy.domain.CardImportJob;
 import com.xy.verfiy.domain.CardStatus;
+import com.xy.verfiy.domain.CardUseLog;
+import com.xy.verfiy.domain.AppDeleteJob;
 import com.xy.verfiy.domain.Application;
 import com.xy.verfiy.domain.UserAccount;
 import com.xy.verfiy.service.ApplicationService;
+import com.xy.verfiy.service.CardArchiveService;
+import com.xy.verfiy.service.CardBatchService;
 import com.xy.verfiy.mapper.CardMapper;
 import com.xy.verfiy.mapper.UserAccountMapper;
 import com.xy.verfiy.service.CardService;
 import com.xy.verfiy.service.InviteCodeService;
+import com.xy.verfiy.service.LoginAttemptService;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/admin")
@@ -32,13 +49,19 @@ public class AdminController {
     private final CardMapper cardMapper;
     private final InviteCodeService inviteCodeService;
     private final UserAccountMapper userAccountMapper;
+    private final LoginAttemptService loginAttemptService;
+    private final CardBatchService cardBatchService;
+    private final CardArchiveService cardArchiveService;
 
-    public AdminController(CardService cardService, ApplicationService applicationService, CardMapper cardMapper, InviteCodeService inviteCodeService, UserAccountMapper userAccountMapper) {
+    public AdminController(CardService cardService, ApplicationService applicationService, CardMapper cardMapper, InviteCodeService inviteCodeService, UserAccountMapper userAccountMapper, LoginAttemptService loginAttemptService, CardBatchService cardBatchService, CardArchiveService cardArchiveService) {
         this.cardService = cardService;
         this.applicationService = applicationService;
         this.cardMapper = cardMapper;
         this.inviteCodeService = inviteCodeService;
         this.userAccountMapper = userAccountMapper;
+        this.loginAttemptService = loginAttemptService;
+        this.cardArchiveService = cardArchiveService;
+        this.cardBatchService = cardBatchService;
     }
 
     @GetMapping({"/cards","/app/cards"})
@@ -47,6 +70,9 @@ public class AdminController {
                        @RequestParam(value = "status", required = false) CardStatus status,
                        @RequestParam(value = "page", defaultValue = "1") int page,
                        @RequestParam(value = "size", defaultValue = "20") int size,
+                       @RequestParam(value = "beforeId", required = false) Long beforeId,
+                       @RequestParam(value = "afterId", required = false) Long afterId,
+                       @RequestParam(value = "exactCount", defaultValue = "false") boolean exactCount,
                        Authentication authentication,
                        HttpSession session) {
         Long effectiveAppId = appId != null ? appId : (Long) session.getAttribute("currentAppId");
@@ -65,10 +91,42 @@ public class AdminController {
             out.put("total", 0);
             return out;
         }
-        List<Card> data = cardService.page(effectiveAppId, keyword, status, page, size);
-        long total = cardService.count(effectiveAppId, keyword, status);
+        boolean hasKeyword = keyword != null && !keyword.isBlank();
+        List<Card> data;
+        Boolean hasMore = null;
+        if (beforeId != null || afterId != null || page <= 1) {
+            // 按 id 游标翻页，多取一条判断是否还有下一页；不使用 OFFSET，翻到多深都一样快
+            int limit = Math.max(1, Math.min(size, 200));
+            data = cardService.pageByCursor(effectiveAppId, keyword, status, beforeId, afterId, limit + 1);
+            boolean more = data.size() > limit;
+            if (more) {
+                data = afterId != null ? data.subList(1, data.size()) : data.subList(0, limit);
+            }
+            // 向前翻页时，多出的一条说明前面还有；向后翻页总是存在下一页
+            hasMore = afterId != null || more;
+            out.put("hasPrev", afterId != null ? more : beforeId != null);
+        } else {
+            data = cardService.page(effectiveAppId, keyword, status, page, size);
+        }
+        // 总数：无关键词时使用增量维护的计数；有关键词时只有明确请求才执行 COUNT
+        Long total;
+        boolean totalExact;
+        if (exactCount) {
+            total = cardService.count(effectiveAppId, keyword, status);
+            totalExact = true;
+        } else if (!hasKeyword) {
+            total = cardService.approximateCount(effectiveAppId, status);
+            totalExact = false;
+        } else {
+            total = null;
+            totalExact = false;
+        }
+        if (hasMore == null) {
+            hasMore = total != null ? (long) page * size < total : data.size() >= size;
+        }
         
-        // 将 Card 转换为 Map 并添加 boundMachinesCount
+        // 将 Card 转换为 Map 并添加 boundMachinesCount（整页一次分组统计）
+        Map<Long, Integer> machineCounts = cardService.countMachines(data.stream().map(Card::getId).toList());
         List<Map<String, Object>> cardsWithCount = data.stream().map(card -> {
             Map<String, Object> cardMap = new HashMap<>();
             cardMap.put("id", card.getId());
@@ -85,12 +143,14 @@ public class AdminController {
             cardMap.put("extra", card.getExtra());
             cardMap.put("returnExtra", card.getReturnExtra());
             // 添加当前绑定的机器码数量
-            cardMap.put("boundMachinesCount", cardMapper.listMachines(card.getId()).size());
+            cardMap.put("boundMachinesCount", machineCounts.getOrDefault(card.getId(), 0));
             return cardMap;
         }).toList();
         
         out.put("cards", cardsWithCount);
         out.put("total", total);
+        out.put("totalExact", totalExact);
+        out.put("hasMore", hasMore);
         out.put("page", page);
         out.put("size", size);
         out.put("keyword", keyword);
@@ -113,6 +173,71 @@ public class AdminController {
         return cardMapper.listMachines(id);
     }
 
+    @GetMapping("/cards/{id}/logs")
+    public Map<String, Object> listLogs(@PathVariable Long id,
+                                        @RequestParam(value = "beforeId", required = false) Long beforeId,
+                                        @RequestParam(defaultValue = "20") int size,
+                                        @RequestParam(value = "appId", required = false) Long appId,
+                                        Authentication authentication,
+                                        HttpSession session) {
+        Long resolved = resolveAppId(appId, session, authentication);
+        Map<String, Object> resp = new HashMap<>();
+        Card card = resolved != null ? cardMapper.findById(id) : null;
+        if (card == null || !resolved.equals(card.getAppId())) {
+            resp.put("success", false);
+            resp.put("message", "卡密不存在或不属于当前应用");
+            return resp;
+        }
+        int safeSize = Math.max(1, Math.min(size, 100));
+        // 多取一条判断是否还有更早的记录
+        java.util.List<CardUseLog> logs = cardService.listLogs(id, beforeId, safeSize + 1);
+        boolean hasMore = logs.size() > safeSize;
+        resp.put("success", true);
+        resp.put("logs", hasMore ? logs.subList(0, safeSize) : logs);
+        resp.put("hasMore", hasMore);
+        return resp;
+    }
+
+    /**
+     * 已归档的卡密，按 id 倒序翻页（只读）
+     */
+    @GetMapping("/cards/archived")
+    public Map<String, Object> listArchived(@RequestParam(required = false) String keyword,
+                                            @RequestParam(value = "beforeId", required = false) Long beforeId,
+                                            @RequestParam(defaultValue = "20") int size,
+                                            @RequestParam(value = "appId", required = false) Long appId,
+                                            Authentication authentication,
+                                            HttpSession session) {
+        Long resolved = resolveAppId(appId, session, authentication);
+        Map<String, Object> resp = new HashMap<>();
+        if (resolved == null) {
+            resp.put("success", false);
+            resp.put("message", "请先选择应用");
+            return resp;
+        }
+        int safeSize = Math.max(1, Math.min(size, 100));
+        String kw = keyword != null && !keyword.isBlank() ? keyword.trim() : null;
+        java.util.List<Card> cards = cardArchiveService.page(resolved, kw, beforeId, safeSize + 1);
+        boolean hasMore = cards.size() > safeSize;
+        resp.put("success", true);
+        resp.put("cards", hasMore ? cards.subList(0, safeSize) : cards);
+        resp.put("hasMore", hasMore);
+        return resp;
+    }
+
+    @GetMapping("/cards/archived/{id}/machines")
+    public java.util.List<String> listArchivedMachines(@PathVariable Long id,
+                                                       @RequestParam(value = "appId", required = false) Long appId,
+                                                       Authentication authentication,
+                                                       HttpSession session) {
+        Long resolved = resolveAppId(appId, session, authentication);
+        Card card = resolved != null ? cardArchiveService.findById(id) : null;
+        if (card == null || !resolved.equals(card.getAppId())) {
+            return java.util.List.of();
+        }
+        return cardArchiveService.listMachines(id);
+    }
+
     @PostMapping("/cards/generate")
     public Map<String, Object> generate(@RequestParam(value = "appId", required = false) Long appId,
                            @RequestParam(required = false) String name,
@@ -128,9 +253,36 @@ public class AdminController {
         Long resolved = resolveAppId(appId, session, authentication);
         Map<String, Object> resp = new HashMap<>();
         if (resolved == null) { resp.put("success", false); return resp; }
-        // 不再使用批次：直接生成卡密
-        cardService.generateCards(resolved, prefix, count, expireValue, expireUnit, formatPattern, suffix, maxMachines);
+        // 数量较多时在后台生成，立即返回任务，前端轮询进度
+        try {
+            CardGenerateJob job = cardService.startGenerateJob(resolved, prefix, count, expireValue, expireUnit,
+                    formatPattern, suffix, maxMachines);
+            resp.put("success", !"FAILED".equals(job.getStatus()));
+            resp.put("job", job);
+            if (job.getMessage() != null) resp.put("message", job.getMessage());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            resp.put("success", false);
+            resp.put("message", e.getMessage());
+        }
+        return resp;
+    }
+
+    @GetMapping("/cards/generate/jobs/{jobId}")
+    public Map<String, Object> generateJob(@PathVariable String jobId,
+                                           @RequestParam(value = "appId", required = false) Long appId,
+                                           Authentication authentication,
+                                           HttpSession session) {
+        Long resolved = resolveAppId(appId, session, authentication);
+        Map<String, Object> resp = new HashMap<>();
+        if (resolved == null) { resp.put("success", false); return resp; }
+        CardGenerateJob job = cardService.getGenerateJob(jobId);
+        if (job == null || !resolved.equals(job.getAppId())) {
+            resp.put("success", false);
+            resp.put("message", "任务不存在");
+            return resp;
+        }
         resp.put("success", true);
+        resp.put("job", job);
         return resp;
     }
 
@@ -142,26 +294,169 @@ public class AdminController {
         Long resolved = resolveAppId(appId, session, authentication);
         Map<String, Object> resp = new HashMap<>();
         if (resolved == null) { resp.put("success", false); return resp; }
-        // 不再使用批次：导入的卡密不绑定批次
-        cardService.importCardsCsv(resolved, file.getInputStream());
+        // 不再使用批次：导入的卡密不绑定批次；在后台逐行导入，前端轮询进度
+        try (InputStream in = file.getInputStream()) {
+            CardImportJob job = cardService.startImportJob(resolved, in);
+            resp.put("success", true);
+            resp.put("job", job);
+        } catch (IllegalStateException e) {
+            resp.put("success", false);
+            resp.put("message", e.getMessage());
+        }
+        return resp;
+    }
+
+    @GetMapping("/cards/import/jobs/{jobId}")
+    public Map<String, Object> importJob(@PathVariable String jobId,
+                                         @RequestParam(value = "appId", required = false) Long appId,
+                                         Authentication authentication,
+                                         HttpSession session) {
+        Long resolved = resolveAppId(appId, session, authentication);
+        Map<String, Object> resp = new HashMap<>();
+        if (resolved == null) { resp.put("success", false); return resp; }
+        CardImportJob job = cardService.getImportJob(jobId);
+        if (job == null || !resolved.equals(job.getAppId())) {
+            resp.put("success", false);
+            resp.put("message", "任务不存在");
+            return resp;
+        }
         resp.put("success", true);
+        resp.put("job", job);
         return resp;
     }
 
+    /**
+     * 下载导入的逐行结果（CSV：row,code,result,message）
+     */
+    @GetMapping("/cards/import/jobs/{jobId}/report")
+    public void importReport(@PathVariable String jobId,
+                             @RequestParam(value = "appId", required = false) Long appId,
+                             HttpServletResponse response,
+                             Authentication authentication,
+                             HttpSession session) throws IOException {
+        Long resolved = resolveAppId(appId, session, authentication);
+        CardImportJob job = resolved != null ? cardService.getImportJob(jobId) : null;
+        if (job == null || !resolved.equals(job.getAppId()) || job.getFinishedAt() == null
+                || job.getReportFile() == null || !Files.exists(job.getReportFile())) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setContentType("text/csv;charset=UTF-8");
+        String filename = URLEncoder.encode("card-import-" + jobId + ".csv", StandardCharsets.UTF_8);
+        response.setHeader("Content-Disposition", "attachment; filename=" + filename);
+        response.setContentLengthLong(Files.size(job.getReportFile()));
+        Files.copy(job.getReportFile(), response.getOutputStream());
+    }
+
     @GetMapping("/cards/export")
     public void exportCsv(@RequestParam(value = "appId", required = false) Long appId,
                           @RequestParam(value = "keyword", required = false) String keyword,
                           @RequestParam(value = "status", required = false) CardStatus status,
+                          @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
                           HttpServletResponse response,
                           Authentication authentication,
                           HttpSession session) throws IOException {
         Long resolved = resolveAppId(appId, session, authentication);
         if (resolved == null) { response.sendRedirect("/admin/cards"); return; }
-        byte[] csv = cardService.exportCardsCsv(resolved, keyword, status);
+        // 边查边写，不在内存中拼接整个文件
+        response.setContentType(gzip ? "application/gzip" : "text/csv;charset=UTF-8");
+        String filename = URLEncoder.encode(gzip ? "cards.csv.gz" : "cards.csv", StandardCharsets.UTF_8);
+        response.setHeader("Content-Disposition", "attachment; filename=" + filename);
+        OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream(), 8192, true) : response.getOutputStream();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        cardService.exportCardsCsv(resolved, keyword, status, writer);
+        writer.close();
+    }
+
+    // ======= 虚拟卡密批次 =======
+
+    @PostMapping("/card-batches")
+    public Map<String, Object> createBatch(@RequestParam(value = "appId", required = false) Long appId,
+                                           @RequestParam(required = false) String prefix,
+                                           @RequestParam int count,
+                                           @RequestParam(required = false, name = "expireValue") Integer expireValue,
+                                           @RequestParam(required = false, name = "expireUnit") String expireUnit,
+                                           @RequestParam(required = false, name = "formatPattern") String formatPattern,
+                                           @RequestParam(required = false, name = "suffix") String suffix,
+                                           @RequestParam(required = false, name = "maxMachines") Integer maxMachines,
+                                           Authentication authentication,
+                                           HttpSession session) {
+        Long resolved = resolveAppId(appId, session, authentication);
+        Map<String, Object> resp = new HashMap<>();
+        if (resolved == null) { resp.put("success", false); return resp; }
+        try {
+            CardBatch batch = cardService.createVirtualBatch(resolved, prefix, count, expireValue, expireUnit,
+                    formatPattern, suffix, maxMachines);
+            resp.put("success", true);
+            resp.put("batch", batch);
+        } catch (IllegalArgumentException e) {
+            resp.put("success", false);
+            resp.put("message", e.getMessage());
+        }
+        return resp;
+    }
+
+    @GetMapping("/card-batches")
+    public Map<String, Object> listBatches(@RequestParam(value = "appId", required = false) Long appId,
+                                           Authentication authentication,
+                                           HttpSession session) {
+        Long resolved = resolveAppId(appId, session, authentication);
+        Map<String, Object> resp = new HashMap<>();
+        if (resolved == null) { resp.put("success", false); return resp; }
+        resp.put("success", true);
+        resp.put("batches", cardBatchService.listByAppId(resolved));
+        return resp;
+    }
+
+    @PostMapping("/card-batches/{id}/disable")
+    public Map<String, Object> disableBatch(@PathVariable Long id, @RequestParam boolean disabled,
+                                            @RequestParam(value = "appId", required = false) Long appId,
+                                            Authentication authentication,
+                                            HttpSession session) {
+        Long resolved = resolveAppId(appId, session, authentication);
+        Map<String, Object> resp = new HashMap<>();
+        if (resolved == null) { resp.put("success", false); return resp; }
+        boolean ok = cardBatchService.setDisabled(id, resolved, disabled);
+        resp.put("success", ok);
+        if (!ok) resp.put("message", "批次不存在");
+        return resp;
+    }
+
+    @PostMapping("/card-batches/{id}/delete")
+    public Map<String, Object> deleteBatch(@PathVariable Long id,
+                                           @RequestParam(value = "appId", required = false) Long appId,
+                                           Authentication authentication,
+                                           HttpSession session) {
+        Long resolved = resolveAppId(appId, session, authentication);
+        Map<String, Object> resp = new HashMap<>();
+        if (resolved == null) { resp.put("success", false); return resp; }
+        boolean ok = cardBatchService.delete(id, resolved);
+        resp.put("success", ok);
+        if (!ok) resp.put("message", "批次不存在");
+        return resp;
+    }
+
+    /**
+     * 按序号流式导出批次中的所有卡密
+     */
+    @GetMapping("/card-batches/{id}/export")
+    public void exportBatch(@PathVariable Long id,
+                            @RequestParam(value = "appId", required = false) Long appId,
+                            HttpServletResponse response,
+                            Authentication authentication,
+                            HttpSession session) throws IOException {
+        Long resolved = resolveAppId(appId, session, authentication);
+        CardBatch batch = resolved != null ? cardBatchService.findById(id) : null;
+        if (batch == null || !resolved.equals(batch.getAppId())) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
         response.setContentType("text/csv;charset=UTF-8");
-        String filename = URLEncoder.encode("cards.csv", StandardCharsets.UTF_8);
+        String filename = URLEncoder.encode("card-batch-" + id + ".csv", StandardCharsets.UTF_8);
         response.setHeader("Content-Disposition", "attachment; filename=" + filename);
-        response.getOutputStream().write(csv);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+        cardBatchService.exportCsv(batch, writer);
+        writer.flush();
     }
 
     // ======= 邀请码管理 =======
@@ -321,6 +616,52 @@ public class AdminController {
         return resp;
     }
 
+    @PostMapping("/cards/bulk")
+    public Map<String, Object> bulk(@RequestBody CardBulkRequest request,
+                                    @RequestParam(value = "appId", required = false) Long appId,
+                                    Authentication authentication,
+                                    HttpSession session) {
+        Long resolved = resolveAppId(appId, session, authentication);
+        Map<String, Object> resp = new HashMap<>();
+        if (resolved == null) {
+            resp.put("success", false);
+            resp.put("message", "无效的应用");
+            return resp;
+        }
+        // 只检查一次应用所有权，之后每条语句都限定在该应用内
+        try {
+            CardBulkJob job = cardService.startBulkJob(resolved, request);
+            resp.put("success", !"FAILED".equals(job.getStatus()));
+            resp.put("job", job);
+            if ("FAILED".equals(job.getStatus())) {
+                resp.put("message", job.getMessage());
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            resp.put("success", false);
+            resp.put("message", e.getMessage());
+        }
+        return resp;
+    }
+
+    @GetMapping("/cards/bulk/jobs/{jobId}")
+    public Map<String, Object> bulkJob(@PathVariable String jobId,
+                                       @RequestParam(value = "appId", required = false) Long appId,
+                                       Authentication authentication,
+                                       HttpSession session) {
+        Long resolved = resolveAppId(appId, session, authentication);
+        Map<String, Object> resp = new HashMap<>();
+        if (resolved == null) { resp.put("success", false); return resp; }
+        CardBulkJob job = cardService.getBulkJob(jobId);
+        if (job == null || !resolved.equals(job.getAppId())) {
+            resp.put("success", false);
+            resp.put("message", "任务不存在");
+            return resp;
+        }
+        resp.put("success", true);
+        resp.put("job", job);
+        return resp;
+    }
+
     @PostMapping("/cards/{id}/disable")
     public Map<String, Object> disable(@PathVariable Long id, @RequestParam boolean disabled,
                           @RequestParam(value = "appId", required = false) Long appId,
@@ -475,8 +816,8 @@ public class AdminController {
             return resp;
         }
         
-        // 级联删除应用及其所有卡密
-        boolean deleted = applicationService.deleteCascade(id);
+        // 在后台分批级联删除应用及其所有卡密，前端轮询进度
+        AppDeleteJob job = applicationService.startDeleteCascade(app);
         
         // 如果当前会话选中的是这个应用，清除会话
         Long currentAppId = (Long) session.getAttribute("currentAppId");
@@ -484,10 +825,23 @@ public class AdminController {
             session.removeAttribute("currentAppId");
         }
         
-        resp.put("success", deleted);
-        if (!deleted) {
-            resp.put("message", "删除失败");
+        resp.put("success", true);
+        resp.put("job", job);
+        return resp;
+    }
+
+    @GetMapping("/apps/delete-jobs/{jobId}")
+    public Map<String, Object> deleteAppJob(@PathVariable String jobId, Authentication authentication) {
+        Map<String, Object> resp = new HashMap<>();
+        String owner = authentication != null ? authentication.getName() : "admin";
+        AppDeleteJob job = applicationService.getDeleteJob(jobId);
+        if (job == null || !owner.equals(job.getOwner())) {
+            resp.put("success", false);
+            resp.put("message", "任务不存在或已过期");
+            return resp;
         }
+        resp.put("success", true);
+        resp.put("job", job);
         return resp;
     }
 
@@ -573,6 +927,26 @@ public class AdminController {
         return resp;
     }
 
+    /**
+     * 近期登录失败最多的用户名和 IP（近似统计，仅本节点）
+     */
+    @GetMapping("/security/login-offenders")
+    public Map<String, Object> loginOffenders(@RequestParam(value = "limit", defaultValue = "20") int limit,
+                                              Authentication authentication) {
+        Map<String, Object> resp = new HashMap<>();
+        if (authentication == null || !"admin".equals(authentication.getName())) {
+            resp.put("success", false);
+            resp.put("message", "无权限");
+            return resp;
+        }
+        int size = Math.max(1, Math.min(limit, 64));
+        resp.put("success", true);
+        resp.put("usernames", loginAttemptService.topUsernames(size));
+        resp.put("ips", loginAttemptService.topIps(size));
+        resp.put("trackedEntries", loginAttemptService.trackedEntries());
+        return resp;
+    }
+
     @GetMapping("/profile")
     public Map<String, Object> getProfile(Authentication authentication) {
         Map<String, Object> resp = new HashMap<>();
@@ -1,5 +1,6 @@
 package com.xy.verfiy.controller;
 
+import com.xy.verfiy.domain.AppDeleteJob;
 import com.xy.verfiy.domain.Application;
 import com.xy.verfiy.service.ApplicationService;
 import jakarta.servlet.http.HttpSession;
@@ -69,12 +70,22 @@ public class ApplicationController {
     }
 
     @PostMapping("/delete")
-    public void delete(@RequestParam Long id, Authentication authentication, HttpSession session) {
-        applicationService.deleteCascade(id);
+    public AppDeleteJob delete(@RequestParam Long id, Authentication authentication, HttpSession session) {
+        String owner = authentication != null ? authentication.getName() : "admin";
+        Application app = applicationService.findById(id);
+        if (app == null) {
+            throw new RuntimeException("应用不存在");
+        }
+        if (!owner.equals(app.getOwner())) {
+            throw new RuntimeException("无权删除此应用");
+        }
+        // 在后台分批级联删除，通过 /admin/apps/delete-jobs/{jobId} 查询进度
+        AppDeleteJob job = applicationService.startDeleteCascade(app);
         Long current = (Long) session.getAttribute("currentAppId");
         if (current != null && current.equals(id)) {
             session.removeAttribute("currentAppId");
         }
+        return job;
     }
 
     @GetMapping("/api/my-apps")
@@ -159,6 +170,13 @@ public class ApplicationController {
             return result;
         }
         
+        // 校验请求配额
+        if (app.getQuotaPerMinute() != null && (app.getQuotaPerMinute() < 0 || app.getQuotaPerMinute() > 1_000_000)) {
+            result.put("success", false);
+            result.put("message", "每分钟请求配额必须在 0 到 1000000 之间");
+            return result;
+        }
+        
         // 更新应用信息
         app.setOwner(owner); // 确保 owner 不被修改
         boolean success = applicationService.update(app);
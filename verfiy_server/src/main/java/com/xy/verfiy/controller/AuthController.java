@@ -4,6 +4,7 @@ import com.xy.verfiy.domain.UserAccount;
 import com.xy.verfiy.service.InviteCodeService;
 import com.xy.verfiy.service.LoginAttemptService;
 import com.xy.verfiy.mapper.UserAccountMapper;
+import com.xy.verfiy.config.TrustedProxies;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.ResponseEntity;
@@ -29,14 +30,16 @@ public class AuthController {
     private final AuthenticationManager authenticationManager;
     private final InviteCodeService inviteCodeService;
     private final LoginAttemptService loginAttemptService;
+    private final TrustedProxies trustedProxies;
     private final SecurityContextRepository securityContextRepository = new HttpSessionSecurityContextRepository();
 
-    public AuthController(UserAccountMapper userAccountMapper, PasswordEncoder passwordEncoder, AuthenticationManager authenticationManager, InviteCodeService inviteCodeService, LoginAttemptService loginAttemptService) {
+    public AuthController(UserAccountMapper userAccountMapper, PasswordEncoder passwordEncoder, AuthenticationManager authenticationManager, InviteCodeService inviteCodeService, LoginAttemptService loginAttemptService, TrustedProxies trustedProxies) {
         this.userAccountMapper = userAccountMapper;
         this.passwordEncoder = passwordEncoder;
         this.authenticationManager = authenticationManager;
         this.inviteCodeService = inviteCodeService;
         this.loginAttemptService = loginAttemptService;
+        this.trustedProxies = trustedProxies;
     }
 
     @PostMapping("/login")
@@ -45,11 +48,12 @@ public class AuthController {
                                                        HttpServletResponse response) {
         String username = body.getOrDefault("username", "");
         String password = body.getOrDefault("password", "");
+        String clientIp = trustedProxies.clientIp(request);
         Map<String, Object> resp = new HashMap<>();
         
-        // 检查是否被锁定
-        if (loginAttemptService.isBlocked(username)) {
-            long remainingMinutes = loginAttemptService.getLockRemainingMinutes(username);
+        // 检查用户名或 IP 是否被锁定
+        if (loginAttemptService.isBlocked(username, clientIp)) {
+            long remainingMinutes = loginAttemptService.getLockRemainingMinutes(username, clientIp);
             resp.put("success", false);
             resp.put("message", "账号已被锁定，请在 " + remainingMinutes + " 分钟后重试");
             return ResponseEntity.status(429).body(resp);
@@ -72,9 +76,9 @@ public class AuthController {
             return ResponseEntity.ok(resp);
         } catch (Exception e) {
             // 登录失败，记录失败次数
-            loginAttemptService.loginFailed(username);
+            loginAttemptService.loginFailed(username, clientIp);
             
-            int remainingAttempts = loginAttemptService.getRemainingAttempts(username);
+            int remainingAttempts = loginAttemptService.getRemainingAttempts(username, clientIp);
             resp.put("success", false);
             if (remainingAttempts > 0) {
                 resp.put("message", "用户名或密码错误，还有 " + remainingAttempts + " 次尝试机会");
@@ -5,6 +5,9 @@ import com.xy.verfiy.domain.UserAccount;
 import com.xy.verfiy.mapper.UserAccountMapper;
 import com.xy.verfiy.service.DexCompileService;
 import com.xy.verfiy.service.CompileQuotaService;
+import com.xy.verfiy.service.FileStorageService;
+import com.xy.verfiy.service.HelperLibraryService;
+import com.xy.verfiy.service.JavaDiagnosticsService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.ByteArrayResource;
@@ -16,6 +19,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import java.util.HashMap;
 import java.util.List;
@@ -35,6 +39,12 @@ public class DexCompileController {
     @Autowired
     private CompileQuotaService compileQuotaService;
 
+    @Autowired
+    private JavaDiagnosticsService javaDiagnosticsService;
+
+    @Autowired
+    private HelperLibraryService helperLibraryService;
+
     /**
      * 编译 Java 代码为 Dex（支持多文件）
      */
@@ -99,7 +109,20 @@ public class DexCompileController {
                 return ResponseEntity.badRequest().body(response);
             }
             
-            DexCompileTask task = dexCompileService.compileMultipleFilesToDex(files, userId);
+            // 编译模式：debug（默认，d8）或 release（R8 裁剪优化）
+            boolean release = "release".equalsIgnoreCase(String.valueOf(request.get("mode")));
+            String keepRules = request.get("keepRules") instanceof String rules ? rules : null;
+            if (release) {
+                try {
+                    dexCompileService.validateKeepRules(keepRules);
+                } catch (IllegalArgumentException e) {
+                    response.put("success", false);
+                    response.put("message", e.getMessage());
+                    return ResponseEntity.badRequest().body(response);
+                }
+            }
+            
+            DexCompileTask task = dexCompileService.compileMultipleFilesToDex(files, userId, release, keepRules);
             
             response.put("success", task.getSuccess());
             response.put("taskId", task.getTaskId());
@@ -121,6 +144,96 @@ public class DexCompileController {
         }
     }
     
+    /**
+     * 代码诊断（只做语法和语义检查，不生成 Dex，不占用编译配额）
+     */
+    @PostMapping("/diagnostics")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<Map<String, Object>> diagnostics(@RequestBody Map<String, Object> request) {
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, String> files = request.get("files") instanceof Map<?, ?> map
+                    ? (Map<String, String>) map
+                    : null;
+            
+            List<JavaDiagnosticsService.JavaDiagnostic> diagnostics = javaDiagnosticsService.diagnose(files);
+            
+            response.put("success", true);
+            response.put("diagnostics", diagnostics);
+            return ResponseEntity.ok(response);
+            
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (IllegalStateException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        } catch (Exception e) {
+            log.error("代码诊断异常", e);
+            response.put("success", false);
+            response.put("message", "诊断失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+    
+    /**
+     * 查询预编译工具类库（com.xy.ithook）；可用时编辑器无需再上传工具类源码
+     */
+    @GetMapping("/helper-lib")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<Map<String, Object>> getHelperLibrary() {
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            HelperLibraryService.HelperJar jar = helperLibraryService.currentJar();
+            response.put("success", true);
+            response.put("available", jar != null);
+            if (jar != null) {
+                response.put("version", jar.version());
+                response.put("classes", helperLibraryService.listClasses(jar));
+            }
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            log.error("查询工具类库异常", e);
+            response.put("success", false);
+            response.put("message", "查询失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+    
+    /**
+     * 上传新版本工具类库（仅管理员）
+     */
+    @PostMapping("/helper-lib")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> uploadHelperLibrary(@RequestParam("version") String version,
+                                                                   @RequestParam("file") MultipartFile file) {
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            HelperLibraryService.HelperJar jar = helperLibraryService.install(version.trim(), file.getInputStream());
+            response.put("success", true);
+            response.put("message", "工具类库已更新");
+            response.put("version", jar.version());
+            return ResponseEntity.ok(response);
+            
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            log.error("上传工具类库异常", e);
+            response.put("success", false);
+            response.put("message", "上传失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+    
     /**
      * 提取包名
      */
@@ -193,6 +306,56 @@ public class DexCompileController {
         }
     }
 
+    /**
+     * 将编译结果直接发布到指定 HookInfo
+     */
+    @PostMapping("/publish/{taskId}")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<Map<String, Object>> publish(@PathVariable String taskId,
+                                                       @RequestBody Map<String, Object> request,
+                                                       Authentication authentication) {
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            Long userId = getCurrentUserId(authentication);
+            if (userId == null) {
+                response.put("success", false);
+                response.put("message", "无法获取当前用户信息");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(response);
+            }
+            
+            Object hookIdValue = request.get("hookId");
+            if (!(hookIdValue instanceof Number hookId)) {
+                response.put("success", false);
+                response.put("message", "hookId 不能为空");
+                return ResponseEntity.badRequest().body(response);
+            }
+            
+            FileStorageService.StoredFile stored = dexCompileService.publishToHook(
+                    taskId, userId, hookId.longValue(), authentication.getName());
+            
+            response.put("success", true);
+            response.put("message", "已发布到 Hook");
+            response.put("dexHash", stored.hash());
+            return ResponseEntity.ok(response);
+            
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            log.warn("发布失败: {}", e.getMessage());
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (java.io.FileNotFoundException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        } catch (Exception e) {
+            log.error("发布异常", e);
+            response.put("success", false);
+            response.put("message", "发布失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
     /**
      * 查询编译任务状态
      */
@@ -103,6 +103,9 @@ public class HookInfoController {
                 byte[] dexBytes = Base64.getDecoder().decode(dexBase64.replaceAll("\\s", ""));
                 String dexPath = fileStorageService.saveDexFile(dexBytes);
                 payload.setDexData(dexPath); // 存储文件路径而非 Base64
+                payload.setDexHash(fileStorageService.hashOf(dexPath)); // 以服务端计算的哈希为准
+            } else {
+                payload.setDexHash(null);
             }
             
             // 处理 Zip 文件：Base64 → 文件 → 路径
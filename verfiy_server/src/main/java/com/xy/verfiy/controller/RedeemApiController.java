@@ -144,6 +144,11 @@ public class RedeemApiController {
                 long expireTs = card.getExpireAt().atZone(ZoneId.systemDefault()).toEpochSecond();
                 body.put("expiredAt", expireTs);
             }
+        } else if (card.getArchivedAt() != null) {
+            // 已移到归档表（已使用较久）的卡密不能再验证
+            body.put("success", false);
+            body.put("message", "卡密已归档");
+            body.put("code", 1007);
         } else {
             // 卡密验证通过
         boolean ok = cardService.verifyForApp(finalCode, app.getId(), finalMachine);
@@ -0,0 +1,74 @@
+package com.xy.verfiy.controller;
+
+import com.xy.verfiy.service.JavaSymbolIndexService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 在线编辑器的代码补全 / 自动导包查询
+ */
+@RestController
+@RequestMapping("/admin/dex-compile/symbols")
+@PreAuthorize("isAuthenticated()")
+public class SymbolIndexController {
+
+    private static final int MAX_LIMIT = 200;
+
+    private final JavaSymbolIndexService symbolIndexService;
+
+    public SymbolIndexController(JavaSymbolIndexService symbolIndexService) {
+        this.symbolIndexService = symbolIndexService;
+    }
+
+    /**
+     * 类名补全（前缀或驼峰，如 ADia -> AlertDialog）
+     */
+    @GetMapping("/classes")
+    public ResponseEntity<Map<String, Object>> classes(@RequestParam("prefix") String prefix,
+                                                       @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("symbols", symbolIndexService.completeClasses(prefix.trim(), clampLimit(limit)));
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 成员补全（方法和字段，含继承的成员）
+     */
+    @GetMapping("/members")
+    public ResponseEntity<Map<String, Object>> members(@RequestParam("owner") String owner,
+                                                       @RequestParam(value = "prefix", defaultValue = "") String prefix,
+                                                       @RequestParam(value = "staticOnly", defaultValue = "false") boolean staticOnly,
+                                                       @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("symbols", symbolIndexService.completeMembers(owner.trim(), prefix.trim(), staticOnly, clampLimit(limit)));
+        return ResponseEntity.ok(result);
+    }
+
+    /**
+     * 查询简单类名所在的包
+     */
+    @GetMapping("/lookup")
+    public ResponseEntity<Map<String, Object>> lookup(@RequestParam("name") String name) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("classes", symbolIndexService.lookupClass(name.trim()));
+        return ResponseEntity.ok(result);
+    }
+
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> status() {
+        Map<String, Object> result = new HashMap<>(symbolIndexService.status());
+        result.put("success", true);
+        return ResponseEntity.ok(result);
+    }
+
+    private int clampLimit(int limit) {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+}
@@ -0,0 +1,31 @@
+package com.xy.verfiy.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 后台删除应用任务（只保存在内存中）
+ */
+@Data
+public class AppDeleteJob {
+    private String jobId;
+    private Long appId;
+    private String appName;
+    @JsonIgnore
+    private String owner;
+    // PENDING / RUNNING / SUCCESS / FAILED
+    private volatile String status;
+    // 当前步骤：CARDS（使用日志、机器码绑定和卡密）/ ARCHIVE（已归档的卡密）/ BATCHES / HOOKS / APPLICATION
+    private volatile String phase;
+    // 开始时的卡密数，以及已删除的卡密、使用日志、机器码绑定和 Hook 配置数
+    private long totalCards;
+    private volatile long deletedCards;
+    private volatile long deletedLogs;
+    private volatile long deletedMachines;
+    private volatile long deletedHooks;
+    private volatile String message;
+    private LocalDateTime createdAt;
+    private volatile LocalDateTime finishedAt;
+}
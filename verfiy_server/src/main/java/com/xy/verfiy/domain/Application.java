@@ -23,6 +23,8 @@ public class Application {
     private String redeemExtraMode;
     // 应用类型：NORMAL / XPOSED
     private String appType;
+    // 开放接口每分钟请求配额（0 表示不限制）
+    private Integer quotaPerMinute;
 
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -58,6 +60,8 @@ public class Application {
     public void setRedeemExtraMode(String redeemExtraMode) { this.redeemExtraMode = redeemExtraMode; }
     public String getAppType() { return appType; }
     public void setAppType(String appType) { this.appType = appType; }
+    public Integer getQuotaPerMinute() { return quotaPerMinute; }
+    public void setQuotaPerMinute(Integer quotaPerMinute) { this.quotaPerMinute = quotaPerMinute; }
 }
 
 
@@ -16,6 +16,10 @@ public class Card {
     private Integer maxMachines; // 允许绑定的机器码数量（null/<=0 表示不限制）
     private String extra; // 附加信息（JSON 格式）
     private Boolean returnExtra; // 验证成功时是否返回附加信息
+    private Long batchId; // 所属虚拟批次（非批次卡密为 null）
+    private Long batchIndex; // 在虚拟批次中的序号
+    private Integer boundMachinesCount; // 已绑定的机器数（仅导出等查询填充）
+    private LocalDateTime archivedAt; // 归档时间（仅查询归档表时填充）
 
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -56,6 +60,16 @@ public class Card {
 
     public Boolean getReturnExtra() { return returnExtra; }
     public void setReturnExtra(Boolean returnExtra) { this.returnExtra = returnExtra; }
-}
 
+    public Long getBatchId() { return batchId; }
+    public void setBatchId(Long batchId) { this.batchId = batchId; }
+
+    public Long getBatchIndex() { return batchIndex; }
+    public void setBatchIndex(Long batchIndex) { this.batchIndex = batchIndex; }
 
+    public Integer getBoundMachinesCount() { return boundMachinesCount; }
+    public void setBoundMachinesCount(Integer boundMachinesCount) { this.boundMachinesCount = boundMachinesCount; }
+
+    public LocalDateTime getArchivedAt() { return archivedAt; }
+    public void setArchivedAt(LocalDateTime archivedAt) { this.archivedAt = archivedAt; }
+}
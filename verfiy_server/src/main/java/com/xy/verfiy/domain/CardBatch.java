@@ -0,0 +1,30 @@
+package com.xy.verfiy.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 虚拟卡密批次：只保存生成规则和置换密钥，卡密按序号推导，首次激活时才写入 card 表
+ */
+@Data
+public class CardBatch {
+    private Long id;
+    private Long appId;
+    private String prefix;
+    private String suffix;
+    // 格式（x 为随机位）
+    private String formatPattern;
+    private Integer cardCount;
+    // 置换密钥（Base64），不返回给前端
+    @JsonIgnore
+    private String seed;
+    // 拥有时长（JSON，同 card.metadata）
+    private String metadata;
+    private Integer maxMachines;
+    private Boolean disabled;
+    private LocalDateTime createdAt;
+    // 已激活（已写入 card 表）的数量，仅列表查询时填充
+    private Long activatedCount;
+}
@@ -0,0 +1,24 @@
+package com.xy.verfiy.domain;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 批量操作卡密任务（只保存在内存中）
+ */
+@Data
+public class CardBulkJob {
+    private String jobId;
+    private Long appId;
+    private String action;
+    // PENDING / RUNNING / SUCCESS / FAILED
+    private volatile String status;
+    // 开始时选中的卡密数、已处理的卡密数，以及实际修改/删除的卡密数
+    private long total;
+    private volatile long processed;
+    private volatile long affected;
+    private volatile String message;
+    private LocalDateTime createdAt;
+    private volatile LocalDateTime finishedAt;
+}
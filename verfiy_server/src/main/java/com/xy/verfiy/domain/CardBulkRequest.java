@@ -0,0 +1,28 @@
+package com.xy.verfiy.domain;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 批量操作卡密的请求：按 id 列表或筛选条件选择卡密（给出 ids 时忽略筛选条件）
+ */
+@Data
+public class CardBulkRequest {
+    // DISABLE / ENABLE / STATUS / EXTRA / UNBIND / DELETE / EXTEND
+    private String action;
+    private List<Long> ids;
+    // 筛选条件
+    private CardStatus status;
+    private String keyword;
+    private LocalDateTime createdFrom;
+    private LocalDateTime createdTo;
+    // STATUS 的目标状态
+    private CardStatus targetStatus;
+    // EXTRA 的附加信息（JSON）及是否在验证成功时返回
+    private String extra;
+    private Boolean returnExtra;
+    // EXTEND 延长的天数
+    private Integer extendDays;
+}
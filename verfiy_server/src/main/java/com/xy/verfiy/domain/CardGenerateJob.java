@@ -0,0 +1,21 @@
+package com.xy.verfiy.domain;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 后台生成卡密任务（只保存在内存中）
+ */
+@Data
+public class CardGenerateJob {
+    private String jobId;
+    private Long appId;
+    // RUNNING / SUCCESS / FAILED
+    private volatile String status;
+    private int requested;
+    private volatile int generated;
+    private volatile String message;
+    private LocalDateTime createdAt;
+    private volatile LocalDateTime finishedAt;
+}
@@ -0,0 +1,32 @@
+package com.xy.verfiy.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+/**
+ * 后台导入卡密任务（只保存在内存中）
+ */
+@Data
+public class CardImportJob {
+    private String jobId;
+    private Long appId;
+    // PENDING / RUNNING / SUCCESS / FAILED
+    private volatile String status;
+    // 上传文件大小和已读取的字节数，用于显示进度
+    private long totalBytes;
+    private volatile long readBytes;
+    // 已处理的数据行数，以及其中导入、跳过（卡密已存在）和失败（数据不合法）的行数
+    private volatile long processed;
+    private volatile long imported;
+    private volatile long skipped;
+    private volatile long failed;
+    private volatile String message;
+    private LocalDateTime createdAt;
+    private volatile LocalDateTime finishedAt;
+    // 逐行结果报告（CSV）
+    @JsonIgnore
+    private Path reportFile;
+}
@@ -0,0 +1,14 @@
+package com.xy.verfiy.domain;
+
+import lombok.Data;
+
+/**
+ * 共享计数器（多节点限流/配额）
+ */
+@Data
+public class SharedCounter {
+    private String counterKey;
+    private Long usedCount;
+    // 窗口结束时间（毫秒时间戳）
+    private Long expireAt;
+}
@@ -15,6 +15,9 @@ public interface ApplicationMapper {
     int deleteById(@Param("id") Long id);
     Application findByApiKey(@Param("apiKey") String apiKey);
     
+    // 所有应用的请求配额（只包含 id、api_key、quota_per_minute）
+    List<Application> listQuotaSettings();
+    
     // 统计指定用户和应用类型的应用数量
     int countByOwnerAndAppType(@Param("owner") String owner, @Param("appType") String appType);
 }
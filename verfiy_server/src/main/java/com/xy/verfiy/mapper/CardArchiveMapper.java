@@ -0,0 +1,46 @@
+package com.xy.verfiy.mapper;
+
+import com.xy.verfiy.domain.Card;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Mapper
+public interface CardArchiveMapper {
+    // 归档：已使用且 updated_at 早于 cutoff 的卡密，按 id 分批（只含 id、app_id、status、batch_id、batch_index）
+    List<Card> scanUsedBefore(@Param("cutoff") LocalDateTime cutoff, @Param("afterId") long afterId, @Param("limit") int limit);
+    // 删除 card 表中仍存在的卡密的旧副本
+    int deleteStaleCards(@Param("ids") Collection<Long> ids);
+    int deleteStaleMachines(@Param("ids") Collection<Long> ids);
+    // 复制到归档表（重新检查归档条件，已存在的跳过，中途失败后可重复执行）
+    int copyCards(@Param("ids") Collection<Long> ids, @Param("cutoff") LocalDateTime cutoff,
+                  @Param("includeUsed") boolean includeUsed, @Param("archivedAt") LocalDateTime archivedAt);
+    int copyMachines(@Param("ids") Collection<Long> ids);
+    // 仍满足归档条件、且归档表中有一致副本的卡密
+    List<Long> listCopied(@Param("ids") Collection<Long> ids, @Param("cutoff") LocalDateTime cutoff,
+                          @Param("includeUsed") boolean includeUsed);
+    int deleteCopied(@Param("ids") Collection<Long> ids, @Param("cutoff") LocalDateTime cutoff,
+                     @Param("includeUsed") boolean includeUsed);
+
+    // 查询归档
+    Card findByCode(@Param("code") String code);
+    Card findById(@Param("id") Long id);
+    List<Card> page(@Param("appId") Long appId,
+                    @Param("keyword") String keyword,
+                    @Param("beforeId") Long beforeId,
+                    @Param("limit") int limit);
+    List<String> listMachines(@Param("cardId") Long cardId);
+
+    // 布隆过滤器重建（只含 id、card_code）
+    long count();
+    List<Card> scanCodesAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    // 删除应用
+    long countByAppId(@Param("appId") Long appId);
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+    List<Long> listIdsByAppId(@Param("appId") Long appId, @Param("afterId") long afterId, @Param("limit") int limit);
+    int deleteMachinesByCardIds(@Param("ids") Collection<Long> ids, @Param("limit") int limit);
+}
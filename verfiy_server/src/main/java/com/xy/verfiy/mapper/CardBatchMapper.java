@@ -0,0 +1,40 @@
+package com.xy.verfiy.mapper;
+
+import com.xy.verfiy.domain.CardBatch;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+@Mapper
+public interface CardBatchMapper {
+
+    int insert(CardBatch batch);
+
+    CardBatch findById(@Param("id") Long id);
+
+    /**
+     * 应用的批次列表（含已激活数量）
+     */
+    List<CardBatch> listByAppId(@Param("appId") Long appId);
+
+    /**
+     * 所有批次（加载到内存用于卡密识别）
+     */
+    List<CardBatch> listAll();
+
+    int updateDisabled(@Param("id") Long id, @Param("appId") Long appId, @Param("disabled") boolean disabled);
+
+    int deleteByIdAndAppId(@Param("id") Long id, @Param("appId") Long appId);
+
+    int deleteByAppId(@Param("appId") Long appId);
+
+    // 已删除的批次卡密（激活后又被删除，不能再次按序号识别）
+    Integer isRevoked(@Param("batchId") Long batchId, @Param("index") long index);
+
+    int insertRevoked(@Param("batchId") Long batchId, @Param("index") long index);
+
+    int deleteRevokedByBatchId(@Param("batchId") Long batchId);
+
+    int deleteRevokedByAppId(@Param("appId") Long appId);
+}
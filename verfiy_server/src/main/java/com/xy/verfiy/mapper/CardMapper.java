@@ -13,16 +13,48 @@ public interface CardMapper {
     Card findById(@Param("id") Long id);
     Card findByCode(@Param("code") String code);
 
+    // 按主键分批扫描卡密（只返回 id 和 card_code）
+    List<Card> scanCodesAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    Long maxId();
+
     List<Card> pageQuery(@Param("appId") Long appId,
                          @Param("keyword") String keyword,
                          @Param("status") CardStatus status,
                          @Param("offset") int offset,
                          @Param("limit") int limit);
 
+    // 列表游标分页：beforeId 取更早的一页（id 降序），afterId 取更新的一页（id 升序）
+    List<Card> pageByCursor(@Param("appId") Long appId,
+                            @Param("keyword") String keyword,
+                            @Param("status") CardStatus status,
+                            @Param("beforeId") Long beforeId,
+                            @Param("afterId") Long afterId,
+                            @Param("limit") int limit);
+
+    // 按状态分组统计应用的卡密数（列：status, cnt）
+    List<java.util.Map<String, Object>> countByStatus(@Param("appId") Long appId);
+
+    // 导出：id 大于 afterId 的下一页（按 id 升序），附带已绑定机器数
+    List<Card> exportPage(@Param("appId") Long appId,
+                          @Param("keyword") String keyword,
+                          @Param("status") CardStatus status,
+                          @Param("afterId") long afterId,
+                          @Param("limit") int limit);
+
     long count(@Param("appId") Long appId, @Param("keyword") String keyword, @Param("status") CardStatus status);
 
     int insertBatch(@Param("cards") List<Card> cards);
 
+    // 批量生成：重复的卡密被忽略，返回实际写入的行数
+    int insertIgnoreBatch(@Param("cards") List<Card> cards);
+
+    // 导入：查出已存在的卡密
+    List<String> findExistingCodes(@Param("codes") List<String> codes);
+
+    // 虚拟批次卡密首次激活时写入（批次已删除时不写入，返回 0）
+    int insertFromBatch(Card card);
+
     int updateStatus(@Param("id") Long id,
                      @Param("status") CardStatus status,
                      @Param("updatedAt") LocalDateTime updatedAt);
@@ -45,13 +77,81 @@ public interface CardMapper {
 
     int deleteByIdAndAppId(@Param("id") Long id, @Param("appId") Long appId);
 
+    // 批量操作：按筛选条件分批取出卡密 id（id 升序），以及按 id 批量修改（都限定在应用内）
+    List<Long> listIdsByFilter(@Param("appId") Long appId,
+                               @Param("keyword") String keyword,
+                               @Param("status") CardStatus status,
+                               @Param("createdFrom") LocalDateTime createdFrom,
+                               @Param("createdTo") LocalDateTime createdTo,
+                               @Param("afterId") long afterId,
+                               @Param("limit") int limit);
+    long countByFilter(@Param("appId") Long appId,
+                       @Param("keyword") String keyword,
+                       @Param("status") CardStatus status,
+                       @Param("createdFrom") LocalDateTime createdFrom,
+                       @Param("createdTo") LocalDateTime createdTo);
+    int updateDisabledByIds(@Param("appId") Long appId, @Param("ids") java.util.Collection<Long> ids,
+                            @Param("disabled") boolean disabled, @Param("updatedAt") LocalDateTime updatedAt);
+    int updateStatusByIds(@Param("appId") Long appId, @Param("ids") java.util.Collection<Long> ids,
+                          @Param("status") CardStatus status, @Param("updatedAt") LocalDateTime updatedAt);
+    int updateExtraByIds(@Param("appId") Long appId, @Param("ids") java.util.Collection<Long> ids,
+                         @Param("extra") String extra, @Param("returnExtra") Boolean returnExtra);
+    List<Long> listIdsByIdsAndAppId(@Param("appId") Long appId, @Param("ids") java.util.Collection<Long> ids);
+    // 只返回 id、batch_id、batch_index（虚拟批次中的卡密）
+    List<Card> listBatchCardsByIds(@Param("appId") Long appId, @Param("ids") java.util.Collection<Long> ids);
+    // 延长有效期：在 id 区间 [fromId, toId] 内按筛选条件修改（ids 不为空时只改其中的卡密）
+    int extendPendingByRange(@Param("appId") Long appId,
+                             @Param("fromId") long fromId, @Param("toId") long toId,
+                             @Param("ids") java.util.Collection<Long> ids,
+                             @Param("keyword") String keyword,
+                             @Param("status") CardStatus status,
+                             @Param("createdFrom") LocalDateTime createdFrom,
+                             @Param("createdTo") LocalDateTime createdTo,
+                             @Param("days") int days);
+    int extendActivatedByRange(@Param("appId") Long appId,
+                               @Param("fromId") long fromId, @Param("toId") long toId,
+                               @Param("ids") java.util.Collection<Long> ids,
+                               @Param("keyword") String keyword,
+                               @Param("status") CardStatus status,
+                               @Param("createdFrom") LocalDateTime createdFrom,
+                               @Param("createdTo") LocalDateTime createdTo,
+                               @Param("days") int days,
+                               @Param("now") LocalDateTime now);
+
+    // 到期卡密：沿 expire_at 索引按 (expire_at, id) 分批取出 until 之前到期的卡密（只含 id、app_id、status、expire_at、batch_id、batch_index），
+    // afterExpireAt 为空时从头开始
+    List<Card> scanByExpireAt(@Param("afterExpireAt") LocalDateTime afterExpireAt,
+                              @Param("afterId") long afterId,
+                              @Param("until") LocalDateTime until,
+                              @Param("limit") int limit);
+    // 标记为 EXPIRED（重新检查到期时间和状态）
+    int markExpiredByIds(@Param("ids") java.util.Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    // 删除应用：按主键分批取出卡密 id，再按 id 删除
+    List<Long> listIdsByAppId(@Param("appId") Long appId, @Param("afterId") long afterId, @Param("limit") int limit);
+    int deleteByIdsAndAppId(@Param("ids") java.util.Collection<Long> ids, @Param("appId") Long appId);
+
     // machine bindings
     Integer existsMachine(@Param("cardId") Long cardId, @Param("machine") String machine);
     int insertMachine(@Param("cardId") Long cardId, @Param("machine") String machine);
     int countMachines(@Param("cardId") Long cardId);
     java.util.List<String> listMachines(@Param("cardId") Long cardId);
+    // 子串搜索：按候选 id 回表确认（id 降序）；计数时另加 afterId 之后匹配的卡密
+    List<Card> findByIds(@Param("appId") Long appId,
+                         @Param("ids") java.util.Collection<Long> ids,
+                         @Param("keyword") String keyword,
+                         @Param("status") CardStatus status);
+    long countByIds(@Param("appId") Long appId,
+                    @Param("ids") java.util.Collection<Long> ids,
+                    @Param("keyword") String keyword,
+                    @Param("status") CardStatus status,
+                    @Param("afterId") Long afterId);
+
+    // 批量统计绑定的机器码数（列：card_id, cnt；没有绑定的卡密不返回）
+    java.util.List<java.util.Map<String, Object>> countMachinesByCardIds(@Param("cardIds") java.util.Collection<Long> cardIds);
 
     int deleteMachinesByCardId(@Param("cardId") Long cardId);
+    int deleteMachinesByCardIds(@Param("cardIds") java.util.Collection<Long> cardIds, @Param("limit") int limit);
     int deleteMachine(@Param("cardId") Long cardId, @Param("machine") String machine);
 
     Integer existsMachineForApp(@Param("appId") Long appId, @Param("machine") String machine);
@@ -4,13 +4,29 @@ import com.xy.verfiy.domain.CardUseLog;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
 public interface CardUseLogMapper {
     int insert(CardUseLog log);
-    List<CardUseLog> listByCardId(@Param("cardId") Long cardId);
+    // 某个卡密的使用记录，按 id 倒序翻页（beforeId 为空时从最新的开始）
+    List<CardUseLog> pageByCardId(@Param("cardId") Long cardId, @Param("beforeId") Long beforeId, @Param("limit") int limit);
     int deleteByCardId(@Param("cardId") Long cardId);
+    int deleteByCardIds(@Param("cardIds") java.util.Collection<Long> cardIds, @Param("limit") int limit);
+
+    // 归档：按 id 分批取出 [from, to) 内创建的记录（from 为空时不限下界）
+    List<CardUseLog> scanByCreatedAt(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+                                     @Param("afterId") long afterId, @Param("limit") int limit);
+    int deleteByCreatedAt(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to, @Param("limit") int limit);
+    long countByCreatedAt(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+    LocalDateTime minCreatedAt();
+
+    // 按月分区（MySQL）：分区名按顺序列出；definitions 由调用方生成
+    List<String> listPartitions();
+    void splitMaxPartition(@Param("definitions") String definitions);
+    void dropPartition(@Param("name") String name);
+    long countPartition(@Param("name") String name);
 }
 
 
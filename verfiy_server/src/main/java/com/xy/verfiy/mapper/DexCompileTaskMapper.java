@@ -4,6 +4,7 @@ import com.xy.verfiy.domain.DexCompileTask;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
@@ -26,5 +27,15 @@ public interface DexCompileTaskMapper {
      * 查询某个用户的所有编译任务（最近20条）
      */
     List<DexCompileTask> findAllByUserId(@Param("userId") Long userId);
+    
+    /**
+     * 删除产物已过期（编译成功但超过保留时长仍未下载）的任务，返回删除行数
+     */
+    int deleteExpiredUndownloaded(@Param("before") LocalDateTime before, @Param("limit") int limit);
+    
+    /**
+     * 删除创建时间早于指定时间的任务记录，返回删除行数
+     */
+    int deleteCreatedBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
 }
 
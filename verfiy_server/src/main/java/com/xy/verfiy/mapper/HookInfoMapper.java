@@ -32,7 +32,15 @@ public interface HookInfoMapper {
                       @Param("enabled") boolean enabled,
                       @Param("updatedBy") String updatedBy);
 
+    int updateDex(@Param("id") Long id,
+                  @Param("appId") Long appId,
+                  @Param("dexData") String dexData,
+                  @Param("dexHash") String dexHash,
+                  @Param("updatedBy") String updatedBy);
+
     int delete(@Param("id") Long id, @Param("appId") Long appId);
+
+    int deleteByAppId(@Param("appId") Long appId, @Param("limit") int limit);
 }
 
 
@@ -0,0 +1,37 @@
+package com.xy.verfiy.mapper;
+
+import com.xy.verfiy.domain.SharedCounter;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+@Mapper
+public interface SharedCounterMapper {
+    
+    SharedCounter findByKey(@Param("key") String key);
+    
+    int insert(@Param("key") String key, @Param("count") long count, @Param("expireAt") long expireAt);
+    
+    /**
+     * 窗口已过期时以新的计数重新开始
+     */
+    int restartExpired(@Param("key") String key, @Param("count") long count,
+                       @Param("expireAt") long expireAt, @Param("now") long now);
+    
+    /**
+     * 窗口未过期且加上 delta 后不超过 limit 时增加计数
+     */
+    int addWithinLimit(@Param("key") String key, @Param("delta") long delta,
+                       @Param("limit") long limit, @Param("now") long now);
+    
+    /**
+     * 窗口未过期时增加计数（不限制）
+     */
+    int add(@Param("key") String key, @Param("delta") long delta, @Param("now") long now);
+    
+    int deleteByKey(@Param("key") String key);
+    
+    /**
+     * 删除已过期的计数器，返回删除行数
+     */
+    int deleteExpired(@Param("before") long before, @Param("limit") int limit);
+}
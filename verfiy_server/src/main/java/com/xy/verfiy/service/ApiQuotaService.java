@@ -0,0 +1,259 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.Application;
+import com.xy.verfiy.mapper.ApplicationMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 开放接口按应用（X-API-Key）的请求配额
+ *
+ * 配额保存在 application.quota_per_minute，启动时和修改应用后加载到内存快照，
+ * 请求时只做一次哈希查找和令牌桶扣减，不访问数据库，也在签名校验和解密之前执行。
+ * 快照中没有的 API Key（如其他节点刚创建的应用）按 Key 查一次数据库，查到后加入快照使用应用自己的配额；
+ * 查不到的 Key 在短时间内记入负缓存并共用一个桶。查库次数按秒限制，随机 Key 无法把请求打到数据库上。
+ * 计数器存储为多节点共享实现时，配额在所有节点间共享（按分钟计数，本地按租约批量占用）。
+ *
+ * 指标：api.quota.requests（tag: app, outcome=allowed/throttled）
+ */
+@Slf4j
+@Service
+public class ApiQuotaService {
+
+    private static final String UNKNOWN_APP = "unknown";
+
+    private final ApplicationMapper applicationMapper;
+    private final MeterRegistry registry;
+    private final SharedCounterStore counterStore;
+
+    // 未知 API Key 共用的每分钟请求数（0 表示不限制）
+    @Value("${api-quota.unknown-key-per-minute:120}")
+    private int unknownKeyPerMinute;
+
+    // 快照未命中时每秒最多查询数据库的次数
+    @Value("${api-quota.lookups-per-second:20}")
+    private int lookupsPerSecond;
+
+    // 数据库中不存在的 Key 的负缓存时长（毫秒）和条目数
+    @Value("${api-quota.negative-cache-ttl-ms:30000}")
+    private long negativeCacheTtlMillis;
+
+    @Value("${api-quota.negative-cache-size:10000}")
+    private int negativeCacheSize;
+
+    private volatile Map<String, AppBucket> bucketsByKey = Map.of();
+    private volatile AppBucket unknownBucket;
+
+    // 不存在的 Key -> 负缓存到期时间（System.nanoTime）
+    private final Map<String, Long> missingKeys = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > negativeCacheSize;
+        }
+    };
+
+    private long lookupSecond;
+    private int lookupsThisSecond;
+
+    public ApiQuotaService(ApplicationMapper applicationMapper, MeterRegistry registry,
+                           SharedCounterStore counterStore) {
+        this.applicationMapper = applicationMapper;
+        this.registry = registry;
+        this.counterStore = counterStore;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        unknownBucket = new AppBucket(UNKNOWN_APP, unknownKeyPerMinute);
+        reload();
+    }
+
+    /**
+     * 定时重新加载（多实例部署时同步其他节点的修改）
+     */
+    @Scheduled(fixedDelayString = "${api-quota.refresh-interval-ms:60000}",
+            initialDelayString = "${api-quota.refresh-interval-ms:60000}")
+    public void scheduledReload() {
+        reload();
+    }
+
+    /**
+     * 重新加载配额快照；配额未变化的应用保留当前令牌数
+     */
+    public void reload() {
+        List<Application> settings;
+        try {
+            settings = applicationMapper.listQuotaSettings();
+        } catch (Exception e) {
+            log.warn("加载应用请求配额失败: {}", e.getMessage());
+            return;
+        }
+        Map<String, AppBucket> previous = bucketsByKey;
+        Map<String, AppBucket> next = new HashMap<>(settings.size() * 2);
+        for (Application app : settings) {
+            String appId = String.valueOf(app.getId());
+            int limit = app.getQuotaPerMinute() != null ? app.getQuotaPerMinute() : 0;
+            AppBucket existing = previous.get(app.getApiKey());
+            next.put(app.getApiKey(), existing != null && existing.appId.equals(appId) && existing.limit == limit
+                    ? existing
+                    : new AppBucket(appId, limit));
+        }
+        bucketsByKey = next;
+        synchronized (missingKeys) {
+            missingKeys.clear();
+        }
+    }
+
+    /**
+     * 检查并消耗一次配额
+     * @return 未携带 API Key 或应用不限制时返回 null
+     */
+    public RateLimitService.Decision tryAcquire(String apiKey) {
+        if (apiKey == null || apiKey.isEmpty()) {
+            return null;
+        }
+        AppBucket bucket = bucketsByKey.get(apiKey);
+        if (bucket == null) {
+            bucket = lookup(apiKey);
+            if (bucket == null) {
+                return null;
+            }
+        }
+        RateLimitService.Decision decision = bucket.acquire(System.nanoTime());
+        if (decision != null && !decision.allowed()) {
+            log.warn("应用 {} 请求配额已用尽（{}次/分钟）", bucket.appId, bucket.limit);
+        }
+        return decision;
+    }
+
+    /**
+     * 快照未命中：查询数据库，存在时加入快照，否则记入负缓存并返回共用的桶
+     */
+    private AppBucket lookup(String apiKey) {
+        long now = System.nanoTime();
+        synchronized (missingKeys) {
+            Long expireAt = missingKeys.get(apiKey);
+            if (expireAt != null) {
+                if (expireAt - now > 0) {
+                    return unknownBucket;
+                }
+                missingKeys.remove(apiKey);
+            }
+        }
+        if (!tryStartLookup(now)) {
+            return unknownBucket;
+        }
+        Application app;
+        try {
+            app = applicationMapper.findByApiKey(apiKey);
+        } catch (Exception e) {
+            log.warn("查询应用请求配额失败: {}", e.getMessage());
+            return unknownBucket;
+        }
+        if (app == null) {
+            synchronized (missingKeys) {
+                missingKeys.put(apiKey, now + TimeUnit.MILLISECONDS.toNanos(negativeCacheTtlMillis));
+            }
+            return unknownBucket;
+        }
+        return addBucket(apiKey, String.valueOf(app.getId()),
+                app.getQuotaPerMinute() != null ? app.getQuotaPerMinute() : 0);
+    }
+
+    private synchronized AppBucket addBucket(String apiKey, String appId, int limit) {
+        AppBucket existing = bucketsByKey.get(apiKey);
+        if (existing != null) {
+            return existing;
+        }
+        AppBucket bucket = new AppBucket(appId, limit);
+        Map<String, AppBucket> next = new HashMap<>(bucketsByKey);
+        next.put(apiKey, bucket);
+        bucketsByKey = next;
+        return bucket;
+    }
+
+    private synchronized boolean tryStartLookup(long now) {
+        long second = now / 1_000_000_000L;
+        if (second != lookupSecond) {
+            lookupSecond = second;
+            lookupsThisSecond = 0;
+        }
+        return lookupsThisSecond++ < lookupsPerSecond;
+    }
+
+    /**
+     * 单个应用的令牌桶：容量为每分钟配额，按配额匀速补充
+     */
+    private final class AppBucket {
+        private final String appId;
+        private final int limit;
+        private final double tokensPerNano;
+        private final Counter allowed;
+        private final Counter throttled;
+        private double tokens;
+        private long lastRefill;
+
+        AppBucket(String appId, int limit) {
+            this.appId = appId;
+            this.limit = limit;
+            this.tokensPerNano = limit / 60_000_000_000d;
+            this.tokens = limit;
+            this.lastRefill = System.nanoTime();
+            this.allowed = counter(appId, "allowed");
+            this.throttled = counter(appId, "throttled");
+        }
+
+        synchronized RateLimitService.Decision acquire(long now) {
+            if (limit <= 0) {
+                allowed.increment();
+                return null;
+            }
+            if (counterStore.isDistributed()) {
+                return acquireShared();
+            }
+            tokens = Math.min(limit, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            if (tokens >= 1.0) {
+                tokens -= 1.0;
+                allowed.increment();
+                return new RateLimitService.Decision(true, limit, (int) tokens, 0L);
+            }
+            throttled.increment();
+            long waitNanos = (long) Math.ceil((1.0 - tokens) / tokensPerNano);
+            return new RateLimitService.Decision(false, limit, 0, Math.max(1L, (waitNanos + 999_999_999L) / 1_000_000_000L));
+        }
+
+        private RateLimitService.Decision acquireShared() {
+            SharedCounterStore.Acquisition acquisition =
+                    counterStore.tryAcquire("quota:" + appId, limit, Duration.ofMinutes(1));
+            if (acquisition.allowed()) {
+                allowed.increment();
+                return new RateLimitService.Decision(true, limit, (int) Math.min(limit, acquisition.remaining()), 0L);
+            }
+            throttled.increment();
+            return new RateLimitService.Decision(false, limit, 0,
+                    Math.max(1L, (acquisition.resetAfterMillis() + 999L) / 1000L));
+        }
+    }
+
+    private Counter counter(String appId, String outcome) {
+        return Counter.builder("api.quota.requests")
+                .description("开放接口按应用统计的请求数")
+                .tag("app", appId)
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+}
@@ -0,0 +1,207 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.AppDeleteJob;
+import com.xy.verfiy.domain.Application;
+import com.xy.verfiy.mapper.ApplicationMapper;
+import com.xy.verfiy.mapper.CardArchiveMapper;
+import com.xy.verfiy.mapper.CardMapper;
+import com.xy.verfiy.mapper.CardUseLogMapper;
+import com.xy.verfiy.mapper.HookInfoMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 级联删除应用：虚拟批次 -> 使用日志 -> 机器码绑定 -> 卡密 -> 已归档的卡密 -> Hook 配置 -> 应用
+ *
+ * 按主键每次取出一批卡密 id，先按 id 删除它们的使用日志和机器码绑定，再删除卡密；每条 DELETE 都带 LIMIT
+ * 并单独提交，不会长时间持有锁，也不会产生巨大的 undo 日志。应用最后删除，中途失败或重启后可以再次删除应用继续。
+ * 虚拟批次最先删除，之后验证接口不会再把批次卡密写入 card 表；删除应用前再扫描一遍卡密，
+ * 删除期间由其他操作写入的卡密也一并删除，不会留下没有应用的卡密。
+ * 删除在后台执行，通过任务编号查询进度。
+ */
+@Slf4j
+@Service
+public class AppDeletionService {
+
+    // 已结束任务的保留时长
+    private static final long FINISHED_RETENTION_MINUTES = 60;
+
+    private final ApplicationMapper applicationMapper;
+    private final CardMapper cardMapper;
+    private final CardArchiveMapper archiveMapper;
+    private final CardUseLogMapper logMapper;
+    private final HookInfoMapper hookInfoMapper;
+    private final ApiQuotaService apiQuotaService;
+    private final CardBatchService cardBatchService;
+    private final CardCountCache cardCountCache;
+    private final CardSearchIndex cardSearchIndex;
+    private final CardLogRetentionService cardLogRetention;
+
+    // 每批的卡密数，以及每条 DELETE 的行数上限
+    @Value("${app-delete.chunk-size:1000}")
+    private int chunkSize;
+
+    private final ExecutorService jobRunner;
+    private final Map<String, AppDeleteJob> jobs = new ConcurrentHashMap<>();
+
+    public AppDeletionService(ApplicationMapper applicationMapper, CardMapper cardMapper,
+                              CardArchiveMapper archiveMapper, CardUseLogMapper logMapper, HookInfoMapper hookInfoMapper, ApiQuotaService apiQuotaService,
+                              CardBatchService cardBatchService, CardCountCache cardCountCache,
+                              CardSearchIndex cardSearchIndex, CardLogRetentionService cardLogRetention) {
+        this.applicationMapper = applicationMapper;
+        this.cardMapper = cardMapper;
+        this.archiveMapper = archiveMapper;
+        this.logMapper = logMapper;
+        this.hookInfoMapper = hookInfoMapper;
+        this.apiQuotaService = apiQuotaService;
+        this.cardBatchService = cardBatchService;
+        this.cardCountCache = cardCountCache;
+        this.cardSearchIndex = cardSearchIndex;
+        this.cardLogRetention = cardLogRetention;
+        AtomicInteger ids = new AtomicInteger();
+        this.jobRunner = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "app-delete-" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobRunner.shutdownNow();
+    }
+
+    /**
+     * 在后台删除；同一应用已有未结束的任务时直接返回该任务
+     */
+    public AppDeleteJob submit(Application app) {
+        purgeFinished();
+        for (AppDeleteJob existing : jobs.values()) {
+            if (existing.getFinishedAt() == null && existing.getAppId().equals(app.getId())) {
+                return existing;
+            }
+        }
+        AppDeleteJob job = newJob(app);
+        job.setStatus("PENDING");
+        jobs.put(job.getJobId(), job);
+        jobRunner.execute(() -> run(job));
+        log.info("提交删除应用任务 {}：应用 {}，{} 张卡密", job.getJobId(), app.getId(), job.getTotalCards());
+        return job;
+    }
+
+    public AppDeleteJob getJob(String jobId) {
+        return jobId != null ? jobs.get(jobId) : null;
+    }
+
+    private AppDeleteJob newJob(Application app) {
+        AppDeleteJob job = new AppDeleteJob();
+        job.setJobId(UUID.randomUUID().toString().replace("-", ""));
+        job.setAppId(app.getId());
+        job.setAppName(app.getName());
+        job.setOwner(app.getOwner());
+        job.setTotalCards(cardMapper.count(app.getId(), null, null) + archiveMapper.countByAppId(app.getId()));
+        job.setCreatedAt(LocalDateTime.now());
+        job.setStatus("RUNNING");
+        return job;
+    }
+
+    private void run(AppDeleteJob job) {
+        Long appId = job.getAppId();
+        job.setStatus("RUNNING");
+        try {
+            job.setPhase("BATCHES");
+            cardBatchService.deleteByAppId(appId);
+
+            job.setPhase("CARDS");
+            deleteCards(job);
+            cardCountCache.invalidate(appId);
+            cardSearchIndex.invalidate(appId);
+
+            job.setPhase("ARCHIVE");
+            long afterId = 0L;
+            while (true) {
+                List<Long> ids = archiveMapper.listIdsByAppId(appId, afterId, chunkSize);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                // 使用日志已在归档时删除（或随分区过期删除）
+                int n;
+                while ((n = archiveMapper.deleteMachinesByCardIds(ids, chunkSize)) > 0) {
+                    job.setDeletedMachines(job.getDeletedMachines() + n);
+                }
+                job.setDeletedCards(job.getDeletedCards() + archiveMapper.deleteByIds(ids));
+                afterId = ids.get(ids.size() - 1);
+            }
+
+            job.setPhase("HOOKS");
+            int n;
+            while ((n = hookInfoMapper.deleteByAppId(appId, chunkSize)) > 0) {
+                job.setDeletedHooks(job.getDeletedHooks() + n);
+            }
+
+            job.setPhase("APPLICATION");
+            // 删除期间写入的卡密（例如其他节点在批次删除前激活的批次卡密）
+            long late = deleteCards(job);
+            if (late > 0) {
+                log.info("删除应用 {}：删除期间新写入的 {} 张卡密已一并删除", appId, late);
+                cardCountCache.invalidate(appId);
+            }
+            if (applicationMapper.deleteById(appId) > 0) {
+                apiQuotaService.reload();
+            }
+            job.setStatus("SUCCESS");
+        } catch (RuntimeException e) {
+            job.setStatus("FAILED");
+            job.setMessage("删除失败，可再次删除应用继续: " + e.getMessage());
+            log.warn("删除应用 {} 失败: {}", appId, e.getMessage());
+        } finally {
+            job.setFinishedAt(LocalDateTime.now());
+        }
+        log.info("删除应用任务 {} 结束：{}，卡密 {}，使用日志 {}，机器码 {}，Hook {}", job.getJobId(), job.getStatus(),
+                job.getDeletedCards(), job.getDeletedLogs(), job.getDeletedMachines(), job.getDeletedHooks());
+    }
+
+    /**
+     * 按主键分批删除应用的卡密及其使用日志、机器码绑定
+     * @return 删除的卡密数
+     */
+    private long deleteCards(AppDeleteJob job) {
+        Long appId = job.getAppId();
+        long deleted = 0;
+        long afterId = 0L;
+        while (true) {
+            List<Long> ids = cardMapper.listIdsByAppId(appId, afterId, chunkSize);
+            if (ids.isEmpty()) {
+                return deleted;
+            }
+            int n;
+            // 使用日志按月分区时随分区过期删除
+            while (!cardLogRetention.partitioned() && (n = logMapper.deleteByCardIds(ids, chunkSize)) > 0) {
+                job.setDeletedLogs(job.getDeletedLogs() + n);
+            }
+            while ((n = cardMapper.deleteMachinesByCardIds(ids, chunkSize)) > 0) {
+                job.setDeletedMachines(job.getDeletedMachines() + n);
+            }
+            n = cardMapper.deleteByIdsAndAppId(ids, appId);
+            job.setDeletedCards(job.getDeletedCards() + n);
+            deleted += n;
+            afterId = ids.get(ids.size() - 1);
+        }
+    }
+
+    private void purgeFinished() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(FINISHED_RETENTION_MINUTES);
+        jobs.values().removeIf(j -> j.getFinishedAt() != null && j.getFinishedAt().isBefore(cutoff));
+    }
+}
@@ -1,5 +1,6 @@
 package com.xy.verfiy.service;
 
+import com.xy.verfiy.domain.AppDeleteJob;
 import com.xy.verfiy.domain.Application;
 
 import java.util.List;
@@ -12,8 +13,9 @@ public interface ApplicationService {
     boolean update(Application app);
     boolean delete(Long id);
 
-    // 级联删除：日志 -> 卡密 -> 应用
-    boolean deleteCascade(Long appId);
+    // 在后台级联删除，返回任务（可查询进度）
+    AppDeleteJob startDeleteCascade(Application app);
+    AppDeleteJob getDeleteJob(String jobId);
     
     // 统计用户的应用数量
     int countByOwner(String owner);
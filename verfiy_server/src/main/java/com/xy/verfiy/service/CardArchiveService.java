@@ -0,0 +1,199 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.Card;
+import com.xy.verfiy.domain.CardStatus;
+import com.xy.verfiy.mapper.CardArchiveMapper;
+import com.xy.verfiy.mapper.CardMapper;
+import com.xy.verfiy.mapper.CardUseLogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 卡密冷热分层：把过期或已使用超过 N 天的卡密移到归档表
+ *
+ * 这部分卡密不会再通过验证，却占据 card 表的大部分行，列表、计数和索引都要为它们付出代价。定时任务：
+ * - 沿 expire_at 索引取出到期超过 N 天的卡密，按主键取出已使用（USED）且超过 N 天未更新的卡密；
+ * - 每批先把卡密和机器码绑定复制到 card_archive、card_machine_archive，再删除归档表中有一致副本的原记录，
+ *   复制和删除都重新检查归档条件；每条语句单独提交，中途失败时下次重新执行即可；
+ * - 归档的虚拟批次卡密在删除前记为已删除，防止再次被识别为未激活卡密。
+ * 按卡密查询（验证接口给出“已过期”等提示）在 card 表中没有时查归档表；管理后台可以单独查看归档。
+ * 使用日志按月分区时保留到分区过期，否则随卡密一并删除。
+ * 三元组索引中的已归档卡密在搜索回表时自然被排除，下次全量重建时去掉。
+ * 已归档的卡密不能再验证或核销（验证接口返回“卡密已归档”）。已使用的卡密仍可能在有效期内继续验证，
+ * 因此默认不按“已使用”归档，确认已使用的卡密不再验证时才开启 card-archive.archive-used。
+ */
+@Slf4j
+@Service
+public class CardArchiveService {
+
+    private final CardMapper cardMapper;
+    private final CardArchiveMapper archiveMapper;
+    private final CardUseLogMapper logMapper;
+    private final CardBatchService cardBatchService;
+    private final CardCountCache cardCountCache;
+    private final CardLogRetentionService cardLogRetention;
+
+    @Value("${card-archive.enabled:true}")
+    private boolean enabled;
+
+    // 过期或使用超过多少天后归档
+    @Value("${card-archive.after-days:30}")
+    private int afterDays;
+
+    // 每批归档的卡密数
+    @Value("${card-archive.batch-size:1000}")
+    private int batchSize;
+
+    // 是否归档已使用（USED）且超过 N 天未更新的卡密（包括仍在有效期内的）
+    @Value("${card-archive.archive-used:false}")
+    private boolean archiveUsed;
+
+    private final ReentrantLock archiveLock = new ReentrantLock();
+
+    public CardArchiveService(CardMapper cardMapper, CardArchiveMapper archiveMapper, CardUseLogMapper logMapper,
+                              CardBatchService cardBatchService, CardCountCache cardCountCache,
+                              CardLogRetentionService cardLogRetention) {
+        this.cardMapper = cardMapper;
+        this.archiveMapper = archiveMapper;
+        this.logMapper = logMapper;
+        this.cardBatchService = cardBatchService;
+        this.cardCountCache = cardCountCache;
+        this.cardLogRetention = cardLogRetention;
+    }
+
+    @Scheduled(fixedDelayString = "${card-archive.interval-ms:3600000}",
+            initialDelayString = "${card-archive.interval-ms:3600000}",
+            scheduler = "maintenanceScheduler")
+    public void archive() {
+        if (!enabled || !archiveLock.tryLock()) {
+            return;
+        }
+        try {
+            long startedAt = System.currentTimeMillis();
+            LocalDateTime cutoff = LocalDateTime.now().minusDays(afterDays);
+            int archived = 0;
+
+            // 到期超过 N 天（任何状态）
+            LocalDateTime afterExpireAt = null;
+            long afterId = 0L;
+            while (true) {
+                List<Card> batch = cardMapper.scanByExpireAt(afterExpireAt, afterId, cutoff, batchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                archived += move(batch, cutoff);
+                Card last = batch.get(batch.size() - 1);
+                afterExpireAt = last.getExpireAt();
+                afterId = last.getId();
+                if (batch.size() < batchSize) {
+                    break;
+                }
+            }
+
+            // 已使用超过 N 天
+            afterId = 0L;
+            while (archiveUsed) {
+                List<Card> batch = archiveMapper.scanUsedBefore(cutoff, afterId, batchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                archived += move(batch, cutoff);
+                afterId = batch.get(batch.size() - 1).getId();
+                if (batch.size() < batchSize) {
+                    break;
+                }
+            }
+            if (archived > 0) {
+                log.info("已归档 {} 个过期或已使用超过 {} 天的卡密，耗时 {} ms", archived, afterDays,
+                        System.currentTimeMillis() - startedAt);
+            }
+        } catch (RuntimeException e) {
+            log.warn("归档卡密失败: {}", e.getMessage());
+        } finally {
+            archiveLock.unlock();
+        }
+    }
+
+    /**
+     * 复制一批卡密及其机器码绑定到归档表，再删除原记录
+     * 复制和删除都重新检查归档条件，删除时还要求归档表中有同一 id、同一卡密且状态一致的副本；
+     * 扫描之后被延长有效期、重新激活的卡密，以及卡密与已归档卡密重复（重新导入）而没能复制的，都留在 card 表中。
+     * @return 删除的卡密数
+     */
+    private int move(List<Card> cards, LocalDateTime cutoff) {
+        List<Long> ids = new ArrayList<>(cards.size());
+        for (Card card : cards) {
+            ids.add(card.getId());
+        }
+        archiveMapper.deleteStaleMachines(ids);
+        archiveMapper.deleteStaleCards(ids);
+        archiveMapper.copyCards(ids, cutoff, archiveUsed, LocalDateTime.now());
+        archiveMapper.copyMachines(ids);
+        Set<Long> copied = new HashSet<>(archiveMapper.listCopied(ids, cutoff, archiveUsed));
+        if (copied.size() < ids.size()) {
+            log.debug("{} 个卡密不再满足归档条件或没能复制到归档表，留在 card 表中", ids.size() - copied.size());
+        }
+        if (copied.isEmpty()) {
+            return 0;
+        }
+        List<Card> moving = new ArrayList<>(copied.size());
+        for (Card card : cards) {
+            if (copied.contains(card.getId())) {
+                moving.add(card);
+            }
+        }
+        // 先记为已删除再删除卡密，中途失败或并发识别时批次卡密不会被重新识别为未激活卡密
+        cardBatchService.revokeAll(moving);
+        int n;
+        if (!cardLogRetention.partitioned()) {
+            // 每批单独提交
+            do {
+                n = logMapper.deleteByCardIds(copied, batchSize);
+            } while (n > 0);
+        }
+        int deleted = archiveMapper.deleteCopied(copied, cutoff, archiveUsed);
+        for (Card card : moving) {
+            if (card.getAppId() == null) {
+                continue;
+            }
+            if (deleted == moving.size()) {
+                cardCountCache.removed(card.getAppId(), card.getStatus() != null ? card.getStatus() : CardStatus.NEW, 1);
+            } else {
+                // 部分卡密在复制之后发生了变化或已被删除，重新统计
+                cardCountCache.invalidate(card.getAppId());
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * 按卡密查询归档
+     */
+    public Card findByCode(String code) {
+        return code != null ? archiveMapper.findByCode(code) : null;
+    }
+
+    public Card findById(Long id) {
+        return id != null ? archiveMapper.findById(id) : null;
+    }
+
+    /**
+     * 按 id 倒序翻页（beforeId 为上一页最后一条的 id）
+     */
+    public List<Card> page(Long appId, String keyword, Long beforeId, int size) {
+        return archiveMapper.page(appId, keyword, beforeId, size);
+    }
+
+    public List<String> listMachines(Long cardId) {
+        return archiveMapper.listMachines(cardId);
+    }
+}
@@ -0,0 +1,354 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.Card;
+import com.xy.verfiy.domain.CardBatch;
+import com.xy.verfiy.domain.CardStatus;
+import com.xy.verfiy.mapper.CardBatchMapper;
+import com.xy.verfiy.util.KeyedPermutation;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 虚拟卡密批次
+ *
+ * 批次只保存一行（前缀、格式、数量、拥有时长、机器数和一个随机密钥），第 i 张卡密由带密钥的置换
+ * {@link KeyedPermutation} 把 i 映射为格式中随机位的取值得到。验证时反向置换得到序号，
+ * 序号小于批次数量才是有效卡密；不知道密钥时随机猜中的概率不高于 2^-40。
+ * 卡密首次激活（验证/核销）时才写入 card 表，之后与普通卡密相同；激活后又被删除的卡密记录在
+ * card_batch_revoked 中，不会再被识别。
+ * 所有批次缓存在内存中，识别卡密不访问数据库（只有命中批次时才检查是否已删除）。
+ */
+@Slf4j
+@Service
+public class CardBatchService {
+
+    // 与 CardGenerationService 生成卡密使用的字符集一致
+    static final String ALPHABET = "ABCDEFGHJKMNPQRSTUVWXYZ23456789";
+    private static final String DEFAULT_PATTERN = "XXXXXXXXXXXXXXXX";
+    // 随机猜中有效卡密的概率上限：2^-GUESS_BITS
+    private static final int GUESS_BITS = 40;
+    private static final BigInteger RADIX = BigInteger.valueOf(ALPHABET.length());
+
+    private final CardBatchMapper cardBatchMapper;
+    private final SecureRandom random = new SecureRandom();
+
+    // 单个批次的最大卡密数
+    @Value("${card-batch.max-count:10000000}")
+    private int maxCount;
+
+    private volatile List<ActiveBatch> batches = List.of();
+
+    public CardBatchService(CardBatchMapper cardBatchMapper) {
+        this.cardBatchMapper = cardBatchMapper;
+    }
+
+    /**
+     * 内存中的批次：拆好的格式和置换
+     */
+    private record ActiveBatch(CardBatch batch, String head, String tail, String pattern,
+                               int[] randomPositions, KeyedPermutation permutation) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reload();
+    }
+
+    /**
+     * 定时重新加载（多实例部署时同步其他节点的修改）
+     */
+    @Scheduled(fixedDelayString = "${card-batch.refresh-interval-ms:60000}",
+            initialDelayString = "${card-batch.refresh-interval-ms:60000}")
+    public void scheduledReload() {
+        reload();
+    }
+
+    public void reload() {
+        List<CardBatch> all;
+        try {
+            all = cardBatchMapper.listAll();
+        } catch (Exception e) {
+            log.warn("加载虚拟卡密批次失败: {}", e.getMessage());
+            return;
+        }
+        List<ActiveBatch> next = new ArrayList<>(all.size());
+        for (CardBatch batch : all) {
+            next.add(activate(batch));
+        }
+        batches = List.copyOf(next);
+    }
+
+    /**
+     * 创建虚拟批次
+     * @param metadata 拥有时长（JSON，同 card.metadata）
+     */
+    @Transactional
+    public CardBatch create(Long appId, String prefix, String suffix, String formatPattern, int count,
+                           String metadata, Integer maxMachines) {
+        if (count <= 0 || count > maxCount) {
+            throw new IllegalArgumentException("虚拟批次数量必须在 1 到 " + maxCount + " 之间");
+        }
+        String pattern = formatPattern == null || formatPattern.isBlank() ? DEFAULT_PATTERN : formatPattern.trim();
+        int digits = countRandomPositions(pattern);
+        int required = requiredDigits(count);
+        if (digits < required) {
+            throw new IllegalArgumentException("格式中的随机位（x）不足，" + count + " 张卡密至少需要 " + required + " 位");
+        }
+        if (BigInteger.valueOf(ALPHABET.length()).pow(digits).subtract(BigInteger.ONE).bitLength() > 124) {
+            throw new IllegalArgumentException("格式中的随机位（x）过多，最多 25 位");
+        }
+        byte[] key = new byte[16];
+        random.nextBytes(key);
+
+        CardBatch batch = new CardBatch();
+        batch.setAppId(appId);
+        batch.setPrefix(prefix != null && !prefix.isBlank() ? prefix.trim() : null);
+        batch.setSuffix(suffix != null && !suffix.isBlank() ? suffix.trim() : null);
+        batch.setFormatPattern(pattern);
+        batch.setCardCount(count);
+        batch.setSeed(Base64.getEncoder().encodeToString(key));
+        batch.setMetadata(metadata);
+        batch.setMaxMachines(maxMachines);
+        batch.setDisabled(false);
+        cardBatchMapper.insert(batch);
+        reload();
+        log.info("创建虚拟卡密批次 {}：应用 {}，{} 张", batch.getId(), appId, count);
+        return batch;
+    }
+
+    public List<CardBatch> listByAppId(Long appId) {
+        return cardBatchMapper.listByAppId(appId);
+    }
+
+    public CardBatch findById(Long id) {
+        return cardBatchMapper.findById(id);
+    }
+
+    public boolean setDisabled(Long id, Long appId, boolean disabled) {
+        boolean updated = cardBatchMapper.updateDisabled(id, appId, disabled) > 0;
+        if (updated) {
+            reload();
+        }
+        return updated;
+    }
+
+    /**
+     * 删除批次：未激活的卡密随之失效，已激活的卡密作为普通卡密保留
+     */
+    @Transactional
+    public boolean delete(Long id, Long appId) {
+        if (cardBatchMapper.findById(id) == null) {
+            return false;
+        }
+        cardBatchMapper.deleteRevokedByBatchId(id);
+        boolean deleted = cardBatchMapper.deleteByIdAndAppId(id, appId) > 0;
+        if (deleted) {
+            reload();
+        }
+        return deleted;
+    }
+
+    /**
+     * 删除应用的所有批次
+     */
+    public void deleteByAppId(Long appId) {
+        cardBatchMapper.deleteRevokedByAppId(appId);
+        if (cardBatchMapper.deleteByAppId(appId) > 0) {
+            reload();
+        }
+    }
+
+    /**
+     * 识别虚拟批次中的卡密
+     * @return 未激活卡密的临时对象（id 为 null，首次激活时写入 card 表）；不属于任何批次时返回 null
+     */
+    public Card resolve(String code) {
+        if (code == null) {
+            return null;
+        }
+        String normalized = stripTrailingSpaces(code);
+        for (ActiveBatch active : batches) {
+            Long index = indexOf(active, normalized);
+            if (index == null) {
+                continue;
+            }
+            Integer revoked = cardBatchMapper.isRevoked(active.batch().getId(), index);
+            if (revoked != null && revoked > 0) {
+                return null;
+            }
+            return toCard(active, index);
+        }
+        return null;
+    }
+
+    /**
+     * 激活后被删除的批次卡密，记录下来防止再次被识别
+     */
+    public void revoke(Long batchId, Long index) {
+        if (batchId == null || index == null || cardBatchMapper.findById(batchId) == null) {
+            return;
+        }
+        try {
+            cardBatchMapper.insertRevoked(batchId, index);
+        } catch (DuplicateKeyException ignored) {
+            // 已记录
+        }
+    }
+
+    /**
+     * 批量删除卡密时记录其中的批次卡密（每个批次只检查一次是否存在）
+     */
+    public void revokeAll(List<Card> cards) {
+        Map<Long, Boolean> exists = new HashMap<>();
+        for (Card card : cards) {
+            if (card.getBatchId() == null || card.getBatchIndex() == null
+                    || !exists.computeIfAbsent(card.getBatchId(), id -> cardBatchMapper.findById(id) != null)) {
+                continue;
+            }
+            try {
+                cardBatchMapper.insertRevoked(card.getBatchId(), card.getBatchIndex());
+            } catch (DuplicateKeyException ignored) {
+                // 已记录
+            }
+        }
+    }
+
+    /**
+     * 按序号流式导出批次中的所有卡密（CSV，列名 code）
+     */
+    public void exportCsv(CardBatch batch, Writer writer) throws IOException {
+        ActiveBatch active = activate(batch);
+        CSVPrinter printer = new CSVPrinter(writer, CSVFormat.Builder.create(CSVFormat.DEFAULT)
+                .setHeader("code")
+                .build());
+        for (long i = 0; i < batch.getCardCount(); i++) {
+            printer.printRecord(codeAt(active, i));
+        }
+        printer.flush();
+    }
+
+    private ActiveBatch activate(CardBatch batch) {
+        String pattern = batch.getFormatPattern();
+        int[] positions = new int[countRandomPositions(pattern)];
+        for (int i = 0, n = 0; i < pattern.length(); i++) {
+            if (isRandomPosition(pattern.charAt(i))) {
+                positions[n++] = i;
+            }
+        }
+        // 与 CardGenerationService 生成的格式一致：前缀-格式-后缀
+        String head = batch.getPrefix() != null ? batch.getPrefix() + "-" : "";
+        String tail = batch.getSuffix() != null ? "-" + batch.getSuffix() : "";
+        KeyedPermutation permutation = new KeyedPermutation(Base64.getDecoder().decode(batch.getSeed()),
+                RADIX.pow(positions.length));
+        return new ActiveBatch(batch, head, tail, pattern, positions, permutation);
+    }
+
+    private String codeAt(ActiveBatch active, long index) {
+        BigInteger value = active.permutation().permute(BigInteger.valueOf(index));
+        char[] core = active.pattern().toCharArray();
+        int[] positions = active.randomPositions();
+        for (int i = positions.length - 1; i >= 0; i--) {
+            BigInteger[] qr = value.divideAndRemainder(RADIX);
+            core[positions[i]] = ALPHABET.charAt(qr[1].intValue());
+            value = qr[0];
+        }
+        return active.head() + new String(core) + active.tail();
+    }
+
+    /**
+     * 卡密不区分大小写（与数据库排序规则一致）
+     */
+    private Long indexOf(ActiveBatch active, String code) {
+        String head = active.head();
+        String tail = active.tail();
+        String pattern = active.pattern();
+        if (code.length() != head.length() + pattern.length() + tail.length()
+                || !code.regionMatches(true, 0, head, 0, head.length())
+                || !code.regionMatches(true, code.length() - tail.length(), tail, 0, tail.length())) {
+            return null;
+        }
+        BigInteger value = BigInteger.ZERO;
+        for (int i = 0; i < pattern.length(); i++) {
+            char ch = Character.toUpperCase(code.charAt(head.length() + i));
+            char expected = pattern.charAt(i);
+            if (isRandomPosition(expected)) {
+                int digit = ALPHABET.indexOf(ch);
+                if (digit < 0) {
+                    return null;
+                }
+                value = value.multiply(RADIX).add(BigInteger.valueOf(digit));
+            } else if (ch != Character.toUpperCase(expected)) {
+                return null;
+            }
+        }
+        BigInteger index = active.permutation().invert(value);
+        return index.compareTo(BigInteger.valueOf(active.batch().getCardCount())) < 0 ? index.longValue() : null;
+    }
+
+    private Card toCard(ActiveBatch active, long index) {
+        CardBatch batch = active.batch();
+        Card card = new Card();
+        card.setAppId(batch.getAppId());
+        card.setCardCode(codeAt(active, index));
+        card.setStatus(CardStatus.NEW);
+        card.setDisabled(Boolean.TRUE.equals(batch.getDisabled()));
+        card.setMetadata(batch.getMetadata());
+        card.setMaxMachines(batch.getMaxMachines());
+        card.setBatchId(batch.getId());
+        card.setBatchIndex(index);
+        card.setCreatedAt(batch.getCreatedAt());
+        return card;
+    }
+
+    /**
+     * 随机位数至少满足：字符集^位数 >= 数量 * 2^GUESS_BITS
+     */
+    static int requiredDigits(int count) {
+        BigInteger needed = BigInteger.valueOf(count).shiftLeft(GUESS_BITS);
+        int digits = 0;
+        for (BigInteger space = BigInteger.ONE; space.compareTo(needed) < 0; space = space.multiply(RADIX)) {
+            digits++;
+        }
+        return digits;
+    }
+
+    private static int countRandomPositions(String pattern) {
+        int n = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            if (isRandomPosition(pattern.charAt(i))) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static boolean isRandomPosition(char ch) {
+        return ch == 'x' || ch == 'X';
+    }
+
+    private static String stripTrailingSpaces(String code) {
+        int end = code.length();
+        while (end > 0 && code.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return code.substring(0, end);
+    }
+}
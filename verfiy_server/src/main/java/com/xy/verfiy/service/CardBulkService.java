@@ -0,0 +1,279 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.Card;
+import com.xy.verfiy.domain.CardBulkJob;
+import com.xy.verfiy.domain.CardBulkRequest;
+import com.xy.verfiy.domain.CardStatus;
+import com.xy.verfiy.mapper.CardMapper;
+import com.xy.verfiy.mapper.CardUseLogMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量操作卡密：禁用/启用、修改状态、修改附加信息、解绑全部机器码、删除、延长有效期
+ *
+ * 按 id 列表或筛选条件（状态、关键词、创建时间范围）选择卡密，每次取一批 id 执行一条 UPDATE/DELETE，
+ * 每条语句都限定 app_id（所有权只需在调用前检查一次应用），每批单独提交，批与批之间稍作停顿，不影响验证接口。
+ * 选中的卡密较少时在当前线程执行，否则在后台执行，通过任务编号查询进度。
+ */
+@Slf4j
+@Service
+public class CardBulkService {
+
+    private static final Set<String> ACTIONS = Set.of("DISABLE", "ENABLE", "STATUS", "EXTRA", "UNBIND", "DELETE", "EXTEND");
+    // 单次请求最多给出的 id 数（更多时请使用筛选条件）
+    private static final int MAX_IDS = 100_000;
+    // 单次最多延长的天数
+    private static final int MAX_EXTEND_DAYS = 3650;
+    // 已结束任务的保留时长
+    private static final long FINISHED_RETENTION_MINUTES = 60;
+
+    private final CardMapper cardMapper;
+    private final CardUseLogMapper logMapper;
+    private final CardBatchService cardBatchService;
+    private final CardCountCache cardCountCache;
+    private final CardLogRetentionService cardLogRetention;
+
+    // 每批的卡密数
+    @Value("${card-bulk.chunk-size:1000}")
+    private int chunkSize;
+
+    // 选中的卡密不超过此数时在当前线程执行
+    @Value("${card-bulk.sync-threshold:1000}")
+    private int syncThreshold;
+
+    // 同时排队和执行的后台任务上限
+    @Value("${card-bulk.max-pending-jobs:4}")
+    private int maxPendingJobs;
+
+    // 每批之间的停顿（毫秒）
+    @Value("${card-bulk.chunk-pause-ms:20}")
+    private long chunkPauseMs;
+
+    private final ExecutorService jobRunner;
+    private final Map<String, CardBulkJob> jobs = new ConcurrentHashMap<>();
+
+    public CardBulkService(CardMapper cardMapper, CardUseLogMapper logMapper, CardBatchService cardBatchService,
+                           CardCountCache cardCountCache, CardLogRetentionService cardLogRetention) {
+        this.cardMapper = cardMapper;
+        this.logMapper = logMapper;
+        this.cardBatchService = cardBatchService;
+        this.cardCountCache = cardCountCache;
+        this.cardLogRetention = cardLogRetention;
+        AtomicInteger ids = new AtomicInteger();
+        this.jobRunner = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "card-bulk-" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobRunner.shutdownNow();
+    }
+
+    /**
+     * 执行批量操作；选中的卡密较多时提交为后台任务
+     * @return 任务（在当前线程执行时已结束）
+     */
+    public CardBulkJob submit(Long appId, CardBulkRequest request) {
+        validate(request);
+        List<Long> ids = request.getIds() != null && !request.getIds().isEmpty()
+                ? request.getIds().stream().distinct().sorted().toList()
+                : null;
+        CardBulkJob job = new CardBulkJob();
+        job.setJobId(UUID.randomUUID().toString().replace("-", ""));
+        job.setAppId(appId);
+        job.setAction(request.getAction());
+        job.setTotal(ids != null ? ids.size() : cardMapper.countByFilter(appId, request.getKeyword(), request.getStatus(),
+                request.getCreatedFrom(), request.getCreatedTo()));
+        job.setCreatedAt(LocalDateTime.now());
+        if (job.getTotal() <= syncThreshold) {
+            run(job, request, ids);
+            return job;
+        }
+        purgeFinished();
+        long pending = jobs.values().stream().filter(j -> j.getFinishedAt() == null).count();
+        if (pending >= maxPendingJobs) {
+            throw new IllegalStateException("批量操作任务过多，请稍后再试");
+        }
+        job.setStatus("PENDING");
+        jobs.put(job.getJobId(), job);
+        jobRunner.execute(() -> run(job, request, ids));
+        log.info("提交批量操作卡密任务 {}：应用 {}，{}，{} 张", job.getJobId(), appId, job.getAction(), job.getTotal());
+        return job;
+    }
+
+    public CardBulkJob getJob(String jobId) {
+        return jobId != null ? jobs.get(jobId) : null;
+    }
+
+    private void validate(CardBulkRequest request) {
+        if (request.getAction() == null || !ACTIONS.contains(request.getAction())) {
+            throw new IllegalArgumentException("不支持的批量操作");
+        }
+        boolean hasIds = request.getIds() != null && !request.getIds().isEmpty();
+        if (hasIds && request.getIds().size() > MAX_IDS) {
+            throw new IllegalArgumentException("一次最多选择 " + MAX_IDS + " 张卡密，更多请使用筛选条件");
+        }
+        boolean hasFilter = request.getStatus() != null
+                || (request.getKeyword() != null && !request.getKeyword().isBlank())
+                || request.getCreatedFrom() != null || request.getCreatedTo() != null;
+        // 延长有效期可以不带条件，对应用内全部卡密执行（停机补偿）
+        if (!hasIds && !hasFilter && !"EXTEND".equals(request.getAction())) {
+            throw new IllegalArgumentException("请选择卡密或设置筛选条件");
+        }
+        if ("STATUS".equals(request.getAction()) && request.getTargetStatus() == null) {
+            throw new IllegalArgumentException("请选择目标状态");
+        }
+        if ("EXTEND".equals(request.getAction()) && (request.getExtendDays() == null
+                || request.getExtendDays() <= 0 || request.getExtendDays() > MAX_EXTEND_DAYS)) {
+            throw new IllegalArgumentException("延长天数必须在 1 到 " + MAX_EXTEND_DAYS + " 之间");
+        }
+    }
+
+    private void run(CardBulkJob job, CardBulkRequest request, List<Long> ids) {
+        job.setStatus("RUNNING");
+        Long appId = job.getAppId();
+        try {
+            if (ids != null) {
+                for (int from = 0; from < ids.size(); from += chunkSize) {
+                    if (from > 0) {
+                        pause();
+                    }
+                    apply(job, request, ids.subList(from, Math.min(ids.size(), from + chunkSize)));
+                }
+            } else {
+                long afterId = 0L;
+                while (true) {
+                    List<Long> chunk = cardMapper.listIdsByFilter(appId, request.getKeyword(), request.getStatus(),
+                            request.getCreatedFrom(), request.getCreatedTo(), afterId, chunkSize);
+                    if (chunk.isEmpty()) {
+                        break;
+                    }
+                    if (afterId > 0) {
+                        pause();
+                    }
+                    apply(job, request, chunk);
+                    afterId = chunk.get(chunk.size() - 1);
+                }
+            }
+            job.setStatus("SUCCESS");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.setStatus("FAILED");
+            job.setMessage("批量操作已中断");
+        } catch (RuntimeException e) {
+            job.setStatus("FAILED");
+            job.setMessage("批量操作失败: " + e.getMessage());
+            log.warn("批量操作卡密任务 {} 失败: {}", job.getJobId(), e.getMessage());
+        } finally {
+            if ("STATUS".equals(job.getAction()) || "DELETE".equals(job.getAction())) {
+                cardCountCache.invalidate(appId);
+            }
+            job.setFinishedAt(LocalDateTime.now());
+        }
+        log.info("批量操作卡密任务 {} 结束：{}，{}，处理 {}，影响 {}", job.getJobId(), job.getStatus(), job.getAction(),
+                job.getProcessed(), job.getAffected());
+    }
+
+    private void apply(CardBulkJob job, CardBulkRequest request, List<Long> ids) {
+        Long appId = job.getAppId();
+        LocalDateTime now = LocalDateTime.now();
+        int affected = switch (job.getAction()) {
+            case "DISABLE" -> cardMapper.updateDisabledByIds(appId, ids, true, now);
+            case "ENABLE" -> cardMapper.updateDisabledByIds(appId, ids, false, now);
+            // 与单张修改相同：不能直接改为已使用
+            case "STATUS" -> cardMapper.updateStatusByIds(appId, ids,
+                    request.getTargetStatus() == CardStatus.USED ? CardStatus.ACTIVATED : request.getTargetStatus(), now);
+            case "EXTRA" -> cardMapper.updateExtraByIds(appId, ids, request.getExtra(),
+                    Boolean.TRUE.equals(request.getReturnExtra()));
+            case "UNBIND" -> {
+                // card_machine 没有 app_id，先确认这些卡密属于该应用
+                List<Long> owned = cardMapper.listIdsByIdsAndAppId(appId, ids);
+                int n = 0;
+                if (!owned.isEmpty()) {
+                    int deleted;
+                    while ((deleted = cardMapper.deleteMachinesByCardIds(owned, chunkSize)) > 0) {
+                        n += deleted;
+                    }
+                }
+                yield n;
+            }
+            case "DELETE" -> delete(appId, ids);
+            case "EXTEND" -> extend(appId, request, ids);
+            default -> throw new IllegalArgumentException("不支持的批量操作");
+        };
+        job.setProcessed(job.getProcessed() + ids.size());
+        job.setAffected(job.getAffected() + affected);
+    }
+
+    /**
+     * 在这批卡密的 id 区间内延长有效期：未激活的改 metadata 中的拥有时长，已激活或已使用且未到期的顺延 expire_at。
+     * 先改未激活的，再只改在此之后取的时间点之前激活的；改完未激活的之后才激活的卡密已按新的拥有时长计算到期时间，
+     * 不会重复延长，在此之前激活的也不会漏掉
+     */
+    private int extend(Long appId, CardBulkRequest request, List<Long> ids) {
+        // 按筛选条件选择时 id 区间内的条件与取 id 时相同，不必再列出 id
+        List<Long> only = request.getIds() != null && !request.getIds().isEmpty() ? ids : null;
+        long fromId = ids.get(0);
+        long toId = ids.get(ids.size() - 1);
+        int days = request.getExtendDays();
+        int pending = cardMapper.extendPendingByRange(appId, fromId, toId, only, request.getKeyword(),
+                request.getStatus(), request.getCreatedFrom(), request.getCreatedTo(), days);
+        LocalDateTime now = LocalDateTime.now();
+        int activated = cardMapper.extendActivatedByRange(appId, fromId, toId, only, request.getKeyword(),
+                request.getStatus(), request.getCreatedFrom(), request.getCreatedTo(), days, now);
+        return pending + activated;
+    }
+
+    private void pause() throws InterruptedException {
+        if (chunkPauseMs > 0) {
+            Thread.sleep(chunkPauseMs);
+        }
+    }
+
+    /**
+     * 先删使用日志与机器码绑定，再删卡密；虚拟批次中的卡密删除后不能再按序号重新激活
+     */
+    private int delete(Long appId, List<Long> ids) {
+        List<Long> owned = cardMapper.listIdsByIdsAndAppId(appId, ids);
+        if (owned.isEmpty()) {
+            return 0;
+        }
+        List<Card> batchCards = cardMapper.listBatchCardsByIds(appId, owned);
+        // 先记为已删除再删除卡密，中途失败或并发识别时批次卡密不会被重新识别为未激活卡密
+        if (!batchCards.isEmpty()) {
+            cardBatchService.revokeAll(batchCards);
+        }
+        // 每条语句最多删除 chunkSize 行；使用日志按月分区时随分区过期删除
+        int n;
+        if (!cardLogRetention.partitioned()) {
+            do {
+                n = logMapper.deleteByCardIds(owned, chunkSize);
+            } while (n > 0);
+        }
+        do {
+            n = cardMapper.deleteMachinesByCardIds(owned, chunkSize);
+        } while (n > 0);
+        return cardMapper.deleteByIdsAndAppId(owned, appId);
+    }
+
+    private void purgeFinished() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(FINISHED_RETENTION_MINUTES);
+        jobs.values().removeIf(j -> j.getFinishedAt() != null && j.getFinishedAt().isBefore(cutoff));
+    }
+}
@@ -0,0 +1,366 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.Card;
+import com.xy.verfiy.mapper.CardArchiveMapper;
+import com.xy.verfiy.mapper.CardMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 卡密存在性预检（布隆过滤器）
+ *
+ * 内存中保存所有已发放卡密的布隆过滤器，核销/验证时先查过滤器，一定不存在的卡密直接拒绝，不访问数据库。
+ * 过滤器只会误判“存在”（之后照常查数据库），不会漏判，因此：
+ * - 启动后在后台按主键分批扫描 card 表构建，构建完成前所有请求照常查数据库；
+ * - 本节点生成/导入卡密时在写入数据库之前加入过滤器；
+ * - 每隔几秒按主键增量扫描新卡密（多节点部署时其他节点生成的卡密、直接写库的卡密），
+ *   扫描起点滞后一分钟，覆盖提交较晚的事务；
+ * - 定时全量重建以去掉已删除的卡密，重建期间本节点新增的卡密会重放到新过滤器中；
+ *   已归档的卡密（card_archive）仍可查询，重建时在 card 表之后扫描（归档先复制再删除，扫描不会漏掉）。
+ * 数据库排序规则不区分大小写、忽略尾部空格，过滤器按同样规则归一化；含非 ASCII 字符的卡密不经过滤器。
+ *
+ * 指标：card.filter.bytes、card.filter.entries、card.filter.rejected
+ */
+@Slf4j
+@Service
+public class CardCodeFilter {
+
+    // 每批扫描的行数
+    private static final int SCAN_BATCH_SIZE = 5000;
+    // 本节点新增卡密的保留时长（重建时重放）
+    private static final long JOURNAL_RETENTION_MILLIS = 10 * 60_000L;
+    // 增量扫描起点的滞后时长
+    private static final long SYNC_LAG_MILLIS = 60_000L;
+
+    private final CardMapper cardMapper;
+    private final CardArchiveMapper archiveMapper;
+    private final MeterRegistry registry;
+
+    @Value("${card-filter.enabled:true}")
+    private boolean enabled;
+
+    // 目标误判率
+    @Value("${card-filter.fpp:0.01}")
+    private double fpp;
+
+    // 过滤器最小容量（重建时按现有卡密数的 2 倍预留）
+    @Value("${card-filter.min-capacity:100000}")
+    private long minCapacity;
+
+    // 构建完成前为 null
+    private volatile BloomFilter current;
+    private BloomFilter building;
+    private final Object swapLock = new Object();
+    private final ReentrantLock scanLock = new ReentrantLock();
+
+    // 本节点新增卡密的哈希，重建时重放
+    private final Deque<JournalChunk> journal = new ArrayDeque<>();
+    // 增量扫描进度：已扫描到的最大主键，以及各时间点的最大主键（用于确定滞后的起点）
+    private long maxSeenId;
+    private final Deque<long[]> checkpoints = new ArrayDeque<>();
+
+    private Counter rejected;
+
+    public CardCodeFilter(CardMapper cardMapper, CardArchiveMapper archiveMapper, MeterRegistry registry) {
+        this.cardMapper = cardMapper;
+        this.archiveMapper = archiveMapper;
+        this.registry = registry;
+    }
+
+    private record JournalChunk(long addedAt, long[] hashes) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        rejected = Counter.builder("card.filter.rejected")
+                .description("布隆过滤器直接拒绝的卡密请求数")
+                .register(registry);
+        Gauge.builder("card.filter.bytes", this, f -> {
+                    BloomFilter filter = f.current;
+                    return filter != null ? filter.sizeInBytes() : 0;
+                })
+                .description("卡密布隆过滤器占用内存")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("card.filter.entries", this, f -> {
+                    BloomFilter filter = f.current;
+                    return filter != null ? filter.entries.get() : 0;
+                })
+                .description("卡密布隆过滤器中的卡密数")
+                .register(registry);
+        if (!enabled) {
+            log.info("卡密布隆过滤器已禁用");
+            return;
+        }
+        Thread thread = new Thread(this::rebuild, "card-filter-build");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 卡密是否可能存在；返回 false 时一定不存在
+     */
+    public boolean mightContain(String code) {
+        BloomFilter filter = current;
+        if (filter == null || code == null) {
+            return true;
+        }
+        long hash = hash(code);
+        if (hash == 0L || filter.mightContain(hash)) {
+            return true;
+        }
+        if (rejected != null) {
+            rejected.increment();
+        }
+        return false;
+    }
+
+    /**
+     * 加入新卡密，必须在写入数据库之前调用
+     */
+    public void addAll(Collection<String> codes) {
+        if (!enabled || codes.isEmpty()) {
+            return;
+        }
+        long[] hashes = new long[codes.size()];
+        int n = 0;
+        for (String code : codes) {
+            long hash = code != null ? hash(code) : 0L;
+            if (hash != 0L) {
+                hashes[n++] = hash;
+            }
+        }
+        long now = System.currentTimeMillis();
+        synchronized (swapLock) {
+            journal.addLast(new JournalChunk(now, n == hashes.length ? hashes : Arrays.copyOf(hashes, n)));
+            while (!journal.isEmpty() && journal.peekFirst().addedAt() < now - JOURNAL_RETENTION_MILLIS) {
+                journal.pollFirst();
+            }
+            for (int i = 0; i < n; i++) {
+                if (current != null) {
+                    current.put(hashes[i]);
+                }
+                if (building != null) {
+                    building.put(hashes[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * 定时全量重建（去掉已删除的卡密，并按当前数量调整容量）
+     */
+    @Scheduled(fixedDelayString = "${card-filter.rebuild-interval-ms:3600000}",
+            initialDelayString = "${card-filter.rebuild-interval-ms:3600000}",
+            scheduler = "maintenanceScheduler")
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        scanLock.lock();
+        try {
+            long startedAt = System.currentTimeMillis();
+            long existing = cardMapper.count(null, null, null) + archiveMapper.count();
+            BloomFilter next = new BloomFilter(Math.max(minCapacity, existing * 2), fpp);
+            synchronized (swapLock) {
+                building = next;
+            }
+            long lastId = scan(next, 0L);
+            scanArchived(next);
+            synchronized (swapLock) {
+                // 扫描开始前不久加入、但在扫描之后才提交的卡密
+                for (JournalChunk chunk : journal) {
+                    for (long hash : chunk.hashes()) {
+                        next.put(hash);
+                    }
+                }
+                current = next;
+                building = null;
+            }
+            recordCheckpoint(lastId, System.currentTimeMillis());
+            long bytes = next.sizeInBytes();
+            log.info("卡密布隆过滤器已构建：{} 个卡密，容量 {}，占用 {} KB（每百万卡密约 {} MB，误判率 {}），耗时 {} ms",
+                    next.entries.get(), next.capacity, bytes / 1024,
+                    String.format("%.2f", next.bitsPerEntry() * 1_000_000 / 8 / 1024 / 1024), fpp,
+                    System.currentTimeMillis() - startedAt);
+        } catch (RuntimeException e) {
+            synchronized (swapLock) {
+                building = null;
+            }
+            log.warn("构建卡密布隆过滤器失败: {}", e.getMessage());
+        } finally {
+            scanLock.unlock();
+        }
+    }
+
+    /**
+     * 增量扫描新卡密
+     */
+    @Scheduled(fixedDelayString = "${card-filter.sync-interval-ms:5000}",
+            initialDelayString = "${card-filter.sync-interval-ms:5000}")
+    public void sync() {
+        BloomFilter filter = current;
+        if (filter == null || !scanLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            long from = checkpoints.isEmpty() ? maxSeenId : checkpoints.peekFirst()[1];
+            recordCheckpoint(scan(filter, from), now);
+        } catch (RuntimeException e) {
+            log.warn("增量同步卡密布隆过滤器失败: {}", e.getMessage());
+        } finally {
+            scanLock.unlock();
+        }
+    }
+
+    private long scan(BloomFilter filter, long afterId) {
+        long lastId = afterId;
+        while (true) {
+            List<Card> batch = cardMapper.scanCodesAfter(lastId, SCAN_BATCH_SIZE);
+            for (Card card : batch) {
+                long hash = hash(card.getCardCode());
+                if (hash != 0L) {
+                    filter.put(hash);
+                }
+                lastId = card.getId();
+            }
+            if (batch.size() < SCAN_BATCH_SIZE) {
+                return lastId;
+            }
+        }
+    }
+
+    private void scanArchived(BloomFilter filter) {
+        long lastId = 0L;
+        while (true) {
+            List<Card> batch = archiveMapper.scanCodesAfter(lastId, SCAN_BATCH_SIZE);
+            for (Card card : batch) {
+                long hash = hash(card.getCardCode());
+                if (hash != 0L) {
+                    filter.put(hash);
+                }
+                lastId = card.getId();
+            }
+            if (batch.size() < SCAN_BATCH_SIZE) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 记录扫描进度；队首保留最近一个早于滞后时长的记录作为下次扫描起点
+     */
+    private void recordCheckpoint(long lastId, long now) {
+        maxSeenId = Math.max(maxSeenId, lastId);
+        checkpoints.addLast(new long[]{now, maxSeenId});
+        while (checkpoints.size() > 1) {
+            long[] first = checkpoints.pollFirst();
+            if (checkpoints.peekFirst()[0] > now - SYNC_LAG_MILLIS) {
+                checkpoints.addFirst(first);
+                break;
+            }
+        }
+    }
+
+    /**
+     * 按数据库排序规则（不区分大小写、忽略尾部空格）归一化后计算 64 位哈希；
+     * 含非 ASCII 或控制字符时返回 0，表示不经过滤器
+     */
+    static long hash(String code) {
+        int end = code.length();
+        while (end > 0 && code.charAt(end - 1) == ' ') {
+            end--;
+        }
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < end; i++) {
+            char c = code.charAt(i);
+            if (c < 0x20 || c >= 0x7f) {
+                return 0L;
+            }
+            if (c >= 'a' && c <= 'z') {
+                c -= 32;
+            }
+            h = (h ^ c) * 0x100000001b3L;
+        }
+        h = mix(h);
+        return h != 0L ? h : 1L;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 布隆过滤器（双重哈希生成 k 个位置，位数组可并发读写）
+     */
+    static final class BloomFilter {
+        private final long capacity;
+        private final long numBits;
+        private final int numHashes;
+        private final AtomicLongArray bits;
+        private final AtomicLong entries = new AtomicLong();
+
+        BloomFilter(long capacity, double fpp) {
+            this.capacity = capacity;
+            long m = (long) Math.ceil(-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            this.numBits = Math.max(64, (m + 63) / 64 * 64);
+            this.numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * Math.log(2)));
+            this.bits = new AtomicLongArray((int) (numBits / 64));
+        }
+
+        void put(long hash) {
+            long h2 = mix(hash ^ 0x9e3779b97f4a7c15L) | 1L;
+            for (int i = 0; i < numHashes; i++) {
+                long index = Math.floorMod(hash + i * h2, numBits);
+                int word = (int) (index >>> 6);
+                long mask = 1L << index;
+                long value = bits.get(word);
+                while ((value & mask) == 0 && !bits.weakCompareAndSetVolatile(word, value, value | mask)) {
+                    value = bits.get(word);
+                }
+            }
+            entries.incrementAndGet();
+        }
+
+        boolean mightContain(long hash) {
+            long h2 = mix(hash ^ 0x9e3779b97f4a7c15L) | 1L;
+            for (int i = 0; i < numHashes; i++) {
+                long index = Math.floorMod(hash + i * h2, numBits);
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long sizeInBytes() {
+            return numBits / 8;
+        }
+
+        double bitsPerEntry() {
+            return (double) numBits / capacity;
+        }
+    }
+}
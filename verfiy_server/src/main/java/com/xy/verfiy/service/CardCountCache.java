@@ -0,0 +1,119 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.CardStatus;
+import com.xy.verfiy.mapper.CardMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 各应用按状态的卡密数量
+ *
+ * 首次查询时按状态分组统计一次，之后由写入卡密的代码增量维护（新增、状态变化、删除），
+ * 卡密列表不必每次都执行 COUNT。多节点部署或直接改库会带来偏差，所以缓存超过有效期后重新统计。
+ * 批量修改等不便逐条维护的操作直接使缓存失效。
+ */
+@Service
+public class CardCountCache {
+
+    private static final int STATUSES = CardStatus.values().length;
+
+    private final CardMapper cardMapper;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    // 缓存有效期，过期后重新统计
+    @Value("${card-count.ttl-ms:300000}")
+    private long ttlMillis;
+
+    public CardCountCache(CardMapper cardMapper) {
+        this.cardMapper = cardMapper;
+    }
+
+    private record Entry(long loadedAt, AtomicLongArray counts) {
+    }
+
+    /**
+     * @param status 为 null 时返回全部状态的总数
+     */
+    public long count(Long appId, CardStatus status) {
+        AtomicLongArray counts = entry(appId).counts();
+        if (status != null) {
+            return Math.max(0, counts.get(status.ordinal()));
+        }
+        long total = 0;
+        for (int i = 0; i < STATUSES; i++) {
+            total += Math.max(0, counts.get(i));
+        }
+        return total;
+    }
+
+    public void added(Long appId, CardStatus status, long n) {
+        adjust(appId, status, n);
+    }
+
+    public void removed(Long appId, CardStatus status, long n) {
+        adjust(appId, status, -n);
+    }
+
+    public void changed(Long appId, CardStatus from, CardStatus to) {
+        if (from != to) {
+            adjust(appId, from, -1);
+            adjust(appId, to, 1);
+        }
+    }
+
+    public void invalidate(Long appId) {
+        if (appId != null) {
+            entries.remove(appId);
+        }
+    }
+
+    /**
+     * 只调整已缓存的应用；未缓存的应用下次查询时重新统计
+     */
+    private void adjust(Long appId, CardStatus status, long delta) {
+        if (appId == null || status == null || delta == 0) {
+            return;
+        }
+        Entry entry = entries.get(appId);
+        if (entry != null) {
+            entry.counts().addAndGet(status.ordinal(), delta);
+        }
+    }
+
+    private Entry entry(Long appId) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(appId);
+        if (entry != null && now - entry.loadedAt() < ttlMillis) {
+            return entry;
+        }
+        AtomicLongArray counts = new AtomicLongArray(STATUSES);
+        for (Map<String, Object> row : cardMapper.countByStatus(appId)) {
+            Object status = column(row, "status");
+            Object cnt = column(row, "cnt");
+            if (status != null && cnt instanceof Number n) {
+                try {
+                    counts.set(CardStatus.valueOf(status.toString()).ordinal(), n.longValue());
+                } catch (IllegalArgumentException ignored) {
+                    // 未知状态不计入
+                }
+            }
+        }
+        entry = new Entry(now, counts);
+        entries.put(appId, entry);
+        return entry;
+    }
+
+    // 不同数据库返回的列名大小写不同
+    private static Object column(Map<String, Object> row, String name) {
+        for (Map.Entry<String, Object> e : row.entrySet()) {
+            if (e.getKey().equalsIgnoreCase(name)) {
+                return e.getValue();
+            }
+        }
+        return null;
+    }
+}
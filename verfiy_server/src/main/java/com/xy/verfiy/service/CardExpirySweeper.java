@@ -0,0 +1,277 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.Card;
+import com.xy.verfiy.domain.CardStatus;
+import com.xy.verfiy.mapper.CardMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 把到期的卡密标记为 EXPIRED
+ *
+ * 原先只有核销时才会顺带改状态，列表中的状态计数因此不准。这里：
+ * - 定时沿 expire_at 索引按 (expire_at, id) 分批向后扫描已到期的卡密，每批一条 UPDATE；扫描位置保存在内存中，
+ *   启动后从头扫描一次，之后只扫描新到期的部分，每隔一段时间再从头扫描一次（补上导入等直接写入的过去时间）；
+ * - 每分钟把未来一小时内到期的卡密装入时间轮（每格一秒），到点即标记并更新状态计数缓存；
+ *   本节点激活的卡密若在一小时内到期也直接放入时间轮。时间轮在单独的调度线程上推进（见 SchedulingConfig），
+ *   不会被整点的全表任务阻塞。
+ * UPDATE 会重新检查到期时间和状态，期间被延长有效期、已被核销或其他节点处理过的卡密不受影响。
+ */
+@Slf4j
+@Service
+public class CardExpirySweeper {
+
+    // 时间轮每格一秒，共一小时
+    private static final long TICK_MILLIS = 1000L;
+    private static final int WHEEL_SLOTS = 3600;
+    // 装入时间轮的间隔
+    private static final long WHEEL_LOAD_INTERVAL_MILLIS = 60_000L;
+
+    private final CardMapper cardMapper;
+    private final CardCountCache cardCountCache;
+
+    @Value("${card-expiry.enabled:true}")
+    private boolean enabled;
+
+    // 每批扫描和标记的行数
+    @Value("${card-expiry.batch-size:1000}")
+    private int batchSize;
+
+    // 每隔多久从头扫描一次
+    @Value("${card-expiry.full-sweep-interval-ms:86400000}")
+    private long fullSweepIntervalMs;
+
+    // 时间轮最多保存的卡密数（超过时剩余的由定时扫描处理）
+    @Value("${card-expiry.wheel-max-entries:200000}")
+    private int wheelMaxEntries;
+
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    // 扫描位置：已处理到的 (expire_at, id)，为空时从头扫描
+    private LocalDateTime sweptExpireAt;
+    private long sweptId;
+    private long fullSweepStartedAt;
+
+    // 每格一个列表，空格为 null
+    private final List<List<Entry>> slots = new ArrayList<>(Collections.nCopies(WHEEL_SLOTS, null));
+    private final Object wheelLock = new Object();
+    // 已处理到的格（整秒都已过去的才处理）
+    private long lastTick = System.currentTimeMillis() / TICK_MILLIS - 1;
+    private int wheelEntries;
+    // 已装入时间轮的位置
+    private LocalDateTime loadedExpireAt;
+    private long loadedId;
+
+    private record Entry(long id, Long appId, CardStatus status, long expireAtMillis) {}
+
+    public CardExpirySweeper(CardMapper cardMapper, CardCountCache cardCountCache) {
+        this.cardMapper = cardMapper;
+        this.cardCountCache = cardCountCache;
+    }
+
+    /**
+     * 卡密激活后调用；一小时内到期的直接放入时间轮
+     */
+    public void activated(Long cardId, Long appId, LocalDateTime expireAt) {
+        if (!enabled || cardId == null || expireAt == null) {
+            return;
+        }
+        schedule(new Entry(cardId, appId, CardStatus.ACTIVATED, toMillis(expireAt)));
+    }
+
+    /**
+     * 沿 expire_at 索引分批标记已到期的卡密
+     */
+    @Scheduled(fixedDelayString = "${card-expiry.sweep-interval-ms:60000}",
+            initialDelayString = "${card-expiry.sweep-interval-ms:60000}",
+            scheduler = "maintenanceScheduler")
+    public void sweep() {
+        if (!enabled || !sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            long startedAt = System.currentTimeMillis();
+            if (sweptExpireAt == null || startedAt - fullSweepStartedAt >= fullSweepIntervalMs) {
+                sweptExpireAt = null;
+                sweptId = 0L;
+                fullSweepStartedAt = startedAt;
+            }
+            LocalDateTime now = LocalDateTime.now();
+            int scanned = 0;
+            int expired = 0;
+            while (true) {
+                List<Card> batch = cardMapper.scanByExpireAt(sweptExpireAt, sweptId, now, batchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                List<Entry> due = new ArrayList<>();
+                for (Card card : batch) {
+                    if (expirable(card.getStatus())) {
+                        due.add(new Entry(card.getId(), card.getAppId(), card.getStatus(), toMillis(card.getExpireAt())));
+                    }
+                }
+                expired += markExpired(due, now);
+                scanned += batch.size();
+                Card last = batch.get(batch.size() - 1);
+                sweptExpireAt = last.getExpireAt();
+                sweptId = last.getId();
+                if (batch.size() < batchSize) {
+                    break;
+                }
+            }
+            if (expired > 0) {
+                log.info("已将 {} 个到期卡密标记为 EXPIRED（扫描 {} 行），耗时 {} ms", expired, scanned,
+                        System.currentTimeMillis() - startedAt);
+            }
+        } catch (RuntimeException e) {
+            log.warn("标记到期卡密失败: {}", e.getMessage());
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    /**
+     * 把未来一小时内到期的卡密装入时间轮
+     */
+    @Scheduled(fixedDelay = WHEEL_LOAD_INTERVAL_MILLIS, initialDelay = 10_000L)
+    public void loadWheel() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime until = now.plusNanos((WHEEL_SLOTS - 1) * TICK_MILLIS * 1_000_000L);
+            if (loadedExpireAt == null || loadedExpireAt.isBefore(now)) {
+                // 只装入之后到期的，已到期的交给定时扫描
+                loadedExpireAt = now;
+                loadedId = Long.MAX_VALUE;
+            }
+            while (true) {
+                List<Card> batch = cardMapper.scanByExpireAt(loadedExpireAt, loadedId, until, batchSize);
+                for (Card card : batch) {
+                    if (expirable(card.getStatus())
+                            && !schedule(new Entry(card.getId(), card.getAppId(), card.getStatus(), toMillis(card.getExpireAt())))) {
+                        return;
+                    }
+                    loadedExpireAt = card.getExpireAt();
+                    loadedId = card.getId();
+                }
+                if (batch.size() < batchSize) {
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("装入到期时间轮失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 时间轮走一格，标记这一秒到期的卡密
+     */
+    @Scheduled(fixedRate = TICK_MILLIS, scheduler = "tickScheduler")
+    public void tick() {
+        if (!enabled) {
+            return;
+        }
+        advance(System.currentTimeMillis());
+    }
+
+    /**
+     * 处理 nowMillis 之前整秒都已过去的格
+     */
+    void advance(long nowMillis) {
+        List<Entry> due = new ArrayList<>();
+        synchronized (wheelLock) {
+            long currentTick = nowMillis / TICK_MILLIS - 1;
+            // 停顿超过一圈时每格只需处理一次
+            long from = Math.max(lastTick + 1, currentTick - WHEEL_SLOTS + 1);
+            for (long t = from; t <= currentTick; t++) {
+                List<Entry> slot = slots.set((int) (t % WHEEL_SLOTS), null);
+                if (slot != null) {
+                    due.addAll(slot);
+                }
+            }
+            lastTick = Math.max(lastTick, currentTick);
+            wheelEntries -= due.size();
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            for (int from = 0; from < due.size(); from += batchSize) {
+                markExpired(due.subList(from, Math.min(due.size(), from + batchSize)), now);
+            }
+        } catch (RuntimeException e) {
+            // 没标记上的由定时扫描处理
+            log.warn("标记到期卡密失败: {}", e.getMessage());
+        }
+    }
+
+    private boolean schedule(Entry entry) {
+        synchronized (wheelLock) {
+            long tick = Math.max(entry.expireAtMillis() / TICK_MILLIS, lastTick + 1);
+            if (tick >= lastTick + WHEEL_SLOTS) {
+                return true;
+            }
+            if (wheelEntries >= wheelMaxEntries) {
+                return false;
+            }
+            int index = (int) (tick % WHEEL_SLOTS);
+            List<Entry> slot = slots.get(index);
+            if (slot == null) {
+                slot = new ArrayList<>();
+                slots.set(index, slot);
+            }
+            slot.add(entry);
+            wheelEntries++;
+            return true;
+        }
+    }
+
+    /**
+     * 一条 UPDATE 标记一批卡密；全部标记成功时逐个调整状态计数，否则让相关应用的计数重新统计
+     */
+    private int markExpired(List<Entry> entries, LocalDateTime now) {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            ids.add(entry.id());
+        }
+        int updated = cardMapper.markExpiredByIds(ids, now);
+        if (updated == entries.size()) {
+            for (Entry entry : entries) {
+                cardCountCache.changed(entry.appId(), entry.status() != null ? entry.status() : CardStatus.NEW,
+                        CardStatus.EXPIRED);
+            }
+        } else if (updated > 0) {
+            Set<Long> apps = new HashSet<>();
+            for (Entry entry : entries) {
+                if (entry.appId() != null && apps.add(entry.appId())) {
+                    cardCountCache.invalidate(entry.appId());
+                }
+            }
+        }
+        return updated;
+    }
+
+    private static boolean expirable(CardStatus status) {
+        return status == null || status == CardStatus.NEW || status == CardStatus.ACTIVATED || status == CardStatus.USED;
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
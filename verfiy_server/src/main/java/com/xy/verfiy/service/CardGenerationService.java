@@ -0,0 +1,441 @@
+package com.xy.verfiy.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.xy.verfiy.domain.Card;
+import com.xy.verfiy.domain.CardGenerateJob;
+import com.xy.verfiy.domain.CardStatus;
+import com.xy.verfiy.mapper.CardMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigInteger;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量生成卡密
+ *
+ * 按固定大小分块流水线处理：多个线程各用独立的 SecureRandom 并行生成下一块，同时当前块在本线程内
+ * 用基本类型哈希集合去重后以 INSERT IGNORE 写入；与已有卡密冲突被忽略的行数重新生成补足，
+ * 因此单条冲突不会导致整批失败，单条 SQL 的大小也不随数量增长。
+ * 数量较多时作为后台任务执行，调用方通过任务编号查询进度。
+ */
+@Slf4j
+@Service
+public class CardGenerationService {
+
+    // 与 CardBatchService 使用的字符集一致
+    private static final String ALPHABET = CardBatchService.ALPHABET;
+    private static final int DEFAULT_LENGTH = 16;
+    // 与 card.card_code 列长度一致
+    private static final int MAX_CODE_LENGTH = 128;
+    // 每个线程每次至少生成的卡密数
+    private static final int MIN_SLICE = 256;
+    // 连续多少轮一条都没写入时放弃（格式随机位太少，几乎都与已有卡密重复）
+    private static final int MAX_STALLED_ROUNDS = 5;
+    // 已结束任务的保留时长
+    private static final long FINISHED_RETENTION_MINUTES = 60;
+
+    private final CardMapper cardMapper;
+    private final CardCodeFilter cardCodeFilter;
+    private final CardCountCache cardCountCache;
+
+    // 每条 INSERT 写入的行数
+    @Value("${card-generate.chunk-size:2000}")
+    private int chunkSize;
+
+    // 单次生成的最大数量
+    @Value("${card-generate.max-count:1000000}")
+    private int maxCount;
+
+    // 超过该数量时转为后台任务
+    @Value("${card-generate.sync-threshold:1000}")
+    private int syncThreshold;
+
+    // 同时排队和执行的后台任务上限
+    @Value("${card-generate.max-pending-jobs:8}")
+    private int maxPendingJobs;
+
+    private final ExecutorService generators;
+    // 生成线程数（card-generate.threads，未配置时为 CPU 核数），单块拆分的份数不超过它
+    private final int generatorThreads;
+    private final ExecutorService jobRunner;
+    private final Map<String, CardGenerateJob> jobs = new ConcurrentHashMap<>();
+    private final ThreadLocal<SecureRandom> randoms = ThreadLocal.withInitial(CardGenerationService::newRandom);
+
+    public CardGenerationService(CardMapper cardMapper, CardCodeFilter cardCodeFilter, CardCountCache cardCountCache,
+                                 @Value("${card-generate.threads:0}") int threads,
+                                 @Value("${card-generate.max-running-jobs:2}") int maxRunningJobs) {
+        this.cardMapper = cardMapper;
+        this.cardCodeFilter = cardCodeFilter;
+        this.cardCountCache = cardCountCache;
+        this.generatorThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger generatorIds = new AtomicInteger();
+        this.generators = Executors.newFixedThreadPool(generatorThreads, r -> {
+            Thread t = new Thread(r, "card-generate-" + generatorIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger jobIds = new AtomicInteger();
+        this.jobRunner = Executors.newFixedThreadPool(Math.max(1, maxRunningJobs), r -> {
+            Thread t = new Thread(r, "card-generate-job-" + jobIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 生成参数
+     * @param metadata 拥有时长（JSON，同 card.metadata）
+     */
+    public record GenerateSpec(Long appId, String prefix, String suffix, String formatPattern, int count,
+                               String metadata, Integer maxMachines) {
+    }
+
+    /**
+     * 拆好的卡密格式：head + 格式（x 替换为随机字符）+ tail
+     */
+    private record CodeShape(String head, char[] template, int[] randomPositions, String tail) {
+        int length() {
+            return head.length() + template.length + tail.length();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobRunner.shutdownNow();
+        generators.shutdownNow();
+    }
+
+    /**
+     * 在当前线程生成
+     * @return 写入的卡密数
+     */
+    public int generate(GenerateSpec spec) {
+        CodeShape shape = validate(spec);
+        return run(spec, shape, null);
+    }
+
+    /**
+     * 提交生成任务：数量不超过同步阈值时直接生成，返回的任务已结束；否则在后台执行
+     */
+    public CardGenerateJob submit(GenerateSpec spec) {
+        CodeShape shape = validate(spec);
+        CardGenerateJob job = new CardGenerateJob();
+        job.setJobId(UUID.randomUUID().toString().replace("-", ""));
+        job.setAppId(spec.appId());
+        job.setRequested(spec.count());
+        job.setCreatedAt(LocalDateTime.now());
+        if (spec.count() <= syncThreshold) {
+            job.setStatus("RUNNING");
+            execute(spec, shape, job);
+            return job;
+        }
+        purgeFinished();
+        long pending = jobs.values().stream().filter(j -> j.getFinishedAt() == null).count();
+        if (pending >= maxPendingJobs) {
+            throw new IllegalStateException("生成任务过多，请稍后再试");
+        }
+        job.setStatus("PENDING");
+        jobs.put(job.getJobId(), job);
+        jobRunner.execute(() -> {
+            job.setStatus("RUNNING");
+            execute(spec, shape, job);
+        });
+        log.info("提交后台生成卡密任务 {}：应用 {}，{} 张", job.getJobId(), spec.appId(), spec.count());
+        return job;
+    }
+
+    public CardGenerateJob getJob(String jobId) {
+        return jobId != null ? jobs.get(jobId) : null;
+    }
+
+    private void execute(GenerateSpec spec, CodeShape shape, CardGenerateJob job) {
+        try {
+            run(spec, shape, job);
+            job.setStatus("SUCCESS");
+        } catch (RuntimeException e) {
+            job.setStatus("FAILED");
+            job.setMessage(e.getMessage());
+            log.warn("生成卡密任务 {} 失败（已写入 {} 张）: {}", job.getJobId(), job.getGenerated(), e.getMessage());
+        } finally {
+            job.setFinishedAt(LocalDateTime.now());
+        }
+    }
+
+    private int run(GenerateSpec spec, CodeShape shape, CardGenerateJob job) {
+        int count = spec.count();
+        int inserted = 0;
+        CompletableFuture<String[]> next = generateAsync(shape, Math.min(chunkSize, count));
+        while (next != null) {
+            String[] codes = join(next);
+            // 写入当前块的同时生成下一块
+            int remaining = count - inserted - codes.length;
+            next = remaining > 0 ? generateAsync(shape, Math.min(chunkSize, remaining)) : null;
+            inserted += insertChunk(spec, shape, codes);
+            if (job != null) {
+                job.setGenerated(inserted);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IllegalStateException("生成任务被中断");
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * 写入一块卡密：块内去重，与已有卡密冲突的由新生成的补足
+     */
+    private int insertChunk(GenerateSpec spec, CodeShape shape, String[] codes) {
+        LongHashSet seen = new LongHashSet(codes.length * 2);
+        List<String> pending = new ArrayList<>(codes.length);
+        for (String code : codes) {
+            if (seen.add(hash(code))) {
+                pending.add(code);
+            }
+        }
+        int target = codes.length;
+        int done = 0;
+        int stalled = 0;
+        while (true) {
+            int n = pending.isEmpty() ? 0 : insertIgnore(spec, pending);
+            done += n;
+            if (done >= target) {
+                return done;
+            }
+            stalled = n == 0 ? stalled + 1 : 0;
+            if (stalled >= MAX_STALLED_ROUNDS) {
+                throw new IllegalStateException("生成的卡密与已有卡密重复过多，请增加格式中的随机位（x）");
+            }
+            pending = new ArrayList<>(target - done);
+            SecureRandom random = randoms.get();
+            while (pending.size() < target - done) {
+                String code = newCode(shape, random);
+                if (seen.add(hash(code))) {
+                    pending.add(code);
+                }
+            }
+        }
+    }
+
+    private int insertIgnore(GenerateSpec spec, List<String> codes) {
+        List<Card> cards = new ArrayList<>(codes.size());
+        for (String code : codes) {
+            Card card = new Card();
+            card.setAppId(spec.appId());
+            card.setCardCode(code);
+            card.setStatus(CardStatus.NEW);
+            card.setExpireAt(null); // 激活后再设置
+            card.setDisabled(false);
+            card.setMaxMachines(spec.maxMachines());
+            card.setMetadata(spec.metadata());
+            cards.add(card);
+        }
+        // 布隆过滤器必须在写入数据库之前更新；被忽略的重复卡密本来就存在
+        cardCodeFilter.addAll(codes);
+        int n = cardMapper.insertIgnoreBatch(cards);
+        cardCountCache.added(spec.appId(), CardStatus.NEW, n);
+        return n;
+    }
+
+    /**
+     * 把一块卡密拆给多个线程并行生成
+     */
+    private CompletableFuture<String[]> generateAsync(CodeShape shape, int n) {
+        int parallelism = Math.max(1, Math.min(n / MIN_SLICE, generatorThreads));
+        List<CompletableFuture<String[]>> slices = new ArrayList<>(parallelism);
+        for (int i = 0; i < parallelism; i++) {
+            int from = (int) ((long) n * i / parallelism);
+            int to = (int) ((long) n * (i + 1) / parallelism);
+            slices.add(CompletableFuture.supplyAsync(() -> {
+                SecureRandom random = randoms.get();
+                String[] codes = new String[to - from];
+                for (int j = 0; j < codes.length; j++) {
+                    codes[j] = newCode(shape, random);
+                }
+                return codes;
+            }, generators));
+        }
+        CompletableFuture<?>[] pending = slices.toArray(CompletableFuture<?>[]::new);
+        return CompletableFuture.allOf(pending).thenApply(ignored -> {
+            String[] all = new String[n];
+            int offset = 0;
+            for (CompletableFuture<String[]> slice : slices) {
+                String[] part = slice.join();
+                System.arraycopy(part, 0, all, offset, part.length);
+                offset += part.length;
+            }
+            return all;
+        });
+    }
+
+    private static String[] join(CompletableFuture<String[]> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("生成任务被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("生成卡密失败: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private CodeShape validate(GenerateSpec spec) {
+        if (spec.count() <= 0 || spec.count() > maxCount) {
+            throw new IllegalArgumentException("生成数量必须在 1 到 " + maxCount + " 之间");
+        }
+        String pattern = spec.formatPattern();
+        char[] template;
+        if (pattern == null || pattern.isBlank()) {
+            template = new char[DEFAULT_LENGTH];
+            Arrays.fill(template, 'X');
+        } else {
+            template = pattern.toCharArray();
+        }
+        int[] positions = new int[template.length];
+        int n = 0;
+        for (int i = 0; i < template.length; i++) {
+            if (template[i] == 'x' || template[i] == 'X') {
+                positions[n++] = i;
+            }
+        }
+        // 与原有格式一致：前缀-格式-后缀
+        String head = spec.prefix() != null && !spec.prefix().isBlank() ? spec.prefix().trim() + "-" : "";
+        String tail = spec.suffix() != null && !spec.suffix().isBlank() ? "-" + spec.suffix().trim() : "";
+        CodeShape shape = new CodeShape(head, template, Arrays.copyOf(positions, n), tail);
+        if (shape.length() > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("卡密长度不能超过 " + MAX_CODE_LENGTH + " 个字符");
+        }
+        // 可能的卡密数至少为生成数量的 4 倍，否则重复太多
+        BigInteger space = BigInteger.valueOf(ALPHABET.length()).pow(n);
+        if (space.compareTo(BigInteger.valueOf(spec.count()).shiftLeft(2)) < 0) {
+            throw new IllegalArgumentException("格式中的随机位（x）不足以生成 " + spec.count() + " 张不重复的卡密");
+        }
+        return shape;
+    }
+
+    // 规则变更：到期时间 = 激活时间 + 拥有时长
+    // 因此生成时不再预先写入 expireAt，而是把拥有时长写入 metadata，激活时再计算
+    public static String expireMetadata(Integer expireValue, String expireUnit) {
+        try {
+            if (expireUnit != null && !"".equals(expireUnit)) {
+                ObjectMapper om = new ObjectMapper();
+                ObjectNode node = om.createObjectNode();
+                if (expireValue != null) node.put("expireValue", expireValue);
+                node.put("expireUnit", expireUnit);
+                return om.writeValueAsString(node);
+            }
+        } catch (Exception ignored) {}
+        return null;
+    }
+
+    /**
+     * 按格式生成一个卡密；随机字节用拒绝采样映射到字符集，保证每个字符等概率
+     */
+    private static String newCode(CodeShape shape, SecureRandom random) {
+        char[] core = shape.template().clone();
+        int[] positions = shape.randomPositions();
+        byte[] bytes = new byte[positions.length + 8];
+        int used = bytes.length;
+        int limit = 256 - 256 % ALPHABET.length();
+        for (int position : positions) {
+            int b;
+            do {
+                if (used == bytes.length) {
+                    random.nextBytes(bytes);
+                    used = 0;
+                }
+                b = bytes[used++] & 0xff;
+            } while (b >= limit);
+            core[position] = ALPHABET.charAt(b % ALPHABET.length());
+        }
+        return shape.head() + new String(core) + shape.tail();
+    }
+
+    /**
+     * 每个生成线程一个独立的 DRBG 实例，避免共享同一个 SecureRandom 的锁竞争
+     */
+    private static SecureRandom newRandom() {
+        try {
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    /**
+     * 去重用的 64 位哈希（与数据库排序规则一致，不区分大小写）
+     */
+    private static long hash(String code) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < code.length(); i++) {
+            h = (h ^ Character.toUpperCase(code.charAt(i))) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h != 0L ? h : 1L;
+    }
+
+    private void purgeFinished() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(FINISHED_RETENTION_MINUTES);
+        jobs.values().removeIf(j -> j.getFinishedAt() != null && j.getFinishedAt().isBefore(cutoff));
+    }
+
+    /**
+     * 开放寻址的 long 集合（0 表示空槽）
+     */
+    private static final class LongHashSet {
+        private long[] table;
+        private int size;
+
+        LongHashSet(int expected) {
+            this.table = new long[Integer.highestOneBit(Math.max(16, expected) - 1) << 1];
+        }
+
+        boolean add(long value) {
+            if ((size + 1) * 2 > table.length) {
+                long[] old = table;
+                table = new long[old.length * 2];
+                for (long v : old) {
+                    if (v != 0L) {
+                        insert(v);
+                    }
+                }
+            }
+            if (!insert(value)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+
+        private boolean insert(long value) {
+            int mask = table.length - 1;
+            int i = (int) (value ^ (value >>> 32)) & mask;
+            while (table[i] != 0L) {
+                if (table[i] == value) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            table[i] = value;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package com.xy.verfiy.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xy.verfiy.domain.Card;
+import com.xy.verfiy.domain.CardImportJob;
+import com.xy.verfiy.domain.CardStatus;
+import com.xy.verfiy.mapper.CardMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 从 CSV 导入卡密
+ *
+ * 逐行流式读取，按固定行数分块写入：每块先查出已存在的卡密并跳过，其余以 INSERT IGNORE 写入，
+ * 内存占用只与块大小有关。文件格式错误时，出错位置之前已解析的行照常写入（只写一次），之后的行不再处理。
+ * 每一行的结果（导入 / 跳过 / 失败及原因）写入临时文件中的 CSV 报告，可下载查看。
+ * 上传文件先保存为临时文件，导入在后台执行，通过任务编号查询进度。
+ *
+ * 列名不区分大小写，下划线可省略：
+ * code（或 cardCode，必填）、expireValue + expireUnit（拥有时长，激活时计算到期时间）、
+ * expireAt（固定到期时间）、maxMachines、extra（JSON）、returnExtra
+ */
+@Slf4j
+@Service
+public class CardImportService {
+
+    private static final int MAX_CODE_LENGTH = 128;
+    private static final Set<String> EXPIRE_UNITS = Set.of("MINUTES", "HOURS", "DAYS", "MONTHS", "QUARTERS", "YEARS", "FOREVER");
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm[:ss]");
+    // 已结束任务（及其报告文件）的保留时长
+    private static final long FINISHED_RETENTION_MINUTES = 60;
+
+    private final CardMapper cardMapper;
+    private final CardCodeFilter cardCodeFilter;
+    private final CardCountCache cardCountCache;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // 每块的行数
+    @Value("${card-import.chunk-size:1000}")
+    private int chunkSize;
+
+    // 同时排队和执行的导入任务上限
+    @Value("${card-import.max-pending-jobs:4}")
+    private int maxPendingJobs;
+
+    private final ExecutorService jobRunner;
+    private final Map<String, CardImportJob> jobs = new ConcurrentHashMap<>();
+
+    public CardImportService(CardMapper cardMapper, CardCodeFilter cardCodeFilter, CardCountCache cardCountCache,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${card-import.max-running-jobs:1}") int maxRunningJobs) {
+        this.cardMapper = cardMapper;
+        this.cardCodeFilter = cardCodeFilter;
+        this.cardCountCache = cardCountCache;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        AtomicInteger ids = new AtomicInteger();
+        this.jobRunner = Executors.newFixedThreadPool(Math.max(1, maxRunningJobs), r -> {
+            Thread t = new Thread(r, "card-import-" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 一行数据
+     * @param row 数据行号（不含表头，从 1 开始）
+     * @param error 数据不合法的原因，合法时为 null
+     */
+    private record Row(long row, String code, Card card, String error) {
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobRunner.shutdownNow();
+        for (CardImportJob job : jobs.values()) {
+            deleteQuietly(job.getReportFile());
+        }
+    }
+
+    /**
+     * 保存上传文件后在后台导入
+     */
+    public CardImportJob submit(Long appId, InputStream in) throws IOException {
+        purgeFinished();
+        long pending = jobs.values().stream().filter(j -> j.getFinishedAt() == null).count();
+        if (pending >= maxPendingJobs) {
+            throw new IllegalStateException("导入任务过多，请稍后再试");
+        }
+        Path upload = Files.createTempFile("card-import-", ".csv");
+        Path report;
+        try {
+            Files.copy(in, upload, StandardCopyOption.REPLACE_EXISTING);
+            report = Files.createTempFile("card-import-report-", ".csv");
+        } catch (IOException e) {
+            deleteQuietly(upload);
+            throw e;
+        }
+        CardImportJob job = newJob(appId, Files.size(upload));
+        job.setReportFile(report);
+        job.setStatus("PENDING");
+        jobs.put(job.getJobId(), job);
+        jobRunner.execute(() -> {
+            job.setStatus("RUNNING");
+            try (InputStream file = Files.newInputStream(upload);
+                 Writer writer = Files.newBufferedWriter(report, StandardCharsets.UTF_8)) {
+                run(job, file, writer);
+            } catch (IOException e) {
+                fail(job, "读取上传文件失败: " + e.getMessage());
+            } finally {
+                deleteQuietly(upload);
+                job.setFinishedAt(LocalDateTime.now());
+            }
+            log.info("导入卡密任务 {} 结束：{}，导入 {}，跳过 {}，失败 {}", job.getJobId(), job.getStatus(),
+                    job.getImported(), job.getSkipped(), job.getFailed());
+        });
+        log.info("提交导入卡密任务 {}：应用 {}，{} 字节", job.getJobId(), appId, job.getTotalBytes());
+        return job;
+    }
+
+    public CardImportJob getJob(String jobId) {
+        return jobId != null ? jobs.get(jobId) : null;
+    }
+
+    private CardImportJob newJob(Long appId, long totalBytes) {
+        CardImportJob job = new CardImportJob();
+        job.setJobId(UUID.randomUUID().toString().replace("-", ""));
+        job.setAppId(appId);
+        job.setTotalBytes(totalBytes);
+        job.setCreatedAt(LocalDateTime.now());
+        job.setStatus("RUNNING");
+        return job;
+    }
+
+    private void run(CardImportJob job, InputStream in, Writer reportWriter) {
+        CountingInputStream counting = new CountingInputStream(in);
+        try (CSVParser parser = CSVFormat.Builder.create(CSVFormat.DEFAULT)
+                     .setHeader()
+                     .setSkipHeaderRecord(true)
+                     .setIgnoreEmptyLines(true)
+                     .setTrim(true)
+                     .build()
+                     .parse(new BufferedReader(new InputStreamReader(counting, StandardCharsets.UTF_8)));
+             CSVPrinter report = new CSVPrinter(reportWriter, CSVFormat.Builder.create(CSVFormat.DEFAULT)
+                     .setHeader("row", "code", "result", "message")
+                     .build())) {
+            Map<String, Integer> columns = columns(parser.getHeaderNames());
+            Integer codeColumn = columns.get("code");
+            if (codeColumn == null) {
+                codeColumn = columns.get("cardcode");
+            }
+            if (codeColumn == null) {
+                fail(job, "CSV 缺少 code 列");
+                return;
+            }
+            List<Row> chunk = new ArrayList<>(chunkSize);
+            long row = 0;
+            Iterator<CSVRecord> records = parser.iterator();
+            RuntimeException parseError = null;
+            while (true) {
+                CSVRecord record;
+                try {
+                    if (!records.hasNext()) {
+                        break;
+                    }
+                    record = records.next();
+                } catch (UncheckedIOException | IllegalStateException e) {
+                    // 只有读取 CSV 的异常走这里；写入失败直接结束任务，不会把同一块再写一次
+                    parseError = e;
+                    break;
+                }
+                row++;
+                String code = get(record, codeColumn);
+                try {
+                    chunk.add(new Row(row, code, toCard(job.getAppId(), code, record, columns), null));
+                } catch (IllegalArgumentException e) {
+                    chunk.add(new Row(row, code, null, e.getMessage()));
+                }
+                if (chunk.size() >= chunkSize) {
+                    writeChunk(job, chunk, report);
+                    chunk.clear();
+                    job.setReadBytes(counting.count);
+                }
+            }
+            // 文件格式错误时，出错位置之前已解析的行照常导入
+            writeChunk(job, chunk, report);
+            report.flush();
+            job.setReadBytes(counting.count);
+            if (parseError != null) {
+                throw parseError;
+            }
+            job.setStatus("SUCCESS");
+        } catch (IOException | UncheckedIOException | IllegalStateException e) {
+            fail(job, "解析 CSV 失败（已处理 " + job.getProcessed() + " 行）: " + e.getMessage());
+        } catch (RuntimeException e) {
+            fail(job, "导入失败（已处理 " + job.getProcessed() + " 行）: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 写入一块：块内重复和数据库中已存在的卡密跳过，其余写入；报告按行号顺序输出
+     */
+    private void writeChunk(CardImportJob job, List<Row> chunk, CSVPrinter report) throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<String> codes = new ArrayList<>(chunk.size());
+        for (Row r : chunk) {
+            if (r.card() != null) {
+                codes.add(r.card().getCardCode());
+            }
+        }
+        // 数据库排序规则不区分大小写、忽略尾部空格
+        Set<String> existing = new HashSet<>();
+        if (!codes.isEmpty()) {
+            for (String code : cardMapper.findExistingCodes(codes)) {
+                existing.add(normalize(code));
+            }
+        }
+        Set<String> seen = new HashSet<>();
+        String[] results = new String[chunk.size()];
+        List<Card> toInsert = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            Row r = chunk.get(i);
+            if (r.card() == null) {
+                continue;
+            }
+            String key = normalize(r.code());
+            if (existing.contains(key)) {
+                results[i] = "卡密已存在";
+            } else if (!seen.add(key)) {
+                results[i] = "与文件中前面的行重复";
+            } else {
+                toInsert.add(r.card());
+            }
+        }
+        boolean[] inserted = new boolean[0];
+        int n = 0;
+        if (!toInsert.isEmpty()) {
+            cardCodeFilter.addAll(toInsert.stream().map(Card::getCardCode).toList());
+            inserted = insertIgnore(toInsert);
+            for (boolean b : inserted) {
+                n += b ? 1 : 0;
+            }
+            cardCountCache.added(job.getAppId(), CardStatus.NEW, n);
+        }
+        int k = 0;
+        for (int i = 0; i < chunk.size(); i++) {
+            Row r = chunk.get(i);
+            if (r.error() != null) {
+                report.printRecord(r.row(), r.code(), "失败", r.error());
+                job.setFailed(job.getFailed() + 1);
+            } else if (results[i] != null) {
+                report.printRecord(r.row(), r.code(), "跳过", results[i]);
+                job.setSkipped(job.getSkipped() + 1);
+            } else if (!inserted[k++]) {
+                report.printRecord(r.row(), r.code(), "跳过", "卡密已存在（导入期间被其他操作写入）");
+                job.setSkipped(job.getSkipped() + 1);
+            } else {
+                report.printRecord(r.row(), r.code(), "导入", "");
+            }
+        }
+        job.setImported(job.getImported() + n);
+        job.setProcessed(job.getProcessed() + chunk.size());
+    }
+
+    /**
+     * INSERT IGNORE 写入一块，返回每行是否写入
+     *
+     * 整块的影响行数等于行数时直接提交；否则说明查询之后有其他操作写入了相同的卡密，
+     * 回滚后逐行写入，按每行的影响行数确定哪些行被忽略。
+     */
+    private boolean[] insertIgnore(List<Card> cards) {
+        boolean[] inserted = new boolean[cards.size()];
+        Boolean complete = transactionTemplate.execute(status -> {
+            if (cardMapper.insertIgnoreBatch(cards) == cards.size()) {
+                return true;
+            }
+            status.setRollbackOnly();
+            return false;
+        });
+        if (Boolean.TRUE.equals(complete)) {
+            Arrays.fill(inserted, true);
+            return inserted;
+        }
+        for (int i = 0; i < cards.size(); i++) {
+            inserted[i] = cardMapper.insertIgnoreBatch(List.of(cards.get(i))) == 1;
+        }
+        return inserted;
+    }
+
+    private Card toCard(Long appId, String code, CSVRecord record, Map<String, Integer> columns) {
+        if (code == null || code.isEmpty()) {
+            throw new IllegalArgumentException("卡密为空");
+        }
+        if (code.length() > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("卡密长度不能超过 " + MAX_CODE_LENGTH + " 个字符");
+        }
+        Card card = new Card();
+        card.setAppId(appId);
+        card.setCardCode(code);
+        card.setStatus(CardStatus.NEW);
+        card.setDisabled(false);
+
+        String expireUnit = get(record, columns.get("expireunit"));
+        String expireValue = get(record, columns.get("expirevalue"));
+        if (expireUnit != null && !expireUnit.isEmpty()) {
+            String unit = expireUnit.toUpperCase(Locale.ROOT);
+            if (!EXPIRE_UNITS.contains(unit)) {
+                throw new IllegalArgumentException("无效的时长单位: " + expireUnit);
+            }
+            Integer value = null;
+            if (expireValue != null && !expireValue.isEmpty()) {
+                value = parsePositiveInt(expireValue, "拥有时长");
+            } else if (!"FOREVER".equals(unit)) {
+                throw new IllegalArgumentException("缺少拥有时长（expireValue）");
+            }
+            card.setMetadata(CardGenerationService.expireMetadata(value, unit));
+        } else if (expireValue != null && !expireValue.isEmpty()) {
+            throw new IllegalArgumentException("缺少时长单位（expireUnit）");
+        }
+
+        String expireAt = get(record, columns.get("expireat"));
+        if (expireAt != null && !expireAt.isEmpty()) {
+            card.setExpireAt(parseDateTime(expireAt));
+        }
+
+        String maxMachines = get(record, columns.get("maxmachines"));
+        if (maxMachines != null && !maxMachines.isEmpty()) {
+            card.setMaxMachines(parsePositiveInt(maxMachines, "最大机器数"));
+        }
+
+        String extra = get(record, columns.get("extra"));
+        if (extra != null && !extra.isEmpty()) {
+            try {
+                JsonNode node = objectMapper.readTree(extra);
+                if (!node.isObject()) {
+                    throw new IllegalArgumentException("附加信息必须是 JSON 对象");
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException("附加信息不是合法的 JSON");
+            }
+            card.setExtra(extra);
+        }
+        String returnExtra = get(record, columns.get("returnextra"));
+        card.setReturnExtra("true".equalsIgnoreCase(returnExtra) || "1".equals(returnExtra));
+        return card;
+    }
+
+    private static Map<String, Integer> columns(List<String> headers) {
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.get(i);
+            if (name != null) {
+                // 兼容 UTF-8 BOM 和 snake_case 列名
+                columns.putIfAbsent(name.replace("\uFEFF", "").replace("_", "").trim().toLowerCase(Locale.ROOT), i);
+            }
+        }
+        return columns;
+    }
+
+    private static String get(CSVRecord record, Integer column) {
+        return column != null && column < record.size() ? record.get(column) : null;
+    }
+
+    private static int parsePositiveInt(String value, String name) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n <= 0) {
+                throw new IllegalArgumentException(name + "必须大于 0");
+            }
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + "不是有效的整数: " + value);
+        }
+    }
+
+    private static LocalDateTime parseDateTime(String value) {
+        try {
+            if (value.length() == 10) {
+                return LocalDate.parse(value).atStartOfDay();
+            }
+            return value.indexOf('T') > 0 ? LocalDateTime.parse(value) : LocalDateTime.parse(value, DATE_TIME);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("到期时间格式错误（应为 yyyy-MM-dd HH:mm:ss）: " + value);
+        }
+    }
+
+    private static String normalize(String code) {
+        int end = code.length();
+        while (end > 0 && code.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return code.substring(0, end).toUpperCase(Locale.ROOT);
+    }
+
+    private static void fail(CardImportJob job, String message) {
+        job.setStatus("FAILED");
+        job.setMessage(message);
+        log.warn("导入卡密任务 {} 失败: {}", job.getJobId(), message);
+    }
+
+    private void purgeFinished() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(FINISHED_RETENTION_MINUTES);
+        jobs.values().removeIf(j -> {
+            if (j.getFinishedAt() != null && j.getFinishedAt().isBefore(cutoff)) {
+                deleteQuietly(j.getReportFile());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("删除临时文件失败: {}", path);
+        }
+    }
+
+    /**
+     * 统计已读取的字节数
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private volatile long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.CardUseLog;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 读取 {@link CardLogArchiveWriter} 写出的归档文件（格式见该类）
+ */
+final class CardLogArchiveReader implements Closeable {
+
+    private static final byte[] MAGIC = {'V', 'L', 'O', 'G', 1};
+    // 单块行数上限，防止损坏的文件导致分配过大的数组
+    private static final int MAX_BLOCK_ROWS = 1 << 20;
+
+    private final DataInputStream in;
+    private boolean finished;
+
+    CardLogArchiveReader(Path file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file), 65536), 65536));
+        byte[] magic = new byte[MAGIC.length];
+        try {
+            in.readFully(magic);
+        } catch (EOFException e) {
+            in.close();
+            throw new IOException("不是使用日志归档文件: " + file);
+        }
+        if (!Arrays.equals(magic, MAGIC)) {
+            in.close();
+            throw new IOException("不是使用日志归档文件或版本不支持: " + file);
+        }
+    }
+
+    /**
+     * 读取下一块
+     * @return 已读到结束标记时返回 null；文件被截断时抛出 EOFException
+     */
+    List<CardUseLog> next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        long count = readVarLong();
+        if (count == 0) {
+            finished = true;
+            return null;
+        }
+        if (count < 0 || count > MAX_BLOCK_ROWS) {
+            throw new IOException("归档文件已损坏（块行数 " + count + "）");
+        }
+        List<CardUseLog> logs = new ArrayList<>((int) count);
+        long id = 0L;
+        for (int i = 0; i < count; i++) {
+            id += readVarLong();
+            CardUseLog log = new CardUseLog();
+            log.setId(id);
+            logs.add(log);
+        }
+        for (CardUseLog log : logs) {
+            long cardId = readVarLong();
+            log.setCardId(cardId != 0L ? cardId : null);
+        }
+        long second = 0L;
+        for (CardUseLog log : logs) {
+            long zigzag = readVarLong();
+            second += (zigzag >>> 1) ^ -(zigzag & 1);
+            log.setCreatedAt(second != 0L
+                    ? LocalDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.systemDefault()) : null);
+        }
+        readColumn(logs, CardUseLog::setCardCode);
+        readColumn(logs, CardUseLog::setAction);
+        readColumn(logs, CardUseLog::setRequestIp);
+        readColumn(logs, CardUseLog::setRequestUser);
+        readColumn(logs, CardUseLog::setRemark);
+        return logs;
+    }
+
+    /**
+     * 读完整个文件并返回行数；文件不完整或损坏时抛出 IOException
+     */
+    static long countRows(Path file) throws IOException {
+        long rows = 0L;
+        try (CardLogArchiveReader reader = new CardLogArchiveReader(file)) {
+            List<CardUseLog> block;
+            while ((block = reader.next()) != null) {
+                rows += block.size();
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void readColumn(List<CardUseLog> logs, BiConsumer<CardUseLog, String> column) throws IOException {
+        for (CardUseLog log : logs) {
+            long length = readVarLong();
+            if (length == 0L) {
+                column.accept(log, null);
+                continue;
+            }
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("归档文件已损坏（字段长度 " + length + "）");
+            }
+            byte[] bytes = new byte[(int) (length - 1)];
+            in.readFully(bytes);
+            column.accept(log, new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("归档文件已损坏（varint 过长）");
+    }
+}
@@ -0,0 +1,102 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.CardUseLog;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 使用日志归档文件（gzip 压缩、按块分列存放）
+ *
+ * 文件格式：魔数 "VLOG" + 版本号（1 字节），之后是若干块，以行数为 0 的块结束。每块：
+ * - 行数（varint）
+ * - id：第一个为 varint，之后为与前一个的差值（varint，id 递增）
+ * - card_id：varint
+ * - created_at：epoch 秒，与前一个的差值（zigzag varint），第一个与 0 比较；为空时记为 0
+ * - card_code、action、request_ip、request_user、remark：逐列存放，每个值为 长度+1（varint，0 表示空）+ UTF-8
+ * 同一列的值放在一起，重复的动作、IP 等压缩效果比逐行存放好得多。
+ */
+final class CardLogArchiveWriter implements Closeable {
+
+    private static final byte[] MAGIC = {'V', 'L', 'O', 'G', 1};
+
+    private final DataOutputStream out;
+    private long rows;
+
+    CardLogArchiveWriter(Path file) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file), 65536), 65536));
+        out.write(MAGIC);
+    }
+
+    /**
+     * 写入一块（按 id 升序）
+     */
+    void write(List<CardUseLog> logs) throws IOException {
+        if (logs.isEmpty()) {
+            return;
+        }
+        writeVarLong(logs.size());
+        long prevId = 0L;
+        for (CardUseLog log : logs) {
+            writeVarLong(log.getId() - prevId);
+            prevId = log.getId();
+        }
+        for (CardUseLog log : logs) {
+            writeVarLong(log.getCardId() != null ? log.getCardId() : 0L);
+        }
+        long prevSecond = 0L;
+        for (CardUseLog log : logs) {
+            long second = log.getCreatedAt() != null
+                    ? log.getCreatedAt().atZone(ZoneId.systemDefault()).toEpochSecond() : 0L;
+            long delta = second - prevSecond;
+            writeVarLong((delta << 1) ^ (delta >> 63));
+            prevSecond = second;
+        }
+        writeColumn(logs, CardUseLog::getCardCode);
+        writeColumn(logs, CardUseLog::getAction);
+        writeColumn(logs, CardUseLog::getRequestIp);
+        writeColumn(logs, CardUseLog::getRequestUser);
+        writeColumn(logs, CardUseLog::getRemark);
+        rows += logs.size();
+    }
+
+    long rows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeVarLong(0L);
+        out.close();
+    }
+
+    private void writeColumn(List<CardUseLog> logs, Function<CardUseLog, String> column) throws IOException {
+        for (CardUseLog log : logs) {
+            String value = column.apply(log);
+            if (value == null) {
+                writeVarLong(0L);
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarLong(bytes.length + 1L);
+                out.write(bytes);
+            }
+        }
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -0,0 +1,234 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.CardUseLog;
+import com.xy.verfiy.mapper.CardUseLogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 卡密使用日志的保留期限
+ *
+ * card_use_log 在 MySQL 上按月分区（pYYYYMM，外加 pmax）。定时任务：
+ * - 提前拆出之后几个月的分区；第一次拆分时从最早的记录所在月份开始，迁移前的历史记录同样按月过期；
+ * - 超过保留月数的分区先导出为压缩归档文件（见 {@link CardLogArchiveWriter}），写完后用
+ *   {@link CardLogArchiveReader} 读回一遍，行数与分区中的行数一致才删除整个分区。
+ * 分区后表上不能有外键，删除卡密时不再逐个删除它的使用日志，由分区过期时一并删除。
+ * 表未分区（未执行迁移脚本，或其他数据库）时按月导出，同样核对行数后分批 DELETE。
+ * 行数不一致时保留数据和归档文件，本轮不再继续，下次维护时重新导出。
+ */
+@Slf4j
+@Service
+public class CardLogRetentionService {
+
+    private static final Pattern MONTH_PARTITION = Pattern.compile("p(\\d{6})");
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final DateTimeFormatter BOUND = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final CardUseLogMapper logMapper;
+
+    @Value("${card-log.retention-enabled:true}")
+    private boolean enabled;
+
+    // 保留的月数（不含当月）
+    @Value("${card-log.retention-months:6}")
+    private int retentionMonths;
+
+    // 提前建立的分区月数
+    @Value("${card-log.partitions-ahead:2}")
+    private int partitionsAhead;
+
+    @Value("${card-log.archive-dir:${file.storage.base-path:/data/verfiy}/card-log-archive}")
+    private String archiveDir;
+
+    // 导出和删除时每批的行数
+    @Value("${card-log.batch-size:5000}")
+    private int batchSize;
+
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+    private volatile boolean partitioned;
+
+    public CardLogRetentionService(CardUseLogMapper logMapper) {
+        this.logMapper = logMapper;
+    }
+
+    /**
+     * 使用日志是否按月分区（分区时删除卡密不需要删除它的使用日志）
+     */
+    public boolean partitioned() {
+        return partitioned;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void detect() {
+        try {
+            partitioned = !logMapper.listPartitions().isEmpty();
+        } catch (RuntimeException e) {
+            partitioned = false;
+            log.debug("读取 card_use_log 分区失败，按未分区处理: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${card-log.maintenance-interval-ms:3600000}",
+            initialDelayString = "${card-log.maintenance-interval-ms:3600000}",
+            scheduler = "maintenanceScheduler")
+    public void maintain() {
+        if (!enabled || !maintenanceLock.tryLock()) {
+            return;
+        }
+        try {
+            YearMonth current = YearMonth.now();
+            // 早于此月的记录归档后删除
+            YearMonth cutoff = current.minusMonths(retentionMonths);
+            List<String> partitions = logMapper.listPartitions();
+            partitioned = !partitions.isEmpty();
+            if (partitioned) {
+                if (addPartitions(partitions, current)) {
+                    partitions = logMapper.listPartitions();
+                }
+                for (String name : partitions) {
+                    YearMonth month = month(name);
+                    if (month == null || !month.isBefore(cutoff)) {
+                        continue;
+                    }
+                    // 分区只有上界，最早的分区还包含分区之前的全部记录
+                    long rows = archive(month, null, start(month.plusMonths(1)));
+                    verify(month, rows, logMapper.countPartition(name));
+                    logMapper.dropPartition(name);
+                    log.info("使用日志分区 {} 已归档并删除：{} 行", name, rows);
+                }
+            } else {
+                LocalDateTime oldest = logMapper.minCreatedAt();
+                while (oldest != null && YearMonth.from(oldest).isBefore(cutoff)) {
+                    YearMonth month = YearMonth.from(oldest);
+                    LocalDateTime from = start(month);
+                    LocalDateTime to = start(month.plusMonths(1));
+                    long rows = archive(month, from, to);
+                    verify(month, rows, logMapper.countByCreatedAt(from, to));
+                    // 每批单独提交
+                    int n;
+                    do {
+                        n = logMapper.deleteByCreatedAt(from, to, batchSize);
+                    } while (n > 0);
+                    log.info("使用日志 {} 已归档并删除：{} 行", month.format(MONTH), rows);
+                    oldest = logMapper.minCreatedAt();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("使用日志归档失败: {}", e.getMessage());
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * 从 pmax 中拆出当月到之后 partitionsAhead 个月里还没有的分区
+     * 第一次拆分（只有 pmax）时从最早的记录所在月份开始，分区之前写入的历史记录也按月分区，随即适用保留期限
+     * @return 是否添加了分区
+     */
+    private boolean addPartitions(List<String> partitions, YearMonth current) {
+        if (!partitions.contains("pmax")) {
+            log.warn("card_use_log 没有 pmax 分区，无法添加新的月份分区");
+            return false;
+        }
+        YearMonth next = current;
+        boolean first = true;
+        for (String name : partitions) {
+            YearMonth month = month(name);
+            if (month == null) {
+                continue;
+            }
+            first = false;
+            if (!month.isBefore(next)) {
+                next = month.plusMonths(1);
+            }
+        }
+        if (first) {
+            LocalDateTime oldest = logMapper.minCreatedAt();
+            if (oldest != null && YearMonth.from(oldest).isBefore(next)) {
+                next = YearMonth.from(oldest);
+            }
+        }
+        YearMonth last = current.plusMonths(partitionsAhead);
+        if (next.isAfter(last)) {
+            return false;
+        }
+        StringJoiner definitions = new StringJoiner(", ");
+        for (YearMonth month = next; !month.isAfter(last); month = month.plusMonths(1)) {
+            definitions.add("PARTITION p" + month.format(MONTH) + " VALUES LESS THAN (UNIX_TIMESTAMP('"
+                    + start(month.plusMonths(1)).format(BOUND) + "'))");
+        }
+        logMapper.splitMaxPartition(definitions.toString());
+        log.info("card_use_log 已添加分区 p{} ~ p{}", next.format(MONTH), last.format(MONTH));
+        return true;
+    }
+
+    /**
+     * 把 [from, to) 内创建的记录按 id 顺序写入归档文件，写完后再改名，中途失败不会留下不完整的文件
+     * @return 行数
+     */
+    private long archive(YearMonth month, LocalDateTime from, LocalDateTime to) throws IOException {
+        Path dir = Paths.get(archiveDir);
+        Files.createDirectories(dir);
+        Path file = dir.resolve("card_use_log-" + month.format(MONTH) + ".vlog.gz");
+        Path tmp = dir.resolve(file.getFileName() + ".tmp");
+        long rows;
+        try (CardLogArchiveWriter writer = new CardLogArchiveWriter(tmp)) {
+            long afterId = 0L;
+            while (true) {
+                List<CardUseLog> batch = logMapper.scanByCreatedAt(from, to, afterId, batchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                writer.write(batch);
+                afterId = batch.get(batch.size() - 1).getId();
+                if (batch.size() < batchSize) {
+                    break;
+                }
+            }
+            rows = writer.rows();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        long readBack = CardLogArchiveReader.countRows(file);
+        if (readBack != rows) {
+            throw new IllegalStateException("使用日志归档文件 " + file + " 读回 " + readBack + " 行，导出时为 " + rows + " 行");
+        }
+        return rows;
+    }
+
+    /**
+     * 删除前核对：归档文件中的行数必须等于将要删除的行数
+     */
+    private static void verify(YearMonth month, long archived, long stored) {
+        if (archived != stored) {
+            throw new IllegalStateException("使用日志 " + month.format(MONTH) + " 归档 " + archived
+                    + " 行，数据库中有 " + stored + " 行，不删除");
+        }
+    }
+
+    private static YearMonth month(String partition) {
+        Matcher m = MONTH_PARTITION.matcher(partition);
+        return m.matches() ? YearMonth.parse(m.group(1), MONTH) : null;
+    }
+
+    private static LocalDateTime start(YearMonth month) {
+        return month.atDay(1).atStartOfDay();
+    }
+}
@@ -0,0 +1,488 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.Card;
+import com.xy.verfiy.mapper.CardMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 卡密子串搜索的三元组（trigram）索引
+ *
+ * 按应用在内存中保存“三元组 → 卡密 id”的倒排表（按 id 升序、差值变长编码，每 128 个 id 一个跳表项）。
+ * 关键词拆成三元组后取各倒排表的交集，得到候选 id，再按主键回表用原来的 LIKE 条件确认
+ * （交集不检查三元组的相对位置，可能有少量误判；已删除的卡密回表时自然被排除）。
+ * - 启动后在后台按主键分批扫描 card 表构建，构建完成前照常执行 LIKE；
+ * - 每隔几秒增量扫描新卡密；全量和增量扫描都只索引到一分钟前已出现的最大主键（水位），覆盖提交较晚的事务；
+ *   水位之后的卡密数量很少，查询时直接按主键范围 LIKE；
+ * - 定时全量重建以去掉已删除的卡密。
+ * 关键词不足 3 个字符、含 LIKE 通配符或非 ASCII 字符时不使用索引。
+ *
+ * 指标：card.search.index.bytes、card.search.index.cards
+ */
+@Slf4j
+@Service
+public class CardSearchIndex {
+
+    // 每批扫描的行数
+    private static final int SCAN_BATCH_SIZE = 5000;
+    // 增量扫描的滞后时长
+    private static final long SYNC_LAG_MILLIS = 60_000L;
+
+    private final CardMapper cardMapper;
+    private final MeterRegistry registry;
+
+    @Value("${card-search.enabled:true}")
+    private boolean enabled;
+
+    // 构建完成前为 null
+    private volatile Snapshot current;
+    private final ReentrantLock scanLock = new ReentrantLock();
+    // 各时间点的最大主键，早于滞后时长的最后一个作为下次增量扫描的终点
+    private final Deque<long[]> checkpoints = new ArrayDeque<>();
+
+    public CardSearchIndex(CardMapper cardMapper, MeterRegistry registry) {
+        this.cardMapper = cardMapper;
+        this.registry = registry;
+    }
+
+    /**
+     * 索引快照：watermark 及之前的卡密都已索引
+     */
+    private static final class Snapshot {
+        final Map<Long, AppIndex> apps = new ConcurrentHashMap<>();
+        // 已释放索引的应用，搜索时照常执行 LIKE
+        final Set<Long> dropped = ConcurrentHashMap.newKeySet();
+        volatile long watermark;
+    }
+
+    /**
+     * 候选结果
+     * @param ids 水位及之前可能匹配的卡密 id（升序）
+     * @param watermark 水位，之后的卡密需要按主键范围直接查询
+     */
+    public record Candidates(long[] ids, long watermark) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Gauge.builder("card.search.index.bytes", this, s -> {
+                    Snapshot snapshot = s.current;
+                    return snapshot != null ? snapshot.apps.values().stream().mapToLong(AppIndex::sizeInBytes).sum() : 0;
+                })
+                .description("卡密三元组索引占用内存（估算）")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("card.search.index.cards", this, s -> {
+                    Snapshot snapshot = s.current;
+                    return snapshot != null ? snapshot.apps.values().stream().mapToLong(a -> a.cards).sum() : 0;
+                })
+                .description("卡密三元组索引中的卡密数")
+                .register(registry);
+        if (!enabled) {
+            log.info("卡密三元组索引已禁用");
+            return;
+        }
+        Thread thread = new Thread(this::rebuild, "card-search-build");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 按关键词取候选卡密
+     * @return 索引不可用或关键词不适合索引时返回 null（调用方照常执行 LIKE）
+     */
+    public Candidates candidates(Long appId, String keyword) {
+        Snapshot snapshot = current;
+        if (snapshot == null || appId == null || snapshot.dropped.contains(appId)) {
+            return null;
+        }
+        int[] grams = trigrams(keyword);
+        if (grams == null) {
+            return null;
+        }
+        long watermark = snapshot.watermark;
+        AppIndex index = snapshot.apps.get(appId);
+        if (index == null) {
+            return new Candidates(new long[0], watermark);
+        }
+        long[] ids = index.search(grams);
+        int end = Arrays.binarySearch(ids, watermark);
+        end = end >= 0 ? end + 1 : -end - 1;
+        return new Candidates(end == ids.length ? ids : Arrays.copyOf(ids, end), watermark);
+    }
+
+    /**
+     * 定时全量重建（去掉已删除的卡密）
+     */
+    @Scheduled(fixedDelayString = "${card-search.rebuild-interval-ms:21600000}",
+            initialDelayString = "${card-search.rebuild-interval-ms:21600000}",
+            scheduler = "maintenanceScheduler")
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        scanLock.lock();
+        try {
+            long startedAt = System.currentTimeMillis();
+            // 与增量扫描相同，只扫描到一分钟前已出现的最大主键：更大的主键可能属于还没提交的事务，
+            // 扫描经过后才提交的卡密会被漏掉。剩余的检查点留给之后的增量扫描
+            long target = pollLaggedCheckpoint(startedAt);
+            if (target < 0) {
+                // 启动时还没有检查点：记下当前最大主键，等滞后时长过去再扫描
+                Long maxId = cardMapper.maxId();
+                target = maxId != null ? maxId : 0L;
+                Thread.sleep(SYNC_LAG_MILLIS);
+            }
+            Snapshot next = new Snapshot();
+            scan(next, 0L, target);
+            next.watermark = target;
+            next.apps.values().forEach(AppIndex::trim);
+            current = next;
+            long cards = next.apps.values().stream().mapToLong(a -> a.cards).sum();
+            long bytes = next.apps.values().stream().mapToLong(AppIndex::sizeInBytes).sum();
+            log.info("卡密三元组索引已构建：{} 个应用，{} 个卡密，约 {} KB，耗时 {} ms",
+                    next.apps.size(), cards, bytes / 1024, System.currentTimeMillis() - startedAt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("构建卡密三元组索引失败: {}", e.getMessage());
+        } finally {
+            scanLock.unlock();
+        }
+    }
+
+    /**
+     * 增量扫描：把水位推进到一分钟前已出现的最大主键
+     */
+    @Scheduled(fixedDelayString = "${card-search.sync-interval-ms:5000}",
+            initialDelayString = "${card-search.sync-interval-ms:5000}")
+    public void sync() {
+        Snapshot snapshot = current;
+        if (snapshot == null || !scanLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            Long maxId = cardMapper.maxId();
+            checkpoints.addLast(new long[]{now, maxId != null ? maxId : 0L});
+            long target = pollLaggedCheckpoint(now);
+            if (target > snapshot.watermark) {
+                scan(snapshot, snapshot.watermark, target);
+                snapshot.watermark = target;
+            }
+        } catch (RuntimeException e) {
+            log.warn("增量同步卡密三元组索引失败: {}", e.getMessage());
+        } finally {
+            scanLock.unlock();
+        }
+    }
+
+    /**
+     * 取出滞后时长之前记录的最后一个检查点（那时已分配的主键现在都已提交或回滚）
+     * @return 没有足够早的检查点时返回 -1
+     */
+    private long pollLaggedCheckpoint(long now) {
+        long target = -1;
+        while (!checkpoints.isEmpty() && checkpoints.peekFirst()[0] <= now - SYNC_LAG_MILLIS) {
+            target = checkpoints.pollFirst()[1];
+        }
+        return target;
+    }
+
+    /**
+     * 删除应用时释放其索引；之后该应用的搜索不再使用索引，增量扫描也不再索引它的卡密
+     */
+    public void invalidate(Long appId) {
+        Snapshot snapshot = current;
+        if (snapshot != null && appId != null) {
+            snapshot.dropped.add(appId);
+            snapshot.apps.remove(appId);
+        }
+    }
+
+    /**
+     * 索引 (afterId, toId] 之间的卡密
+     */
+    private void scan(Snapshot snapshot, long afterId, long toId) {
+        long lastId = afterId;
+        while (true) {
+            List<Card> batch = cardMapper.scanCodesAfter(lastId, SCAN_BATCH_SIZE);
+            for (Card card : batch) {
+                if (card.getId() > toId) {
+                    return;
+                }
+                if (card.getAppId() != null && !snapshot.dropped.contains(card.getAppId())) {
+                    snapshot.apps.computeIfAbsent(card.getAppId(), k -> new AppIndex()).add(card.getId(), card.getCardCode());
+                }
+                lastId = card.getId();
+            }
+            if (batch.size() < SCAN_BATCH_SIZE) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 拆分关键词（不区分大小写）；不适合索引时返回 null
+     */
+    static int[] trigrams(String keyword) {
+        if (keyword == null || keyword.length() < 3) {
+            return null;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            char c = keyword.charAt(i);
+            if (c < 0x20 || c >= 0x7f || c == '%' || c == '_' || c == '\\') {
+                return null;
+            }
+        }
+        int[] grams = new int[keyword.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = gram(keyword, i);
+        }
+        return Arrays.stream(grams).distinct().toArray();
+    }
+
+    private static int gram(String s, int i) {
+        return (upper(s.charAt(i)) << 14) | (upper(s.charAt(i + 1)) << 7) | upper(s.charAt(i + 2));
+    }
+
+    private static int upper(char c) {
+        return c >= 'a' && c <= 'z' ? c - 32 : c;
+    }
+
+    /**
+     * 单个应用的索引；含非 ASCII 字符的卡密不拆分，始终作为候选
+     */
+    private static final class AppIndex {
+        private final Map<Integer, Postings> postings = new HashMap<>();
+        private final Postings unindexed = new Postings();
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private volatile long cards;
+        private long maxId;
+
+        void add(long id, String code) {
+            if (code == null) {
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                // 重建和增量扫描的范围互不重叠，这里只防止重复添加
+                if (id <= maxId) {
+                    return;
+                }
+                maxId = id;
+                boolean ascii = true;
+                for (int i = 0; i < code.length() && ascii; i++) {
+                    char c = code.charAt(i);
+                    ascii = c >= 0x20 && c < 0x7f;
+                }
+                if (!ascii) {
+                    unindexed.add(id);
+                } else {
+                    for (int i = 0; i + 3 <= code.length(); i++) {
+                        postings.computeIfAbsent(gram(code, i), k -> new Postings()).add(id);
+                    }
+                }
+                cards++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        long[] search(int[] grams) {
+            lock.readLock().lock();
+            try {
+                Postings[] lists = new Postings[grams.length];
+                long[] result = new long[0];
+                boolean empty = false;
+                for (int i = 0; i < grams.length; i++) {
+                    lists[i] = postings.get(grams[i]);
+                    if (lists[i] == null) {
+                        empty = true;
+                        break;
+                    }
+                }
+                if (!empty) {
+                    // 从最短的倒排表开始求交集
+                    Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+                    result = lists[0].toArray();
+                    for (int i = 1; i < lists.length && result.length > 0; i++) {
+                        result = lists[i].retain(result);
+                    }
+                }
+                if (unindexed.size > 0) {
+                    long[] extra = unindexed.toArray();
+                    long[] merged = Arrays.copyOf(result, result.length + extra.length);
+                    System.arraycopy(extra, 0, merged, result.length, extra.length);
+                    Arrays.sort(merged);
+                    result = merged;
+                }
+                return result;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * 构建完成后释放倒排表的预留空间
+         */
+        void trim() {
+            lock.writeLock().lock();
+            try {
+                postings.values().forEach(Postings::trim);
+                unindexed.trim();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        long sizeInBytes() {
+            lock.readLock().lock();
+            try {
+                long bytes = unindexed.sizeInBytes();
+                for (Postings p : postings.values()) {
+                    bytes += p.sizeInBytes() + 48;
+                }
+                return bytes;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 倒排表：升序 id 的差值变长编码；每块第一个 id 记在跳表中，块内其余 id 记差值
+     */
+    static final class Postings {
+        private static final int BLOCK = 128;
+
+        private byte[] data = new byte[8];
+        private int length;
+        private int size;
+        private long last = -1;
+        private long[] skipIds = new long[1];
+        private int[] skipOffsets = new int[1];
+
+        void add(long id) {
+            // 同一卡密中重复的三元组
+            if (id <= last) {
+                return;
+            }
+            if (size % BLOCK == 0) {
+                int block = size / BLOCK;
+                if (block == skipIds.length) {
+                    skipIds = Arrays.copyOf(skipIds, block * 2);
+                    skipOffsets = Arrays.copyOf(skipOffsets, block * 2);
+                }
+                skipIds[block] = id;
+                skipOffsets[block] = length;
+            } else {
+                long delta = id - last;
+                while (true) {
+                    if (length == data.length) {
+                        data = Arrays.copyOf(data, data.length * 2);
+                    }
+                    if ((delta & ~0x7FL) == 0) {
+                        data[length++] = (byte) delta;
+                        break;
+                    }
+                    data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+            }
+            last = id;
+            size++;
+        }
+
+        long[] toArray() {
+            long[] out = new long[size];
+            int blocks = (size + BLOCK - 1) / BLOCK;
+            for (int b = 0, n = 0; b < blocks; b++) {
+                n += decodeBlock(b, out, n);
+            }
+            return out;
+        }
+
+        /**
+         * 保留 ids（升序）中也在本表中的元素
+         */
+        long[] retain(long[] ids) {
+            long[] out = new long[ids.length];
+            long[] buffer = new long[BLOCK];
+            int n = 0;
+            int loaded = -1;
+            int count = 0;
+            int pos = 0;
+            int blocks = (size + BLOCK - 1) / BLOCK;
+            for (long id : ids) {
+                int block = Arrays.binarySearch(skipIds, 0, blocks, id);
+                if (block < 0) {
+                    block = -block - 2;
+                }
+                if (block < 0) {
+                    continue;
+                }
+                if (block != loaded) {
+                    count = decodeBlock(block, buffer, 0);
+                    loaded = block;
+                    pos = 0;
+                }
+                while (pos < count && buffer[pos] < id) {
+                    pos++;
+                }
+                if (pos < count && buffer[pos] == id) {
+                    out[n++] = id;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        private int decodeBlock(int block, long[] out, int from) {
+            int count = Math.min(BLOCK, size - block * BLOCK);
+            long value = skipIds[block];
+            int offset = skipOffsets[block];
+            out[from] = value;
+            for (int i = 1; i < count; i++) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[offset++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                value += delta;
+                out[from + i] = value;
+            }
+            return count;
+        }
+
+        void trim() {
+            int blocks = (size + BLOCK - 1) / BLOCK;
+            data = Arrays.copyOf(data, Math.max(length, 1));
+            skipIds = Arrays.copyOf(skipIds, Math.max(blocks, 1));
+            skipOffsets = Arrays.copyOf(skipOffsets, Math.max(blocks, 1));
+        }
+
+        long sizeInBytes() {
+            return data.length + skipIds.length * 12L + 40;
+        }
+    }
+}
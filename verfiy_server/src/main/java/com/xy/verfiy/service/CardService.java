@@ -1,22 +1,54 @@
 package com.xy.verfiy.service;
 
 import com.xy.verfiy.domain.Card;
+import com.xy.verfiy.domain.CardBatch;
+import com.xy.verfiy.domain.CardBulkJob;
+import com.xy.verfiy.domain.CardBulkRequest;
+import com.xy.verfiy.domain.CardGenerateJob;
+import com.xy.verfiy.domain.CardImportJob;
 import com.xy.verfiy.domain.CardStatus;
+import com.xy.verfiy.domain.CardUseLog;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface CardService {
     List<Card> page(Long appId, String keyword, CardStatus status, int page, int size);
     long count(Long appId, String keyword, CardStatus status);
 
+    // 游标分页：beforeId 取更早的一页，afterId 取更新的一页；均按 id 降序返回，最多 limit 条
+    List<Card> pageByCursor(Long appId, String keyword, CardStatus status, Long beforeId, Long afterId, int limit);
+    // 近似总数（增量维护的计数，不执行 COUNT）
+    long approximateCount(Long appId, CardStatus status);
+    // 一次查询统计多张卡密绑定的机器码数（没有绑定的卡密为 0）
+    Map<Long, Integer> countMachines(Collection<Long> cardIds);
+
     int generateCards(Long appId, String prefix, int count, Integer expireValue,
                       String expireUnit, String formatPattern, String suffix, Integer maxMachines);
+
+    // 数量较多时在后台生成，返回的任务可查询进度
+    CardGenerateJob startGenerateJob(Long appId, String prefix, int count, Integer expireValue,
+                                     String expireUnit, String formatPattern, String suffix, Integer maxMachines);
+    CardGenerateJob getGenerateJob(String jobId);
     
-    int importCardsCsv(Long appId, InputStream inputStream);
-    byte[] exportCardsCsv(Long appId, String keyword, CardStatus status);
+    // 虚拟批次：只保存生成规则，卡密首次激活时才写入 card 表
+    CardBatch createVirtualBatch(Long appId, String prefix, int count, Integer expireValue,
+                                 String expireUnit, String formatPattern, String suffix, Integer maxMachines);
+
+    // 保存上传文件后在后台导入，返回的任务可查询进度和下载逐行结果
+    CardImportJob startImportJob(Long appId, InputStream inputStream) throws IOException;
+    CardImportJob getImportJob(String jobId);
+    // 流式导出，写入的行数不受限制
+    long exportCardsCsv(Long appId, String keyword, CardStatus status, Writer writer) throws IOException;
 
     boolean disable(Long id, boolean disabled);
+    // 批量操作（按 id 列表或筛选条件），选中较多时在后台执行
+    CardBulkJob startBulkJob(Long appId, CardBulkRequest request);
+    CardBulkJob getBulkJob(String jobId);
     boolean updateStatus(Long id, CardStatus status);
 
     boolean redeem(String code, String operator, String ip);
@@ -27,6 +59,9 @@ public interface CardService {
     // 查询卡密（用于占位符替换等场景）
     Card getByCode(String code);
 
+    // 使用记录，按 id 倒序翻页（beforeId 为上一页最后一条的 id）
+    List<CardUseLog> listLogs(Long cardId, Long beforeId, int size);
+
     // 可重复验证（不改变状态），并支持机器码绑定与数量限制
     boolean verifyForApp(String code, Long appId, String machine);
 
@@ -0,0 +1,451 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.DexCompileTask;
+import com.xy.verfiy.mapper.DexCompileTaskMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 编译工作目录管理
+ *
+ * 工作目录优先放在内存盘（dex.compile.ram-dir，如 /dev/shm 或单独挂载的 tmpfs），超出内存配额时回落到磁盘。
+ * 所有工作目录共享一个总配额；编译成功后只保留 dex 产物，等待下载/发布，超过有效期由后台任务回收。
+ * 删除操作先重命名再由后台线程删除，不占用请求线程。
+ */
+@Slf4j
+@Component
+public class CompileWorkspaceManager {
+
+    // 只处理任务ID命名的目录，避免 temp-dir 配置错误时误删其他文件
+    private static final Pattern TASK_DIR = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+    private static final String TRASH_PREFIX = ".trash-";
+    // 编译中工作目录的预留空间（源码大小的倍数，至少 1MB）
+    private static final long RESERVE_FACTOR = 4;
+    private static final long MIN_RESERVE_BYTES = 1024L * 1024;
+    // 编译中的目录超过该时长仍未结束，视为泄漏
+    private static final long ACTIVE_MAX_MILLIS = 60 * 60 * 1000L;
+    // 未登记的目录至少存在该时长才会被回收，避免与正在创建的目录竞争
+    private static final long ORPHAN_GRACE_MILLIS = 10 * 60 * 1000L;
+    // 清理过期任务记录时每批删除的行数
+    private static final int DELETE_BATCH_SIZE = 500;
+
+    private final DexCompileTaskMapper dexCompileTaskMapper;
+    private final MeterRegistry registry;
+
+    @Value("${dex.compile.temp-dir}")
+    private String tempDirBase;
+
+    // 内存盘目录，留空则只使用磁盘
+    @Value("${dex.compile.ram-dir:}")
+    private String ramDirBase;
+
+    // 内存盘可使用的空间
+    @Value("${dex.compile.ram-budget-mb:256}")
+    private long ramBudgetMb;
+
+    // 所有工作目录（内存盘 + 磁盘）的总配额
+    @Value("${dex.compile.workspace-budget-mb:2048}")
+    private long workspaceBudgetMb;
+
+    // 编译成功但未下载的产物保留时长
+    @Value("${dex.compile.workspace-ttl-minutes:1440}")
+    private long workspaceTtlMinutes;
+
+    // 编译任务记录保留天数
+    @Value("${dex.compile.task-retention-days:30}")
+    private int taskRetentionDays;
+
+    private Path diskRoot;
+    private Path ramRoot;
+
+    private final Map<String, Workspace> workspaces = new ConcurrentHashMap<>();
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final AtomicLong ramBytes = new AtomicLong();
+
+    private final ExecutorService cleaner = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "dex-workspace-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CompileWorkspaceManager(DexCompileTaskMapper dexCompileTaskMapper, MeterRegistry registry) {
+        this.dexCompileTaskMapper = dexCompileTaskMapper;
+        this.registry = registry;
+    }
+
+    /**
+     * 已登记的工作目录
+     */
+    private static final class Workspace {
+        final String taskId;
+        final Path dir;
+        final boolean ram;
+        final long createdAt;
+        volatile long bytes;
+        volatile boolean retained;
+
+        Workspace(String taskId, Path dir, boolean ram, long createdAt, long bytes) {
+            this.taskId = taskId;
+            this.dir = dir;
+            this.ram = ram;
+            this.createdAt = createdAt;
+            this.bytes = bytes;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        diskRoot = Paths.get(tempDirBase).toAbsolutePath().normalize();
+        if (ramDirBase != null && !ramDirBase.isBlank()) {
+            Path candidate = Paths.get(ramDirBase.trim()).toAbsolutePath().normalize();
+            try {
+                Files.createDirectories(candidate);
+                if (Files.isWritable(candidate)) {
+                    ramRoot = candidate;
+                    log.info("编译工作目录使用内存盘: {}（配额 {}MB）", ramRoot, ramBudgetMb);
+                } else {
+                    log.warn("内存盘目录不可写，编译工作目录只使用磁盘: {}", candidate);
+                }
+            } catch (IOException e) {
+                log.warn("无法创建内存盘目录 {}，编译工作目录只使用磁盘: {}", candidate, e.getMessage());
+            }
+        }
+
+        Gauge.builder("dex.compile.workspace.usage", diskBytes, AtomicLong::get)
+                .description("编译工作目录占用（按登记值统计）")
+                .tag("storage", "disk")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("dex.compile.workspace.usage", ramBytes, AtomicLong::get)
+                .description("编译工作目录占用（按登记值统计）")
+                .tag("storage", "ram")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("dex.compile.workspace.count", workspaces, Map::size)
+                .description("当前保留的编译工作目录数")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleaner.shutdown();
+    }
+
+    /**
+     * 为编译任务分配工作目录
+     * @param sourceBytes 源码总大小，用于预估占用
+     * @throws IllegalStateException 总配额已满且无法回收
+     */
+    public Path allocate(String taskId, long sourceBytes) throws IOException {
+        long reserve = Math.max(MIN_RESERVE_BYTES, sourceBytes * RESERVE_FACTOR);
+        long budget = workspaceBudgetMb * 1024 * 1024;
+        if (usedBytes() + reserve > budget) {
+            evictRetained(usedBytes() + reserve - budget);
+        }
+
+        Workspace workspace;
+        synchronized (this) {
+            if (usedBytes() + reserve > budget) {
+                throw new IllegalStateException("编译临时空间不足，请稍后再试");
+            }
+            boolean ram = ramRoot != null && ramBytes.get() + reserve <= ramBudgetMb * 1024 * 1024;
+            Path dir = (ram ? ramRoot : diskRoot).resolve(taskId);
+            workspace = new Workspace(taskId, dir, ram, System.currentTimeMillis(), reserve);
+            workspaces.put(taskId, workspace);
+            counter(ram).addAndGet(reserve);
+        }
+
+        try {
+            Files.createDirectories(workspace.dir);
+        } catch (IOException e) {
+            release(taskId);
+            throw e;
+        }
+        return workspace.dir;
+    }
+
+    /**
+     * 编译成功：只保留 dex 产物，按实际大小重新计入配额，等待下载或过期回收
+     */
+    public void retain(String taskId) {
+        Workspace workspace = workspaces.get(taskId);
+        if (workspace == null) {
+            return;
+        }
+        try (Stream<Path> children = Files.list(workspace.dir)) {
+            children.filter(child -> !child.getFileName().toString().equals("dex"))
+                    .forEach(child -> discard(child, workspace.ram, 0L));
+        } catch (IOException e) {
+            log.warn("清理编译中间文件失败: {}", workspace.dir, e);
+        }
+        long actual = directorySize(workspace.dir.resolve("dex"));
+        counter(workspace.ram).addAndGet(actual - workspace.bytes);
+        workspace.bytes = actual;
+        workspace.retained = true;
+    }
+
+    /**
+     * 释放工作目录（重命名后交给后台线程删除）
+     */
+    public void release(String taskId) {
+        Workspace workspace = workspaces.remove(taskId);
+        if (workspace != null) {
+            discard(workspace.dir, workspace.ram, workspace.bytes);
+        }
+    }
+
+    /**
+     * 按工作目录路径释放（只处理受管理根目录下的任务目录）
+     */
+    public void release(Path workDir) {
+        Path dir = workDir.toAbsolutePath().normalize();
+        String name = dir.getFileName() != null ? dir.getFileName().toString() : "";
+        if (!TASK_DIR.matcher(name).matches() || !isManagedRoot(dir.getParent())) {
+            log.warn("忽略非编译工作目录: {}", workDir);
+            return;
+        }
+        if (workspaces.containsKey(name)) {
+            release(name);
+        } else if (Files.exists(dir)) {
+            discard(dir, ramRoot != null && ramRoot.equals(dir.getParent()), 0L);
+        }
+    }
+
+    /**
+     * 按 dex 产物路径（&lt;工作目录&gt;/dex/classes.dex）释放工作目录
+     */
+    public void releaseByArtifact(String dexFilePath) {
+        if (dexFilePath == null) {
+            return;
+        }
+        Path dexFile = Paths.get(dexFilePath);
+        Path dexDir = dexFile.getParent();
+        if (dexDir != null && dexDir.getParent() != null) {
+            release(dexDir.getParent());
+        }
+    }
+
+    /**
+     * 后台回收：过期/泄漏的工作目录、未登记的孤儿目录、过期的任务记录，并保证总占用不超配额
+     */
+    @Scheduled(initialDelayString = "${dex.compile.reaper-initial-delay-ms:30000}",
+            fixedDelayString = "${dex.compile.reaper-interval-ms:300000}")
+    public void reap() {
+        long now = System.currentTimeMillis();
+        long ttlMillis = workspaceTtlMinutes * 60 * 1000;
+        int expired = 0;
+        int orphans = 0;
+
+        for (Workspace workspace : new ArrayList<>(workspaces.values())) {
+            long age = now - workspace.createdAt;
+            if ((workspace.retained && age > ttlMillis) || (!workspace.retained && age > ACTIVE_MAX_MILLIS)) {
+                release(workspace.taskId);
+                expired++;
+            }
+        }
+
+        orphans += reapUnregistered(diskRoot, false, now, ttlMillis);
+        if (ramRoot != null) {
+            orphans += reapUnregistered(ramRoot, true, now, ttlMillis);
+        }
+
+        long budget = workspaceBudgetMb * 1024 * 1024;
+        int evicted = usedBytes() > budget ? evictRetained(usedBytes() - budget) : 0;
+
+        int staleRows = 0;
+        try {
+            LocalDateTime ttlCutoff = LocalDateTime.now().minusMinutes(workspaceTtlMinutes);
+            staleRows += deleteInBatches(() -> dexCompileTaskMapper.deleteExpiredUndownloaded(ttlCutoff, DELETE_BATCH_SIZE));
+            LocalDateTime retentionCutoff = LocalDateTime.now().minusDays(taskRetentionDays);
+            staleRows += deleteInBatches(() -> dexCompileTaskMapper.deleteCreatedBefore(retentionCutoff, DELETE_BATCH_SIZE));
+        } catch (Exception e) {
+            log.warn("清理过期编译任务记录失败: {}", e.getMessage());
+        }
+
+        if (expired + orphans + evicted + staleRows > 0) {
+            log.info("编译工作目录回收完成：过期 {}，孤儿 {}，超额淘汰 {}，删除任务记录 {}；当前占用 磁盘 {}KB / 内存 {}KB",
+                    expired, orphans, evicted, staleRows, diskBytes.get() / 1024, ramBytes.get() / 1024);
+        }
+    }
+
+    /**
+     * 处理根目录下未登记的目录（如服务重启前遗留的）：仍可下载的重新登记，其余删除
+     */
+    private int reapUnregistered(Path root, boolean ram, long now, long ttlMillis) {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        List<Path> children;
+        try (Stream<Path> stream = Files.list(root)) {
+            children = stream.toList();
+        } catch (IOException e) {
+            log.warn("扫描编译工作目录失败: {}", root, e);
+            return 0;
+        }
+
+        int reaped = 0;
+        for (Path child : children) {
+            String name = child.getFileName().toString();
+            if (name.startsWith(TRASH_PREFIX)) {
+                cleaner.execute(() -> deleteRecursively(child));
+                continue;
+            }
+            if (!TASK_DIR.matcher(name).matches() || workspaces.containsKey(name)) {
+                continue;
+            }
+            long modified;
+            try {
+                modified = Files.getLastModifiedTime(child).toMillis();
+            } catch (IOException e) {
+                continue;
+            }
+            if (now - modified < ORPHAN_GRACE_MILLIS) {
+                continue;
+            }
+
+            DexCompileTask task = dexCompileTaskMapper.findByTaskId(name);
+            if (task != null && Boolean.TRUE.equals(task.getSuccess()) && !Boolean.TRUE.equals(task.getDownloaded())
+                    && task.getDexFilePath() != null && Paths.get(task.getDexFilePath()).startsWith(child)
+                    && Files.exists(Paths.get(task.getDexFilePath()))) {
+                long createdAt = task.getCreateTime() != null
+                        ? task.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                        : modified;
+                if (now - createdAt <= ttlMillis) {
+                    Workspace workspace = new Workspace(name, child, ram, createdAt, directorySize(child));
+                    workspace.retained = true;
+                    if (workspaces.putIfAbsent(name, workspace) == null) {
+                        counter(ram).addAndGet(workspace.bytes);
+                    }
+                    continue;
+                }
+            }
+            discard(child, ram, 0L);
+            reaped++;
+        }
+        return reaped;
+    }
+
+    /**
+     * 按创建时间从早到晚淘汰等待下载的产物，直到释放出指定空间
+     * @return 淘汰的数量
+     */
+    private int evictRetained(long bytesNeeded) {
+        List<Workspace> candidates = workspaces.values().stream()
+                .filter(w -> w.retained)
+                .sorted(Comparator.comparingLong(w -> w.createdAt))
+                .toList();
+        long freed = 0;
+        int evicted = 0;
+        for (Workspace workspace : candidates) {
+            if (freed >= bytesNeeded) {
+                break;
+            }
+            freed += workspace.bytes;
+            release(workspace.taskId);
+            // 产物已删除，任务记录不再有意义
+            try {
+                dexCompileTaskMapper.deleteByTaskId(workspace.taskId);
+            } catch (Exception e) {
+                log.warn("删除编译任务记录失败: {}", workspace.taskId, e);
+            }
+            evicted++;
+        }
+        if (evicted > 0) {
+            log.warn("编译临时空间超出配额，已淘汰 {} 个未下载的产物（{}KB）", evicted, freed / 1024);
+        }
+        return evicted;
+    }
+
+    private void discard(Path dir, boolean ram, long accountedBytes) {
+        Path target = dir;
+        try {
+            target = dir.resolveSibling(TRASH_PREFIX + dir.getFileName() + "-" + System.nanoTime());
+            Files.move(dir, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            counter(ram).addAndGet(-accountedBytes);
+            return;
+        } catch (IOException e) {
+            // 无法重命名时直接删除原目录
+            target = dir;
+        }
+        Path trash = target;
+        cleaner.execute(() -> {
+            deleteRecursively(trash);
+            counter(ram).addAndGet(-accountedBytes);
+        });
+    }
+
+    private boolean isManagedRoot(Path dir) {
+        return dir != null && (dir.equals(diskRoot) || dir.equals(ramRoot));
+    }
+
+    private AtomicLong counter(boolean ram) {
+        return ram ? ramBytes : diskBytes;
+    }
+
+    private long usedBytes() {
+        return diskBytes.get() + ramBytes.get();
+    }
+
+    private static int deleteInBatches(IntSupplier batch) {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = batch.getAsInt();
+            total += deleted;
+        } while (deleted >= DELETE_BATCH_SIZE);
+        return total;
+    }
+
+    private static long directorySize(Path dir) {
+        try (Stream<Path> stream = Files.walk(dir)) {
+            return stream.filter(Files::isRegularFile)
+                    .mapToLong(p -> {
+                        try {
+                            return Files.size(p);
+                        } catch (IOException e) {
+                            return 0L;
+                        }
+                    })
+                    .sum();
+        } catch (IOException | RuntimeException e) {
+            return 0L;
+        }
+    }
+
+    private static void deleteRecursively(Path path) {
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        try (Stream<Path> stream = Files.walk(path)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    log.warn("删除文件失败: {}", p, e);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            log.warn("删除目录失败: {}", path, e);
+        }
+    }
+}
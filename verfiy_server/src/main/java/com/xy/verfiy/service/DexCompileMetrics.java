@@ -0,0 +1,167 @@
+package com.xy.verfiy.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Dex 编译指标（通过 actuator 的 /actuator/metrics 暴露）
+ *
+ * dex.compile.stage           各阶段耗时（tag: stage，带直方图）
+ * dex.compile.result          编译结果计数（tag: outcome, reason）
+ * dex.compile.user            按用户统计的编译次数（tag: user）
+ * dex.compile.inflight        正在进行的编译数
+ * dex.compile.temp.disk.usage 临时工作目录占用的磁盘空间
+ */
+@Slf4j
+@Component
+public class DexCompileMetrics {
+
+    public static final String STAGE_WORKSPACE = "workspace";
+    public static final String STAGE_SOURCE_WRITE = "source_write";
+    public static final String STAGE_JAVAC = "javac";
+    public static final String STAGE_D8 = "d8";
+    public static final String STAGE_R8 = "r8";
+    public static final String STAGE_ARTIFACT_CHECK = "artifact_check";
+    public static final String STAGE_CLEANUP = "cleanup";
+
+    public static final String REASON_SYNTAX_ERROR = "syntax_error";
+    public static final String REASON_TIMEOUT = "timeout";
+    public static final String REASON_D8_FAILURE = "d8_failure";
+    public static final String REASON_R8_FAILURE = "r8_failure";
+
+    // 临时目录磁盘占用的最小刷新间隔，避免每次抓取都遍历目录
+    private static final long DISK_USAGE_REFRESH_MILLIS = 30_000L;
+
+    private final MeterRegistry registry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    @Value("${dex.compile.temp-dir}")
+    private String tempDirBase;
+
+    private volatile long cachedDiskUsage = 0L;
+    private volatile long diskUsageComputedAt = 0L;
+
+    public DexCompileMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("dex.compile.inflight", inFlight, AtomicInteger::get)
+                .description("正在进行的编译数")
+                .register(registry);
+        Gauge.builder("dex.compile.temp.disk.usage", this, DexCompileMetrics::tempDirUsageBytes)
+                .description("编译临时目录磁盘占用")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * 阶段执行体（允许抛出受检异常）
+     */
+    @FunctionalInterface
+    public interface StageCallable<T> {
+        T call() throws Exception;
+    }
+
+    /**
+     * 记录一个阶段的耗时（无论成功失败都会记录）
+     */
+    public <T> T recordStage(String stage, StageCallable<T> callable) throws Exception {
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "success";
+        try {
+            return callable.call();
+        } catch (Exception e) {
+            outcome = "failure";
+            throw e;
+        } finally {
+            sample.stop(stageTimer(stage, outcome));
+        }
+    }
+
+    /**
+     * 直接记录已测得的阶段耗时
+     */
+    public void recordStage(String stage, Duration duration) {
+        stageTimer(stage, "success").record(duration);
+    }
+
+    public void compileStarted(Long userId) {
+        inFlight.incrementAndGet();
+        Counter.builder("dex.compile.user")
+                .description("按用户统计的编译次数")
+                .tag("user", userId != null ? String.valueOf(userId) : "anonymous")
+                .register(registry)
+                .increment();
+    }
+
+    public void compileFinished() {
+        inFlight.decrementAndGet();
+    }
+
+    public void recordSuccess() {
+        resultCounter("success", "none").increment();
+    }
+
+    public void recordFailure(String reason) {
+        resultCounter("failure", reason != null ? reason : "other").increment();
+    }
+
+    private Timer stageTimer(String stage, String outcome) {
+        return Timer.builder("dex.compile.stage")
+                .description("Dex 编译各阶段耗时")
+                .tag("stage", stage)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Counter resultCounter(String outcome, String reason) {
+        return Counter.builder("dex.compile.result")
+                .description("Dex 编译结果")
+                .tag("outcome", outcome)
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    /**
+     * 计算临时目录占用（带缓存）
+     */
+    private double tempDirUsageBytes() {
+        long now = System.currentTimeMillis();
+        if (now - diskUsageComputedAt < DISK_USAGE_REFRESH_MILLIS) {
+            return cachedDiskUsage;
+        }
+        diskUsageComputedAt = now;
+        Path baseDir = Paths.get(tempDirBase);
+        if (!Files.isDirectory(baseDir)) {
+            cachedDiskUsage = 0L;
+            return 0L;
+        }
+        try (Stream<Path> stream = Files.walk(baseDir)) {
+            cachedDiskUsage = stream
+                    .filter(Files::isRegularFile)
+                    .mapToLong(p -> {
+                        try {
+                            return Files.size(p);
+                        } catch (IOException e) {
+                            return 0L;
+                        }
+                    })
+                    .sum();
+        } catch (IOException | RuntimeException e) {
+            log.debug("统计临时目录占用失败: {}", e.getMessage());
+        }
+        return cachedDiskUsage;
+    }
+}
@@ -19,6 +19,21 @@ public class DexCompileService {
     @Autowired
     private DexCompileTaskMapper dexCompileTaskMapper;
 
+    @Autowired
+    private DexCompileMetrics compileMetrics;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private HookInfoService hookInfoService;
+
+    @Autowired
+    private HelperLibraryService helperLibraryService;
+
+    @Autowired
+    private CompileWorkspaceManager workspaceManager;
+
     @Value("${dex.compile.android-home}")
     private String androidHome;
 
@@ -28,19 +43,46 @@ public class DexCompileService {
     @Value("${dex.compile.jar-lib-path}")
     private String jarLibPath;
 
-    @Value("${dex.compile.temp-dir}")
-    private String tempDirBase;
-
     @Value("${dex.compile.timeout:60}")
     private int timeoutSeconds;
 
     @Value("${dex.compile.javac-path:javac}")
     private String javacPath;
 
+    @Value("${dex.compile.java-path:java}")
+    private String javaPath;
+
+    // R8 所在 jar，留空则使用 build-tools 自带的 lib/d8.jar（其中包含 R8）
+    @Value("${dex.compile.r8-jar:}")
+    private String r8JarPath;
+
+    // Xposed 入口接口，release 模式下自动生成 keep 规则
+    private static final List<String> XPOSED_ENTRY_INTERFACES = List.of(
+            "de.robv.android.xposed.IXposedHookLoadPackage",
+            "de.robv.android.xposed.IXposedHookZygoteInit",
+            "de.robv.android.xposed.IXposedHookInitPackageResources",
+            "de.robv.android.xposed.IXposedHookCmdInit"
+    );
+
+    // 用户 keep 规则最大长度
+    private static final int MAX_KEEP_RULES_LENGTH = 64 * 1024;
+    // R8 -printusage 输出（被裁剪掉的类和成员），位于工作目录
+    private static final String R8_USAGE_FILE = "r8-usage.txt";
+
     /**
      * 编译多个 Java 文件为 Dex
      */
     public DexCompileTask compileMultipleFilesToDex(Map<String, String> files, Long userId) {
+        return compileMultipleFilesToDex(files, userId, false, null);
+    }
+
+    /**
+     * 编译多个 Java 文件为 Dex
+     * @param release 是否使用 R8 进行裁剪与优化（release 模式）
+     * @param keepRules 用户自定义 keep 规则（仅 release 模式生效）
+     */
+    public DexCompileTask compileMultipleFilesToDex(Map<String, String> files, Long userId,
+                                                    boolean release, String keepRules) {
         String taskId = UUID.randomUUID().toString();
         DexCompileTask task = new DexCompileTask();
         task.setTaskId(taskId);
@@ -51,59 +93,108 @@ public class DexCompileService {
 
         Path workDir = null;
         StringBuilder log = new StringBuilder();
+        // 当前所处阶段，用于失败归类
+        String stage = DexCompileMetrics.STAGE_WORKSPACE;
+        compileMetrics.compileStarted(userId);
 
         try {
             // 创建工作目录
-            workDir = createWorkDirectory(taskId);
+            Path createdDir = compileMetrics.recordStage(DexCompileMetrics.STAGE_WORKSPACE, () -> {
+                long sourceBytes = files.values().stream().mapToLong(c -> c != null ? c.length() : 0).sum();
+                Path dir = workspaceManager.allocate(taskId, sourceBytes);
+                Files.createDirectories(dir.resolve("src"));
+                Files.createDirectories(dir.resolve("classes"));
+                Files.createDirectories(dir.resolve("dex"));
+                return dir;
+            });
+            workDir = createdDir;
             log.append("工作目录: ").append(workDir).append("\n");
             log.append("文件数量: ").append(files.size()).append("\n");
+            log.append("编译模式: ").append(release ? "release (R8)" : "debug (d8)").append("\n");
+
+            // 有预编译工具类库时，com.xy.ithook 只作为 classpath，不再编译客户端上传的源码
+            HelperLibraryService.HelperJar helperJar = helperLibraryService.currentJar();
+            if (helperJar != null) {
+                log.append("工具类库: ").append(helperJar.path().getFileName()).append("\n");
+            }
 
-            // 创建源文件目录
             Path srcDir = workDir.resolve("src");
-            Files.createDirectories(srcDir);
+            Path classesDir = workDir.resolve("classes");
+            Path dexDir = workDir.resolve("dex");
 
             // 写入所有 Java 文件
+            stage = DexCompileMetrics.STAGE_SOURCE_WRITE;
             log.append("\n=== 写入文件 ===\n");
-            for (Map.Entry<String, String> entry : files.entrySet()) {
-                String relativePath = entry.getKey();
-                String content = entry.getValue();
-                
-                Path javaFile = srcDir.resolve(relativePath);
-                Files.createDirectories(javaFile.getParent());
-                Files.writeString(javaFile, content);
-                log.append("  ").append(relativePath).append("\n");
-            }
+            compileMetrics.recordStage(DexCompileMetrics.STAGE_SOURCE_WRITE, () -> {
+                int skipped = 0;
+                for (Map.Entry<String, String> entry : files.entrySet()) {
+                    String relativePath = entry.getKey();
+                    String content = entry.getValue();
+                    if (helperJar != null && HelperLibraryService.isHelperSource(relativePath)) {
+                        skipped++;
+                        continue;
+                    }
 
-            // 创建输出目录
-            Path classesDir = workDir.resolve("classes");
-            Path dexDir = workDir.resolve("dex");
-            Files.createDirectories(classesDir);
-            Files.createDirectories(dexDir);
+                    Path javaFile = srcDir.resolve(relativePath);
+                    Files.createDirectories(javaFile.getParent());
+                    Files.writeString(javaFile, content);
+                    log.append("  ").append(relativePath).append("\n");
+                }
+                if (skipped > 0) {
+                    log.append("  (跳过 ").append(skipped).append(" 个工具类源码，使用预编译工具类库)\n");
+                }
+                return null;
+            });
 
             // 步骤 1: 编译所有 Java 文件 -> Class
+            stage = DexCompileMetrics.STAGE_JAVAC;
             log.append("\n=== 编译 Java -> Class ===\n");
-            String javacLog = compileMultipleJavaToClass(srcDir, classesDir);
+            String javacLog = compileMetrics.recordStage(DexCompileMetrics.STAGE_JAVAC, () -> {
+                String out = compileMultipleJavaToClass(srcDir, classesDir, helperJar);
+                // 检查是否生成了 .class 文件
+                if (!hasClassFiles(classesDir)) {
+                    throw new RuntimeException("编译失败：未生成 .class 文件");
+                }
+                return out;
+            });
             log.append(javacLog);
 
-            // 检查是否生成了 .class 文件
-            if (!hasClassFiles(classesDir)) {
-                throw new RuntimeException("编译失败：未生成 .class 文件");
-            }
-
             // 步骤 2: 转换 Class -> Dex
+            stage = DexCompileMetrics.STAGE_D8;
             log.append("\n=== 转换 Class -> Dex ===\n");
             Path dexFile = dexDir.resolve("classes.dex");
-            String d8Log = convertClassToDex(classesDir, dexFile);
-            log.append(d8Log);
+            if (!release) {
+                String d8Log = compileMetrics.recordStage(DexCompileMetrics.STAGE_D8,
+                        () -> convertClassToDex(classesDir, dexFile, helperJar));
+                log.append(d8Log);
+            } else {
+                // release 只运行 R8（R8 直接输出 dex，不需要再运行 d8）
+                stage = DexCompileMetrics.STAGE_R8;
+                log.append("R8 裁剪优化\n");
+                String r8Log = compileMetrics.recordStage(DexCompileMetrics.STAGE_R8,
+                        () -> shrinkClassToDex(classesDir, dexFile, keepRules, helperJar));
+                log.append(r8Log);
+            }
 
             // 检查是否生成了 .dex 文件
-            if (!Files.exists(dexFile) || Files.size(dexFile) == 0) {
-                throw new RuntimeException("Dex 转换失败：未生成 classes.dex 文件");
-            }
+            stage = DexCompileMetrics.STAGE_ARTIFACT_CHECK;
+            long dexSize = compileMetrics.recordStage(DexCompileMetrics.STAGE_ARTIFACT_CHECK, () -> {
+                if (!Files.exists(dexFile) || Files.size(dexFile) == 0) {
+                    throw new RuntimeException("Dex 转换失败：未生成 classes.dex 文件");
+                }
+                return Files.size(dexFile);
+            });
 
             log.append("\n=== 编译成功 ===\n");
             log.append("Dex 文件: ").append(dexFile).append("\n");
-            log.append("大小: ").append(Files.size(dexFile)).append(" bytes\n");
+            log.append("大小: ").append(dexSize).append(" bytes");
+            if (release) {
+                log.append(describeShrink(classesDir, workDir.resolve(R8_USAGE_FILE)));
+            }
+            log.append("\n");
+
+            // 只保留 dex 产物等待下载，中间文件交给后台清理
+            workspaceManager.retain(taskId);
 
             // 保存任务信息
             task.setSuccess(true);
@@ -111,6 +202,7 @@ public class DexCompileService {
             task.setCompileLog(log.toString());
             dexCompileTaskMapper.insert(task);
 
+            compileMetrics.recordSuccess();
             DexCompileService.log.info("编译成功，任务ID: {}", taskId);
             return task;
 
@@ -122,10 +214,12 @@ public class DexCompileService {
             task.setCompileLog(log.toString());
             dexCompileTaskMapper.insert(task);
 
+            compileMetrics.recordFailure(classifyFailure(stage, e));
+
             // 清理工作目录
             if (workDir != null) {
                 try {
-                    deleteDirectory(workDir);
+                    cleanupWorkDirectory(workDir);
                 } catch (Exception cleanEx) {
                     DexCompileService.log.warn("清理工作目录失败: {}", cleanEx.getMessage());
                 }
@@ -133,7 +227,38 @@ public class DexCompileService {
 
             DexCompileService.log.error("编译失败", e);
             return task;
+        } finally {
+            compileMetrics.compileFinished();
+        }
+    }
+
+    /**
+     * 按失败阶段归类：javac 失败视为语法错误，d8 失败单独统计，超时优先
+     */
+    private String classifyFailure(String stage, Exception e) {
+        if (e instanceof CommandTimeoutException) {
+            return DexCompileMetrics.REASON_TIMEOUT;
+        }
+        if (DexCompileMetrics.STAGE_JAVAC.equals(stage)) {
+            return DexCompileMetrics.REASON_SYNTAX_ERROR;
         }
+        if (DexCompileMetrics.STAGE_D8.equals(stage)) {
+            return DexCompileMetrics.REASON_D8_FAILURE;
+        }
+        if (DexCompileMetrics.STAGE_R8.equals(stage)) {
+            return DexCompileMetrics.REASON_R8_FAILURE;
+        }
+        return stage;
+    }
+
+    /**
+     * 释放工作目录（实际删除由后台线程完成，记录的是释放耗时）
+     */
+    private void cleanupWorkDirectory(Path workDir) throws Exception {
+        compileMetrics.recordStage(DexCompileMetrics.STAGE_CLEANUP, () -> {
+            workspaceManager.release(workDir);
+            return null;
+        });
     }
 
     /**
@@ -168,7 +293,7 @@ public class DexCompileService {
 
         try {
             // 创建工作目录
-            workDir = createWorkDirectory(taskId);
+            workDir = workspaceManager.allocate(taskId, javaCode.length());
             log.append("工作目录: ").append(workDir).append("\n");
 
             // 提取包名和类名
@@ -209,7 +334,7 @@ public class DexCompileService {
             // 步骤 2: 转换 Class -> Dex
             log.append("\n=== 转换 Class -> Dex ===\n");
             Path dexFile = dexDir.resolve("classes.dex");
-            String d8Log = convertClassToDex(classesDir, dexFile);
+            String d8Log = convertClassToDex(classesDir, dexFile, null);
             log.append(d8Log);
 
             // 检查是否生成了 .dex 文件
@@ -222,6 +347,7 @@ public class DexCompileService {
             task.setDexFilePath(dexFile.toString());
             task.setCompileLog(log.toString());
             log.append("\n✓ 编译成功！Dex 文件大小: ").append(Files.size(dexFile)).append(" bytes\n");
+            workspaceManager.retain(taskId);
 
         } catch (Exception e) {
             log.append("\n✗ 编译失败: ").append(e.getMessage()).append("\n");
@@ -280,30 +406,64 @@ public class DexCompileService {
             // 删除工作目录
             Path dexFile = Paths.get(task.getDexFilePath());
             Path workDir = dexFile.getParent().getParent(); // dex/classes.dex -> taskId
-            deleteDirectory(workDir);
+            try {
+                cleanupWorkDirectory(workDir);
+            } catch (Exception e) {
+                log.warn("清理工作目录失败: {}", workDir, e);
+            }
         }
     }
 
     /**
-     * 创建工作目录
+     * 将编译产物直接发布到 HookInfo（服务端链接到存储目录，无需经浏览器中转）
+     * @return 存储结果（相对路径 + SHA-256）
      */
-    private Path createWorkDirectory(String taskId) throws IOException {
-        Path baseDir = Paths.get(tempDirBase);
-        if (!Files.exists(baseDir)) {
-            Files.createDirectories(baseDir);
+    public FileStorageService.StoredFile publishToHook(String taskId, Long userId, Long hookId, String owner) throws IOException {
+        DexCompileTask task = dexCompileTaskMapper.findByTaskId(taskId);
+        if (task == null) {
+            throw new FileNotFoundException("任务不存在");
+        }
+        if (!Objects.equals(task.getUserId(), userId)) {
+            throw new IllegalArgumentException("无权发布此任务");
+        }
+        if (!task.getSuccess()) {
+            throw new IllegalStateException("编译未成功，无法发布");
+        }
+        if (task.getDownloaded()) {
+            throw new IllegalStateException("Dex 文件已被下载或发布");
+        }
+        // 先校验目标 Hook 的归属，避免无权操作时白白移动文件
+        if (hookInfoService.getById(hookId, owner) == null) {
+            throw new IllegalArgumentException("未找到 HookInfo");
+        }
+
+        Path dexFile = Paths.get(task.getDexFilePath());
+        if (!Files.exists(dexFile)) {
+            throw new FileNotFoundException("Dex 文件不存在");
+        }
+
+        FileStorageService.StoredFile stored = fileStorageService.storeDexFile(dexFile);
+        if (!hookInfoService.updateDex(hookId, stored.relativePath(), stored.hash(), owner)) {
+            throw new IllegalArgumentException("未找到 HookInfo");
         }
-        Path workDir = baseDir.resolve(taskId);
-        Files.createDirectories(workDir);
-        return workDir;
+        log.info("编译任务 {} 已发布到 Hook {}: {}", taskId, hookId, stored.relativePath());
+
+        // 与下载一致：标记为已消费并清理工作目录（硬链接下存储目录中的文件不受影响）
+        markAsDownloaded(taskId);
+        return stored;
     }
 
     /**
      * 编译多个 Java 文件 -> Class
      */
-    private String compileMultipleJavaToClass(Path srcDir, Path outputDir) throws IOException, InterruptedException {
+    private String compileMultipleJavaToClass(Path srcDir, Path outputDir, HelperLibraryService.HelperJar helperJar)
+            throws IOException, InterruptedException {
         // 构建 classpath
         List<String> classpath = new ArrayList<>();
         classpath.add(androidHome + "/platforms/android-34/android.jar");
+        if (helperJar != null) {
+            classpath.add(helperJar.path().toString());
+        }
         
         // 添加 jar_lib 目录下的所有 jar
         File jarLibDir = new File(jarLibPath);
@@ -386,7 +546,8 @@ public class DexCompileService {
     /**
      * 转换 Class -> Dex
      */
-    private String convertClassToDex(Path classesDir, Path outputDex) throws IOException, InterruptedException {
+    private String convertClassToDex(Path classesDir, Path outputDex, HelperLibraryService.HelperJar helperJar)
+            throws IOException, InterruptedException {
         String d8Path = androidHome + "/build-tools/" + buildToolsVersion + "/d8";
 
         // 收集所有 .class 文件
@@ -398,16 +559,7 @@ public class DexCompileService {
         // 递归添加所有 .class 文件（排除受保护的工具类）
         List<Path> allClassFiles = new ArrayList<>();
         List<Path> excludedFiles = new ArrayList<>();
-        
-        Files.walk(classesDir)
-                .filter(p -> p.toString().endsWith(".class"))
-                .forEach(p -> {
-                    if (isExcludedClass(p)) {
-                        excludedFiles.add(p);
-                    } else {
-                        allClassFiles.add(p);
-                    }
-                });
+        partitionClassFiles(classesDir, allClassFiles, excludedFiles);
         
         if (allClassFiles.isEmpty()) {
             throw new RuntimeException("未找到任何可编译的 .class 文件");
@@ -428,6 +580,11 @@ public class DexCompileService {
             command.add(classFile.toString());
         }
 
+        if (helperJar != null) {
+            command.add("--classpath");
+            command.add(helperJar.path().toString());
+        }
+
         // 添加 jar 依赖作为 classpath
         // d8 的 --classpath 需要每个 jar 单独作为一个参数
         File jarLibDir = new File(jarLibPath);
@@ -444,6 +601,198 @@ public class DexCompileService {
         return executeCommand(command, classesDir.getParent());
     }
     
+    /**
+     * 使用 R8 转换 Class -> Dex（裁剪、优化，不混淆）
+     */
+    private String shrinkClassToDex(Path classesDir, Path outputDex, String userKeepRules,
+                                    HelperLibraryService.HelperJar helperJar) throws IOException, InterruptedException {
+        Path workDir = classesDir.getParent();
+
+        List<Path> programClassFiles = new ArrayList<>();
+        List<Path> excludedFiles = new ArrayList<>();
+        partitionClassFiles(classesDir, programClassFiles, excludedFiles);
+        if (programClassFiles.isEmpty()) {
+            throw new RuntimeException("未找到任何可编译的 .class 文件");
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(javaPath);
+        command.add("-cp");
+        command.add(resolveR8Jar());
+        command.add("com.android.tools.r8.R8");
+        command.add("--release");
+        command.add("--output");
+        command.add(outputDex.getParent().toString());
+        command.add("--lib");
+        command.add(androidHome + "/platforms/android-34/android.jar");
+
+        // 工具类只作为 classpath 参与解析，不打入 dex：优先使用预编译工具类库，否则打包客户端上传源码编译出的类
+        if (helperJar != null) {
+            command.add("--classpath");
+            command.add(helperJar.path().toString());
+        }
+        if (!excludedFiles.isEmpty()) {
+            Path providedJar = workDir.resolve("provided.jar");
+            packClasses(classesDir, excludedFiles, providedJar);
+            command.add("--classpath");
+            command.add(providedJar.toString());
+        }
+
+        File jarLibDir = new File(jarLibPath);
+        if (jarLibDir.exists() && jarLibDir.isDirectory()) {
+            File[] jars = jarLibDir.listFiles((dir, name) -> name.endsWith(".jar"));
+            if (jars != null) {
+                for (File jar : jars) {
+                    command.add("--classpath");
+                    command.add(jar.getAbsolutePath());
+                }
+            }
+        }
+
+        Path rulesFile = workDir.resolve("proguard-rules.pro");
+        Files.writeString(rulesFile, buildKeepRules(userKeepRules, workDir.resolve(R8_USAGE_FILE)));
+        command.add("--pg-conf");
+        command.add(rulesFile.toString());
+
+        for (Path classFile : programClassFiles) {
+            command.add(classFile.toString());
+        }
+
+        log.info("R8 编译 Dex: 包含 {} 个 class 文件, 排除 {} 个工具类",
+                programClassFiles.size(), excludedFiles.size());
+        return executeCommand(command, workDir);
+    }
+
+    /**
+     * 生成 R8 keep 规则：Xposed 入口 + 用户规则
+     * Hook 配置通过 DexClassName/DexMethodName 反射调用的类和方法需要用户自行 keep，
+     * 不再默认保留所有公共静态方法（那样几乎什么都裁剪不掉）。
+     * 被裁剪掉的类和成员输出到 usageFile，用于在编译日志中统计缩减量。
+     */
+    private String buildKeepRules(String userKeepRules, Path usageFile) {
+        StringBuilder rules = new StringBuilder();
+        rules.append("# 自动生成：Xposed 入口\n");
+        for (String entry : XPOSED_ENTRY_INTERFACES) {
+            rules.append("-keep class * implements ").append(entry).append(" { <init>(...); public *; }\n");
+        }
+        // 类名会被 Hook 配置按字符串引用，因此不做混淆
+        rules.append("-dontobfuscate\n");
+        rules.append("-keepattributes Signature,InnerClasses,EnclosingMethod,*Annotation*,SourceFile,LineNumberTable\n");
+        rules.append("-printusage \"").append(usageFile).append("\"\n");
+        if (userKeepRules != null && !userKeepRules.isBlank()) {
+            rules.append("# 用户自定义规则\n");
+            rules.append(userKeepRules).append("\n");
+        }
+        return rules.toString();
+    }
+
+    /**
+     * R8 的缩减量：参与裁剪的 class 文件总大小，以及 -printusage 中被移除的类、方法和字段数
+     * （不再额外运行 d8 生成基准产物）
+     */
+    private String describeShrink(Path classesDir, Path usageFile) {
+        try {
+            List<Path> programClassFiles = new ArrayList<>();
+            partitionClassFiles(classesDir, programClassFiles, new ArrayList<>());
+            long classBytes = 0;
+            for (Path classFile : programClassFiles) {
+                classBytes += Files.size(classFile);
+            }
+            StringBuilder summary = new StringBuilder("（输入 ").append(programClassFiles.size())
+                    .append(" 个 class 文件共 ").append(classBytes).append(" bytes");
+            if (Files.exists(usageFile)) {
+                R8Usage usage = parseR8Usage(Files.readAllLines(usageFile));
+                summary.append("，R8 移除 ").append(usage.classes()).append(" 个类、")
+                        .append(usage.methods()).append(" 个方法、").append(usage.fields()).append(" 个字段");
+            }
+            return summary.append("）").toString();
+        } catch (IOException e) {
+            log.warn("统计 R8 缩减量失败: {}", e.getMessage());
+            return "";
+        }
+    }
+
+    /**
+     * R8 -printusage 中被移除的类、方法和字段数
+     */
+    record R8Usage(int classes, int methods, int fields) {
+    }
+
+    /**
+     * 解析 -printusage 输出：顶格且不以冒号结尾的行是整个被移除的类；
+     * 以冒号结尾的行是部分成员被移除的类，其后缩进的行是被移除的成员（带括号的是方法）
+     */
+    static R8Usage parseR8Usage(List<String> lines) {
+        int classes = 0;
+        int methods = 0;
+        int fields = 0;
+        for (String line : lines) {
+            if (line.isBlank()) {
+                continue;
+            }
+            if (Character.isWhitespace(line.charAt(0))) {
+                if (line.indexOf('(') >= 0) {
+                    methods++;
+                } else {
+                    fields++;
+                }
+            } else if (!line.stripTrailing().endsWith(":")) {
+                classes++;
+            }
+        }
+        return new R8Usage(classes, methods, fields);
+    }
+
+    /**
+     * 校验用户 keep 规则（只允许 -keep*、-dontwarn、-assumenosideeffects，见 {@link KeepRuleValidator}）
+     */
+    public void validateKeepRules(String keepRules) {
+        if (keepRules == null || keepRules.isBlank()) {
+            return;
+        }
+        if (keepRules.length() > MAX_KEEP_RULES_LENGTH) {
+            throw new IllegalArgumentException("keep 规则过长");
+        }
+        KeepRuleValidator.validate(keepRules);
+    }
+
+    private String resolveR8Jar() {
+        if (r8JarPath != null && !r8JarPath.isBlank()) {
+            return r8JarPath;
+        }
+        return androidHome + "/build-tools/" + buildToolsVersion + "/lib/d8.jar";
+    }
+
+    /**
+     * 将指定 class 文件打包为 jar（保留包路径）
+     */
+    private void packClasses(Path classesDir, List<Path> classFiles, Path jarFile) throws IOException {
+        try (java.util.jar.JarOutputStream out = new java.util.jar.JarOutputStream(Files.newOutputStream(jarFile))) {
+            for (Path classFile : classFiles) {
+                String entryName = classesDir.relativize(classFile).toString().replace('\\', '/');
+                out.putNextEntry(new java.util.jar.JarEntry(entryName));
+                Files.copy(classFile, out);
+                out.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * 将 classes 目录下的 class 文件分为参与编译的和受保护的工具类
+     */
+    private void partitionClassFiles(Path classesDir, List<Path> included, List<Path> excluded) throws IOException {
+        try (var stream = Files.walk(classesDir)) {
+            stream.filter(p -> p.toString().endsWith(".class"))
+                    .forEach(p -> {
+                        if (isExcludedClass(p)) {
+                            excluded.add(p);
+                        } else {
+                            included.add(p);
+                        }
+                    });
+        }
+    }
+
     /**
      * 判断是否是需要排除的 class 文件（受保护的工具类）
      */
@@ -483,7 +832,7 @@ public class DexCompileService {
         boolean finished = process.waitFor(timeoutSeconds, TimeUnit.SECONDS);
         if (!finished) {
             process.destroyForcibly();
-            throw new RuntimeException("命令执行超时");
+            throw new CommandTimeoutException("命令执行超时");
         }
 
         int exitCode = process.exitValue();
@@ -547,23 +896,13 @@ public class DexCompileService {
     }
 
     /**
-     * 递归删除目录
+     * 外部命令执行超时
      */
-    private void deleteDirectory(Path dir) {
-        try {
-            if (Files.exists(dir)) {
-                Files.walk(dir)
-                        .sorted(Comparator.reverseOrder())
-                        .forEach(path -> {
-                            try {
-                                Files.delete(path);
-                            } catch (IOException e) {
-                                log.warn("删除文件失败: {}", path, e);
-                            }
-                        });
-            }
-        } catch (IOException e) {
-            log.warn("删除目录失败: {}", dir, e);
+    private static class CommandTimeoutException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        CommandTimeoutException(String message) {
+            super(message);
         }
     }
 
@@ -592,21 +931,13 @@ public class DexCompileService {
     }
     
     /**
-     * 删除编译任务（包括dex文件）
+     * 删除编译任务（包括整个工作目录）
      */
     public void deleteTask(String taskId) {
         DexCompileTask task = dexCompileTaskMapper.findByTaskId(taskId);
         if (task != null && task.getDexFilePath() != null) {
-            // 删除dex文件
-            try {
-                Path dexFile = Paths.get(task.getDexFilePath());
-                if (Files.exists(dexFile)) {
-                    Files.delete(dexFile);
-                    log.info("已删除 Dex 文件: {}", task.getDexFilePath());
-                }
-            } catch (IOException e) {
-                log.warn("删除 Dex 文件失败: {}", task.getDexFilePath(), e);
-            }
+            workspaceManager.releaseByArtifact(task.getDexFilePath());
+            log.info("已释放工作目录: {}", task.getDexFilePath());
         }
         
         // 删除数据库记录
@@ -624,14 +955,8 @@ public class DexCompileService {
         int deletedCount = 0;
         for (DexCompileTask task : tasks) {
             try {
-                // 删除dex文件
-                if (task.getDexFilePath() != null) {
-                    Path dexFile = Paths.get(task.getDexFilePath());
-                    if (Files.exists(dexFile)) {
-                        Files.delete(dexFile);
-                        log.info("已删除 Dex 文件: {}", task.getDexFilePath());
-                    }
-                }
+                // 释放工作目录（包括dex文件）
+                workspaceManager.releaseByArtifact(task.getDexFilePath());
                 
                 // 删除数据库记录
                 dexCompileTaskMapper.deleteByTaskId(task.getTaskId());
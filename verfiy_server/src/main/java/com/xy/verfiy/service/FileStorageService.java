@@ -6,9 +6,13 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HexFormat;
@@ -59,6 +63,23 @@ public class FileStorageService {
         }
     }
     
+    /**
+     * 流式计算文件的 SHA-256 哈希值
+     */
+    private String calculateHash(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 算法不可用", e);
+        }
+    }
+    
     /**
      * 保存 Dex 文件
      * @param data Dex 文件的字节数组
@@ -84,6 +105,57 @@ public class FileStorageService {
         return relativePath;
     }
     
+    /**
+     * 将已在磁盘上的 Dex 文件直接放入存储目录（硬链接或重命名，不读入内存）
+     * @param source 源文件（如编译工作目录中的 classes.dex）
+     * @return 存储结果（相对路径 + SHA-256）
+     */
+    public StoredFile storeDexFile(Path source) throws IOException {
+        initStorageDirectories();
+
+        String hash = calculateHash(source);
+        String relativePath = DEX_DIR + "/" + hash + ".dex";
+        Path fullPath = Paths.get(basePath, relativePath);
+
+        // 如果文件已存在，不重复保存（去重）
+        if (Files.exists(fullPath)) {
+            logger.info("Dex 文件已存在，跳过保存: {}", relativePath);
+            return new StoredFile(relativePath, hash);
+        }
+
+        try {
+            Files.createLink(fullPath, source);
+            logger.info("链接 Dex 文件: {} -> {}", source, relativePath);
+        } catch (FileAlreadyExistsException e) {
+            // 并发发布了相同内容
+            logger.info("Dex 文件已存在，跳过保存: {}", relativePath);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // 不支持硬链接或跨文件系统：先移动到存储目录下的临时文件，再原子重命名
+            Path tmp = Files.createTempFile(fullPath.getParent(), hash, ".tmp");
+            try {
+                Files.move(source, tmp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tmp, fullPath, StandardCopyOption.ATOMIC_MOVE);
+                logger.info("移动 Dex 文件: {} -> {}", source, relativePath);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        return new StoredFile(relativePath, hash);
+    }
+
+    /**
+     * 从存储路径中取出内容哈希（文件名即 SHA-256）
+     */
+    public String hashOf(String relativePath) {
+        if (relativePath == null || relativePath.isBlank()) {
+            return null;
+        }
+        String filename = Paths.get(relativePath).getFileName().toString();
+        int end = filename.indexOf('_') > 0 ? filename.indexOf('_') : filename.lastIndexOf('.');
+        return end > 0 ? filename.substring(0, end) : filename;
+    }
+
     /**
      * 保存 Zip 文件
      * @param data Zip 文件的字节数组
@@ -207,5 +279,10 @@ public class FileStorageService {
         Path fullPath = Paths.get(basePath, relativePath);
         return Files.exists(fullPath);
     }
-}
 
+    /**
+     * 已存储文件：相对路径与内容哈希
+     */
+    public record StoredFile(String relativePath, String hash) {
+    }
+}
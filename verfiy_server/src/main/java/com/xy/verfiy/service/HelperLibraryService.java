@@ -0,0 +1,165 @@
+package com.xy.verfiy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipException;
+
+/**
+ * com.xy.ithook 工具类库（HookHelper 等）
+ *
+ * 工具类以预编译 jar 的形式由服务器维护（ithook-helper-&lt;版本&gt;.jar），编译时只作为 classpath，
+ * 不再随每次编译请求上传源码、也不会打入 dex。目录中存在多个版本时使用版本号最高的一个。
+ */
+@Slf4j
+@Service
+public class HelperLibraryService {
+
+    public static final String HELPER_PACKAGE_PATH = "com/xy/ithook/";
+
+    private static final Pattern JAR_NAME = Pattern.compile("ithook-helper-([0-9A-Za-z.\\-]+)\\.jar");
+    private static final Pattern VERSION = Pattern.compile("[0-9A-Za-z.\\-]{1,32}");
+    // 工具类 jar 大小上限
+    private static final long MAX_JAR_SIZE_BYTES = 10L * 1024 * 1024;
+
+    @Value("${dex.compile.helper-lib-dir:${file.storage.base-path:/data/verfiy}/helper-lib}")
+    private String helperLibDir;
+
+    /**
+     * 当前工具类 jar
+     */
+    public record HelperJar(String version, Path path) {
+    }
+
+    /**
+     * 获取当前版本的工具类 jar；未部署时返回 null（回退为由客户端上传源码的旧方式）
+     */
+    public HelperJar currentJar() {
+        File dir = new File(helperLibDir);
+        File[] jars = dir.isDirectory() ? dir.listFiles((d, name) -> JAR_NAME.matcher(name).matches()) : null;
+        if (jars == null || jars.length == 0) {
+            return null;
+        }
+        HelperJar latest = null;
+        for (File jar : jars) {
+            Matcher matcher = JAR_NAME.matcher(jar.getName());
+            if (matcher.matches() && (latest == null || compareVersions(matcher.group(1), latest.version()) > 0)) {
+                latest = new HelperJar(matcher.group(1), jar.toPath());
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * 是否为工具类源码（有预编译 jar 时不再参与 javac）
+     */
+    public static boolean isHelperSource(String relativePath) {
+        return relativePath != null && relativePath.replace('\\', '/').startsWith(HELPER_PACKAGE_PATH);
+    }
+
+    /**
+     * 上传新版本工具类 jar（只允许包含 com/xy/ithook 下的 class），成功后立即成为当前版本
+     */
+    public HelperJar install(String version, InputStream content) throws IOException {
+        if (version == null || !VERSION.matcher(version).matches()) {
+            throw new IllegalArgumentException("版本号格式不正确");
+        }
+        Path dir = Paths.get(helperLibDir);
+        Files.createDirectories(dir);
+        Path target = dir.resolve("ithook-helper-" + version + ".jar");
+        if (Files.exists(target)) {
+            throw new IllegalArgumentException("该版本已存在: " + version);
+        }
+
+        Path tmp = Files.createTempFile(dir, "ithook-helper", ".tmp");
+        try {
+            Files.copy(content, tmp, StandardCopyOption.REPLACE_EXISTING);
+            if (Files.size(tmp) > MAX_JAR_SIZE_BYTES) {
+                throw new IllegalArgumentException("jar 文件超过 10MB 限制");
+            }
+            int classCount = validateJar(tmp);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            log.info("已安装工具类库 {}（{} 个类）", target.getFileName(), classCount);
+            return new HelperJar(version, target);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 列出当前 jar 中的类（供编辑器展示）
+     */
+    public List<String> listClasses(HelperJar jar) throws IOException {
+        List<String> classes = new ArrayList<>();
+        try (JarFile jarFile = new JarFile(jar.path().toFile())) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(".class") && !name.contains("$")) {
+                    classes.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+                }
+            }
+        }
+        Collections.sort(classes);
+        return classes;
+    }
+
+    private int validateJar(Path jar) throws IOException {
+        int classCount = 0;
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (entry.isDirectory() || name.startsWith("META-INF/")) {
+                    continue;
+                }
+                if (!name.startsWith(HELPER_PACKAGE_PATH) || !name.endsWith(".class")) {
+                    throw new IllegalArgumentException("jar 中只能包含 com.xy.ithook 包下的类: " + name);
+                }
+                classCount++;
+            }
+        } catch (ZipException e) {
+            throw new IllegalArgumentException("不是有效的 jar 文件", e);
+        }
+        if (classCount == 0) {
+            throw new IllegalArgumentException("jar 中没有 com.xy.ithook 包下的类");
+        }
+        return classCount;
+    }
+
+    /**
+     * 按段比较版本号（数字段按数值比较），如 1.10.0 > 1.9.2
+     */
+    static int compareVersions(String a, String b) {
+        String[] left = a.split("[.\\-]");
+        String[] right = b.split("[.\\-]");
+        for (int i = 0; i < Math.max(left.length, right.length); i++) {
+            String l = i < left.length ? left[i] : "0";
+            String r = i < right.length ? right[i] : "0";
+            int cmp;
+            if (l.matches("\\d{1,9}") && r.matches("\\d{1,9}")) {
+                cmp = Integer.compare(Integer.parseInt(l), Integer.parseInt(r));
+            } else {
+                cmp = l.compareTo(r);
+            }
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+}
@@ -14,6 +14,8 @@ public interface HookInfoService {
 
     boolean updateStatus(Long id, boolean enabled, String owner);
 
+    boolean updateDex(Long id, String dexData, String dexHash, String owner);
+
     boolean delete(Long id, String owner);
 
     HookInfo findEffective(Long appId, String packageName, String version);
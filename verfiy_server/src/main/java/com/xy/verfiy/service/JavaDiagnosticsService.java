@@ -0,0 +1,382 @@
+package com.xy.verfiy.service;
+
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Java 代码诊断服务（进程内 javac，只做解析和语义分析，不生成 class）
+ *
+ * 编辑器在停止输入时调用，不占用编译配额。android.jar、工具类库和 jar_lib 的 classpath
+ * 由常驻的文件管理器池持有，jar 只在首次使用或 classpath 变化时打开一次。
+ * 单次诊断超过 dex.diagnostics.timeout-ms 时在 javac 的下一个阶段事件处中止，避免个别提交长时间占住文件管理器。
+ */
+@Slf4j
+@Service
+public class JavaDiagnosticsService {
+
+    // 相同内容重复提交时直接返回上次结果
+    private static final int RESULT_CACHE_SIZE = 64;
+    // 等待空闲文件管理器的最长时间
+    private static final long BORROW_TIMEOUT_MILLIS = 5_000L;
+
+    @Value("${dex.compile.android-home}")
+    private String androidHome;
+
+    @Value("${dex.compile.jar-lib-path}")
+    private String jarLibPath;
+
+    // 同时进行的诊断数（每个占用一个文件管理器）
+    @Value("${dex.diagnostics.pool-size:2}")
+    private int poolSize;
+
+    // 单次提交的源码总大小上限
+    @Value("${dex.diagnostics.max-source-bytes:1048576}")
+    private int maxSourceBytes;
+
+    // 单次诊断耗时上限
+    @Value("${dex.diagnostics.timeout-ms:10000}")
+    private long timeoutMillis;
+
+    private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+    private final HelperLibraryService helperLibraryService;
+
+    private volatile FileManagerPool pool;
+
+    private final Map<String, List<JavaDiagnostic>> resultCache = Collections.synchronizedMap(
+            new LinkedHashMap<>(RESULT_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<JavaDiagnostic>> eldest) {
+                    return size() > RESULT_CACHE_SIZE;
+                }
+            });
+
+    public JavaDiagnosticsService(HelperLibraryService helperLibraryService) {
+        this.helperLibraryService = helperLibraryService;
+    }
+
+    /**
+     * 单条诊断信息
+     */
+    public record JavaDiagnostic(String file, long line, long column, String severity, String message) {
+    }
+
+    /**
+     * 诊断一组源文件
+     * @param files 相对路径（如 com/example/Main.java） -> 源码
+     */
+    public List<JavaDiagnostic> diagnose(Map<String, String> files) throws IOException, InterruptedException {
+        if (compiler == null) {
+            throw new IllegalStateException("当前运行环境不是 JDK，无法进行代码诊断");
+        }
+        if (files == null || files.isEmpty()) {
+            throw new IllegalArgumentException("文件列表不能为空");
+        }
+
+        // 有预编译工具类库时，工具类源码不参与分析（与编译时一致）
+        boolean hasHelperJar = helperLibraryService.currentJar() != null;
+        List<JavaFileObject> units = new ArrayList<>();
+        long totalBytes = 0;
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            String path = entry.getKey();
+            if (path == null || !path.endsWith(".java")
+                    || (hasHelperJar && HelperLibraryService.isHelperSource(path))) {
+                continue;
+            }
+            if (path.contains("..") || path.startsWith("/")) {
+                throw new IllegalArgumentException("非法文件路径: " + path);
+            }
+            String content = entry.getValue() != null ? entry.getValue() : "";
+            totalBytes += content.length();
+            units.add(new SourceFile(path, content));
+        }
+        if (units.isEmpty()) {
+            return List.of();
+        }
+        if (totalBytes > maxSourceBytes) {
+            throw new IllegalArgumentException("源码总大小超过 " + (maxSourceBytes / 1024) + "KB 限制");
+        }
+
+        FileManagerPool current = currentPool();
+        String cacheKey = cacheKey(current.signature, files);
+        List<JavaDiagnostic> cached = resultCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        StandardJavaFileManager fileManager = current.borrow();
+        boolean timedOut = false;
+        try {
+            List<JavaDiagnostic> result = analyze(fileManager, current.classpath, units);
+            resultCache.put(cacheKey, result);
+            return result;
+        } catch (RuntimeException e) {
+            if (!isTimeout(e)) {
+                throw e;
+            }
+            timedOut = true;
+            log.warn("代码诊断超时（{} 个文件，{} 字节），已中止", units.size(), totalBytes);
+            throw new IllegalStateException("代码诊断超时，请精简代码后重试");
+        } finally {
+            if (timedOut) {
+                // 中途中止的 javac 任务可能留下不完整的状态，不再复用这个文件管理器
+                current.discard(fileManager);
+            } else {
+                release(current, fileManager);
+            }
+        }
+    }
+
+    private List<JavaDiagnostic> analyze(StandardJavaFileManager fileManager, String classpath,
+                                         List<JavaFileObject> units) throws IOException {
+        DiagnosticCollector<JavaFileObject> collector = new DiagnosticCollector<>();
+        // 与 DexCompileService 中 javac 的参数保持一致
+        List<String> options = List.of(
+                "-encoding", "UTF-8",
+                "-source", "8",
+                "-target", "8",
+                "-proc:none",
+                "-Xlint:-options",
+                "-classpath", classpath);
+
+        JavacTask task = (JavacTask) compiler.getTask(null, fileManager, collector, options, null, units);
+        task.addTaskListener(new DeadlineListener(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis)));
+        task.parse();
+        task.analyze();
+
+        List<JavaDiagnostic> result = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> d : collector.getDiagnostics()) {
+            if (d.getKind() == Diagnostic.Kind.NOTE) {
+                continue;
+            }
+            String file = d.getSource() instanceof SourceFile source ? source.relativePath : null;
+            result.add(new JavaDiagnostic(
+                    file,
+                    d.getLineNumber(),
+                    d.getColumnNumber(),
+                    d.getKind() == Diagnostic.Kind.ERROR ? "error" : "warning",
+                    d.getMessage(Locale.SIMPLIFIED_CHINESE)));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * 获取当前文件管理器池；jar_lib 或工具类库发生变化时重建
+     */
+    private FileManagerPool currentPool() {
+        List<String> jars = listClasspathJars();
+        String signature = classpathSignature(jars);
+        FileManagerPool current = pool;
+        if (current != null && current.signature.equals(signature)) {
+            return current;
+        }
+        synchronized (this) {
+            current = pool;
+            if (current == null || !current.signature.equals(signature)) {
+                FileManagerPool old = current;
+                current = new FileManagerPool(signature, String.join(File.pathSeparator, jars));
+                pool = current;
+                if (old != null) {
+                    old.closeIdle();
+                    log.info("classpath 发生变化，已重建诊断文件管理器池");
+                }
+            }
+            return current;
+        }
+    }
+
+    /**
+     * javac 会把监听器抛出的异常包装成 ClientCodeException，沿 cause 链查找
+     */
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof DiagnosticsTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void release(FileManagerPool owner, StandardJavaFileManager fileManager) {
+        if (owner == pool) {
+            owner.idle.offer(fileManager);
+        } else {
+            closeQuietly(fileManager);
+        }
+    }
+
+    private List<String> listClasspathJars() {
+        List<String> jars = new ArrayList<>();
+        jars.add(androidHome + "/platforms/android-34/android.jar");
+        HelperLibraryService.HelperJar helperJar = helperLibraryService.currentJar();
+        if (helperJar != null) {
+            jars.add(helperJar.path().toString());
+        }
+        File jarLibDir = new File(jarLibPath);
+        File[] libs = jarLibDir.isDirectory() ? jarLibDir.listFiles((dir, name) -> name.endsWith(".jar")) : null;
+        if (libs != null) {
+            Arrays.sort(libs);
+            for (File jar : libs) {
+                jars.add(jar.getAbsolutePath());
+            }
+        }
+        return jars;
+    }
+
+    private String classpathSignature(List<String> jars) {
+        StringBuilder sb = new StringBuilder();
+        for (String jar : jars) {
+            File file = new File(jar);
+            sb.append(jar).append(':').append(file.lastModified()).append(':').append(file.length()).append(';');
+        }
+        return sb.toString();
+    }
+
+    private String cacheKey(String signature, Map<String, String> files) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(signature.getBytes(StandardCharsets.UTF_8));
+            for (Map.Entry<String, String> entry : new TreeMap<>(files).entrySet()) {
+                digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(String.valueOf(entry.getValue()).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 算法不可用", e);
+        }
+    }
+
+    private static void closeQuietly(StandardJavaFileManager fileManager) {
+        try {
+            fileManager.close();
+        } catch (IOException e) {
+            log.debug("关闭文件管理器失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 文件管理器池：每个文件管理器缓存已打开的 jar，按需创建，最多 poolSize 个
+     */
+    private class FileManagerPool {
+        private final String signature;
+        private final String classpath;
+        private final BlockingQueue<StandardJavaFileManager> idle;
+        private final AtomicInteger created = new AtomicInteger();
+
+        FileManagerPool(String signature, String classpath) {
+            this.signature = signature;
+            this.classpath = classpath;
+            this.idle = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        }
+
+        StandardJavaFileManager borrow() throws InterruptedException {
+            StandardJavaFileManager fileManager = idle.poll();
+            if (fileManager != null) {
+                return fileManager;
+            }
+            if (created.incrementAndGet() <= Math.max(1, poolSize)) {
+                return compiler.getStandardFileManager(null, Locale.SIMPLIFIED_CHINESE, StandardCharsets.UTF_8);
+            }
+            created.decrementAndGet();
+            fileManager = idle.poll(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            if (fileManager == null) {
+                throw new IllegalStateException("诊断服务繁忙，请稍后再试");
+            }
+            return fileManager;
+        }
+
+        void discard(StandardJavaFileManager fileManager) {
+            created.decrementAndGet();
+            closeQuietly(fileManager);
+        }
+
+        void closeIdle() {
+            StandardJavaFileManager fileManager;
+            while ((fileManager = idle.poll()) != null) {
+                closeQuietly(fileManager);
+            }
+        }
+    }
+
+    /**
+     * 在 javac 每个编译单元的阶段开始和结束时检查是否超时
+     */
+    private static class DeadlineListener implements TaskListener {
+        private final long deadlineNanos;
+
+        DeadlineListener(long deadlineNanos) {
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public void started(TaskEvent e) {
+            check();
+        }
+
+        @Override
+        public void finished(TaskEvent e) {
+            check();
+        }
+
+        private void check() {
+            if (System.nanoTime() - deadlineNanos > 0) {
+                throw new DiagnosticsTimeoutException();
+            }
+        }
+    }
+
+    private static class DiagnosticsTimeoutException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        DiagnosticsTimeoutException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * 内存中的源文件
+     */
+    private static class SourceFile extends SimpleJavaFileObject {
+        private final String relativePath;
+        private final String content;
+
+        SourceFile(String relativePath, String content) {
+            super(toUri(relativePath), Kind.SOURCE);
+            this.relativePath = relativePath;
+            this.content = content;
+        }
+
+        private static URI toUri(String relativePath) {
+            try {
+                return new URI("string", null, "/" + relativePath, null);
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException("非法文件路径: " + relativePath, e);
+            }
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+}
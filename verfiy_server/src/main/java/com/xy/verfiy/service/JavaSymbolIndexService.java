@@ -0,0 +1,638 @@
+package com.xy.verfiy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.asm.ClassReader;
+import org.springframework.asm.ClassVisitor;
+import org.springframework.asm.FieldVisitor;
+import org.springframework.asm.MethodVisitor;
+import org.springframework.asm.Opcodes;
+import org.springframework.asm.SpringAsmInfo;
+import org.springframework.asm.Type;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+
+/**
+ * Java 符号索引（android.jar + jar_lib），供编辑器代码补全和自动导包使用
+ *
+ * 启动时在后台构建，按 jar 分块持久化到索引文件；重启时顺序读取索引文件加载到内存（字符串去重），
+ * 只有新增或变化的 jar 才会重新解析。
+ */
+@Slf4j
+@Service
+public class JavaSymbolIndexService {
+
+    public static final String KIND_CLASS = "class";
+    public static final String KIND_METHOD = "method";
+    public static final String KIND_FIELD = "field";
+
+    private static final int FILE_MAGIC = 0x5653594D; // "VSYM"
+    private static final int FILE_VERSION = 1;
+    private static final byte FLAG_STATIC = 1;
+    private static final byte FLAG_INTERFACE = 2;
+    // jar_lib 变化检测的最小间隔
+    private static final long CHANGE_CHECK_INTERVAL_MILLIS = 10_000L;
+    // 成员补全时最多查找的类数（自身 + 父类 + 接口）
+    private static final int MAX_HIERARCHY_CLASSES = 64;
+    // 匿名类和局部类（Outer$1、Outer$1Local）
+    private static final Pattern ANONYMOUS_CLASS = Pattern.compile(".*\\$\\d.*");
+
+    @Value("${dex.compile.android-home}")
+    private String androidHome;
+
+    @Value("${dex.compile.jar-lib-path}")
+    private String jarLibPath;
+
+    @Value("${dex.symbol-index.file:${file.storage.base-path:/data/verfiy}/symbol-index.bin}")
+    private String indexFile;
+
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "symbol-index");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private final HelperLibraryService helperLibraryService;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile long lastChangeCheck = 0L;
+
+    public JavaSymbolIndexService(HelperLibraryService helperLibraryService) {
+        this.helperLibraryService = helperLibraryService;
+    }
+
+    /**
+     * 补全/查询结果
+     */
+    public record JavaSymbol(String kind, String name, String owner, String detail, boolean isStatic) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        scheduleRebuild();
+    }
+
+    /**
+     * 类名补全：前缀匹配（不区分大小写）+ 驼峰匹配（如 ADia -> AlertDialog）
+     */
+    public List<JavaSymbol> completeClasses(String prefix, int limit) {
+        checkForChanges();
+        if (prefix == null || prefix.isEmpty()) {
+            return List.of();
+        }
+        Snapshot current = snapshot;
+        String lower = prefix.toLowerCase(Locale.ROOT);
+        List<JavaSymbol> result = new ArrayList<>();
+        Set<ClassEntry> seen = new HashSet<>();
+
+        // 1. 前缀匹配（按名称长度优先，短名称通常更常用）
+        int from = current.lowerBound(lower);
+        List<ClassEntry> prefixMatches = new ArrayList<>();
+        for (int i = from; i < current.sortedClasses.length; i++) {
+            ClassEntry entry = current.sortedClasses[i];
+            if (!entry.lowerName.startsWith(lower)) {
+                break;
+            }
+            prefixMatches.add(entry);
+        }
+        prefixMatches.sort(Comparator.comparingInt((ClassEntry e) -> e.name.length()).thenComparing(e -> e.owner));
+        for (ClassEntry entry : prefixMatches) {
+            if (result.size() >= limit) {
+                return result;
+            }
+            seen.add(entry);
+            result.add(entry.toSymbol());
+        }
+
+        // 2. 驼峰匹配：只在首字母相同的候选中查找
+        if (prefix.length() > 1 && Character.isUpperCase(prefix.charAt(0))) {
+            String first = lower.substring(0, 1);
+            for (int i = current.lowerBound(first); i < current.sortedClasses.length && result.size() < limit; i++) {
+                ClassEntry entry = current.sortedClasses[i];
+                if (!entry.lowerName.startsWith(first)) {
+                    break;
+                }
+                if (!seen.contains(entry) && camelHumpMatch(prefix, entry.name)) {
+                    result.add(entry.toSymbol());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 成员补全（含父类和接口中的成员）
+     * @param owner 类的全限定名（嵌套类用 . 分隔，如 android.app.AlertDialog.Builder）
+     */
+    public List<JavaSymbol> completeMembers(String owner, String prefix, boolean staticOnly, int limit) {
+        checkForChanges();
+        Snapshot current = snapshot;
+        ClassEntry entry = current.byQualifiedName.get(owner);
+        if (entry == null) {
+            return List.of();
+        }
+        String lower = prefix != null ? prefix.toLowerCase(Locale.ROOT) : "";
+        List<JavaSymbol> result = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Deque<ClassEntry> queue = new ArrayDeque<>();
+        Set<ClassEntry> visited = new HashSet<>();
+        queue.add(entry);
+        while (!queue.isEmpty() && result.size() < limit && visited.size() < MAX_HIERARCHY_CLASSES) {
+            ClassEntry cls = queue.poll();
+            if (!visited.add(cls)) {
+                continue;
+            }
+            for (Sym member : cls.members) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                if (staticOnly && (member.flags & FLAG_STATIC) == 0) {
+                    continue;
+                }
+                if (!member.name.toLowerCase(Locale.ROOT).startsWith(lower)) {
+                    continue;
+                }
+                // 子类覆盖的方法只保留一次
+                if (seen.add(member.kind + member.name + member.detail)) {
+                    result.add(member.toSymbol());
+                }
+            }
+            for (String superName : cls.supers) {
+                ClassEntry superEntry = current.byQualifiedName.get(superName);
+                if (superEntry != null) {
+                    queue.add(superEntry);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按简单类名查找所在的全限定名（如 AlertDialog -> android.app.AlertDialog）
+     */
+    public List<String> lookupClass(String simpleName) {
+        checkForChanges();
+        List<ClassEntry> entries = snapshot.bySimpleName.get(simpleName);
+        if (entries == null) {
+            return List.of();
+        }
+        List<String> result = new ArrayList<>(entries.size());
+        for (ClassEntry entry : entries) {
+            result.add(entry.qualifiedName);
+        }
+        return result;
+    }
+
+    /**
+     * 索引状态
+     */
+    public Map<String, Object> status() {
+        Snapshot current = snapshot;
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("classes", current.sortedClasses.length);
+        status.put("members", current.memberCount);
+        status.put("jars", current.jarCount);
+        status.put("rebuilding", rebuilding.get());
+        return status;
+    }
+
+    /**
+     * 定期检查 jar_lib 是否变化，变化则在后台增量重建（期间继续使用旧索引）
+     */
+    private void checkForChanges() {
+        long now = System.currentTimeMillis();
+        if (now - lastChangeCheck < CHANGE_CHECK_INTERVAL_MILLIS) {
+            return;
+        }
+        lastChangeCheck = now;
+        if (!snapshot.signature.equals(jarSignature(listJars()))) {
+            scheduleRebuild();
+        }
+    }
+
+    private void scheduleRebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        rebuildExecutor.execute(() -> {
+            try {
+                rebuild();
+            } catch (Exception e) {
+                log.warn("构建符号索引失败: {}", e.getMessage(), e);
+            } finally {
+                rebuilding.set(false);
+            }
+        });
+    }
+
+    private void rebuild() throws IOException {
+        long start = System.currentTimeMillis();
+        List<File> jars = listJars();
+        String signature = jarSignature(jars);
+
+        Map<String, JarBlock> previous = new HashMap<>();
+        Path file = Paths.get(indexFile);
+        if (snapshot.blocks.isEmpty() && Files.isRegularFile(file)) {
+            try {
+                for (JarBlock block : readIndexFile(file)) {
+                    previous.put(block.path, block);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("符号索引文件损坏，将重新构建: {}", e.getMessage());
+            }
+        } else {
+            for (JarBlock block : snapshot.blocks) {
+                previous.put(block.path, block);
+            }
+        }
+
+        List<JarBlock> blocks = new ArrayList<>();
+        int parsed = 0;
+        for (File jar : jars) {
+            JarBlock old = previous.get(jar.getAbsolutePath());
+            if (old != null && old.lastModified == jar.lastModified() && old.size == jar.length()) {
+                blocks.add(old);
+                continue;
+            }
+            try {
+                blocks.add(parseJar(jar));
+                parsed++;
+            } catch (IOException e) {
+                log.warn("解析 jar 失败，已跳过: {} ({})", jar, e.getMessage());
+            }
+        }
+
+        Snapshot rebuilt = new Snapshot(signature, blocks);
+        snapshot = rebuilt;
+        if (parsed > 0 || blocks.size() != previous.size()) {
+            writeIndexFile(file, blocks);
+        }
+        log.info("符号索引就绪：{} 个 jar（重新解析 {} 个），{} 个类，{} 个成员，耗时 {}ms",
+                blocks.size(), parsed, rebuilt.sortedClasses.length, rebuilt.memberCount,
+                System.currentTimeMillis() - start);
+    }
+
+    private List<File> listJars() {
+        List<File> jars = new ArrayList<>();
+        File androidJar = new File(androidHome + "/platforms/android-34/android.jar");
+        if (androidJar.isFile()) {
+            jars.add(androidJar);
+        }
+        HelperLibraryService.HelperJar helperJar = helperLibraryService.currentJar();
+        if (helperJar != null) {
+            jars.add(helperJar.path().toFile());
+        }
+        File jarLibDir = new File(jarLibPath);
+        File[] libs = jarLibDir.isDirectory() ? jarLibDir.listFiles((dir, name) -> name.endsWith(".jar")) : null;
+        if (libs != null) {
+            Arrays.sort(libs);
+            jars.addAll(Arrays.asList(libs));
+        }
+        return jars;
+    }
+
+    private String jarSignature(List<File> jars) {
+        StringBuilder sb = new StringBuilder();
+        for (File jar : jars) {
+            sb.append(jar.getAbsolutePath()).append(':').append(jar.lastModified())
+                    .append(':').append(jar.length()).append(';');
+        }
+        return sb.toString();
+    }
+
+    // ============= jar 解析 =============
+
+    private JarBlock parseJar(File jar) throws IOException {
+        List<Sym> symbols = new ArrayList<>();
+        try (JarFile jarFile = new JarFile(jar)) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.endsWith(".class") || name.startsWith("META-INF/") || name.endsWith("module-info.class")) {
+                    continue;
+                }
+                try (InputStream in = jarFile.getInputStream(entry)) {
+                    new ClassReader(in).accept(new SymbolCollector(symbols),
+                            ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                } catch (RuntimeException e) {
+                    log.debug("跳过无法解析的类: {} ({})", name, e.getMessage());
+                }
+            }
+        }
+        return new JarBlock(jar.getAbsolutePath(), jar.lastModified(), jar.length(), symbols);
+    }
+
+    /**
+     * 收集一个类的公开符号：类本身（detail 为父类和接口）以及 public/protected 成员
+     */
+    private static class SymbolCollector extends ClassVisitor {
+        private final List<Sym> symbols;
+        private String qualifiedName;
+        private boolean skip;
+
+        SymbolCollector(List<Sym> symbols) {
+            super(SpringAsmInfo.ASM_VERSION);
+            this.symbols = symbols;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            String simpleName = name.substring(name.lastIndexOf('/') + 1);
+            // 跳过非公开类、合成类和匿名/局部类
+            skip = (access & Opcodes.ACC_PUBLIC) == 0
+                    || (access & Opcodes.ACC_SYNTHETIC) != 0
+                    || ANONYMOUS_CLASS.matcher(simpleName).matches();
+            if (skip) {
+                return;
+            }
+            qualifiedName = toQualifiedName(name);
+            int dot = qualifiedName.lastIndexOf('.');
+            StringJoiner supers = new StringJoiner(",");
+            if (superName != null) {
+                supers.add(toQualifiedName(superName));
+            }
+            if (interfaces != null) {
+                for (String iface : interfaces) {
+                    supers.add(toQualifiedName(iface));
+                }
+            }
+            byte flags = (access & Opcodes.ACC_INTERFACE) != 0 ? FLAG_INTERFACE : 0;
+            symbols.add(new Sym(Sym.CLASS, flags,
+                    qualifiedName.substring(dot + 1),
+                    dot > 0 ? qualifiedName.substring(0, dot) : "",
+                    supers.toString()));
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            // 嵌套类的访问修饰符以 InnerClasses 属性为准
+            if (!skip && qualifiedName != null && toQualifiedName(name).equals(qualifiedName)
+                    && (access & Opcodes.ACC_PUBLIC) == 0) {
+                skip = true;
+                symbols.remove(symbols.size() - 1);
+            }
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            if (!skip && isVisibleMember(access)) {
+                symbols.add(new Sym(Sym.FIELD, memberFlags(access), name, qualifiedName,
+                        simpleTypeName(Type.getType(descriptor))));
+            }
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            if (!skip && isVisibleMember(access) && (access & Opcodes.ACC_BRIDGE) == 0 && !name.startsWith("<")) {
+                StringJoiner params = new StringJoiner(", ", "(", ")");
+                for (Type arg : Type.getArgumentTypes(descriptor)) {
+                    params.add(simpleTypeName(arg));
+                }
+                symbols.add(new Sym(Sym.METHOD, memberFlags(access), name, qualifiedName,
+                        params + " " + simpleTypeName(Type.getReturnType(descriptor))));
+            }
+            return null;
+        }
+
+        private static boolean isVisibleMember(int access) {
+            return (access & (Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED)) != 0
+                    && (access & Opcodes.ACC_SYNTHETIC) == 0;
+        }
+
+        private static byte memberFlags(int access) {
+            return (access & Opcodes.ACC_STATIC) != 0 ? FLAG_STATIC : 0;
+        }
+
+        private static String toQualifiedName(String internalName) {
+            return internalName.replace('/', '.').replace('$', '.');
+        }
+
+        private static String simpleTypeName(Type type) {
+            String name = type.getClassName();
+            int dot = name.lastIndexOf('.');
+            return (dot >= 0 ? name.substring(dot + 1) : name).replace('$', '.');
+        }
+    }
+
+    private static boolean camelHumpMatch(String query, String name) {
+        List<String> queryHumps = splitHumps(query);
+        List<String> nameHumps = splitHumps(name);
+        int n = 0;
+        for (int q = 0; q < queryHumps.size(); q++) {
+            String part = queryHumps.get(q).toLowerCase(Locale.ROOT);
+            while (n < nameHumps.size() && !nameHumps.get(n).toLowerCase(Locale.ROOT).startsWith(part)) {
+                // 第一段必须从名称开头匹配
+                if (q == 0) {
+                    return false;
+                }
+                n++;
+            }
+            if (n == nameHumps.size()) {
+                return false;
+            }
+            n++;
+        }
+        return true;
+    }
+
+    private static List<String> splitHumps(String value) {
+        List<String> humps = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i < value.length(); i++) {
+            if (Character.isUpperCase(value.charAt(i)) || value.charAt(i) == '.') {
+                humps.add(value.substring(start, i));
+                start = value.charAt(i) == '.' ? i + 1 : i;
+            }
+        }
+        if (start < value.length()) {
+            humps.add(value.substring(start));
+        }
+        return humps;
+    }
+
+    // ============= 索引文件读写 =============
+    // 格式：magic, version, jar 数；每个 jar：路径、修改时间、大小、符号数、符号（kind, flags, name, owner, detail）
+
+    private void writeIndexFile(Path file, List<JarBlock> blocks) {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tmp = Files.createTempFile(parent, "symbol-index", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeInt(blocks.size());
+                for (JarBlock block : blocks) {
+                    writeString(out, block.path);
+                    out.writeLong(block.lastModified);
+                    out.writeLong(block.size);
+                    out.writeInt(block.symbols.size());
+                    for (Sym sym : block.symbols) {
+                        out.writeByte(sym.kind);
+                        out.writeByte(sym.flags);
+                        writeString(out, sym.name);
+                        writeString(out, sym.owner);
+                        writeString(out, sym.detail);
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("保存符号索引文件失败: {} ({})", file, e.getMessage());
+        }
+    }
+
+    private List<JarBlock> readIndexFile(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 65536))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("索引文件版本不匹配");
+            }
+            // 字符串池：android.jar 中大量重复的类型名和 owner 只保留一份
+            Map<String, String> pool = new HashMap<>();
+            int jarCount = in.readInt();
+            List<JarBlock> blocks = new ArrayList<>(jarCount);
+            for (int i = 0; i < jarCount; i++) {
+                String path = readString(in, pool);
+                long lastModified = in.readLong();
+                long size = in.readLong();
+                int count = in.readInt();
+                List<Sym> symbols = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    byte kind = in.readByte();
+                    byte flags = in.readByte();
+                    symbols.add(new Sym(kind, flags, readString(in, pool), readString(in, pool), readString(in, pool)));
+                }
+                blocks.add(new JarBlock(path, lastModified, size, symbols));
+            }
+            return blocks;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, Map<String, String> pool) throws IOException {
+        int length = in.readUnsignedShort();
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        return pool.computeIfAbsent(value, v -> v);
+    }
+
+    // ============= 内存结构 =============
+
+    private record JarBlock(String path, long lastModified, long size, List<Sym> symbols) {
+    }
+
+    private record Sym(byte kind, byte flags, String name, String owner, String detail) {
+        static final byte CLASS = 0;
+        static final byte METHOD = 1;
+        static final byte FIELD = 2;
+
+        JavaSymbol toSymbol() {
+            return new JavaSymbol(kind == METHOD ? KIND_METHOD : KIND_FIELD, name, owner, detail,
+                    (flags & FLAG_STATIC) != 0);
+        }
+    }
+
+    private static class ClassEntry {
+        final String name;
+        final String lowerName;
+        final String owner;
+        final String qualifiedName;
+        final boolean isInterface;
+        final List<String> supers;
+        final List<Sym> members = new ArrayList<>();
+
+        ClassEntry(Sym sym) {
+            this.name = sym.name;
+            this.lowerName = sym.name.toLowerCase(Locale.ROOT);
+            this.owner = sym.owner;
+            this.qualifiedName = sym.owner.isEmpty() ? sym.name : sym.owner + "." + sym.name;
+            this.isInterface = (sym.flags & FLAG_INTERFACE) != 0;
+            this.supers = sym.detail.isEmpty() ? List.of() : List.of(sym.detail.split(","));
+        }
+
+        JavaSymbol toSymbol() {
+            return new JavaSymbol(KIND_CLASS, name, owner, isInterface ? "interface" : "class", false);
+        }
+    }
+
+    /**
+     * 不可变的查询快照；重建完成后整体替换
+     */
+    private static class Snapshot {
+        static final Snapshot EMPTY = new Snapshot("", List.of());
+
+        final String signature;
+        final List<JarBlock> blocks;
+        final ClassEntry[] sortedClasses;
+        final Map<String, ClassEntry> byQualifiedName = new HashMap<>();
+        final Map<String, List<ClassEntry>> bySimpleName = new HashMap<>();
+        final int jarCount;
+        int memberCount;
+
+        Snapshot(String signature, List<JarBlock> blocks) {
+            this.signature = signature;
+            this.blocks = blocks;
+            this.jarCount = blocks.size();
+            List<ClassEntry> classes = new ArrayList<>();
+            for (JarBlock block : blocks) {
+                // 成员紧跟在所属类之后
+                ClassEntry current = null;
+                for (Sym sym : block.symbols) {
+                    if (sym.kind == Sym.CLASS) {
+                        current = new ClassEntry(sym);
+                        // 同名类以先出现的 jar 为准（android.jar 优先）
+                        if (byQualifiedName.putIfAbsent(current.qualifiedName, current) == null) {
+                            classes.add(current);
+                            bySimpleName.computeIfAbsent(current.name, k -> new ArrayList<>()).add(current);
+                        } else {
+                            current = null;
+                        }
+                    } else if (current != null && current.qualifiedName.equals(sym.owner)) {
+                        current.members.add(sym);
+                        memberCount++;
+                    }
+                }
+            }
+            classes.sort(Comparator.comparing((ClassEntry e) -> e.lowerName).thenComparing(e -> e.owner));
+            this.sortedClasses = classes.toArray(new ClassEntry[0]);
+        }
+
+        /**
+         * 第一个小写名称 >= key 的位置
+         */
+        int lowerBound(String key) {
+            int lo = 0;
+            int hi = sortedClasses.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sortedClasses[mid].lowerName.compareTo(key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
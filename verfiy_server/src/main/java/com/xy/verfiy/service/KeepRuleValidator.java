@@ -0,0 +1,211 @@
+package com.xy.verfiy.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 校验用户 keep 规则（白名单）
+ *
+ * 规则会原样交给 R8，其中的 -include、-printconfiguration、@文件 等选项可以读写服务器上的任意文件，
+ * 因此不做黑名单过滤，而是先切分为记号再按语法逐条检查，只允许：
+ * - -keep、-keepclassmembers、-keepclasseswithmembers 及对应的 *names 选项（可带 ,allowshrinking 等修饰）；
+ * - -dontwarn [类名过滤, ...]；
+ * - -assumenosideeffects 类说明。
+ * 类说明：[@注解] [修饰符...] class|interface|enum|@interface 类名[, 类名...] [extends|implements [@注解] 类名]
+ * [{ 成员; ... }]，成员为 [@注解] [修饰符...] 后接 &lt;init&gt;/&lt;fields&gt;/&lt;methods&gt;/* 或 类型 名称，方法带参数列表。
+ * 类名、类型只能由字母、数字和 _ $ . * ? ! &lt; &gt; [ ] 组成（不含路径分隔符和引号）；# 之后到行尾为注释。
+ */
+final class KeepRuleValidator {
+
+    private static final Set<String> KEEP_OPTIONS = Set.of(
+            "-keep", "-keepclassmembers", "-keepclasseswithmembers",
+            "-keepnames", "-keepclassmembernames", "-keepclasseswithmembernames");
+    private static final Set<String> KEEP_MODIFIERS = Set.of(
+            "allowshrinking", "allowoptimization", "allowobfuscation", "allowaccessmodification",
+            "includedescriptorclasses");
+    private static final Set<String> CLASS_TYPES = Set.of("class", "interface", "enum");
+    private static final Set<String> ACCESS_MODIFIERS = Set.of(
+            "public", "private", "protected", "static", "final", "abstract", "native", "synchronized",
+            "volatile", "transient", "strictfp", "synthetic", "bridge", "varargs");
+    private static final Set<String> MEMBER_WILDCARDS = Set.of("<init>", "<clinit>", "<fields>", "<methods>", "*");
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_$.*?!<>\\[\\]]+");
+    private static final String PUNCTUATION = "{}();,@";
+
+    private final List<String> tokens;
+    private int pos;
+
+    private KeepRuleValidator(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * @throws IllegalArgumentException 规则不合法
+     */
+    static void validate(String rules) {
+        new KeepRuleValidator(tokenize(rules)).parse();
+    }
+
+    static List<String> tokenize(String rules) {
+        List<String> out = new ArrayList<>();
+        int i = 0;
+        int n = rules.length();
+        while (i < n) {
+            char c = rules.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '#') {
+                while (i < n && rules.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (PUNCTUATION.indexOf(c) >= 0) {
+                out.add(String.valueOf(c));
+                i++;
+            } else if (c == '-') {
+                int start = i++;
+                while (i < n && Character.isLetter(rules.charAt(i))) {
+                    i++;
+                }
+                out.add(rules.substring(start, i));
+            } else if (isNameChar(c)) {
+                int start = i;
+                while (i < n && isNameChar(rules.charAt(i))) {
+                    i++;
+                }
+                out.add(rules.substring(start, i));
+            } else {
+                throw new IllegalArgumentException("keep 规则中包含不允许的字符: " + c);
+            }
+        }
+        return out;
+    }
+
+    private static boolean isNameChar(char c) {
+        return c < 0x80 && NAME.matcher(String.valueOf(c)).matches();
+    }
+
+    private void parse() {
+        while (pos < tokens.size()) {
+            String option = next();
+            if (KEEP_OPTIONS.contains(option)) {
+                while (accept(",")) {
+                    String modifier = next();
+                    if (!KEEP_MODIFIERS.contains(modifier)) {
+                        throw error("不支持的 keep 修饰: " + modifier);
+                    }
+                }
+                classSpec();
+            } else if ("-dontwarn".equals(option)) {
+                if (peekName()) {
+                    do {
+                        name();
+                    } while (accept(","));
+                }
+            } else if ("-assumenosideeffects".equals(option)) {
+                classSpec();
+            } else {
+                throw error("keep 规则中不允许使用选项: " + option);
+            }
+        }
+    }
+
+    private void classSpec() {
+        annotation();
+        while (peekModifier()) {
+            pos++;
+        }
+        if (accept("@")) {
+            expect("interface");
+        } else {
+            String type = next();
+            if (!CLASS_TYPES.contains(stripNegation(type))) {
+                throw error("缺少 class/interface/enum: " + type);
+            }
+        }
+        do {
+            name();
+        } while (accept(","));
+        if (accept("extends") || accept("implements")) {
+            annotation();
+            name();
+        }
+        if (accept("{")) {
+            while (!accept("}")) {
+                member();
+            }
+        }
+    }
+
+    private void member() {
+        annotation();
+        while (peekModifier()) {
+            pos++;
+        }
+        String first = name();
+        // 类型 名称（* 也可以作为类型，如 * get*();）
+        if (!MEMBER_WILDCARDS.contains(first) || "*".equals(first) && peekName()) {
+            name();
+        }
+        if (accept("(")) {
+            if (!accept(")")) {
+                do {
+                    name();
+                } while (accept(","));
+                expect(")");
+            }
+        }
+        expect(";");
+    }
+
+    private void annotation() {
+        if (pos + 1 < tokens.size() && "@".equals(tokens.get(pos)) && !"interface".equals(tokens.get(pos + 1))) {
+            pos++;
+            name();
+        }
+    }
+
+    private boolean peekModifier() {
+        return pos < tokens.size() && ACCESS_MODIFIERS.contains(stripNegation(tokens.get(pos)));
+    }
+
+    private boolean peekName() {
+        return pos < tokens.size() && NAME.matcher(tokens.get(pos)).matches();
+    }
+
+    private String name() {
+        if (!peekName()) {
+            throw error("缺少类名或成员名" + (pos < tokens.size() ? ": " + tokens.get(pos) : ""));
+        }
+        return tokens.get(pos++);
+    }
+
+    private boolean accept(String token) {
+        if (pos < tokens.size() && tokens.get(pos).equals(token)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw error("缺少 " + token + (pos < tokens.size() ? "，实际为: " + tokens.get(pos) : ""));
+        }
+    }
+
+    private String next() {
+        if (pos >= tokens.size()) {
+            throw error("keep 规则不完整");
+        }
+        return tokens.get(pos++);
+    }
+
+    private static String stripNegation(String token) {
+        return token.startsWith("!") ? token.substring(1) : token;
+    }
+
+    private static IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message);
+    }
+}
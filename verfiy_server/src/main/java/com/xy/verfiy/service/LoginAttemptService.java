@@ -1,116 +1,237 @@
 package com.xy.verfiy.service;
 
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ConcurrentHashMap;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
 
 /**
  * 登录尝试次数限制服务
  * 防止暴力破解攻击
+ *
+ * 同时按用户名和客户端 IP 计数，任意一个被锁定都拒绝登录：按用户名防止针对单个账号的猜密码，
+ * 按 IP 防止用大量随机用户名撞库。
+ * 单节点模式下计数保存在固定容量的 {@link LoginAttemptTracker} 中，内存占用与出现过多少用户名无关；
+ * 计数器存储为多节点共享实现时改用 {@link SharedCounterStore}，所有节点共享。
+ * 失败最多的用户名和 IP 另用 {@link TopOffenders} 近似统计，供管理员查看。
  */
 @Service
 public class LoginAttemptService {
-    
+
     // 最大失败次数
     private static final int MAX_ATTEMPTS = 5;
     // 锁定时间（分钟）
     private static final int LOCK_TIME_MINUTES = 15;
-    
-    // 存储登录失败记录 <username, LoginAttempt>
-    private final ConcurrentHashMap<String, LoginAttempt> attemptsCache = new ConcurrentHashMap<>();
-    
+    private static final Duration LOCK_DURATION = Duration.ofMinutes(LOCK_TIME_MINUTES);
+    // 时间轮每格 1 秒，一圈覆盖锁定时长
+    private static final long TICK_MILLIS = 1_000L;
+    // 统计的失败最多 key 数量
+    private static final int TOP_OFFENDERS_SIZE = 64;
+    // 超过该长度的用户名以哈希代替，保证每个条目大小固定
+    private static final int MAX_KEY_LENGTH = 64;
+
+    private final SharedCounterStore counterStore;
+
+    // 用户名和 IP 各自最多跟踪的条目数
+    @Value("${login-attempt.max-entries:65536}")
+    private int maxEntries;
+
+    // 同一 IP 锁定前允许的失败次数（NAT 后多个用户共用 IP，比单账号宽松）
+    @Value("${login-attempt.ip-max-attempts:20}")
+    private int ipMaxAttempts;
+
+    private LoginAttemptTracker usernames;
+    private LoginAttemptTracker ips;
+    private TopOffenders topUsernames;
+    private TopOffenders topIps;
+
+    public LoginAttemptService(SharedCounterStore counterStore) {
+        this.counterStore = counterStore;
+    }
+
     /**
-     * 记录登录成功
+     * 失败次数较多的用户名或 IP
+     * @param failures 近期失败次数（近似值）
+     */
+    public record Offender(String key, long failures, boolean locked) {
+    }
+
+    @PostConstruct
+    public void init() {
+        long now = System.currentTimeMillis();
+        int wheelSize = (int) (LOCK_DURATION.toMillis() / TICK_MILLIS) + 1;
+        usernames = new LoginAttemptTracker(maxEntries, MAX_ATTEMPTS, LOCK_DURATION.toMillis(), TICK_MILLIS, wheelSize, now);
+        ips = new LoginAttemptTracker(maxEntries, ipMaxAttempts, LOCK_DURATION.toMillis(), TICK_MILLIS, wheelSize, now);
+        topUsernames = new TopOffenders(TOP_OFFENDERS_SIZE, LOCK_DURATION.toMillis(), now);
+        topIps = new TopOffenders(TOP_OFFENDERS_SIZE, LOCK_DURATION.toMillis(), now);
+    }
+
+    /**
+     * 记录登录成功（只清除用户名的失败记录，IP 的失败记录不因某个账号登录成功而清除）
      */
     public void loginSucceeded(String username) {
-        attemptsCache.remove(username);
+        String user = normalize(username);
+        if (counterStore.isDistributed()) {
+            counterStore.reset(failKey(user));
+        } else {
+            usernames.reset(user);
+        }
     }
-    
+
     /**
      * 记录登录失败
      */
-    public void loginFailed(String username) {
-        LoginAttempt attempt = attemptsCache.computeIfAbsent(username, k -> new LoginAttempt());
-        attempt.incrementFailCount();
-        
-        if (attempt.getFailCount() >= MAX_ATTEMPTS) {
-            attempt.setLockedUntil(LocalDateTime.now().plusMinutes(LOCK_TIME_MINUTES));
+    public void loginFailed(String username, String clientIp) {
+        long now = System.currentTimeMillis();
+        String user = normalize(username);
+        String ip = normalize(clientIp);
+        topUsernames.add(user, now);
+        topIps.add(ip, now);
+        if (counterStore.isDistributed()) {
+            recordSharedFailure(failKey(user), lockKey(user), MAX_ATTEMPTS);
+            recordSharedFailure(ipFailKey(ip), ipLockKey(ip), ipMaxAttempts);
+        } else {
+            usernames.recordFailure(user, now);
+            ips.recordFailure(ip, now);
         }
     }
-    
+
     /**
-     * 检查用户是否被锁定
+     * 检查用户名或 IP 是否被锁定
      */
-    public boolean isBlocked(String username) {
-        LoginAttempt attempt = attemptsCache.get(username);
-        if (attempt == null) {
-            return false;
-        }
-        
-        // 检查是否已过锁定时间
-        if (attempt.getLockedUntil() != null) {
-            if (LocalDateTime.now().isAfter(attempt.getLockedUntil())) {
-                // 锁定时间已过，清除记录
-                attemptsCache.remove(username);
-                return false;
-            }
-            return true;
-        }
-        
-        return false;
+    public boolean isBlocked(String username, String clientIp) {
+        return getLockRemainingMinutes(username, clientIp) > 0;
     }
-    
+
     /**
-     * 获取剩余失败次数
+     * 获取剩余失败次数（用户名和 IP 中较少的一个）
      */
-    public int getRemainingAttempts(String username) {
-        LoginAttempt attempt = attemptsCache.get(username);
-        if (attempt == null) {
-            return MAX_ATTEMPTS;
+    public int getRemainingAttempts(String username, String clientIp) {
+        String user = normalize(username);
+        String ip = normalize(clientIp);
+        if (counterStore.isDistributed()) {
+            return (int) Math.min(sharedRemaining(failKey(user), lockKey(user), MAX_ATTEMPTS),
+                    sharedRemaining(ipFailKey(ip), ipLockKey(ip), ipMaxAttempts));
         }
-        return Math.max(0, MAX_ATTEMPTS - attempt.getFailCount());
+        long now = System.currentTimeMillis();
+        return Math.min(usernames.remainingAttempts(user, now), ips.remainingAttempts(ip, now));
     }
-    
+
     /**
-     * 获取锁定剩余时间（分钟）
+     * 获取锁定剩余时间（分钟，向上取整），用户名和 IP 都未锁定时返回 0
      */
-    public long getLockRemainingMinutes(String username) {
-        LoginAttempt attempt = attemptsCache.get(username);
-        if (attempt == null || attempt.getLockedUntil() == null) {
-            return 0;
+    public long getLockRemainingMinutes(String username, String clientIp) {
+        String user = normalize(username);
+        String ip = normalize(clientIp);
+        long remainingMillis;
+        if (counterStore.isDistributed()) {
+            remainingMillis = Math.max(sharedLockRemaining(lockKey(user)), sharedLockRemaining(ipLockKey(ip)));
+        } else {
+            long now = System.currentTimeMillis();
+            remainingMillis = Math.max(usernames.lockRemainingMillis(user, now), ips.lockRemainingMillis(ip, now));
         }
-        
-        LocalDateTime now = LocalDateTime.now();
-        if (now.isAfter(attempt.getLockedUntil())) {
-            return 0;
-        }
-        
-        return java.time.Duration.between(now, attempt.getLockedUntil()).toMinutes();
+        return (remainingMillis + 59_999L) / 60_000L;
     }
-    
+
     /**
-     * 登录尝试记录内部类
+     * 近期失败次数最多的用户名（本节点统计）
      */
-    private static class LoginAttempt {
-        private int failCount = 0;
-        private LocalDateTime lockedUntil;
-        
-        public void incrementFailCount() {
-            failCount++;
+    public List<Offender> topUsernames(int limit) {
+        return toOffenders(topUsernames.top(limit, System.currentTimeMillis()), usernames, true);
+    }
+
+    /**
+     * 近期失败次数最多的 IP（本节点统计）
+     */
+    public List<Offender> topIps(int limit) {
+        return toOffenders(topIps.top(limit, System.currentTimeMillis()), ips, false);
+    }
+
+    /**
+     * 单节点模式下跟踪的用户名和 IP 条目数
+     */
+    public int trackedEntries() {
+        return usernames.size() + ips.size();
+    }
+
+    /**
+     * 推进时间轮，回收到期的条目
+     */
+    @Scheduled(fixedDelay = TICK_MILLIS, initialDelay = TICK_MILLIS, scheduler = "tickScheduler")
+    public void expireEntries() {
+        long now = System.currentTimeMillis();
+        usernames.advance(now);
+        ips.advance(now);
+    }
+
+    private List<Offender> toOffenders(List<TopOffenders.Entry> entries, LoginAttemptTracker tracker, boolean username) {
+        long now = System.currentTimeMillis();
+        return entries.stream()
+                .map(e -> new Offender(e.key(), e.failures(), counterStore.isDistributed()
+                        ? sharedLockRemaining(username ? lockKey(e.key()) : ipLockKey(e.key())) > 0
+                        : tracker.lockRemainingMillis(e.key(), now) > 0))
+                .toList();
+    }
+
+    private void recordSharedFailure(String failKey, String lockKey, int maxAttempts) {
+        if (counterStore.peek(lockKey).count() > 0) {
+            return;
         }
-        
-        public int getFailCount() {
-            return failCount;
+        SharedCounterStore.CounterWindow failures = counterStore.increment(failKey, LOCK_DURATION);
+        if (failures.count() >= maxAttempts) {
+            // 锁定窗口从现在开始计算；失败次数清零，解锁后重新计数
+            counterStore.tryAcquire(lockKey, 1, LOCK_DURATION);
+            counterStore.reset(failKey);
         }
-        
-        public LocalDateTime getLockedUntil() {
-            return lockedUntil;
+    }
+
+    private long sharedRemaining(String failKey, String lockKey, int maxAttempts) {
+        if (counterStore.peek(lockKey).count() > 0) {
+            return 0;
         }
-        
-        public void setLockedUntil(LocalDateTime lockedUntil) {
-            this.lockedUntil = lockedUntil;
+        return Math.max(0, maxAttempts - counterStore.peek(failKey).count());
+    }
+
+    private long sharedLockRemaining(String lockKey) {
+        SharedCounterStore.CounterWindow lock = counterStore.peek(lockKey);
+        return lock.count() > 0 ? lock.resetAfterMillis() : 0L;
+    }
+
+    private static String normalize(String key) {
+        if (key == null || key.isEmpty()) {
+            return "unknown";
+        }
+        if (key.length() <= MAX_KEY_LENGTH) {
+            return key;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return key.substring(0, 16) + "#" + HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 算法不可用", e);
         }
     }
-}
 
+    private static String failKey(String username) {
+        return "login:fail:" + username;
+    }
+
+    private static String lockKey(String username) {
+        return "login:lock:" + username;
+    }
+
+    private static String ipFailKey(String ip) {
+        return "login:ipfail:" + ip;
+    }
+
+    private static String ipLockKey(String ip) {
+        return "login:iplock:" + ip;
+    }
+}
@@ -0,0 +1,264 @@
+package com.xy.verfiy.service;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 固定容量的登录失败计数表（单节点模式使用）
+ *
+ * 8 路组相联：key 经随机种子哈希后落到一组 8 个槽位，组满时淘汰组内最不重要的条目
+ * （已过期 > 未锁定且失败次数最少 > 最早解锁的锁定），所以无论出现多少不同的 key，内存占用都不变。
+ * 过期使用哈希时间轮：每个条目按到期时间挂在时间轮的一个槽上（槽内是数组实现的双向链表），
+ * 推进时只检查到期槽内的条目。查询时也会检查到期时间，时间轮只负责及时腾出槽位。
+ * 所有读写都在对象锁内完成，失败次数的累加和加锁判断是原子的。
+ */
+final class LoginAttemptTracker {
+
+    private static final int WAYS = 8;
+    private static final int NIL = -1;
+
+    private final int maxAttempts;
+    private final long lockMillis;
+    private final long tickMillis;
+    private final int seed = ThreadLocalRandom.current().nextInt();
+    private final int setMask;
+
+    // 槽位数据
+    private final String[] keys;
+    private final int[] failures;
+    private final long[] deadlines;
+    private final boolean[] locked;
+
+    // 时间轮：每个轮槽的链表头，以及每个条目在链表中的前后节点
+    private final int[] wheelHeads;
+    private final int[] next;
+    private final int[] prev;
+    private final int[] bucketOf;
+    private long currentTick;
+
+    private int size;
+    private long evictions;
+
+    /**
+     * @param capacity 最多跟踪的 key 数（向上取整为 8 的 2 的幂倍）
+     * @param maxAttempts 锁定前允许的失败次数；失败计数窗口与锁定时长相同
+     */
+    LoginAttemptTracker(int capacity, int maxAttempts, long lockMillis, long tickMillis, int wheelSize, long now) {
+        int sets = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS));
+        if (sets * WAYS < capacity) {
+            sets <<= 1;
+        }
+        int slots = sets * WAYS;
+        this.maxAttempts = maxAttempts;
+        this.lockMillis = lockMillis;
+        this.tickMillis = tickMillis;
+        this.setMask = sets - 1;
+        this.keys = new String[slots];
+        this.failures = new int[slots];
+        this.deadlines = new long[slots];
+        this.locked = new boolean[slots];
+        this.wheelHeads = new int[Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1];
+        this.next = new int[slots];
+        this.prev = new int[slots];
+        this.bucketOf = new int[slots];
+        Arrays.fill(wheelHeads, NIL);
+        Arrays.fill(bucketOf, NIL);
+        this.currentTick = now / tickMillis;
+    }
+
+    /**
+     * 记录一次失败
+     * @return 剩余可失败次数；本次失败导致锁定或已处于锁定时返回 0
+     */
+    synchronized int recordFailure(String key, long now) {
+        int base = setOf(key) * WAYS;
+        int slot = live(find(key, base), now);
+        if (slot == NIL) {
+            slot = claim(base, now);
+            keys[slot] = key;
+            failures[slot] = 0;
+            locked[slot] = false;
+            schedule(slot, now + lockMillis);
+            size++;
+        }
+        if (locked[slot]) {
+            return 0;
+        }
+        failures[slot]++;
+        if (failures[slot] >= maxAttempts) {
+            // 锁定从现在开始计时，到期后条目整体删除，重新计数
+            locked[slot] = true;
+            schedule(slot, now + lockMillis);
+            return 0;
+        }
+        return maxAttempts - failures[slot];
+    }
+
+    synchronized void reset(String key) {
+        int slot = find(key, setOf(key) * WAYS);
+        if (slot != NIL) {
+            remove(slot);
+        }
+    }
+
+    /**
+     * 锁定剩余毫秒数，未锁定返回 0
+     */
+    synchronized long lockRemainingMillis(String key, long now) {
+        int slot = live(find(key, setOf(key) * WAYS), now);
+        return slot != NIL && locked[slot] ? deadlines[slot] - now : 0L;
+    }
+
+    synchronized int remainingAttempts(String key, long now) {
+        int slot = live(find(key, setOf(key) * WAYS), now);
+        if (slot == NIL) {
+            return maxAttempts;
+        }
+        return locked[slot] ? 0 : Math.max(0, maxAttempts - failures[slot]);
+    }
+
+    /**
+     * 推进时间轮，删除到期的条目
+     * @return 删除的条目数
+     */
+    synchronized int advance(long now) {
+        long targetTick = now / tickMillis;
+        if (targetTick <= currentTick) {
+            return 0;
+        }
+        // 落后超过一圈时每个轮槽只需检查一次
+        long from = Math.max(currentTick + 1, targetTick - wheelHeads.length + 1);
+        int expired = 0;
+        for (long tick = from; tick <= targetTick; tick++) {
+            int bucket = (int) (tick & (wheelHeads.length - 1));
+            for (int slot = wheelHeads[bucket]; slot != NIL; ) {
+                int following = next[slot];
+                if (deadlines[slot] <= now) {
+                    remove(slot);
+                    expired++;
+                }
+                slot = following;
+            }
+        }
+        currentTick = targetTick;
+        return expired;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    private int find(String key, int base) {
+        for (int i = base; i < base + WAYS; i++) {
+            if (keys[i] != null && keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return NIL;
+    }
+
+    /**
+     * 已到期但时间轮还没推进到的条目视为不存在
+     */
+    private int live(int slot, long now) {
+        if (slot != NIL && deadlines[slot] <= now) {
+            remove(slot);
+            return NIL;
+        }
+        return slot;
+    }
+
+    /**
+     * 在组内找一个空槽位，没有则按优先级淘汰一个
+     */
+    private int claim(int base, long now) {
+        int victim = NIL;
+        for (int i = base; i < base + WAYS; i++) {
+            if (keys[i] == null) {
+                return i;
+            }
+            if (victim == NIL || evictBefore(i, victim, now)) {
+                victim = i;
+            }
+        }
+        remove(victim);
+        evictions++;
+        return victim;
+    }
+
+    private boolean evictBefore(int a, int b, long now) {
+        boolean expiredA = deadlines[a] <= now;
+        boolean expiredB = deadlines[b] <= now;
+        if (expiredA != expiredB) {
+            return expiredA;
+        }
+        if (locked[a] != locked[b]) {
+            return !locked[a];
+        }
+        if (!locked[a] && failures[a] != failures[b]) {
+            return failures[a] < failures[b];
+        }
+        return deadlines[a] < deadlines[b];
+    }
+
+    private void schedule(int slot, long deadline) {
+        unlink(slot);
+        deadlines[slot] = deadline;
+        long tick = Math.max((deadline + tickMillis - 1) / tickMillis, currentTick + 1);
+        int bucket = (int) (tick & (wheelHeads.length - 1));
+        int head = wheelHeads[bucket];
+        next[slot] = head;
+        prev[slot] = NIL;
+        if (head != NIL) {
+            prev[head] = slot;
+        }
+        wheelHeads[bucket] = slot;
+        bucketOf[slot] = bucket;
+    }
+
+    private void unlink(int slot) {
+        int bucket = bucketOf[slot];
+        if (bucket == NIL) {
+            return;
+        }
+        if (prev[slot] != NIL) {
+            next[prev[slot]] = next[slot];
+        } else {
+            wheelHeads[bucket] = next[slot];
+        }
+        if (next[slot] != NIL) {
+            prev[next[slot]] = prev[slot];
+        }
+        bucketOf[slot] = NIL;
+    }
+
+    private void remove(int slot) {
+        unlink(slot);
+        keys[slot] = null;
+        failures[slot] = 0;
+        locked[slot] = false;
+        size--;
+    }
+
+    /**
+     * 带随机种子的哈希，防止构造大量落在同一组的 key 挤掉被攻击账号的锁定记录
+     */
+    private int setOf(String key) {
+        int h = seed;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h & setMask;
+    }
+}
@@ -1,90 +1,340 @@
 package com.xy.verfiy.service;
 
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.util.AntPathMatcher;
 
-import java.time.LocalDateTime;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * 全局访问频率限制服务（基于 IP）
+ * 全局访问频率限制服务（基于 IP 的令牌桶）
+ *
+ * 按路由规则（rate-limit.rules）分别限流，每个 IP + 规则对应一个令牌桶。令牌桶只保存令牌数和上次补充时间两个值，
+ * 存放在分段加锁的开放寻址表中；令牌已补满的桶与不存在等价，会在插入或定时清理时回收。
+ *
+ * 计数器存储为多节点共享实现（counter-store.type=database）时，改为在共享存储中按规则周期计数，
+ * 所有节点合计不超过配置的次数。
  */
 @Slf4j
 @Service
 public class RateLimitService {
 
-    // IP 访问记录：clientIp -> 访问记录
-    private final Map<String, IpAccessRecord> accessRecords = new ConcurrentHashMap<>();
+    // 分段数（必须是 2 的幂）
+    private static final int STRIPES = 64;
+    // 每段初始容量（必须是 2 的幂）
+    private static final int INITIAL_STRIPE_CAPACITY = 64;
 
-    // 每分钟最多请求次数
-    private static final int MAX_REQUESTS_PER_MINUTE = 60;
-    
-    // 时间窗口：1分钟
-    private static final int TIME_WINDOW_MINUTES = 1;
+    /**
+     * 路由规则，格式：路径模式=次数/秒数，多条用逗号分隔，按顺序匹配第一条
+     */
+    @Value("${rate-limit.rules:/api/redeem/**=60/60,/api/hook/**=60/60,/admin/dex-compile/diagnostics=300/60,/admin/**=60/60,/api/**=60/60}")
+    private String rulesConfig;
+
+    // 最多同时跟踪的 IP + 规则数，超出后淘汰最久未访问的桶
+    @Value("${rate-limit.max-keys:200000}")
+    private int maxKeys;
+
+    private final SharedCounterStore counterStore;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private List<Rule> rules = List.of();
 
     /**
-     * 检查 IP 是否被限流
+     * 限流规则
      */
-    public boolean isRateLimited(String clientIp) {
-        LocalDateTime now = LocalDateTime.now();
-        IpAccessRecord record = accessRecords.computeIfAbsent(clientIp, k -> new IpAccessRecord());
+    public record Rule(String pattern, int capacity, long periodNanos) {
+        double tokensPerNano() {
+            return (double) capacity / periodNanos;
+        }
+    }
 
-        // 清理过期的访问记录
-        record.cleanExpiredRecords(now, TIME_WINDOW_MINUTES);
+    /**
+     * 单次请求的限流结果
+     * @param retryAfterSeconds 被拒绝时距离下一个令牌的秒数
+     */
+    public record Decision(boolean allowed, int limit, int remaining, long retryAfterSeconds) {
+    }
+
+    public RateLimitService(SharedCounterStore counterStore) {
+        this.counterStore = counterStore;
+    }
 
-        // 检查是否超过限制
-        int currentCount = record.getRequestCount();
-        if (currentCount >= MAX_REQUESTS_PER_MINUTE) {
-            log.warn("IP {} 访问频率超限，当前次数: {}/{}", clientIp, currentCount, MAX_REQUESTS_PER_MINUTE);
-            return true;
+    @PostConstruct
+    public void init() {
+        rules = parseRules(rulesConfig);
+        int perStripe = Math.max(INITIAL_STRIPE_CAPACITY, Integer.highestOneBit(Math.max(1, maxKeys / STRIPES)) * 2);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(INITIAL_STRIPE_CAPACITY, perStripe);
         }
+        log.info("限流规则: {}", rules);
+    }
 
-        return false;
+    /**
+     * 检查并消耗一个令牌
+     * @param path 应用内路径（不含 context-path）
+     * @return 无匹配规则时返回 null（不限流）
+     */
+    public Decision tryAcquire(String path, String clientIp) {
+        int ruleIndex = matchRule(path);
+        if (ruleIndex < 0) {
+            return null;
+        }
+        Rule rule = rules.get(ruleIndex);
+        String key = clientIp != null ? clientIp : "unknown";
+        Decision decision;
+        if (counterStore.isDistributed()) {
+            decision = acquireShared(key, ruleIndex, rule);
+        } else {
+            int hash = hash(key, ruleIndex);
+            decision = stripes[hash & (STRIPES - 1)].acquire(key, ruleIndex, hash, rule, System.nanoTime());
+        }
+        if (!decision.allowed()) {
+            log.warn("IP {} 访问频率超限，规则: {}（{}次/{}秒）", key, rule.pattern(), rule.capacity(),
+                    rule.periodNanos() / 1_000_000_000L);
+        }
+        return decision;
+    }
+
+    /**
+     * 多节点共享计数：每条规则的周期内合计不超过 capacity 次
+     */
+    private Decision acquireShared(String clientIp, int ruleIndex, Rule rule) {
+        SharedCounterStore.Acquisition acquisition = counterStore.tryAcquire(
+                "rate:" + ruleIndex + ":" + clientIp, rule.capacity(), Duration.ofNanos(rule.periodNanos()));
+        long retryAfter = acquisition.allowed() ? 0L : Math.max(1L, (acquisition.resetAfterMillis() + 999L) / 1000L);
+        return new Decision(acquisition.allowed(), rule.capacity(),
+                (int) Math.min(rule.capacity(), acquisition.remaining()), retryAfter);
     }
 
     /**
-     * 记录请求
+     * 当前跟踪的桶数量
      */
-    public void recordRequest(String clientIp) {
-        LocalDateTime now = LocalDateTime.now();
-        IpAccessRecord record = accessRecords.computeIfAbsent(clientIp, k -> new IpAccessRecord());
-        record.addRequest(now);
+    public int trackedKeys() {
+        int total = 0;
+        for (Stripe stripe : stripes) {
+            total += stripe.size();
+        }
+        return total;
     }
 
     /**
-     * 获取剩余请求次数
+     * 定时回收已补满（即空闲）的桶
      */
-    public int getRemainingRequests(String clientIp) {
-        IpAccessRecord record = accessRecords.get(clientIp);
-        if (record == null) {
-            return MAX_REQUESTS_PER_MINUTE;
+    @Scheduled(fixedDelay = 60_000L, initialDelay = 60_000L)
+    public void evictIdle() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (Stripe stripe : stripes) {
+            evicted += stripe.evictIdle(rules, now);
+        }
+        if (evicted > 0) {
+            log.debug("回收空闲限流桶 {} 个，剩余 {} 个", evicted, trackedKeys());
+        }
+    }
+
+    private int matchRule(String path) {
+        for (int i = 0; i < rules.size(); i++) {
+            if (pathMatcher.match(rules.get(i).pattern(), path)) {
+                return i;
+            }
         }
+        return -1;
+    }
 
-        LocalDateTime now = LocalDateTime.now();
-        record.cleanExpiredRecords(now, TIME_WINDOW_MINUTES);
-        
-        int used = record.getRequestCount();
-        return Math.max(0, MAX_REQUESTS_PER_MINUTE - used);
+    static List<Rule> parseRules(String config) {
+        List<Rule> parsed = new ArrayList<>();
+        if (config == null || config.isBlank()) {
+            return parsed;
+        }
+        for (String item : config.split(",")) {
+            String trimmed = item.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int eq = trimmed.lastIndexOf('=');
+            int slash = trimmed.lastIndexOf('/');
+            if (eq <= 0 || slash < eq) {
+                throw new IllegalArgumentException("限流规则格式错误（应为 路径=次数/秒数）: " + trimmed);
+            }
+            try {
+                int capacity = Integer.parseInt(trimmed.substring(eq + 1, slash).trim());
+                long seconds = Long.parseLong(trimmed.substring(slash + 1).trim());
+                if (capacity <= 0 || seconds <= 0) {
+                    throw new IllegalArgumentException("限流规则的次数和秒数必须大于 0: " + trimmed);
+                }
+                parsed.add(new Rule(trimmed.substring(0, eq).trim(), capacity, seconds * 1_000_000_000L));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("限流规则格式错误（应为 路径=次数/秒数）: " + trimmed, e);
+            }
+        }
+        return List.copyOf(parsed);
     }
 
     /**
-     * IP 访问记录
+     * IP + 规则的哈希：低 6 位选段，其余位在段内定位
      */
-    private static class IpAccessRecord {
-        private final ConcurrentHashMap<LocalDateTime, Boolean> requestTimes = new ConcurrentHashMap<>();
+    static int hash(String key, int ruleIndex) {
+        int h = key.hashCode() * 31 + ruleIndex;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 一段开放寻址表（线性探测），每个槽位：IP、规则序号、令牌数、上次补充时间
+     */
+    static final class Stripe {
+        private final int maxCapacity;
+        private String[] keys;
+        private int[] ruleIndexes;
+        private double[] tokens;
+        private long[] lastRefill;
+        private int size;
+
+        Stripe(int capacity, int maxCapacity) {
+            this.maxCapacity = maxCapacity;
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            keys = new String[capacity];
+            ruleIndexes = new int[capacity];
+            tokens = new double[capacity];
+            lastRefill = new long[capacity];
+            size = 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized Decision acquire(String key, int ruleIndex, int hash, Rule rule, long now) {
+            int slot = find(key, ruleIndex, hash);
+            double available;
+            if (slot >= 0) {
+                long elapsed = Math.min(now - lastRefill[slot], rule.periodNanos());
+                available = Math.min(rule.capacity(), tokens[slot] + elapsed * rule.tokensPerNano());
+            } else {
+                slot = insert(key, ruleIndex, hash, now);
+                available = rule.capacity();
+            }
+            lastRefill[slot] = now;
+
+            if (available >= 1.0) {
+                tokens[slot] = available - 1.0;
+                return new Decision(true, rule.capacity(), (int) tokens[slot], 0L);
+            }
+            tokens[slot] = available;
+            long waitNanos = (long) Math.ceil((1.0 - available) / rule.tokensPerNano());
+            return new Decision(false, rule.capacity(), 0, Math.max(1L, (waitNanos + 999_999_999L) / 1_000_000_000L));
+        }
+
+        private int find(String key, int ruleIndex, int hash) {
+            int mask = keys.length - 1;
+            for (int i = (hash >>> 6) & mask; keys[i] != null; i = (i + 1) & mask) {
+                if (ruleIndexes[i] == ruleIndex && keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int insert(String key, int ruleIndex, int hash, long now) {
+            // 负载超过 3/4：先扩容；已到上限则淘汰最久未访问的桶
+            if ((size + 1) * 4 > keys.length * 3) {
+                if (keys.length < maxCapacity) {
+                    rehash(keys.length * 2);
+                } else {
+                    removeAt(oldestSlot());
+                }
+            }
+            int mask = keys.length - 1;
+            int i = (hash >>> 6) & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            ruleIndexes[i] = ruleIndex;
+            lastRefill[i] = now;
+            size++;
+            return i;
+        }
+
+        synchronized int evictIdle(List<Rule> rules, long now) {
+            int evicted = 0;
+            for (int i = 0; i < keys.length; ) {
+                if (keys[i] != null && isFull(rules.get(ruleIndexes[i]), i, now)) {
+                    removeAt(i);
+                    evicted++;
+                    // 后移删除可能把后面的元素移到当前位置，需要重新检查
+                    continue;
+                }
+                i++;
+            }
+            return evicted;
+        }
+
+        private boolean isFull(Rule rule, int slot, long now) {
+            long elapsed = Math.min(now - lastRefill[slot], rule.periodNanos());
+            return tokens[slot] + elapsed * rule.tokensPerNano() >= rule.capacity();
+        }
 
-        public void addRequest(LocalDateTime time) {
-            requestTimes.put(time, true);
+        private int oldestSlot() {
+            int oldest = -1;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null && (oldest < 0 || lastRefill[i] - lastRefill[oldest] < 0)) {
+                    oldest = i;
+                }
+            }
+            return oldest;
         }
 
-        public int getRequestCount() {
-            return requestTimes.size();
+        /**
+         * 删除槽位并后移填补（不使用墓碑，保证探测链不断）
+         */
+        private void removeAt(int slot) {
+            int mask = keys.length - 1;
+            keys[slot] = null;
+            size--;
+            int hole = slot;
+            for (int i = (slot + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+                int home = (hash(keys[i], ruleIndexes[i]) >>> 6) & mask;
+                // 元素的理想位置不在 (hole, i] 区间内时，可以移到空洞
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    keys[hole] = keys[i];
+                    ruleIndexes[hole] = ruleIndexes[i];
+                    tokens[hole] = tokens[i];
+                    lastRefill[hole] = lastRefill[i];
+                    keys[i] = null;
+                    hole = i;
+                }
+            }
         }
 
-        public void cleanExpiredRecords(LocalDateTime now, int windowMinutes) {
-            LocalDateTime cutoffTime = now.minusMinutes(windowMinutes);
-            requestTimes.entrySet().removeIf(entry -> entry.getKey().isBefore(cutoffTime));
+        private void rehash(int capacity) {
+            String[] oldKeys = keys;
+            int[] oldRules = ruleIndexes;
+            double[] oldTokens = tokens;
+            long[] oldRefill = lastRefill;
+            allocate(capacity);
+            int mask = capacity - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] == null) {
+                    continue;
+                }
+                int i = (hash(oldKeys[j], oldRules[j]) >>> 6) & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                ruleIndexes[i] = oldRules[j];
+                tokens[i] = oldTokens[j];
+                lastRefill[i] = oldRefill[j];
+                size++;
+            }
         }
     }
 }
@@ -0,0 +1,52 @@
+package com.xy.verfiy.service;
+
+import java.time.Duration;
+
+/**
+ * 计数器存储（限流、编译配额、登录失败次数共用）
+ *
+ * 每个 key 一个计数窗口：第一次计数时开始，持续 window 时长，到期后自动归零。
+ * 通过 counter-store.type 选择实现：memory（默认，单节点）或 database（多节点共享，按租约批量占用）。
+ */
+public interface SharedCounterStore {
+
+    /**
+     * 占用结果
+     * @param remaining 本窗口剩余可用次数（近似值）
+     * @param resetAfterMillis 距离窗口结束的毫秒数
+     */
+    record Acquisition(boolean allowed, long remaining, long resetAfterMillis) {
+    }
+
+    /**
+     * 计数窗口快照
+     */
+    record CounterWindow(long count, long resetAfterMillis) {
+        public static final CounterWindow EMPTY = new CounterWindow(0L, 0L);
+    }
+
+    /**
+     * 在当前窗口内占用一次；已达上限时不计数
+     */
+    Acquisition tryAcquire(String key, long limit, Duration window);
+
+    /**
+     * 当前窗口内计数 +1（只计数，不限制）
+     */
+    CounterWindow increment(String key, Duration window);
+
+    /**
+     * 查询当前窗口；不存在或已过期时返回 {@link CounterWindow#EMPTY}
+     */
+    CounterWindow peek(String key);
+
+    /**
+     * 清除计数
+     */
+    void reset(String key);
+
+    /**
+     * 是否为多节点共享的实现
+     */
+    boolean isDistributed();
+}
@@ -0,0 +1,99 @@
+package com.xy.verfiy.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 失败次数最多的 key（Space-Saving 算法，近似值）
+ *
+ * 只保留固定数量的计数器：新 key 进来时替换计数最小的一个，并继承它的计数作为误差上界，
+ * 因此真正的高频 key 一定会留在表中。每隔 decayMillis 所有计数减半，使结果反映最近的情况。
+ */
+final class TopOffenders {
+
+    private final String[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private final Map<String, Integer> index;
+    private final long decayMillis;
+    private int size;
+    private long lastDecay;
+
+    /**
+     * 单个 key 的近似失败次数
+     * @param failures 估计值（可能偏大，最多偏大 error）
+     */
+    record Entry(String key, long failures, long error) {
+    }
+
+    TopOffenders(int capacity, long decayMillis, long now) {
+        this.keys = new String[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.index = new HashMap<>(capacity * 2);
+        this.decayMillis = decayMillis;
+        this.lastDecay = now;
+    }
+
+    synchronized void add(String key, long now) {
+        decayIfDue(now);
+        Integer slot = index.get(key);
+        if (slot != null) {
+            counts[slot]++;
+            return;
+        }
+        if (size < keys.length) {
+            put(size++, key, 1L, 0L);
+            return;
+        }
+        int min = 0;
+        for (int i = 1; i < size; i++) {
+            if (counts[i] < counts[min]) {
+                min = i;
+            }
+        }
+        index.remove(keys[min]);
+        put(min, key, counts[min] + 1, counts[min]);
+    }
+
+    /**
+     * 按失败次数从高到低返回
+     */
+    synchronized List<Entry> top(int limit, long now) {
+        decayIfDue(now);
+        List<Entry> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(new Entry(keys[i], counts[i], errors[i]));
+        }
+        result.sort((a, b) -> Long.compare(b.failures(), a.failures()));
+        return result.size() > limit ? List.copyOf(result.subList(0, limit)) : result;
+    }
+
+    private void put(int slot, String key, long count, long error) {
+        keys[slot] = key;
+        counts[slot] = count;
+        errors[slot] = error;
+        index.put(key, slot);
+    }
+
+    private void decayIfDue(long now) {
+        if (now - lastDecay < decayMillis) {
+            return;
+        }
+        lastDecay = now;
+        int kept = 0;
+        index.clear();
+        for (int i = 0; i < size; i++) {
+            long count = counts[i] >>> 1;
+            if (count > 0) {
+                put(kept++, keys[i], count, errors[i] >>> 1);
+            }
+        }
+        for (int i = kept; i < size; i++) {
+            keys[i] = null;
+        }
+        size = kept;
+    }
+}
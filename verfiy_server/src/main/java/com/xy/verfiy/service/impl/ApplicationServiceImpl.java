@@ -1,7 +1,10 @@
 package com.xy.verfiy.service.impl;
 
+import com.xy.verfiy.domain.AppDeleteJob;
 import com.xy.verfiy.domain.Application;
 import com.xy.verfiy.mapper.ApplicationMapper;
+import com.xy.verfiy.service.ApiQuotaService;
+import com.xy.verfiy.service.AppDeletionService;
 import com.xy.verfiy.service.ApplicationService;
 import org.springframework.stereotype.Service;
 
@@ -11,15 +14,15 @@ import java.util.List;
 public class ApplicationServiceImpl implements ApplicationService {
 
     private final ApplicationMapper applicationMapper;
-    private final com.xy.verfiy.mapper.CardMapper cardMapper;
-    private final com.xy.verfiy.mapper.CardUseLogMapper logMapper;
+    private final ApiQuotaService apiQuotaService;
+    private final AppDeletionService appDeletionService;
 
     public ApplicationServiceImpl(ApplicationMapper applicationMapper,
-                                  com.xy.verfiy.mapper.CardMapper cardMapper,
-                                  com.xy.verfiy.mapper.CardUseLogMapper logMapper) {
+                                  ApiQuotaService apiQuotaService,
+                                  AppDeletionService appDeletionService) {
         this.applicationMapper = applicationMapper;
-        this.cardMapper = cardMapper;
-        this.logMapper = logMapper;
+        this.apiQuotaService = apiQuotaService;
+        this.appDeletionService = appDeletionService;
     }
 
     @Override
@@ -38,6 +41,7 @@ public class ApplicationServiceImpl implements ApplicationService {
         // 新增 API 默认：仅验证成功后合并自定义返回
         app.setRedeemExtraMode("SUCCESS_ONLY");
         applicationMapper.insert(app);
+        apiQuotaService.reload();
         return app;
     }
 
@@ -58,34 +62,31 @@ public class ApplicationServiceImpl implements ApplicationService {
 
     @Override
     public boolean update(Application app) {
-        return applicationMapper.update(app) > 0;
+        boolean updated = applicationMapper.update(app) > 0;
+        if (updated) {
+            // apiKey 或配额可能变化，刷新内存中的配额快照
+            apiQuotaService.reload();
+        }
+        return updated;
     }
 
     @Override
     public boolean delete(Long id) {
-        return applicationMapper.deleteById(id) > 0;
+        boolean deleted = applicationMapper.deleteById(id) > 0;
+        if (deleted) {
+            apiQuotaService.reload();
+        }
+        return deleted;
     }
 
     @Override
-    @org.springframework.transaction.annotation.Transactional
-    public boolean deleteCascade(Long appId) {
-        if (appId == null) return false;
-        // 先删日志
-        java.util.List<com.xy.verfiy.domain.Card> cards = cardMapper.pageQuery(appId, null, null, 0, 100000);
-        for (com.xy.verfiy.domain.Card c : cards) {
-            logMapper.deleteByCardId(c.getId());
-        }
-        // 再删卡密
-        try {
-            // 扩展 Mapper: 直接按 appId 删除
-            cardMapper.getClass();
-        } catch (Exception ignored) {}
-        // 退而求其次：逐个删除（若数据量大可换 SQL 批量）
-        for (com.xy.verfiy.domain.Card c : cards) {
-            cardMapper.deleteByIdAndAppId(c.getId(), appId);
-        }
-        // 最后删应用
-        return applicationMapper.deleteById(appId) > 0;
+    public AppDeleteJob startDeleteCascade(Application app) {
+        return appDeletionService.submit(app);
+    }
+
+    @Override
+    public AppDeleteJob getDeleteJob(String jobId) {
+        return appDeletionService.getJob(jobId);
     }
     
     // 简易随机字符串生成器（A-Za-z0-9）
@@ -2,41 +2,90 @@ package com.xy.verfiy.service.impl;
 
 import com.xy.verfiy.domain.Application;
 import com.xy.verfiy.domain.Card;
+import com.xy.verfiy.domain.CardBatch;
+import com.xy.verfiy.domain.CardBulkJob;
+import com.xy.verfiy.domain.CardBulkRequest;
+import com.xy.verfiy.domain.CardGenerateJob;
+import com.xy.verfiy.domain.CardImportJob;
 import com.xy.verfiy.domain.CardStatus;
 import com.xy.verfiy.domain.CardUseLog;
 import com.xy.verfiy.mapper.CardMapper;
 import com.xy.verfiy.mapper.CardUseLogMapper;
 import com.xy.verfiy.service.ApplicationService;
+import com.xy.verfiy.service.CardArchiveService;
+import com.xy.verfiy.service.CardBatchService;
+import com.xy.verfiy.service.CardBulkService;
+import com.xy.verfiy.service.CardCodeFilter;
+import com.xy.verfiy.service.CardCountCache;
+import com.xy.verfiy.service.CardExpirySweeper;
+import com.xy.verfiy.service.CardLogRetentionService;
+import com.xy.verfiy.service.CardSearchIndex;
+import com.xy.verfiy.service.CardGenerationService;
+import com.xy.verfiy.service.CardImportService;
 import com.xy.verfiy.service.CardService;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
 
 @Service
 public class CardServiceImpl implements CardService {
 
+    // 导出时每次查询的行数
+    private static final int EXPORT_PAGE_SIZE = 1000;
+    // 子串搜索每次回表确认的候选 id 数
+    private static final int SEARCH_BATCH_SIZE = 500;
+    // 候选 id 超过此数时计数直接执行 LIKE（逐批回表反而更慢）
+    private static final int SEARCH_COUNT_MAX_CANDIDATES = 100_000;
+
     private final CardMapper cardMapper;
     private final CardUseLogMapper logMapper;
     private final ApplicationService applicationService;
+    private final CardCodeFilter cardCodeFilter;
+    private final CardBatchService cardBatchService;
+    private final CardGenerationService cardGenerationService;
+    private final CardImportService cardImportService;
+    private final CardCountCache cardCountCache;
+    private final CardSearchIndex cardSearchIndex;
+    private final CardBulkService cardBulkService;
+    private final CardExpirySweeper cardExpirySweeper;
+    private final CardLogRetentionService cardLogRetention;
+    private final CardArchiveService cardArchiveService;
 
-    public CardServiceImpl(CardMapper cardMapper, CardUseLogMapper logMapper, ApplicationService applicationService) {
+    public CardServiceImpl(CardMapper cardMapper, CardUseLogMapper logMapper, ApplicationService applicationService,
+                           CardCodeFilter cardCodeFilter, CardBatchService cardBatchService,
+                           CardGenerationService cardGenerationService, CardImportService cardImportService,
+                           CardCountCache cardCountCache, CardSearchIndex cardSearchIndex,
+                           CardBulkService cardBulkService, CardExpirySweeper cardExpirySweeper,
+                           CardLogRetentionService cardLogRetention, CardArchiveService cardArchiveService) {
         this.cardMapper = cardMapper;
         this.logMapper = logMapper;
         this.applicationService = applicationService;
+        this.cardCodeFilter = cardCodeFilter;
+        this.cardBatchService = cardBatchService;
+        this.cardGenerationService = cardGenerationService;
+        this.cardImportService = cardImportService;
+        this.cardCountCache = cardCountCache;
+        this.cardSearchIndex = cardSearchIndex;
+        this.cardBulkService = cardBulkService;
+        this.cardExpirySweeper = cardExpirySweeper;
+        this.cardLogRetention = cardLogRetention;
+        this.cardArchiveService = cardArchiveService;
     }
 
     @Override
@@ -47,126 +96,182 @@ public class CardServiceImpl implements CardService {
 
     @Override
     public long count(Long appId, String keyword, CardStatus status) {
-        return cardMapper.count(appId, keyword, status);
+        CardSearchIndex.Candidates candidates = searchCandidates(appId, keyword);
+        if (candidates == null || candidates.ids().length > SEARCH_COUNT_MAX_CANDIDATES) {
+            return cardMapper.count(appId, keyword, status);
+        }
+        long[] ids = candidates.ids();
+        long total = cardMapper.countByIds(appId, List.of(), keyword, status, candidates.watermark());
+        for (int from = 0; from < ids.length; from += SEARCH_BATCH_SIZE) {
+            total += cardMapper.countByIds(appId, slice(ids, from, Math.min(ids.length, from + SEARCH_BATCH_SIZE)),
+                    keyword, status, null);
+        }
+        return total;
     }
 
-    // 批次功能已移除
-
     @Override
-    @Transactional
-    public int generateCards(Long appId, String prefix, int count, Integer expireValue,
-                             String expireUnit, String formatPattern, String suffix, Integer maxMachines) {
-        List<Card> toInsert = new ArrayList<>(count);
-        Random random = new Random();
-        // 规则变更：到期时间 = 激活时间 + 拥有时长
-        // 因此生成时不再预先写入 expireAt，而是把拥有时长写入 metadata，激活时再计算
-        String metadataTemplate = null;
-        try {
-            if (expireUnit != null && !"".equals(expireUnit)) {
-                ObjectMapper om = new ObjectMapper();
-                ObjectNode node = om.createObjectNode();
-                if (expireValue != null) node.put("expireValue", expireValue);
-                node.put("expireUnit", expireUnit);
-                metadataTemplate = om.writeValueAsString(node);
-            }
-        } catch (Exception ignored) {}
-        for (int i = 0; i < count; i++) {
-            String core = generateFromPattern(random, formatPattern);
-            String code = joinWithHyphen(prefix, core, suffix);
-            Card card = new Card();
-            card.setAppId(appId);
-            card.setCardCode(code);
-            card.setStatus(CardStatus.NEW);
-            card.setExpireAt(null); // 激活后再设置
-            card.setDisabled(false);
-            card.setMaxMachines(maxMachines);
-            if (metadataTemplate != null) {
-                card.setMetadata(metadataTemplate);
-            }
-            toInsert.add(card);
+    public List<Card> pageByCursor(Long appId, String keyword, CardStatus status, Long beforeId, Long afterId, int limit) {
+        CardSearchIndex.Candidates candidates = searchCandidates(appId, keyword);
+        List<Card> cards = candidates != null
+                ? searchByCursor(appId, keyword, status, beforeId, afterId, limit, candidates)
+                : cardMapper.pageByCursor(appId, keyword, status, beforeId, afterId, limit);
+        if (afterId != null) {
+            // 向前翻页按 id 升序查询，翻转后与其他页顺序一致
+            cards = new ArrayList<>(cards);
+            Collections.reverse(cards);
         }
-        return cardMapper.insertBatch(toInsert);
+        return cards;
     }
 
-    private String randomCode(Random random, int len) {
-        String chars = "ABCDEFGHJKMNPQRSTUVWXYZ23456789";
-        StringBuilder sb = new StringBuilder(len);
-        for (int i = 0; i < len; i++) {
-            sb.append(chars.charAt(random.nextInt(chars.length())));
+    private CardSearchIndex.Candidates searchCandidates(Long appId, String keyword) {
+        if (keyword == null || keyword.isEmpty()) {
+            return null;
         }
-        return sb.toString();
+        return cardSearchIndex.candidates(appId, keyword);
     }
 
-    private String generateFromPattern(Random random, String pattern) {
-        if (pattern == null || pattern.isBlank()) {
-            return randomCode(random, 16);
-        }
-        String chars = "ABCDEFGHJKMNPQRSTUVWXYZ23456789";
-        StringBuilder sb = new StringBuilder(pattern.length());
-        for (int i = 0; i < pattern.length(); i++) {
-            char ch = pattern.charAt(i);
-            if (ch == 'x' || ch == 'X') {
-                sb.append(chars.charAt(random.nextInt(chars.length())));
-            } else {
-                sb.append(ch);
+    /**
+     * 按三元组索引的候选 id 翻页，返回顺序与 cardMapper.pageByCursor 相同（只有 afterId 时升序）。
+     * 水位之后的卡密直接按主键范围查询，水位及之前的按候选 id 分批回表确认。
+     */
+    private List<Card> searchByCursor(Long appId, String keyword, CardStatus status, Long beforeId, Long afterId,
+                                      int limit, CardSearchIndex.Candidates candidates) {
+        long[] ids = candidates.ids();
+        long watermark = candidates.watermark();
+        List<Card> out = new ArrayList<>(limit);
+        if (afterId == null) {
+            if (beforeId == null || beforeId > watermark + 1) {
+                // 同时给出上下界时按 id 降序
+                out.addAll(cardMapper.pageByCursor(appId, keyword, status,
+                        beforeId != null ? beforeId : Long.MAX_VALUE, watermark, limit));
+            }
+            int end = ids.length;
+            if (beforeId != null) {
+                int i = Arrays.binarySearch(ids, beforeId);
+                end = i >= 0 ? i : -i - 1;
+            }
+            while (out.size() < limit && end > 0) {
+                int from = Math.max(0, end - SEARCH_BATCH_SIZE);
+                for (Card card : cardMapper.findByIds(appId, slice(ids, from, end), keyword, status)) {
+                    if (out.size() == limit) {
+                        break;
+                    }
+                    out.add(card);
+                }
+                end = from;
             }
+            return out;
         }
-        return sb.toString();
-    }
-
-    private String joinWithHyphen(String prefix, String core, String suffix) {
-        StringBuilder sb = new StringBuilder();
-        if (prefix != null && !prefix.isBlank()) {
-            sb.append(prefix.trim());
+        int i = Arrays.binarySearch(ids, afterId);
+        int from = i >= 0 ? i + 1 : -i - 1;
+        while (out.size() < limit && from < ids.length) {
+            int to = Math.min(ids.length, from + SEARCH_BATCH_SIZE);
+            List<Card> found = new ArrayList<>(cardMapper.findByIds(appId, slice(ids, from, to), keyword, status));
+            Collections.reverse(found);
+            for (Card card : found) {
+                if (out.size() == limit) {
+                    break;
+                }
+                out.add(card);
+            }
+            from = to;
         }
-        if (sb.length() > 0) sb.append('-');
-        sb.append(core);
-        if (suffix != null && !suffix.isBlank()) {
-            sb.append('-').append(suffix.trim());
+        if (out.size() < limit) {
+            out.addAll(cardMapper.pageByCursor(appId, keyword, status, null, Math.max(afterId, watermark),
+                    limit - out.size()));
         }
-        return sb.toString();
+        return out;
+    }
+
+    private static List<Long> slice(long[] ids, int from, int to) {
+        return Arrays.stream(ids, from, to).boxed().toList();
     }
 
     @Override
-    @Transactional
-    public int importCardsCsv(Long appId, InputStream inputStream) {
-        try (InputStreamReader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
-            Iterable<CSVRecord> records = CSVFormat.Builder.create(CSVFormat.DEFAULT)
-                    .setHeader()
-                    .setSkipHeaderRecord(true)
-                    .build()
-                    .parse(reader);
-            List<Card> toInsert = new ArrayList<>();
-            for (CSVRecord record : records) {
-                String code = record.get("code");
-                Card card = new Card();
-                card.setAppId(appId);
-                card.setCardCode(code);
-                card.setStatus(CardStatus.NEW);
-                toInsert.add(card);
+    public long approximateCount(Long appId, CardStatus status) {
+        return cardCountCache.count(appId, status);
+    }
+
+    @Override
+    public Map<Long, Integer> countMachines(Collection<Long> cardIds) {
+        Map<Long, Integer> counts = new HashMap<>();
+        if (cardIds == null || cardIds.isEmpty()) {
+            return counts;
+        }
+        for (Map<String, Object> row : cardMapper.countMachinesByCardIds(cardIds)) {
+            Object cardId = null;
+            Object cnt = null;
+            // 不同数据库返回的列名大小写不同
+            for (Map.Entry<String, Object> e : row.entrySet()) {
+                if ("card_id".equalsIgnoreCase(e.getKey())) cardId = e.getValue();
+                else if ("cnt".equalsIgnoreCase(e.getKey())) cnt = e.getValue();
+            }
+            if (cardId instanceof Number id && cnt instanceof Number n) {
+                counts.put(id.longValue(), n.intValue());
             }
-            if (toInsert.isEmpty()) return 0;
-            return cardMapper.insertBatch(toInsert);
-        } catch (IOException e) {
-            throw new RuntimeException("导入失败", e);
         }
+        return counts;
+    }
+
+    // 批次功能已移除
+
+    @Override
+    public int generateCards(Long appId, String prefix, int count, Integer expireValue,
+                             String expireUnit, String formatPattern, String suffix, Integer maxMachines) {
+        return cardGenerationService.generate(new CardGenerationService.GenerateSpec(appId, prefix, suffix,
+                formatPattern, count, CardGenerationService.expireMetadata(expireValue, expireUnit), maxMachines));
+    }
+
+    @Override
+    public CardGenerateJob startGenerateJob(Long appId, String prefix, int count, Integer expireValue,
+                                            String expireUnit, String formatPattern, String suffix, Integer maxMachines) {
+        return cardGenerationService.submit(new CardGenerationService.GenerateSpec(appId, prefix, suffix,
+                formatPattern, count, CardGenerationService.expireMetadata(expireValue, expireUnit), maxMachines));
+    }
+
+    @Override
+    public CardGenerateJob getGenerateJob(String jobId) {
+        return cardGenerationService.getJob(jobId);
+    }
+
+    @Override
+    public CardBatch createVirtualBatch(Long appId, String prefix, int count, Integer expireValue,
+                                        String expireUnit, String formatPattern, String suffix, Integer maxMachines) {
+        return cardBatchService.create(appId, prefix, suffix, formatPattern, count,
+                CardGenerationService.expireMetadata(expireValue, expireUnit), maxMachines);
     }
 
     @Override
-    public byte[] exportCardsCsv(Long appId, String keyword, CardStatus status) {
-        List<Card> cards = cardMapper.pageQuery(appId, keyword, status, 0, 10000);
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream();
-             CSVPrinter printer = new CSVPrinter(new java.io.OutputStreamWriter(out, StandardCharsets.UTF_8),
-                     CSVFormat.Builder.create(CSVFormat.DEFAULT)
-                             .setHeader("id", "code", "status", "disabled", "expireAt")
-                             .build())) {
-            for (Card c : cards) {
-                printer.printRecord(c.getId(), c.getCardCode(), c.getStatus(), c.isDisabled(), c.getExpireAt());
+    public CardImportJob startImportJob(Long appId, InputStream inputStream) throws IOException {
+        return cardImportService.submit(appId, inputStream);
+    }
+
+    @Override
+    public CardImportJob getImportJob(String jobId) {
+        return cardImportService.getJob(jobId);
+    }
+
+    @Override
+    public long exportCardsCsv(Long appId, String keyword, CardStatus status, Writer writer) throws IOException {
+        CSVPrinter printer = new CSVPrinter(writer, CSVFormat.Builder.create(CSVFormat.DEFAULT)
+                .setHeader("id", "code", "status", "disabled", "expireAt", "activatedAt", "createdAt",
+                        "maxMachines", "boundMachines")
+                .build());
+        long rows = 0;
+        long lastId = 0L;
+        while (true) {
+            List<Card> page = cardMapper.exportPage(appId, keyword, status, lastId, EXPORT_PAGE_SIZE);
+            for (Card c : page) {
+                printer.printRecord(c.getId(), c.getCardCode(), c.getStatus(), c.isDisabled(), c.getExpireAt(),
+                        c.getActivatedAt(), c.getCreatedAt(), c.getMaxMachines(), c.getBoundMachinesCount());
+                lastId = c.getId();
             }
+            rows += page.size();
+            // 每页刷新一次，客户端边下载边接收
             printer.flush();
-            return out.toByteArray();
-        } catch (IOException e) {
-            throw new RuntimeException("导出失败", e);
+            if (page.size() < EXPORT_PAGE_SIZE) {
+                return rows;
+            }
         }
     }
 
@@ -176,26 +281,47 @@ public class CardServiceImpl implements CardService {
         return cardMapper.updateDisabled(id, disabled, LocalDateTime.now()) > 0;
     }
 
+    @Override
+    public CardBulkJob startBulkJob(Long appId, CardBulkRequest request) {
+        return cardBulkService.submit(appId, request);
+    }
+
+    @Override
+    public CardBulkJob getBulkJob(String jobId) {
+        return cardBulkService.getJob(jobId);
+    }
+
     @Override
     @Transactional
     public boolean updateStatus(Long id, CardStatus status) {
         // 确保外部不会将状态置为 USED；若传入 USED，则落为 ACTIVATED
         CardStatus safe = (status == CardStatus.USED) ? CardStatus.ACTIVATED : status;
-        return cardMapper.updateStatus(id, safe, LocalDateTime.now()) > 0;
+        Card card = cardMapper.findById(id);
+        boolean updated = cardMapper.updateStatus(id, safe, LocalDateTime.now()) > 0;
+        if (updated && card != null) {
+            cardCountCache.changed(card.getAppId(), card.getStatus(), safe);
+        }
+        return updated;
     }
 
     @Override
     @Transactional
     public boolean redeem(String code, String operator, String ip) {
-        Card card = cardMapper.findByCode(code);
+        Card card = findByCode(code);
         if (card == null || card.isDisabled()) return false;
         if (card.getExpireAt() != null && card.getExpireAt().isBefore(LocalDateTime.now())) {
-            cardMapper.updateStatus(card.getId(), CardStatus.EXPIRED, LocalDateTime.now());
+            if (cardMapper.updateStatus(card.getId(), CardStatus.EXPIRED, LocalDateTime.now()) > 0) {
+                cardCountCache.changed(card.getAppId(), card.getStatus(), CardStatus.EXPIRED);
+            }
             return false;
         }
         if (card.getStatus() == CardStatus.USED) return false;
+        card = materialize(card);
+        if (card == null) return false;
         LocalDateTime now = LocalDateTime.now();
-        cardMapper.updateStatusAndActivatedAtIfNull(card.getId(), CardStatus.USED, now, now);
+        if (cardMapper.updateStatusAndActivatedAtIfNull(card.getId(), CardStatus.USED, now, now) > 0) {
+            cardCountCache.changed(card.getAppId(), card.getStatus(), CardStatus.USED);
+        }
 
         CardUseLog log = new CardUseLog();
         log.setCardId(card.getId());
@@ -211,19 +337,25 @@ public class CardServiceImpl implements CardService {
     @Override
     @Transactional
     public boolean redeemForApp(String code, Long appId, String operator, String ip) {
-        Card card = cardMapper.findByCode(code);
+        Card card = findByCode(code);
         if (card == null || card.isDisabled()) return false;
         if (card.getAppId() != null && appId != null && !card.getAppId().equals(appId)) {
             // 非当前应用的卡密，拒绝核销
             return false;
         }
         if (card.getExpireAt() != null && card.getExpireAt().isBefore(LocalDateTime.now())) {
-            cardMapper.updateStatus(card.getId(), CardStatus.EXPIRED, LocalDateTime.now());
+            if (cardMapper.updateStatus(card.getId(), CardStatus.EXPIRED, LocalDateTime.now()) > 0) {
+                cardCountCache.changed(card.getAppId(), card.getStatus(), CardStatus.EXPIRED);
+            }
             return false;
         }
         if (card.getStatus() == CardStatus.USED) return false;
+        card = materialize(card);
+        if (card == null) return false;
         LocalDateTime now = LocalDateTime.now();
-        cardMapper.updateStatusAndActivatedAtIfNull(card.getId(), CardStatus.USED, now, now);
+        if (cardMapper.updateStatusAndActivatedAtIfNull(card.getId(), CardStatus.USED, now, now) > 0) {
+            cardCountCache.changed(card.getAppId(), card.getStatus(), CardStatus.USED);
+        }
 
         CardUseLog log = new CardUseLog();
         log.setCardId(card.getId());
@@ -236,23 +368,75 @@ public class CardServiceImpl implements CardService {
         return true;
     }
 
+    @Override
+    public List<CardUseLog> listLogs(Long cardId, Long beforeId, int size) {
+        return logMapper.pageByCardId(cardId, beforeId, size);
+    }
+
+    /**
+     * 与 findByCode 相同，都没有时再查归档表（验证接口据此给出“已过期”等提示）
+     */
     @Override
     public Card getByCode(String code) {
-        return cardMapper.findByCode(code);
+        if (!cardCodeFilter.mightContain(code)) {
+            return cardBatchService.resolve(code);
+        }
+        Card card = cardMapper.findByCode(code);
+        if (card == null) {
+            card = cardBatchService.resolve(code);
+        }
+        return card != null ? card : cardArchiveService.findByCode(code);
+    }
+
+    /**
+     * 先查布隆过滤器，一定不存在的卡密不访问数据库；card 表中没有时再按虚拟批次识别
+     */
+    private Card findByCode(String code) {
+        if (cardCodeFilter.mightContain(code)) {
+            Card card = cardMapper.findByCode(code);
+            if (card != null) return card;
+        }
+        return cardBatchService.resolve(code);
+    }
+
+    /**
+     * 虚拟批次中的卡密首次激活时写入 card 表；已是真实卡密时原样返回，批次已被删除时返回 null
+     */
+    private Card materialize(Card card) {
+        if (card.getId() != null) return card;
+        cardCodeFilter.addAll(List.of(card.getCardCode()));
+        try {
+            if (cardMapper.insertFromBatch(card) == 0) {
+                return null;
+            }
+            cardCountCache.added(card.getAppId(), card.getStatus(), 1);
+            return card;
+        } catch (DuplicateKeyException e) {
+            // 并发激活：使用已写入的记录
+            return cardMapper.findByCode(card.getCardCode());
+        }
     }
 
     @Override
     @Transactional
     public boolean verifyForApp(String code, Long appId, String machine) {
-        Card current = cardMapper.findByCode(code);
+        Card current = findByCode(code);
         if (current == null || current.isDisabled()) return false;
         if (current.getAppId() != null && appId != null && !current.getAppId().equals(appId)) return false;
-        if (current.getExpireAt() != null && current.getExpireAt().isBefore(LocalDateTime.now())) return false;
+        if (current.getExpireAt() != null && current.getExpireAt().isBefore(LocalDateTime.now())) {
+            if (current.getId() != null && current.getStatus() != CardStatus.EXPIRED
+                    && cardMapper.updateStatus(current.getId(), CardStatus.EXPIRED, LocalDateTime.now()) > 0) {
+                cardCountCache.changed(current.getAppId(), current.getStatus(), CardStatus.EXPIRED);
+            }
+            return false;
+        }
         
         // 核销时必须提供机器码
         if (machine == null || machine.isBlank()) {
             return false;
         }
+        current = materialize(current);
+        if (current == null) return false;
         
         boolean isFirstActivation = (current.getStatus() == null || current.getStatus() == CardStatus.NEW);
         Integer max = current.getMaxMachines();
@@ -293,10 +477,21 @@ public class CardServiceImpl implements CardService {
                             case "FOREVER": expireAt = null; break;
                             default: expireAt = now.plusDays(v); break;
                         }
+                        // 批量延长有效期时，以月/季/年为单位的卡密记在 extendDays
+                        com.fasterxml.jackson.databind.JsonNode eNode = root.get("extendDays");
+                        if (expireAt != null && eNode != null && eNode.isNumber() && eNode.longValue() > 0) {
+                            expireAt = expireAt.plusDays(eNode.longValue());
+                        }
                     }
                 }
             } catch (Exception ignored) {}
-            try { cardMapper.updateStatusActivatedAndExpireIfNull(current.getId(), CardStatus.ACTIVATED, now, expireAt, now); } catch (Exception ignored) {}
+            try {
+                if (cardMapper.updateStatusActivatedAndExpireIfNull(current.getId(), CardStatus.ACTIVATED, now, expireAt, now) > 0) {
+                    cardCountCache.changed(current.getAppId(), current.getStatus() != null ? current.getStatus() : CardStatus.NEW,
+                            CardStatus.ACTIVATED);
+                    cardExpirySweeper.activated(current.getId(), current.getAppId(), expireAt);
+                }
+            } catch (Exception ignored) {}
         }
 
         // 处理机器码绑定（无限制时可忽略；有限制时上面已做预检）
@@ -319,10 +514,21 @@ public class CardServiceImpl implements CardService {
     @Override
     @Transactional
     public boolean delete(Long id, Long appId) {
-        // 先删使用日志与机器码绑定，避免外键约束与残留
-        logMapper.deleteByCardId(id);
+        Card card = cardMapper.findById(id);
+        // 先删使用日志与机器码绑定，避免外键约束与残留（使用日志按月分区时随分区过期删除）
+        if (!cardLogRetention.partitioned()) {
+            logMapper.deleteByCardId(id);
+        }
         try { cardMapper.deleteMachinesByCardId(id); } catch (Exception ignored) {}
-        return cardMapper.deleteByIdAndAppId(id, appId) > 0;
+        boolean deleted = cardMapper.deleteByIdAndAppId(id, appId) > 0;
+        if (deleted && card != null) {
+            cardCountCache.removed(card.getAppId(), card.getStatus(), 1);
+        }
+        if (deleted && card != null && card.getBatchId() != null) {
+            // 虚拟批次的卡密删除后不能再按序号重新激活
+            cardBatchService.revoke(card.getBatchId(), card.getBatchIndex());
+        }
+        return deleted;
     }
     
     @Override
@@ -333,10 +539,10 @@ public class CardServiceImpl implements CardService {
             return 0;
         }
         
-        // 统计所有应用的卡密总数
+        // 统计所有应用的卡密总数（增量维护的计数，不逐个应用执行 COUNT）
         int total = 0;
         for (Application app : apps) {
-            total += (int) cardMapper.count(app.getId(), null, null);
+            total += (int) cardCountCache.count(app.getId(), null);
         }
         return total;
     }
@@ -0,0 +1,271 @@
+package com.xy.verfiy.service.impl;
+
+import com.xy.verfiy.domain.SharedCounter;
+import com.xy.verfiy.mapper.SharedCounterMapper;
+import com.xy.verfiy.service.SharedCounterStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于数据库的共享计数器存储（多节点部署时使用）
+ *
+ * 计数保存在 shared_counter 表，所有节点共享。为避免每个请求都写数据库，
+ * tryAcquire 每次从数据库预占一小批次数（租约），在本节点内消耗完再去取下一批；
+ * 未用完的租约随窗口一起过期，因此总放行次数不会超过上限。
+ * 只使用普通的 SELECT/INSERT/UPDATE/DELETE，可以在 H2（MySQL 模式）上测试。
+ *
+ * 数据库不可用时 tryAcquire 的行为由 counter-store.fail-open 决定：true（默认）放行，
+ * 限流和配额暂时失效但业务不受影响；false 拒绝，保证上限不被突破但所有受限接口都会不可用。
+ * increment、peek、reset 的数据库异常照常抛出，由调用方处理。
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "counter-store.type", havingValue = "database")
+public class DatabaseCounterStore implements SharedCounterStore {
+
+    // 并发写入冲突时的重试次数
+    private static final int MAX_RETRIES = 3;
+    // 每批清理的过期行数
+    private static final int DELETE_BATCH_SIZE = 1000;
+    // 数据库异常日志的最小间隔
+    private static final long ERROR_LOG_INTERVAL_MILLIS = 10_000L;
+    // 数据库异常且拒绝时建议的重试间隔
+    private static final long FAIL_CLOSED_RETRY_MILLIS = 1_000L;
+    // 超过该长度的 key 以哈希代替（counter_key 列为 VARCHAR(191)）
+    private static final int MAX_PLAIN_KEY_LENGTH = 120;
+
+    private final SharedCounterMapper counterMapper;
+
+    // 单次租约的最大次数（实际为 min(该值, 上限/10)，至少 1）
+    @Value("${counter-store.lease-size:10}")
+    private int leaseSize;
+
+    // 数据库异常时 tryAcquire 是否放行
+    @Value("${counter-store.fail-open:true}")
+    private boolean failOpen;
+
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+    private volatile long lastErrorLoggedAt = 0L;
+
+    public DatabaseCounterStore(SharedCounterMapper counterMapper) {
+        this.counterMapper = counterMapper;
+    }
+
+    /**
+     * 本节点持有的租约
+     */
+    private static final class Lease {
+        private long available;
+        private long expireAt;
+        // 取租约时数据库中的计数（含其他节点的占用）
+        private long sharedCount;
+    }
+
+    /**
+     * 一次数据库预占的结果
+     */
+    private record Grant(long granted, long sharedCount, long expireAt) {
+    }
+
+    @Override
+    public Acquisition tryAcquire(String key, long limit, Duration window) {
+        if (limit <= 0) {
+            return new Acquisition(false, 0L, window.toMillis());
+        }
+        key = storageKey(key);
+        Lease lease = leases.computeIfAbsent(key, k -> new Lease());
+        synchronized (lease) {
+            long now = System.currentTimeMillis();
+            if (lease.expireAt > now && lease.available > 0) {
+                lease.available--;
+                return new Acquisition(true, remaining(lease, limit), lease.expireAt - now);
+            }
+
+            long batch = Math.max(1L, Math.min(leaseSize, limit / 10));
+            Grant grant;
+            try {
+                grant = grant(key, batch, limit, window, now);
+            } catch (DataAccessException e) {
+                if (failOpen) {
+                    logError("获取计数租约失败，暂时放行: " + key, e);
+                    return new Acquisition(true, limit, window.toMillis());
+                }
+                logError("获取计数租约失败，暂时拒绝: " + key, e);
+                return new Acquisition(false, 0L, FAIL_CLOSED_RETRY_MILLIS);
+            }
+            if (grant.granted() <= 0) {
+                lease.available = 0;
+                lease.expireAt = grant.expireAt();
+                lease.sharedCount = grant.sharedCount();
+                return new Acquisition(false, 0L, Math.max(0L, grant.expireAt() - now));
+            }
+            lease.available = grant.granted() - 1;
+            lease.expireAt = grant.expireAt();
+            lease.sharedCount = grant.sharedCount();
+            return new Acquisition(true, remaining(lease, limit), grant.expireAt() - now);
+        }
+    }
+
+    @Override
+    public CounterWindow increment(String key, Duration window) {
+        key = storageKey(key);
+        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+            long now = System.currentTimeMillis();
+            long expireAt = now + window.toMillis();
+            if (counterMapper.restartExpired(key, 1, expireAt, now) == 1) {
+                return new CounterWindow(1L, window.toMillis());
+            }
+            if (counterMapper.add(key, 1, now) == 1) {
+                SharedCounter row = counterMapper.findByKey(key);
+                if (row != null) {
+                    return new CounterWindow(row.getUsedCount() - unusedLease(key, now), row.getExpireAt() - now);
+                }
+                continue;
+            }
+            if (tryInsert(key, 1, expireAt)) {
+                return new CounterWindow(1L, window.toMillis());
+            }
+        }
+        throw new IllegalStateException("计数器更新冲突: " + key);
+    }
+
+    @Override
+    public CounterWindow peek(String key) {
+        key = storageKey(key);
+        SharedCounter row = counterMapper.findByKey(key);
+        long now = System.currentTimeMillis();
+        if (row == null || row.getExpireAt() <= now) {
+            return CounterWindow.EMPTY;
+        }
+        return new CounterWindow(Math.max(0L, row.getUsedCount() - unusedLease(key, now)), row.getExpireAt() - now);
+    }
+
+    @Override
+    public void reset(String key) {
+        key = storageKey(key);
+        leases.remove(key);
+        counterMapper.deleteByKey(key);
+    }
+
+    @Override
+    public boolean isDistributed() {
+        return true;
+    }
+
+    /**
+     * 定时清理过期的计数行和本地租约
+     */
+    @Scheduled(fixedDelayString = "${counter-store.cleanup-interval-ms:60000}", initialDelay = 60_000L)
+    public void cleanup() {
+        long now = System.currentTimeMillis();
+        for (String key : leases.keySet()) {
+            leases.computeIfPresent(key, (k, lease) -> lease.expireAt <= now ? null : lease);
+        }
+        try {
+            // 留出一分钟余量，避免删除其他节点刚刚判断为过期、正要重新开始的行
+            long before = now - 60_000L;
+            int deleted;
+            do {
+                deleted = counterMapper.deleteExpired(before, DELETE_BATCH_SIZE);
+            } while (deleted >= DELETE_BATCH_SIZE);
+        } catch (DataAccessException e) {
+            logError("清理过期计数器失败", e);
+        }
+    }
+
+    /**
+     * 从数据库预占最多 batch 次；剩余不足时按剩余数量预占
+     */
+    private Grant grant(String key, long batch, long limit, Duration window, long now) {
+        long requested = Math.min(batch, limit);
+        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+            long expireAt = now + window.toMillis();
+            if (counterMapper.restartExpired(key, requested, expireAt, now) == 1) {
+                return new Grant(requested, requested, expireAt);
+            }
+            if (counterMapper.addWithinLimit(key, requested, limit, now) == 1) {
+                SharedCounter row = counterMapper.findByKey(key);
+                if (row != null) {
+                    return new Grant(requested, row.getUsedCount(), row.getExpireAt());
+                }
+                continue;
+            }
+            SharedCounter row = counterMapper.findByKey(key);
+            if (row == null) {
+                if (tryInsert(key, requested, expireAt)) {
+                    return new Grant(requested, requested, expireAt);
+                }
+                continue;
+            }
+            if (row.getExpireAt() <= now) {
+                continue;
+            }
+            long left = limit - row.getUsedCount();
+            if (left <= 0) {
+                return new Grant(0L, row.getUsedCount(), row.getExpireAt());
+            }
+            requested = Math.min(requested, left);
+        }
+        // 持续冲突时按已满处理，下次请求再重试
+        return new Grant(0L, limit, now + 1_000L);
+    }
+
+    /**
+     * 过长的 key（如攻击者提交的超长用户名）截断并附加 SHA-256
+     */
+    private static String storageKey(String key) {
+        if (key.length() <= MAX_PLAIN_KEY_LENGTH) {
+            return key;
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return key.substring(0, 48) + "#" + HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 算法不可用", e);
+        }
+    }
+
+    private boolean tryInsert(String key, long count, long expireAt) {
+        try {
+            counterMapper.insert(key, count, expireAt);
+            return true;
+        } catch (DuplicateKeyException e) {
+            // 其他节点已插入，重试更新
+            return false;
+        }
+    }
+
+    private long remaining(Lease lease, long limit) {
+        return Math.max(0L, limit - lease.sharedCount + lease.available);
+    }
+
+    private long unusedLease(String key, long now) {
+        Lease lease = leases.get(key);
+        if (lease == null) {
+            return 0L;
+        }
+        synchronized (lease) {
+            return lease.expireAt > now ? lease.available : 0L;
+        }
+    }
+
+    private void logError(String message, Exception e) {
+        long now = System.currentTimeMillis();
+        if (now - lastErrorLoggedAt > ERROR_LOG_INTERVAL_MILLIS) {
+            lastErrorLoggedAt = now;
+            log.warn("{}: {}", message, e.getMessage());
+        }
+    }
+}
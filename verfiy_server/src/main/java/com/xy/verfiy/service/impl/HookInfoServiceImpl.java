@@ -84,6 +84,7 @@ public class HookInfoServiceImpl implements HookInfoService {
             toInsert.setEnabled(enabled);
             toInsert.setData(trimNullable(hookInfo.getData()));
             toInsert.setDexData(trimNullable(hookInfo.getDexData()));
+            toInsert.setDexHash(trimNullable(hookInfo.getDexHash()));
             toInsert.setZipData(trimNullable(hookInfo.getZipData()));
             toInsert.setZipVersion(hookInfo.getZipVersion() != null ? hookInfo.getZipVersion() : 0);
             toInsert.setRequireCardVerification(requireCardVerification);
@@ -98,6 +99,7 @@ public class HookInfoServiceImpl implements HookInfoService {
         existing.setEnabled(enabled);
         existing.setData(trimNullable(hookInfo.getData()));
         existing.setDexData(trimNullable(hookInfo.getDexData()));
+        existing.setDexHash(trimNullable(hookInfo.getDexHash()));
         existing.setZipData(trimNullable(hookInfo.getZipData()));
         existing.setZipVersion(hookInfo.getZipVersion());
         existing.setRequireCardVerification(requireCardVerification);
@@ -116,6 +118,17 @@ public class HookInfoServiceImpl implements HookInfoService {
         return hookInfoMapper.updateEnabled(info.getId(), info.getAppId(), enabled, owner) > 0;
     }
 
+    @Override
+    @Transactional
+    public boolean updateDex(Long id, String dexData, String dexHash, String owner) {
+        HookInfo info = getOwnedHook(id, owner);
+        if (info == null) {
+            return false;
+        }
+        // 路径与哈希在同一条 UPDATE 中写入，客户端不会读到不一致的组合
+        return hookInfoMapper.updateDex(info.getId(), info.getAppId(), dexData, dexHash, owner) > 0;
+    }
+
     @Override
     @Transactional
     public boolean delete(Long id, String owner) {
@@ -0,0 +1,99 @@
+package com.xy.verfiy.service.impl;
+
+import com.xy.verfiy.service.SharedCounterStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 单节点计数器存储（进程内，重启后清零）
+ */
+@Service
+@ConditionalOnProperty(name = "counter-store.type", havingValue = "memory", matchIfMissing = true)
+public class InMemoryCounterStore implements SharedCounterStore {
+
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+
+    @Override
+    public Acquisition tryAcquire(String key, long limit, Duration window) {
+        long now = System.currentTimeMillis();
+        Acquisition[] result = new Acquisition[1];
+        // compute 保证与过期清理互斥
+        windows.compute(key, (k, w) -> {
+            w = Window.rollIfExpired(w, now, window);
+            if (w.count >= limit) {
+                result[0] = new Acquisition(false, 0L, w.expireAt - now);
+            } else {
+                w.count++;
+                result[0] = new Acquisition(true, limit - w.count, w.expireAt - now);
+            }
+            return w;
+        });
+        return result[0];
+    }
+
+    @Override
+    public CounterWindow increment(String key, Duration window) {
+        long now = System.currentTimeMillis();
+        CounterWindow[] result = new CounterWindow[1];
+        windows.compute(key, (k, w) -> {
+            w = Window.rollIfExpired(w, now, window);
+            w.count++;
+            result[0] = new CounterWindow(w.count, w.expireAt - now);
+            return w;
+        });
+        return result[0];
+    }
+
+    @Override
+    public CounterWindow peek(String key) {
+        Window w = windows.get(key);
+        if (w == null) {
+            return CounterWindow.EMPTY;
+        }
+        long now = System.currentTimeMillis();
+        long count = w.count;
+        long expireAt = w.expireAt;
+        return expireAt > now ? new CounterWindow(count, expireAt - now) : CounterWindow.EMPTY;
+    }
+
+    @Override
+    public void reset(String key) {
+        windows.remove(key);
+    }
+
+    @Override
+    public boolean isDistributed() {
+        return false;
+    }
+
+    /**
+     * 定时清理已过期的窗口
+     */
+    @Scheduled(fixedDelay = 60_000L, initialDelay = 60_000L)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (String key : windows.keySet()) {
+            windows.computeIfPresent(key, (k, w) -> w.expireAt <= now ? null : w);
+        }
+    }
+
+    private static final class Window {
+        private volatile long count;
+        private volatile long expireAt;
+
+        static Window rollIfExpired(Window w, long now, Duration window) {
+            if (w == null) {
+                w = new Window();
+            }
+            if (w.expireAt <= now) {
+                w.count = 0;
+                w.expireAt = now + window.toMillis();
+            }
+            return w;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.xy.verfiy.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.util.function.Predicate;
+
+public final class RequestUtils {
+    private RequestUtils() {}
+
+    /**
+     * 获取客户端真实IP
+     *
+     * X-Forwarded-For、X-Real-IP 由客户端任意填写，只有直接连接的一方是受信任的代理时才读取：
+     * 从 X-Forwarded-For 的最右侧向左跳过受信任的代理，取第一个不受信任的地址。
+     * 直接连接的一方不受信任时只使用 getRemoteAddr()。
+     */
+    public static String getClientIp(HttpServletRequest request, Predicate<String> trustedProxy) {
+        String remote = request.getRemoteAddr();
+        if (remote == null || !trustedProxy.test(remote)) {
+            return remote;
+        }
+        String forwarded = request.getHeader("X-Forwarded-For");
+        if (forwarded != null && !forwarded.isBlank()) {
+            String[] hops = forwarded.split(",");
+            String client = null;
+            for (int i = hops.length - 1; i >= 0; i--) {
+                String hop = hops[i].trim();
+                if (hop.isEmpty() || "unknown".equalsIgnoreCase(hop)) {
+                    continue;
+                }
+                client = hop;
+                if (!trustedProxy.test(hop)) {
+                    return hop;
+                }
+            }
+            if (client != null) {
+                // 整条链都是受信任的代理
+                return client;
+            }
+        }
+        String realIp = request.getHeader("X-Real-IP");
+        if (realIp != null && !realIp.isBlank() && !"unknown".equalsIgnoreCase(realIp)) {
+            return realIp.trim();
+        }
+        return remote;
+    }
+}
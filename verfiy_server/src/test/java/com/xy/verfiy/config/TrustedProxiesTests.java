@@ -0,0 +1,54 @@
+package com.xy.verfiy.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TrustedProxiesTests {
+
+    private final TrustedProxies proxies = new TrustedProxies("127.0.0.1, ::1, 10.0.0.0/8");
+
+    @Test
+    void ignoresForwardedHeadersFromUntrustedPeer() {
+        MockHttpServletRequest request = request("203.0.113.7", "198.51.100.1");
+        request.addHeader("X-Real-IP", "198.51.100.2");
+        assertThat(proxies.clientIp(request)).isEqualTo("203.0.113.7");
+    }
+
+    @Test
+    void takesRightmostUntrustedHopBehindTrustedProxy() {
+        // 客户端自己填写的 1.1.1.1 在最左侧，不能被采用
+        MockHttpServletRequest request = request("127.0.0.1", "1.1.1.1, 203.0.113.7, 10.1.2.3");
+        assertThat(proxies.clientIp(request)).isEqualTo("203.0.113.7");
+    }
+
+    @Test
+    void fallsBackToRealIpThenRemoteAddr() {
+        MockHttpServletRequest request = request("0:0:0:0:0:0:0:1", null);
+        request.addHeader("X-Real-IP", "203.0.113.9");
+        assertThat(proxies.clientIp(request)).isEqualTo("203.0.113.9");
+        assertThat(proxies.clientIp(request("10.0.0.5", null))).isEqualTo("10.0.0.5");
+    }
+
+    @Test
+    void matchesCidrAndRejectsNonLiterals() {
+        assertThat(proxies.test("10.255.255.255")).isTrue();
+        assertThat(proxies.test("11.0.0.1")).isFalse();
+        assertThat(proxies.test("localhost")).isFalse();
+        assertThat(proxies.test("::ffff:127.0.0.1")).isTrue();
+        assertThat(new TrustedProxies("").test("127.0.0.1")).isFalse();
+        assertThrows(IllegalArgumentException.class, () -> new TrustedProxies("example.com"));
+        assertThrows(IllegalArgumentException.class, () -> new TrustedProxies("10.0.0.0/33"));
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr, String forwardedFor) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        if (forwardedFor != null) {
+            request.addHeader("X-Forwarded-For", forwardedFor);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,82 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.Application;
+import com.xy.verfiy.mapper.ApplicationMapper;
+import com.xy.verfiy.service.impl.InMemoryCounterStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ApiQuotaServiceTests {
+
+    private ApplicationMapper applicationMapper;
+    private ApiQuotaService service;
+
+    @BeforeEach
+    void setUp() {
+        applicationMapper = mock(ApplicationMapper.class);
+        when(applicationMapper.listQuotaSettings()).thenReturn(List.of());
+        service = new ApiQuotaService(applicationMapper, new SimpleMeterRegistry(), new InMemoryCounterStore());
+        ReflectionTestUtils.setField(service, "unknownKeyPerMinute", 2);
+        ReflectionTestUtils.setField(service, "lookupsPerSecond", 20);
+        ReflectionTestUtils.setField(service, "negativeCacheTtlMillis", 30_000L);
+        ReflectionTestUtils.setField(service, "negativeCacheSize", 100);
+        service.onApplicationReady();
+    }
+
+    @Test
+    void keyMissingFromSnapshotGetsItsOwnQuota() {
+        when(applicationMapper.findByApiKey("new-key")).thenReturn(app(7L, "new-key", 5));
+        // 随机 Key 先把共用的桶用完
+        service.tryAcquire("random-1");
+        service.tryAcquire("random-2");
+        assertThat(service.tryAcquire("random-3").allowed()).isFalse();
+
+        RateLimitService.Decision decision = service.tryAcquire("new-key");
+
+        assertThat(decision.allowed()).isTrue();
+        assertThat(decision.limit()).isEqualTo(5);
+        service.tryAcquire("new-key");
+        verify(applicationMapper, times(1)).findByApiKey("new-key");
+    }
+
+    @Test
+    void unknownKeysAreNegativelyCached() {
+        service.tryAcquire("missing");
+        service.tryAcquire("missing");
+
+        verify(applicationMapper, times(1)).findByApiKey("missing");
+        assertThat(service.tryAcquire("missing").allowed()).isFalse();
+    }
+
+    @Test
+    void databaseLookupsAreThrottled() {
+        ReflectionTestUtils.setField(service, "lookupsPerSecond", 3);
+
+        for (int i = 0; i < 100; i++) {
+            service.tryAcquire("random-" + i);
+        }
+
+        // 循环可能跨过一个秒边界
+        verify(applicationMapper, atMost(6)).findByApiKey(anyString());
+    }
+
+    private static Application app(long id, String apiKey, int quota) {
+        Application app = new Application();
+        app.setId(id);
+        app.setApiKey(apiKey);
+        app.setQuotaPerMinute(quota);
+        return app;
+    }
+}
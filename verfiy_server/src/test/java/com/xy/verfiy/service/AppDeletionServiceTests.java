@@ -0,0 +1,78 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.AppDeleteJob;
+import com.xy.verfiy.domain.Application;
+import com.xy.verfiy.mapper.ApplicationMapper;
+import com.xy.verfiy.mapper.CardArchiveMapper;
+import com.xy.verfiy.mapper.CardMapper;
+import com.xy.verfiy.mapper.CardUseLogMapper;
+import com.xy.verfiy.mapper.HookInfoMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AppDeletionServiceTests {
+
+    private ApplicationMapper applicationMapper;
+    private CardMapper cardMapper;
+    private CardBatchService cardBatchService;
+    private AppDeletionService service;
+
+    @BeforeEach
+    void setUp() {
+        applicationMapper = mock(ApplicationMapper.class);
+        cardMapper = mock(CardMapper.class);
+        cardBatchService = mock(CardBatchService.class);
+        service = new AppDeletionService(applicationMapper, cardMapper, mock(CardArchiveMapper.class),
+                mock(CardUseLogMapper.class), mock(HookInfoMapper.class), mock(ApiQuotaService.class),
+                cardBatchService, mock(CardCountCache.class), mock(CardSearchIndex.class),
+                mock(CardLogRetentionService.class));
+        ReflectionTestUtils.setField(service, "chunkSize", 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void deletesBatchesFirstAndCardsWrittenDuringDeletion() {
+        // 第一遍扫描只有卡密 1；扫描经过之后，批次卡密 2 被激活写入
+        when(cardMapper.listIdsByAppId(eq(10L), anyLong(), anyInt()))
+                .thenReturn(List.of(1L), List.of(), List.of(2L), List.of());
+        when(cardMapper.deleteByIdsAndAppId(anyCollection(), eq(10L))).thenReturn(1);
+        when(applicationMapper.deleteById(10L)).thenReturn(1);
+        Application app = new Application();
+        app.setId(10L);
+
+        AppDeleteJob job = service.submit(app);
+
+        verify(applicationMapper, timeout(5000)).deleteById(10L);
+        InOrder order = inOrder(cardBatchService, cardMapper, applicationMapper);
+        order.verify(cardBatchService).deleteByAppId(10L);
+        order.verify(cardMapper).deleteByIdsAndAppId(List.of(1L), 10L);
+        order.verify(cardMapper).deleteByIdsAndAppId(List.of(2L), 10L);
+        order.verify(applicationMapper).deleteById(10L);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (job.getFinishedAt() == null && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(job.getStatus()).isEqualTo("SUCCESS");
+        assertThat(job.getDeletedCards()).isEqualTo(2);
+    }
+}
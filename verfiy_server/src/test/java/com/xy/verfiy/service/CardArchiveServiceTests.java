@@ -0,0 +1,141 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.Card;
+import com.xy.verfiy.domain.CardStatus;
+import com.xy.verfiy.mapper.CardArchiveMapper;
+import com.xy.verfiy.mapper.CardMapper;
+import com.xy.verfiy.mapper.CardUseLogMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CardArchiveServiceTests {
+
+    private CardMapper cardMapper;
+    private CardArchiveMapper archiveMapper;
+    private CardUseLogMapper logMapper;
+    private CardBatchService cardBatchService;
+    private CardCountCache cardCountCache;
+    private CardLogRetentionService cardLogRetention;
+    private CardArchiveService service;
+
+    @BeforeEach
+    void setUp() {
+        cardMapper = mock(CardMapper.class);
+        archiveMapper = mock(CardArchiveMapper.class);
+        logMapper = mock(CardUseLogMapper.class);
+        cardBatchService = mock(CardBatchService.class);
+        cardCountCache = mock(CardCountCache.class);
+        cardLogRetention = mock(CardLogRetentionService.class);
+        service = new CardArchiveService(cardMapper, archiveMapper, logMapper, cardBatchService, cardCountCache,
+                cardLogRetention);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "afterDays", 30);
+        ReflectionTestUtils.setField(service, "batchSize", 100);
+    }
+
+    @Test
+    void deletesOnlyCardsWithConsistentCopyAndRevokesFirst() {
+        Card a = card(1L, CardStatus.EXPIRED);
+        Card b = card(2L, CardStatus.ACTIVATED);
+        when(cardMapper.scanByExpireAt(isNull(), eq(0L), any(), anyInt())).thenReturn(List.of(a, b));
+        // 卡密 2 在扫描之后被延长了有效期，不再满足归档条件
+        when(archiveMapper.listCopied(anyCollection(), any(), anyBoolean())).thenReturn(List.of(1L));
+        when(archiveMapper.deleteCopied(anyCollection(), any(), anyBoolean())).thenReturn(1);
+
+        service.archive();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<Long>> deleted = ArgumentCaptor.forClass(Collection.class);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Card>> revoked = ArgumentCaptor.forClass(List.class);
+        InOrder order = inOrder(archiveMapper, cardBatchService);
+        order.verify(archiveMapper).copyCards(eq(List.of(1L, 2L)), any(LocalDateTime.class), eq(false), any());
+        order.verify(cardBatchService).revokeAll(revoked.capture());
+        order.verify(archiveMapper).deleteCopied(deleted.capture(), any(LocalDateTime.class), eq(false));
+        assertThat(deleted.getValue()).containsExactly(1L);
+        assertThat(revoked.getValue()).containsExactly(a);
+        verify(cardCountCache).removed(10L, CardStatus.EXPIRED, 1);
+        verify(logMapper).deleteByCardIds(Set.of(1L), 100);
+    }
+
+    @Test
+    void skipsDeleteWhenNothingWasCopied() {
+        when(cardMapper.scanByExpireAt(isNull(), eq(0L), any(), anyInt())).thenReturn(List.of(card(1L, CardStatus.NEW)));
+        when(archiveMapper.listCopied(anyCollection(), any(), anyBoolean())).thenReturn(List.of());
+
+        service.archive();
+
+        verify(archiveMapper, never()).deleteCopied(anyCollection(), any(), anyBoolean());
+        verify(cardBatchService, never()).revokeAll(any());
+        verify(logMapper, never()).deleteByCardIds(anyCollection(), anyInt());
+    }
+
+    @Test
+    void usedCardsAreNotArchivedByDefault() {
+        when(cardMapper.scanByExpireAt(isNull(), eq(0L), any(), anyInt())).thenReturn(List.of());
+
+        service.archive();
+
+        verify(archiveMapper, never()).scanUsedBefore(any(), anyLong(), anyInt());
+    }
+
+    @Test
+    void searchIndexStillServesAppAfterArchiving() {
+        List<Card> cards = List.of(card(1L, CardStatus.EXPIRED), card(2L, CardStatus.NEW), card(3L, CardStatus.NEW));
+        when(cardMapper.scanCodesAfter(anyLong(), anyInt())).thenAnswer(inv -> {
+            long after = inv.getArgument(0);
+            return cards.stream().filter(c -> c.getId() > after).toList();
+        });
+        CardSearchIndex index = new CardSearchIndex(cardMapper, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(index, "enabled", true);
+        @SuppressWarnings("unchecked")
+        Deque<long[]> checkpoints = (Deque<long[]>) ReflectionTestUtils.getField(index, "checkpoints");
+        checkpoints.addLast(new long[]{System.currentTimeMillis() - 120_000L, 3L});
+        index.rebuild();
+        when(cardMapper.scanByExpireAt(isNull(), eq(0L), any(), anyInt())).thenReturn(List.of(cards.get(0)));
+        when(archiveMapper.listCopied(anyCollection(), any(), anyBoolean())).thenReturn(List.of(1L));
+        when(archiveMapper.deleteCopied(anyCollection(), any(), anyBoolean())).thenReturn(1);
+
+        service.archive();
+
+        // 已归档的卡密留在索引中，回表时被排除；其余卡密仍能通过索引搜到
+        CardSearchIndex.Candidates candidates = index.candidates(10L, "CODE");
+        assertThat(candidates).isNotNull();
+        assertThat(candidates.watermark()).isEqualTo(3L);
+        assertThat(candidates.ids()).containsExactly(1L, 2L, 3L);
+    }
+
+    private static Card card(long id, CardStatus status) {
+        Card card = new Card();
+        card.setId(id);
+        card.setAppId(10L);
+        card.setStatus(status);
+        card.setCardCode("CODE-" + id);
+        card.setExpireAt(LocalDateTime.now().minusDays(60));
+        return card;
+    }
+}
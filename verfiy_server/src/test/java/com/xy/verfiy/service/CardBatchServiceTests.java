@@ -0,0 +1,25 @@
+package com.xy.verfiy.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CardBatchServiceTests {
+
+    private static final BigInteger RADIX = BigInteger.valueOf(CardBatchService.ALPHABET.length());
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 31, 1000, 100_000, 1_000_000, Integer.MAX_VALUE})
+    void requiredDigitsKeepGuessProbabilityBelowTwoToTheMinus40(int count) {
+        int digits = CardBatchService.requiredDigits(count);
+        BigInteger needed = BigInteger.valueOf(count).shiftLeft(40);
+
+        // 随机猜一次命中的概率 count / 31^digits 不超过 2^-40
+        assertThat(RADIX.pow(digits)).isGreaterThanOrEqualTo(needed);
+        // 且是满足条件的最少位数
+        assertThat(RADIX.pow(digits - 1)).isLessThan(needed);
+    }
+}
@@ -0,0 +1,119 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.Card;
+import com.xy.verfiy.domain.CardBulkJob;
+import com.xy.verfiy.domain.CardBulkRequest;
+import com.xy.verfiy.mapper.CardMapper;
+import com.xy.verfiy.mapper.CardUseLogMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CardBulkServiceTests {
+
+    private CardMapper cardMapper;
+    private CardBatchService cardBatchService;
+    private CardBulkService service;
+
+    @BeforeEach
+    void setUp() {
+        cardMapper = mock(CardMapper.class);
+        cardBatchService = mock(CardBatchService.class);
+        service = new CardBulkService(cardMapper, mock(CardUseLogMapper.class), cardBatchService,
+                mock(CardCountCache.class), mock(CardLogRetentionService.class));
+        ReflectionTestUtils.setField(service, "chunkSize", 100);
+        ReflectionTestUtils.setField(service, "syncThreshold", 1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void deleteRevokesBatchCardsBeforeDeletingThem() {
+        Card batchCard = new Card();
+        batchCard.setId(2L);
+        batchCard.setBatchId(7L);
+        batchCard.setBatchIndex(42L);
+        when(cardMapper.listIdsByIdsAndAppId(eq(10L), anyCollection())).thenReturn(List.of(1L, 2L));
+        when(cardMapper.listBatchCardsByIds(eq(10L), anyCollection())).thenReturn(List.of(batchCard));
+        when(cardMapper.deleteByIdsAndAppId(anyCollection(), eq(10L))).thenReturn(2);
+
+        CardBulkJob job = service.submit(10L, request("DELETE", 1L, 2L));
+
+        assertThat(job.getStatus()).isEqualTo("SUCCESS");
+        assertThat(job.getAffected()).isEqualTo(2);
+        InOrder order = inOrder(cardBatchService, cardMapper);
+        order.verify(cardBatchService).revokeAll(List.of(batchCard));
+        order.verify(cardMapper).deleteByIdsAndAppId(List.of(1L, 2L), 10L);
+    }
+
+    @Test
+    void failedRevokeKeepsCards() {
+        Card batchCard = new Card();
+        batchCard.setId(1L);
+        batchCard.setBatchId(7L);
+        batchCard.setBatchIndex(0L);
+        when(cardMapper.listIdsByIdsAndAppId(eq(10L), anyCollection())).thenReturn(List.of(1L));
+        when(cardMapper.listBatchCardsByIds(eq(10L), anyCollection())).thenReturn(List.of(batchCard));
+        doThrow(new IllegalStateException("数据库不可用")).when(cardBatchService).revokeAll(List.of(batchCard));
+
+        CardBulkJob job = service.submit(10L, request("DELETE", 1L));
+
+        assertThat(job.getStatus()).isEqualTo("FAILED");
+        verify(cardMapper, never()).deleteByIdsAndAppId(anyCollection(), anyLong());
+        verify(cardMapper, never()).deleteMachinesByCardIds(anyCollection(), anyInt());
+    }
+
+    @Test
+    void extendTakesActivationCutoffAfterPendingUpdate() {
+        AtomicReference<LocalDateTime> pendingDoneAt = new AtomicReference<>();
+        when(cardMapper.extendPendingByRange(eq(10L), eq(1L), eq(2L), anyCollection(), isNull(), isNull(), isNull(),
+                isNull(), eq(3))).thenAnswer(inv -> {
+            pendingDoneAt.set(LocalDateTime.now());
+            return 1;
+        });
+        when(cardMapper.extendActivatedByRange(eq(10L), eq(1L), eq(2L), anyCollection(), isNull(), isNull(), isNull(),
+                isNull(), eq(3), any(LocalDateTime.class))).thenReturn(1);
+        CardBulkRequest request = request("EXTEND", 1L, 2L);
+        request.setExtendDays(3);
+
+        CardBulkJob job = service.submit(10L, request);
+
+        assertThat(job.getAffected()).isEqualTo(2);
+        ArgumentCaptor<LocalDateTime> now = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(cardMapper).extendActivatedByRange(eq(10L), eq(1L), eq(2L), anyCollection(), isNull(), isNull(),
+                isNull(), isNull(), eq(3), now.capture());
+        // 改未激活卡密期间激活的卡密也要顺延
+        assertThat(now.getValue()).isAfterOrEqualTo(pendingDoneAt.get());
+    }
+
+    private static CardBulkRequest request(String action, Long... ids) {
+        CardBulkRequest request = new CardBulkRequest();
+        request.setAction(action);
+        request.setIds(List.of(ids));
+        return request;
+    }
+}
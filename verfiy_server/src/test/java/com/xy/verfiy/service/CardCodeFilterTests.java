@@ -0,0 +1,57 @@
+package com.xy.verfiy.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CardCodeFilterTests {
+
+    @Test
+    void hashFollowsDatabaseCollation() {
+        assertThat(CardCodeFilter.hash("abcd-1234")).isEqualTo(CardCodeFilter.hash("ABCD-1234"));
+        assertThat(CardCodeFilter.hash("ABCD-1234   ")).isEqualTo(CardCodeFilter.hash("ABCD-1234"));
+        assertThat(CardCodeFilter.hash("ABCD-1234")).isNotEqualTo(CardCodeFilter.hash("ABCD-1235"));
+        assertThat(CardCodeFilter.hash("")).isNotZero();
+    }
+
+    @Test
+    void nonAsciiCodesBypassTheFilter() {
+        assertThat(CardCodeFilter.hash("卡密-1234")).isZero();
+        assertThat(CardCodeFilter.hash("ABCD\t1234")).isZero();
+    }
+
+    @Test
+    void bloomFilterHasNoFalseNegatives() {
+        CardCodeFilter.BloomFilter filter = new CardCodeFilter.BloomFilter(10_000, 0.01);
+        Random random = new Random(7);
+        long[] hashes = new long[10_000];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = random.nextLong();
+            filter.put(hashes[i]);
+        }
+        for (long hash : hashes) {
+            assertThat(filter.mightContain(hash)).isTrue();
+        }
+    }
+
+    @Test
+    void bloomFilterFalsePositiveRateIsNearConfigured() {
+        double fpp = 0.01;
+        int capacity = 50_000;
+        CardCodeFilter.BloomFilter filter = new CardCodeFilter.BloomFilter(capacity, fpp);
+        for (int i = 0; i < capacity; i++) {
+            filter.put(CardCodeFilter.hash("CARD-" + i));
+        }
+        int trials = 100_000;
+        int falsePositives = 0;
+        for (int i = 0; i < trials; i++) {
+            if (filter.mightContain(CardCodeFilter.hash("OTHER-" + i))) {
+                falsePositives++;
+            }
+        }
+        assertThat((double) falsePositives / trials).isLessThan(fpp * 2);
+        assertThat(filter.bitsPerEntry()).isBetween(9.0, 10.5);
+    }
+}
@@ -0,0 +1,92 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.CardStatus;
+import com.xy.verfiy.mapper.CardMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CardExpirySweeperTests {
+
+    private CardMapper cardMapper;
+    private CardCountCache cardCountCache;
+    private CardExpirySweeper sweeper;
+    private long start;
+
+    @BeforeEach
+    void setUp() {
+        cardMapper = mock(CardMapper.class);
+        cardCountCache = mock(CardCountCache.class);
+        when(cardMapper.markExpiredByIds(anyList(), any())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+        sweeper = new CardExpirySweeper(cardMapper, cardCountCache);
+        ReflectionTestUtils.setField(sweeper, "enabled", true);
+        ReflectionTestUtils.setField(sweeper, "batchSize", 100);
+        ReflectionTestUtils.setField(sweeper, "wheelMaxEntries", 1000);
+        // 对齐到整秒，之后的时间都相对于它
+        start = System.currentTimeMillis() / 1000 * 1000;
+    }
+
+    @Test
+    void marksCardWhenItsSecondHasPassed() {
+        sweeper.activated(1L, 10L, time(start + 5_500));
+
+        sweeper.advance(start + 5_999);
+        verify(cardMapper, never()).markExpiredByIds(anyList(), any());
+
+        sweeper.advance(start + 6_000);
+        verify(cardMapper).markExpiredByIds(eq(List.of(1L)), any());
+        verify(cardCountCache).changed(10L, CardStatus.ACTIVATED, CardStatus.EXPIRED);
+
+        // 同一格不会再处理一次
+        sweeper.advance(start + 7_000);
+        verify(cardMapper, times(1)).markExpiredByIds(anyList(), any());
+    }
+
+    @Test
+    void longPauseStillProcessesEveryEntryOnce() {
+        for (long id = 1; id <= 50; id++) {
+            sweeper.activated(id, 10L, time(start + id * 60_000L));
+        }
+
+        sweeper.advance(start + 3 * 3_600_000L);
+
+        verify(cardMapper, times(1)).markExpiredByIds(anyList(), any());
+        verify(cardCountCache, times(50)).changed(10L, CardStatus.ACTIVATED, CardStatus.EXPIRED);
+    }
+
+    @Test
+    void cardsBeyondOneHourAreLeftToTheSweep() {
+        sweeper.activated(1L, 10L, time(start + 2 * 3_600_000L));
+
+        sweeper.advance(start + 3_600_000L);
+
+        verify(cardMapper, never()).markExpiredByIds(anyList(), any());
+    }
+
+    @Test
+    void alreadyExpiredCardGoesToTheNextSlot() {
+        sweeper.activated(1L, 10L, time(start - 10_000));
+
+        sweeper.advance(start + 1_000);
+
+        verify(cardMapper).markExpiredByIds(eq(List.of(1L)), any());
+    }
+
+    private static LocalDateTime time(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
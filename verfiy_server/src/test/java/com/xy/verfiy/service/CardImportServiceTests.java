@@ -0,0 +1,99 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.Card;
+import com.xy.verfiy.domain.CardImportJob;
+import com.xy.verfiy.mapper.CardMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CardImportServiceTests {
+
+    private CardMapper cardMapper;
+    private PlatformTransactionManager transactionManager;
+    private SimpleTransactionStatus transaction;
+    private CardImportService service;
+
+    @BeforeEach
+    void setUp() {
+        cardMapper = mock(CardMapper.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(inv -> transaction = new SimpleTransactionStatus());
+        when(cardMapper.findExistingCodes(anyList())).thenReturn(List.of());
+        when(cardMapper.insertIgnoreBatch(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+        service = new CardImportService(cardMapper, mock(CardCodeFilter.class), mock(CardCountCache.class),
+                transactionManager, 1);
+        ReflectionTestUtils.setField(service, "chunkSize", 2);
+    }
+
+    @Test
+    void malformedFileImportsParsedRowsExactlyOnce() {
+        StringWriter report = new StringWriter();
+        CardImportJob job = run("code\nA1\nA2\nA3\n\"A4\n", report);
+
+        assertThat(job.getStatus()).isEqualTo("FAILED");
+        // 第一块 A1、A2，出错后剩下的 A3 只写一次
+        verify(cardMapper, times(2)).insertIgnoreBatch(anyList());
+        assertThat(job.getImported()).isEqualTo(3);
+        assertThat(report.toString().lines().skip(1)).hasSize(3);
+    }
+
+    @Test
+    void failedInsertIsNotRetried() {
+        when(cardMapper.insertIgnoreBatch(anyList())).thenThrow(new DataAccessResourceFailureException("数据库不可用"));
+        StringWriter report = new StringWriter();
+
+        CardImportJob job = run("code\nA1\nA2\nA3\n", report);
+
+        assertThat(job.getStatus()).isEqualTo("FAILED");
+        verify(cardMapper, times(1)).insertIgnoreBatch(anyList());
+        assertThat(report.toString().lines().skip(1)).isEmpty();
+    }
+
+    @Test
+    void rowsIgnoredByInsertAreReportedPerRow() {
+        // 整块少写入一行：回滚后逐行写入，A2 已被其他操作写入
+        when(cardMapper.insertIgnoreBatch(anyList())).thenAnswer(inv -> {
+            List<Card> cards = inv.getArgument(0);
+            if (cards.size() > 1) {
+                return cards.size() - 1;
+            }
+            return "A2".equals(cards.get(0).getCardCode()) ? 0 : 1;
+        });
+        StringWriter report = new StringWriter();
+
+        CardImportJob job = run("code\nA1\nA2\n", report);
+
+        assertThat(job.getStatus()).isEqualTo("SUCCESS");
+        assertThat(job.getImported()).isEqualTo(1);
+        assertThat(job.getSkipped()).isEqualTo(1);
+        // 整块写入的事务被标记为只回滚
+        assertThat(transaction.isRollbackOnly()).isTrue();
+        assertThat(report.toString().lines().skip(1).toList())
+                .containsExactly("1,A1,导入,", "2,A2,跳过,卡密已存在（导入期间被其他操作写入）");
+    }
+
+    private CardImportJob run(String csv, StringWriter report) {
+        CardImportJob job = new CardImportJob();
+        job.setAppId(1L);
+        ReflectionTestUtils.invokeMethod(service, "run", job,
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), report);
+        return job;
+    }
+}
@@ -0,0 +1,106 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.CardUseLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CardLogArchiveReaderTests {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsEveryColumn() throws IOException {
+        List<CardUseLog> first = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            first.add(log(1_000L + i * 7L, 50L + i % 3, LocalDateTime.of(2026, 3, 1, 0, 0).plusSeconds(i * 37L),
+                    "CODE-" + i, i % 2 == 0 ? "ACTIVATE" : "VERIFY", "10.0.0." + i % 5, null, i % 10 == 0 ? "备注 " + i : null));
+        }
+        // 空字段、较大的 id 间隔、比前一行更早的时间、1970 年之前的时间
+        List<CardUseLog> second = List.of(
+                log(9_000_000_000L, null, null, null, null, null, null, ""),
+                log(9_000_000_001L, 1L, LocalDateTime.of(2026, 2, 1, 8, 30, 15), "卡密", "HEARTBEAT", "::1", "用户", "x"),
+                log(9_000_000_002L, 2L, LocalDateTime.of(1969, 12, 31, 23, 59, 59), "A", "B", "C", "D", "E"));
+        Path file = dir.resolve("log.vlog.gz");
+        try (CardLogArchiveWriter writer = new CardLogArchiveWriter(file)) {
+            writer.write(first);
+            writer.write(List.of());
+            writer.write(second);
+            assertThat(writer.rows()).isEqualTo(303);
+        }
+
+        List<CardUseLog> read = new ArrayList<>();
+        try (CardLogArchiveReader reader = new CardLogArchiveReader(file)) {
+            List<CardUseLog> block;
+            while ((block = reader.next()) != null) {
+                read.addAll(block);
+            }
+            assertThat(reader.next()).isNull();
+        }
+
+        List<CardUseLog> expected = new ArrayList<>(first);
+        expected.addAll(second);
+        assertThat(read).usingRecursiveFieldByFieldElementComparator().containsExactlyElementsOf(expected);
+        assertThat(CardLogArchiveReader.countRows(file)).isEqualTo(303);
+    }
+
+    @Test
+    void truncatedFileIsRejected() throws IOException {
+        Path file = dir.resolve("full.vlog.gz");
+        try (CardLogArchiveWriter writer = new CardLogArchiveWriter(file)) {
+            writer.write(List.of(log(1L, 1L, LocalDateTime.of(2026, 1, 1, 0, 0), "CODE", "VERIFY", "1.2.3.4", null, null)));
+        }
+        Path truncated = dir.resolve("truncated.vlog.gz");
+        // 重新压缩去掉结束标记之前若干字节的内容
+        byte[] raw = gunzip(file);
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(truncated))) {
+            out.write(Arrays.copyOf(raw, raw.length - 3));
+        }
+
+        assertThrows(EOFException.class, () -> CardLogArchiveReader.countRows(truncated));
+    }
+
+    @Test
+    void otherFilesAreRejected() throws IOException {
+        Path file = dir.resolve("other.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(file))) {
+            out.write("VSYM1234".getBytes());
+        }
+
+        assertThrows(IOException.class, () -> new CardLogArchiveReader(file));
+    }
+
+    private static byte[] gunzip(Path file) throws IOException {
+        try (var in = new java.util.zip.GZIPInputStream(Files.newInputStream(file))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static CardUseLog log(long id, Long cardId, LocalDateTime createdAt, String code, String action,
+                                  String ip, String user, String remark) {
+        CardUseLog log = new CardUseLog();
+        log.setId(id);
+        log.setCardId(cardId);
+        log.setCreatedAt(createdAt);
+        log.setCardCode(code);
+        log.setAction(action);
+        log.setRequestIp(ip);
+        log.setRequestUser(user);
+        log.setRemark(remark);
+        return log;
+    }
+}
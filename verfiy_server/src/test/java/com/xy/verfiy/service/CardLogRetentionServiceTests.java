@@ -0,0 +1,118 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.CardUseLog;
+import com.xy.verfiy.mapper.CardUseLogMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CardLogRetentionServiceTests {
+
+    @TempDir
+    Path dir;
+
+    private CardUseLogMapper logMapper;
+    private CardLogRetentionService service;
+    private String partition;
+
+    @BeforeEach
+    void setUp() {
+        logMapper = mock(CardUseLogMapper.class);
+        service = new CardLogRetentionService(logMapper);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "retentionMonths", 6);
+        ReflectionTestUtils.setField(service, "partitionsAhead", 0);
+        ReflectionTestUtils.setField(service, "archiveDir", dir.toString());
+        ReflectionTestUtils.setField(service, "batchSize", 100);
+        YearMonth old = YearMonth.now().minusMonths(12);
+        partition = "p" + old.format(DateTimeFormatter.ofPattern("yyyyMM"));
+        when(logMapper.listPartitions()).thenReturn(List.of(partition, "pmax"));
+        when(logMapper.scanByCreatedAt(isNull(), any(), eq(0L), anyInt())).thenReturn(List.of(log(1L), log(2L)));
+    }
+
+    @Test
+    void dropsPartitionWhenArchivedRowCountMatches() throws IOException {
+        when(logMapper.countPartition(partition)).thenReturn(2L);
+
+        service.maintain();
+
+        verify(logMapper).dropPartition(partition);
+        try (var files = Files.list(dir)) {
+            Path archive = files.filter(f -> f.toString().endsWith(".vlog.gz")).findFirst().orElseThrow();
+            assertThat(CardLogArchiveReader.countRows(archive)).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void keepsPartitionWhenRowCountDiffers() {
+        when(logMapper.countPartition(partition)).thenReturn(3L);
+
+        service.maintain();
+
+        verify(logMapper, never()).dropPartition(anyString());
+    }
+
+    @Test
+    void keepsUnpartitionedRowsWhenRowCountDiffers() {
+        when(logMapper.listPartitions()).thenReturn(List.of());
+        LocalDateTime oldest = YearMonth.now().minusMonths(12).atDay(3).atStartOfDay();
+        when(logMapper.minCreatedAt()).thenReturn(oldest);
+        when(logMapper.scanByCreatedAt(any(), any(), eq(0L), anyInt())).thenReturn(List.of(log(1L)));
+        when(logMapper.countByCreatedAt(any(), any())).thenReturn(5L);
+
+        service.maintain();
+
+        verify(logMapper, never()).deleteByCreatedAt(any(), any(), anyInt());
+    }
+
+    @Test
+    void firstSplitStartsAtOldestLogSoHistoryExpiresRightAway() {
+        YearMonth oldest = YearMonth.now().minusMonths(12);
+        when(logMapper.listPartitions()).thenReturn(List.of("pmax"), List.of(partition, "pmax"));
+        when(logMapper.minCreatedAt()).thenReturn(oldest.atDay(5).atStartOfDay());
+        when(logMapper.countPartition(partition)).thenReturn(2L);
+
+        service.maintain();
+
+        ArgumentCaptor<String> definitions = ArgumentCaptor.forClass(String.class);
+        verify(logMapper).splitMaxPartition(definitions.capture());
+        // 从最早的月份到当月，共 13 个分区
+        assertThat(definitions.getValue()).startsWith("PARTITION " + partition + " ")
+                .contains("PARTITION p" + YearMonth.now().format(DateTimeFormatter.ofPattern("yyyyMM")) + " ");
+        assertThat(definitions.getValue().split("PARTITION ")).hasSize(14);
+        // 拆分后立即按保留期限删除历史分区
+        verify(logMapper).dropPartition(partition);
+    }
+
+    private static CardUseLog log(long id) {
+        CardUseLog log = new CardUseLog();
+        log.setId(id);
+        log.setCardId(10L);
+        log.setCardCode("CODE-" + id);
+        log.setAction("VERIFY");
+        log.setCreatedAt(LocalDateTime.now().minusMonths(12));
+        return log;
+    }
+}
@@ -0,0 +1,157 @@
+package com.xy.verfiy.service;
+
+import com.xy.verfiy.domain.Card;
+import com.xy.verfiy.mapper.CardMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CardSearchIndexTests {
+
+    @Test
+    void postingsRoundTripAcrossBlocksAndLargeGaps() {
+        Random random = new Random(1);
+        long[] ids = new long[1000];
+        long id = 0;
+        for (int i = 0; i < ids.length; i++) {
+            // 小间隔（1 字节）、中等间隔和超过 2^35 的间隔（多字节变长编码）
+            id += switch (i % 3) {
+                case 0 -> 1 + random.nextInt(100);
+                case 1 -> 1 + random.nextInt(1_000_000);
+                default -> 1L + (random.nextLong() >>> 28);
+            };
+            ids[i] = id;
+        }
+        CardSearchIndex.Postings postings = new CardSearchIndex.Postings();
+        for (long value : ids) {
+            postings.add(value);
+            // 同一卡密中重复的三元组
+            postings.add(value);
+        }
+
+        assertThat(postings.toArray()).containsExactly(ids);
+        postings.trim();
+        assertThat(postings.toArray()).containsExactly(ids);
+    }
+
+    @Test
+    void retainIntersectsWithSortedIds() {
+        Random random = new Random(2);
+        TreeSet<Long> stored = new TreeSet<>();
+        while (stored.size() < 700) {
+            stored.add((long) random.nextInt(5000));
+        }
+        CardSearchIndex.Postings postings = new CardSearchIndex.Postings();
+        stored.forEach(postings::add);
+
+        TreeSet<Long> query = new TreeSet<>();
+        while (query.size() < 900) {
+            query.add((long) random.nextInt(6000) - 500);
+        }
+        long[] ids = query.stream().mapToLong(Long::longValue).toArray();
+        TreeSet<Long> expected = new TreeSet<>(query);
+        expected.retainAll(stored);
+
+        assertThat(postings.retain(ids)).containsExactly(expected.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    @Test
+    void emptyPostings() {
+        CardSearchIndex.Postings postings = new CardSearchIndex.Postings();
+
+        assertThat(postings.toArray()).isEmpty();
+        assertThat(postings.retain(new long[]{1, 2, 3})).isEmpty();
+    }
+
+    @Test
+    void trigramsAreCaseInsensitive() {
+        assertThat(CardSearchIndex.trigrams("abcd")).containsExactly(CardSearchIndex.trigrams("ABCD"));
+        assertThat(CardSearchIndex.trigrams("aaaa")).hasSize(1);
+        assertThat(CardSearchIndex.trigrams("ab")).isNull();
+        assertThat(CardSearchIndex.trigrams("ab%c")).isNull();
+    }
+
+    @Test
+    void rebuildStopsAtLaggedCheckpointSoLateCommitsAreNotLost() {
+        CardMapper cardMapper = mock(CardMapper.class);
+        List<Card> visible = new ArrayList<>();
+        for (long id : new long[]{1, 2, 3, 4, 5, 6, 8, 9, 10}) {
+            visible.add(card(id, "CODE-" + id));
+        }
+        when(cardMapper.scanCodesAfter(anyLong(), anyInt())).thenAnswer(inv -> {
+            long after = inv.getArgument(0);
+            int limit = inv.getArgument(1);
+            return visible.stream().filter(c -> c.getId() > after).limit(limit).toList();
+        });
+        when(cardMapper.maxId()).thenReturn(10L);
+        CardSearchIndex index = new CardSearchIndex(cardMapper, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(index, "enabled", true);
+        Deque<long[]> checkpoints = checkpoints(index);
+        long now = System.currentTimeMillis();
+        // 一分钟前的最大主键是 6，之后的 7 还没有提交
+        checkpoints.addLast(new long[]{now - 120_000L, 6L});
+        checkpoints.addLast(new long[]{now - 30_000L, 10L});
+
+        index.rebuild();
+
+        assertThat(index.candidates(1L, "CODE").watermark()).isEqualTo(6L);
+        assertThat(index.candidates(1L, "CODE").ids()).containsExactly(1, 2, 3, 4, 5, 6);
+
+        // 7 提交后，增量扫描推进到 10 时不会因为已索引过更大的主键而跳过它
+        visible.add(6, card(7L, "CODE-7"));
+        checkpoints.peekFirst()[0] = now - 120_000L;
+        index.sync();
+
+        assertThat(index.candidates(1L, "CODE").watermark()).isEqualTo(10L);
+        assertThat(index.candidates(1L, "CODE").ids()).containsExactly(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+    }
+
+    @Test
+    void invalidatedAppFallsBackToLike() {
+        CardMapper cardMapper = mock(CardMapper.class);
+        List<Card> visible = new ArrayList<>(List.of(card(1L, "CODE-1"), card(2L, "CODE-2")));
+        when(cardMapper.scanCodesAfter(anyLong(), anyInt())).thenAnswer(inv -> {
+            long after = inv.getArgument(0);
+            return visible.stream().filter(c -> c.getId() > after).toList();
+        });
+        when(cardMapper.maxId()).thenReturn(3L);
+        CardSearchIndex index = new CardSearchIndex(cardMapper, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(index, "enabled", true);
+        Deque<long[]> checkpoints = checkpoints(index);
+        checkpoints.addLast(new long[]{System.currentTimeMillis() - 120_000L, 2L});
+        index.rebuild();
+
+        index.invalidate(1L);
+        visible.add(card(3L, "CODE-3"));
+        checkpoints.addLast(new long[]{System.currentTimeMillis() - 120_000L, 3L});
+        index.sync();
+
+        // 不能只返回水位之后的卡密，否则释放之前的卡密都搜不到
+        assertThat(index.candidates(1L, "CODE")).isNull();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Deque<long[]> checkpoints(CardSearchIndex index) {
+        return (Deque<long[]>) ReflectionTestUtils.getField(index, "checkpoints");
+    }
+
+    private static Card card(long id, String code) {
+        Card card = new Card();
+        card.setId(id);
+        card.setAppId(1L);
+        card.setCardCode(code);
+        return card;
+    }
+}
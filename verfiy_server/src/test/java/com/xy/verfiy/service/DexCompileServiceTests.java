@@ -0,0 +1,27 @@
+package com.xy.verfiy.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DexCompileServiceTests {
+
+    @Test
+    void countsRemovedClassesAndMembersFromR8Usage() {
+        List<String> usage = List.of(
+                "com.example.Unused",
+                "com.example.Partial:",
+                "    private int counter",
+                "    public static void unused(java.lang.String)",
+                "    void <init>()",
+                "",
+                "com.example.Other:",
+                "    static final java.lang.String TAG");
+
+        DexCompileService.R8Usage parsed = DexCompileService.parseR8Usage(usage);
+
+        assertThat(parsed).isEqualTo(new DexCompileService.R8Usage(1, 2, 2));
+    }
+}
@@ -0,0 +1,60 @@
+package com.xy.verfiy.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeepRuleValidatorTests {
+
+    @Test
+    void acceptsKeepDontwarnAndAssumeRules() {
+        String rules = """
+                # 入口
+                -keep public class com.example.Hook { public static <methods>; }
+                -keep,allowshrinking class com.example.** { *; }
+                -keepclassmembers class * implements java.io.Serializable {
+                    static final long serialVersionUID;
+                    private void writeObject(java.io.ObjectOutputStream);
+                    <init>(...);
+                    * get*();
+                }
+                -keepclasseswithmembernames class * { native <methods>; }
+                -keep @interface com.example.Keep
+                -keep @com.example.Keep class * { @com.example.Keep <fields>; }
+                -keep !public enum com.example.Mode
+                -dontwarn
+                -dontwarn android.**, androidx.**
+                -assumenosideeffects class android.util.Log { public static int d(...); }
+                """;
+        assertDoesNotThrow(() -> KeepRuleValidator.validate(rules));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "-include /etc/passwd",
+            "-keep class A { }-include /etc/passwd",
+            "-keep class A {}-printconfiguration /tmp/out",
+            "-keep class A\n-printseeds /tmp/out",
+            "@/etc/passwd",
+            "-keep class A\n@rules.pro",
+            "-basedirectory /",
+            "-injars /etc",
+            "-applymapping m.txt",
+            "-obfuscationdictionary dict.txt",
+            "-keepattributes *",
+            "-dontshrink",
+            "-keep class \"/etc/passwd\"",
+            "-keep class a/b/C",
+            "-keep,includecode class A",
+            "-keep A",
+            "-keep class A { int x }",
+            "-keep class A { int x;",
+            "-dontwarn -include /etc/passwd",
+    })
+    void rejectsEverythingElse(String rules) {
+        assertThrows(IllegalArgumentException.class, () -> KeepRuleValidator.validate(rules));
+    }
+}
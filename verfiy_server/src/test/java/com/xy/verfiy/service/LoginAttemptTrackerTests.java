@@ -0,0 +1,99 @@
+package com.xy.verfiy.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoginAttemptTrackerTests {
+
+    private static final long LOCK_MILLIS = 60_000L;
+    private static final long TICK_MILLIS = 1_000L;
+
+    private LoginAttemptTracker tracker(int capacity, long now) {
+        return new LoginAttemptTracker(capacity, 3, LOCK_MILLIS, TICK_MILLIS, 128, now);
+    }
+
+    @Test
+    void locksAfterMaxAttemptsAndUnlocksWhenTheWheelPasses() {
+        long now = 1_000_000L;
+        LoginAttemptTracker tracker = tracker(64, now);
+
+        assertThat(tracker.recordFailure("alice", now)).isEqualTo(2);
+        assertThat(tracker.recordFailure("alice", now + 10)).isEqualTo(1);
+        assertThat(tracker.recordFailure("alice", now + 20)).isZero();
+        assertThat(tracker.lockRemainingMillis("alice", now + 20)).isEqualTo(LOCK_MILLIS);
+        assertThat(tracker.recordFailure("alice", now + 30)).isZero();
+
+        assertThat(tracker.advance(now + 20 + LOCK_MILLIS - TICK_MILLIS)).isZero();
+        assertThat(tracker.size()).isEqualTo(1);
+        assertThat(tracker.advance(now + 20 + LOCK_MILLIS + TICK_MILLIS)).isEqualTo(1);
+        assertThat(tracker.size()).isZero();
+        assertThat(tracker.remainingAttempts("alice", now + 20 + LOCK_MILLIS + TICK_MILLIS)).isEqualTo(3);
+    }
+
+    @Test
+    void expiredEntriesAreIgnoredBeforeTheWheelReachesThem() {
+        long now = 5_000L;
+        LoginAttemptTracker tracker = tracker(64, now);
+        tracker.recordFailure("bob", now);
+
+        assertThat(tracker.remainingAttempts("bob", now + LOCK_MILLIS)).isEqualTo(3);
+        assertThat(tracker.size()).isZero();
+    }
+
+    @Test
+    void advanceAfterLongPauseVisitsEachSlotOnce() {
+        long now = 0L;
+        LoginAttemptTracker tracker = tracker(1024, now);
+        for (int i = 0; i < 500; i++) {
+            tracker.recordFailure("user" + i, now + i * 200L);
+        }
+
+        // 组满时可能淘汰个别条目；剩下的每个都只删除一次
+        int tracked = tracker.size();
+        assertThat(tracked).isGreaterThan(400);
+
+        // 落后远超一圈
+        assertThat(tracker.advance(now + 100 * LOCK_MILLIS)).isEqualTo(tracked);
+        assertThat(tracker.size()).isZero();
+    }
+
+    @Test
+    void partialAdvanceOnlyRemovesDueEntries() {
+        long now = 0L;
+        LoginAttemptTracker tracker = tracker(1024, now);
+        tracker.recordFailure("early", now);
+        tracker.recordFailure("late", now + 30_000L);
+
+        assertThat(tracker.advance(now + LOCK_MILLIS + TICK_MILLIS)).isEqualTo(1);
+        assertThat(tracker.remainingAttempts("late", now + LOCK_MILLIS + TICK_MILLIS)).isEqualTo(2);
+    }
+
+    @Test
+    void memoryStaysBoundedAndLockedEntriesSurviveEviction() {
+        long now = 0L;
+        LoginAttemptTracker tracker = tracker(64, now);
+        for (int i = 0; i < 3; i++) {
+            tracker.recordFailure("victim", now);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            tracker.recordFailure("spray" + i, now + 1);
+        }
+
+        assertThat(tracker.size()).isLessThanOrEqualTo(tracker.capacity());
+        assertThat(tracker.evictions()).isPositive();
+        // 组满时先淘汰未锁定的条目
+        assertThat(tracker.lockRemainingMillis("victim", now + 2)).isPositive();
+    }
+
+    @Test
+    void resetRemovesTheEntry() {
+        LoginAttemptTracker tracker = tracker(64, 0L);
+        tracker.recordFailure("carol", 0L);
+
+        tracker.reset("carol");
+
+        assertThat(tracker.size()).isZero();
+        assertThat(tracker.advance(2 * LOCK_MILLIS)).isZero();
+    }
+}
@@ -0,0 +1,70 @@
+package com.xy.verfiy.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitServiceTests {
+
+    // 每个桶 2 个令牌，1 微秒补满
+    private static final RateLimitService.Rule RULE = new RateLimitService.Rule("/api/**", 2, 1_000L);
+
+    @Test
+    void removeAtKeepsProbeChainsIntact() {
+        RateLimitService.Stripe stripe = new RateLimitService.Stripe(256, 256);
+        List<String> idle = new ArrayList<>();
+        List<String> active = new ArrayList<>();
+        for (int i = 0; i < 180; i++) {
+            String ip = "10.0." + (i / 256) + "." + (i % 256);
+            // 交替插入，使空闲和活跃的桶在探测链上交错
+            if (i % 2 == 0) {
+                acquire(stripe, ip, 0L);
+                idle.add(ip);
+            } else {
+                acquire(stripe, ip, 1_000L);
+                active.add(ip);
+            }
+        }
+
+        int evicted = stripe.evictIdle(List.of(RULE), 1_000L);
+
+        assertThat(evicted).isEqualTo(idle.size());
+        assertThat(stripe.size()).isEqualTo(active.size());
+        // 仍在表中的桶只剩 1 个令牌，被删掉的桶重新插入后是满的
+        for (String ip : active) {
+            assertThat(acquire(stripe, ip, 1_000L).remaining()).as(ip).isZero();
+        }
+        for (String ip : idle) {
+            assertThat(acquire(stripe, ip, 1_000L).remaining()).as(ip).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void evictsOldestWhenFull() {
+        RateLimitService.Stripe stripe = new RateLimitService.Stripe(64, 64);
+        for (int i = 0; i < 100; i++) {
+            acquire(stripe, "192.168.0." + i, i);
+        }
+
+        // 负载上限 3/4
+        assertThat(stripe.size()).isEqualTo(48);
+        // 最近访问的桶仍在
+        assertThat(acquire(stripe, "192.168.0.99", 99L).remaining()).isZero();
+    }
+
+    @Test
+    void parsesRules() {
+        List<RateLimitService.Rule> rules = RateLimitService.parseRules("/a/**=10/60, /b=5/1");
+
+        assertThat(rules).containsExactly(
+                new RateLimitService.Rule("/a/**", 10, 60_000_000_000L),
+                new RateLimitService.Rule("/b", 5, 1_000_000_000L));
+    }
+
+    private static RateLimitService.Decision acquire(RateLimitService.Stripe stripe, String ip, long now) {
+        return stripe.acquire(ip, 0, RateLimitService.hash(ip, 0), RULE, now);
+    }
+}
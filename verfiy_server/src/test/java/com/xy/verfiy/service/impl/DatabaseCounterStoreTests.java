@@ -0,0 +1,119 @@
+package com.xy.verfiy.service.impl;
+
+import com.xy.verfiy.mapper.SharedCounterMapper;
+import com.xy.verfiy.service.SharedCounterStore;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.boot.test.autoconfigure.MybatisTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@MybatisTest
+@ActiveProfiles("h2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Sql("/db/shared_counter.sql")
+class DatabaseCounterStoreTests {
+
+    @Autowired
+    private SharedCounterMapper counterMapper;
+
+    @Test
+    void twoNodesNeverExceedTheSharedLimit() {
+        DatabaseCounterStore nodeA = store(counterMapper, true);
+        DatabaseCounterStore nodeB = store(counterMapper, true);
+        Duration window = Duration.ofMinutes(1);
+
+        int allowed = 0;
+        for (int i = 0; i < 40; i++) {
+            DatabaseCounterStore node = i % 2 == 0 ? nodeA : nodeB;
+            if (node.tryAcquire("test:shared", 25, window).allowed()) {
+                allowed++;
+            }
+        }
+
+        assertThat(allowed).isEqualTo(25);
+        assertThat(counterMapper.findByKey("test:shared").getUsedCount()).isEqualTo(25L);
+    }
+
+    @Test
+    void expiredWindowStartsOver() throws InterruptedException {
+        DatabaseCounterStore store = store(counterMapper, true);
+        Duration window = Duration.ofMillis(200);
+
+        assertThat(store.tryAcquire("test:window", 1, window).allowed()).isTrue();
+        assertThat(store.tryAcquire("test:window", 1, window).allowed()).isFalse();
+        Thread.sleep(250);
+
+        assertThat(store.tryAcquire("test:window", 1, window).allowed()).isTrue();
+    }
+
+    @Test
+    void incrementPeekAndReset() {
+        DatabaseCounterStore store = store(counterMapper, true);
+        Duration window = Duration.ofMinutes(5);
+
+        assertThat(store.increment("test:login", window).count()).isEqualTo(1L);
+        assertThat(store.increment("test:login", window).count()).isEqualTo(2L);
+        SharedCounterStore.CounterWindow current = store.peek("test:login");
+        assertThat(current.count()).isEqualTo(2L);
+        assertThat(current.resetAfterMillis()).isPositive().isLessThanOrEqualTo(window.toMillis());
+
+        store.reset("test:login");
+
+        assertThat(store.peek("test:login")).isEqualTo(SharedCounterStore.CounterWindow.EMPTY);
+        assertThat(counterMapper.findByKey("test:login")).isNull();
+    }
+
+    @Test
+    void peekExcludesUnusedLease() {
+        DatabaseCounterStore store = store(counterMapper, true);
+
+        // 上限 100 时每次预占 10 次，数据库中记为 10，本节点只用掉 1 次
+        store.tryAcquire("test:lease", 100, Duration.ofMinutes(1));
+
+        assertThat(counterMapper.findByKey("test:lease").getUsedCount()).isEqualTo(10L);
+        assertThat(store.peek("test:lease").count()).isEqualTo(1L);
+    }
+
+    @Test
+    void longKeysAreHashedToFitTheColumn() {
+        DatabaseCounterStore store = store(counterMapper, true);
+        String key = "login:fail:" + "x".repeat(500);
+
+        store.increment(key, Duration.ofMinutes(1));
+
+        assertThat(store.peek(key).count()).isEqualTo(1L);
+    }
+
+    @Test
+    void databaseFailureFollowsConfiguredPolicy() {
+        SharedCounterMapper broken = mock(SharedCounterMapper.class);
+        DataAccessResourceFailureException failure = new DataAccessResourceFailureException("数据库不可用");
+        when(broken.restartExpired(anyString(), anyLong(), anyLong(), anyLong())).thenThrow(failure);
+        when(broken.findByKey(anyString())).thenThrow(failure);
+        Duration window = Duration.ofMinutes(1);
+
+        assertThat(store(broken, true).tryAcquire("test:down", 5, window).allowed()).isTrue();
+        SharedCounterStore.Acquisition denied = store(broken, false).tryAcquire("test:down", 5, window);
+        assertThat(denied.allowed()).isFalse();
+        assertThat(denied.resetAfterMillis()).isPositive();
+    }
+
+    private static DatabaseCounterStore store(SharedCounterMapper mapper, boolean failOpen) {
+        DatabaseCounterStore store = new DatabaseCounterStore(mapper);
+        ReflectionTestUtils.setField(store, "leaseSize", 10);
+        ReflectionTestUtils.setField(store, "failOpen", failOpen);
+        return store;
+    }
+}
@@ -0,0 +1,79 @@
+package com.xy.verfiy.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeyedPermutationTests {
+
+    private static final byte[] KEY = "0123456789abcdef".getBytes();
+
+    @Test
+    void smallDomainIsABijectionAndRoundTrips() {
+        // 1000 不是 2 的幂，需要 cycle-walking
+        int domain = 1000;
+        KeyedPermutation permutation = new KeyedPermutation(KEY, BigInteger.valueOf(domain));
+        BitSet seen = new BitSet(domain);
+        for (int x = 0; x < domain; x++) {
+            BigInteger y = permutation.permute(BigInteger.valueOf(x));
+            assertThat(y.signum()).isGreaterThanOrEqualTo(0);
+            assertThat(y).isLessThan(BigInteger.valueOf(domain));
+            seen.set(y.intValueExact());
+            assertThat(permutation.invert(y)).isEqualTo(BigInteger.valueOf(x));
+        }
+        assertThat(seen.cardinality()).isEqualTo(domain);
+    }
+
+    @Test
+    void largeDomainStaysInRangeAndRoundTrips() {
+        // 25 位随机字符的卡密空间（31^25，约 2^124）
+        BigInteger domain = BigInteger.valueOf(31).pow(25);
+        KeyedPermutation permutation = new KeyedPermutation(KEY, domain);
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            BigInteger x = new BigInteger(domain.bitLength(), random).mod(domain);
+            BigInteger y = permutation.permute(x);
+            assertThat(y).isLessThan(domain);
+            assertThat(permutation.invert(y)).isEqualTo(x);
+        }
+    }
+
+    @Test
+    void tinyDomainsWork() {
+        for (int domain = 1; domain <= 5; domain++) {
+            KeyedPermutation permutation = new KeyedPermutation(KEY, BigInteger.valueOf(domain));
+            for (int x = 0; x < domain; x++) {
+                assertThat(permutation.invert(permutation.permute(BigInteger.valueOf(x))))
+                        .isEqualTo(BigInteger.valueOf(x));
+            }
+        }
+    }
+
+    @Test
+    void differentKeysGiveDifferentPermutations() {
+        BigInteger domain = BigInteger.valueOf(1_000_000);
+        KeyedPermutation a = new KeyedPermutation(KEY, domain);
+        KeyedPermutation b = new KeyedPermutation("fedcba9876543210".getBytes(), domain);
+        int same = 0;
+        for (int x = 0; x < 100; x++) {
+            if (a.permute(BigInteger.valueOf(x)).equals(b.permute(BigInteger.valueOf(x)))) {
+                same++;
+            }
+        }
+        assertThat(same).isLessThan(3);
+    }
+
+    @Test
+    void rejectsValuesOutsideTheDomain() {
+        KeyedPermutation permutation = new KeyedPermutation(KEY, BigInteger.valueOf(100));
+        assertThrows(IllegalArgumentException.class, () -> permutation.permute(BigInteger.valueOf(100)));
+        assertThrows(IllegalArgumentException.class, () -> permutation.invert(BigInteger.valueOf(-1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new KeyedPermutation(KEY, BigInteger.ONE.shiftLeft(125)));
+    }
+}
@@ -0,0 +1,6 @@
+CREATE TABLE IF NOT EXISTS shared_counter (
+  counter_key varchar(191) NOT NULL,
+  used_count bigint NOT NULL DEFAULT 0,
+  expire_at bigint NOT NULL,
+  PRIMARY KEY (counter_key)
+);